@@ -21,6 +21,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -30,6 +33,7 @@ import net.roboconf.core.actions.ApplicationAction;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.helpers.VariableHelpers;
+import net.roboconf.core.model.runtime.Graphs;
 import net.roboconf.core.model.runtime.Import;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
@@ -47,6 +51,7 @@ import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.wire.WireInstance;
 import net.roboconf.messaging.utils.MessagingUtils;
 import net.roboconf.plugin.api.PluginInterface;
 
@@ -60,9 +65,15 @@ public class Agent implements IMessageProcessor {
 	private final PluginManager pluginManager;
 
 	private Instance rootInstance;
+	private Graphs graphs;
 	private MessagingService messagingService;
 	private AgentData agentData;
 
+	// Instances indexed by the prefixes of the variables they import or export.
+	// Import messages only deal with the relevant instances.
+	private final Map<String,Collection<Instance>> prefixToImporters = new HashMap<String,Collection<Instance>> ();
+	private final Map<String,Collection<Instance>> prefixToExporters = new HashMap<String,Collection<Instance>> ();
+
 
 
 	/**
@@ -161,7 +172,7 @@ public class Agent implements IMessageProcessor {
 						stopInstance( instance, plugin, false );
 
 					} else if( instance.getStatus() == InstanceStatus.STARTING ) {
-						for( Instance i : InstanceHelpers.buildHierarchicalList( instance )) {
+						for( Instance i : InstanceHelpers.browseHierarchically( instance )) {
 							if( i.getStatus() == InstanceStatus.STARTING )
 								updateAndNotifyNewStatus( i, InstanceStatus.DEPLOYED_STOPPED );
 						}
@@ -192,6 +203,7 @@ public class Agent implements IMessageProcessor {
 					} else if( instance.getParent() != null ) {
 						// Remove the instance
 						instance.getParent().getChildren().remove( instance );
+						unindexInstances( instance );
 						this.logger.fine( "Child instance " + instancePath + " was removed from the model." );
 
 						// Stop listening messages
@@ -203,6 +215,7 @@ public class Agent implements IMessageProcessor {
 
 					} else {
 						this.rootInstance = null;
+						unindexInstances( instance );
 						this.logger.fine( "Root instance " + instancePath + " was set to null." );
 
 						MsgNotifInstanceRemoved msg = new MsgNotifInstanceRemoved( instance );
@@ -255,10 +268,11 @@ public class Agent implements IMessageProcessor {
 
 				// Update the model
 				this.rootInstance = newInstance;
+				indexInstances( newInstance );
 
 				// Start listening
 				try {
-					for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
+					for( Instance instance : InstanceHelpers.browseHierarchically( this.rootInstance )) {
 						if( instance.getParent() == null )
 							continue;
 
@@ -292,6 +306,8 @@ public class Agent implements IMessageProcessor {
 				this.logger.severe( "No instance matched " + parentInstancePath + " on the agent. Request to add " + newInstance.getName() + " is dropped." );
 			else if( ! InstanceHelpers.tryToInsertChildInstance( null, parentInstance, newInstance ))
 				this.logger.severe( "Instance " + newInstance.getName() + " could not be inserted under " + parentInstancePath + ". Request is dropped." );
+			else
+				indexInstances( newInstance );
 
 			// Start listening
 			try {
@@ -359,16 +375,14 @@ public class Agent implements IMessageProcessor {
 
 	private void processMsgImportRequest( MsgCmdImportRequest msg ) throws IOException {
 
-		// Go through all the instances to see if one
-		// of them owns the required variable prefix
+		// Import requests are published to those that import the prefix,
+		// i.e. to the agents whose instances export variables with this prefix.
+		// So, go through the instances that export variables with the required prefix.
 		String name = msg.getComponentOrFacetName();
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
+		for( Instance instance : findIndexedInstances( this.prefixToExporters, name )) {
 			if( instance.getStatus() != InstanceStatus.DEPLOYED_STARTED )
 				continue;
 
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, name ))
-				continue;
-
 			MsgCmdImportAdd newMsg = new MsgCmdImportAdd( name, instance.getName(), instance.getExports());
 			this.messagingService.publishExportOrImport( name, newMsg, MessagingService.THOSE_THAT_EXPORT );
 		}
@@ -377,10 +391,8 @@ public class Agent implements IMessageProcessor {
 
 	private void processMsgImportRemove( MsgCmdImportRemove msg ) throws Exception {
 
-		// Go through all the instances to see which ones are impacted
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, msg.getComponentOrFacetName()))
-				continue;
+		// Go through the instances that import variables with this prefix
+		for( Instance instance : findIndexedInstances( this.prefixToImporters, msg.getComponentOrFacetName())) {
 
 			// Is there an import to remove?
 			Collection<Import> imports = instance.getImports().get( msg.getComponentOrFacetName());
@@ -416,12 +428,8 @@ public class Agent implements IMessageProcessor {
 				msg.getAddedInstancePath(),
 				msg.getExportedVariables());
 
-		// Go through all the instances to see which ones need an update
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
-
-			// This instance does not depends on it
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, msg.getComponentOrFacetName()))
-				continue;
+		// Go through the instances that import variables with this prefix
+		for( Instance instance : findIndexedInstances( this.prefixToImporters, msg.getComponentOrFacetName())) {
 
 			// If an instance depends on its component, make sure it does not add itself to the imports.
 			// Example: MongoDB may depend on other MongoDB instances.
@@ -448,11 +456,24 @@ public class Agent implements IMessageProcessor {
 
 	private void processMsgInstanceAdd( MsgCmdInstanceAdd msg ) {
 
-		Instance newInstance = msg.getInstanceToAdd();
+		// The graph(s) are sent with the root instance
+		if( msg.getGraphs() != null ) {
+			this.graphs = msg.getGraphs();
+			this.graphs.indexComponents();
+		}
+
+		WireInstance wireInstance = msg.getInstanceToAdd();
 		String parentInstancePath = msg.getParentInstancePath();
 
-		this.logger.fine( "Adding instance " + newInstance.getName() + " under " + parentInstancePath + "." );
+		this.logger.fine( "Adding instance " + wireInstance.getName() + " under " + parentInstancePath + "." );
 		try {
+			// Components are referenced by name
+			Instance newInstance = wireInstance.toInstance( this.graphs );
+			for( Instance instance : InstanceHelpers.buildHierarchicalList( newInstance )) {
+				if( instance.getComponent() == null )
+					throw new IOException( "No component was found for " + InstanceHelpers.computeInstancePath( instance ) + ". The graph(s) may be missing." );
+			}
+
 			addInstance( parentInstancePath, newInstance );
 
 		} catch( Exception e ) {
@@ -531,6 +552,7 @@ public class Agent implements IMessageProcessor {
 		// Children may have to be stopped too.
 		// From a plug-in point of view, we only use the one for the given instance.
 		// Children are supposed to be stopped immediately.
+		// Children are processed before their parent.
 		List<Instance> instancesToStop = InstanceHelpers.buildHierarchicalList( instance );
 		Collections.reverse( instancesToStop );
 
@@ -540,13 +562,13 @@ public class Agent implements IMessageProcessor {
 				continue;
 
 			// Update the statuses
-			updateAndNotifyNewStatus( instance, InstanceStatus.STOPPING );
+			updateAndNotifyNewStatus( i, InstanceStatus.STOPPING );
 
 			// Inform other agents this instance was removed
-			for( String facetOrComponentName : VariableHelpers.findExportedVariablePrefixes( instance )) {
+			for( String facetOrComponentName : VariableHelpers.findExportedVariablePrefixes( i )) {
 				MsgCmdImportRemove msg = new MsgCmdImportRemove(
 						facetOrComponentName,
-						InstanceHelpers.computeInstancePath( instance ));
+						InstanceHelpers.computeInstancePath( i ));
 				this.messagingService.publishExportOrImport( facetOrComponentName, msg, MessagingService.THOSE_THAT_EXPORT );
 			}
 		}
@@ -572,6 +594,7 @@ public class Agent implements IMessageProcessor {
 		// Children may have to be marked as stopped.
 		// From a plug-in point of view, we only use the one for the given instance.
 		// Children are supposed to be stopped immediately.
+		// Children are processed before their parent.
 		List<Instance> instancesToStop = InstanceHelpers.buildHierarchicalList( instance );
 		Collections.reverse( instancesToStop );
 
@@ -581,17 +604,17 @@ public class Agent implements IMessageProcessor {
 				continue;
 
 			// Update the statuses
-			updateAndNotifyNewStatus( instance, InstanceStatus.UNDEPLOYING );
+			updateAndNotifyNewStatus( i, InstanceStatus.UNDEPLOYING );
 
 			// Delete files
-			File dir = InstanceHelpers.findInstanceDirectoryOnAgent( instance, plugin.getPluginName());
+			File dir = InstanceHelpers.findInstanceDirectoryOnAgent( i, plugin.getPluginName());
 			Utils.deleteFilesRecursively( dir );
 
 			// Inform other agents this instance was removed
-			for( String facetOrComponentName : VariableHelpers.findExportedVariablePrefixes( instance )) {
+			for( String facetOrComponentName : VariableHelpers.findExportedVariablePrefixes( i )) {
 				MsgCmdImportRemove msg = new MsgCmdImportRemove(
 						facetOrComponentName,
-						InstanceHelpers.computeInstancePath( instance ));
+						InstanceHelpers.computeInstancePath( i ));
 				this.messagingService.publishExportOrImport( facetOrComponentName, msg, MessagingService.THOSE_THAT_EXPORT );
 			}
 		}
@@ -613,6 +636,68 @@ public class Agent implements IMessageProcessor {
 	}
 
 
+	/**
+	 * Indexes an instance and its children by the prefixes of the variables they import or export.
+	 * @param instance an instance (not null)
+	 */
+	private void indexInstances( Instance instance ) {
+
+		for( Instance i : InstanceHelpers.browseHierarchically( instance )) {
+			if( i.getComponent() == null )
+				continue;
+
+			for( String prefix : i.getComponent().getVariableSchema().getImportedPrefixes())
+				indexInstance( this.prefixToImporters, prefix, i );
+
+			for( String prefix : VariableHelpers.findExportedVariablePrefixes( i ))
+				indexInstance( this.prefixToExporters, prefix, i );
+		}
+	}
+
+
+	/**
+	 * Removes an instance and its children from the indexes.
+	 * @param instance an instance (not null)
+	 */
+	private void unindexInstances( Instance instance ) {
+
+		List<Instance> instances = InstanceHelpers.buildHierarchicalList( instance );
+		unindexInstances( this.prefixToImporters, instances );
+		unindexInstances( this.prefixToExporters, instances );
+	}
+
+
+	private static void indexInstance( Map<String,Collection<Instance>> index, String prefix, Instance instance ) {
+
+		Collection<Instance> instances = index.get( prefix );
+		if( instances == null ) {
+			instances = new LinkedHashSet<Instance> ();
+			index.put( prefix, instances );
+		}
+
+		instances.add( instance );
+	}
+
+
+	private static void unindexInstances( Map<String,Collection<Instance>> index, List<Instance> instances ) {
+
+		for( Iterator<Collection<Instance>> it = index.values().iterator(); it.hasNext(); ) {
+			Collection<Instance> indexedInstances = it.next();
+			for( Instance instance : instances )
+				indexedInstances.remove( instance );
+
+			if( indexedInstances.isEmpty())
+				it.remove();
+		}
+	}
+
+
+	private static Collection<Instance> findIndexedInstances( Map<String,Collection<Instance>> index, String prefix ) {
+		Collection<Instance> result = index.get( prefix );
+		return result == null ? Collections.<Instance>emptyList() : result;
+	}
+
+
 	/**
 	 * Updates the status of an instance based on the imports.
 	 * @param impactedInstance the instance whose imports may have changed
@@ -641,12 +726,11 @@ public class Agent implements IMessageProcessor {
 				plugin.start( impactedInstance );
 				updateAndNotifyNewStatus( impactedInstance, InstanceStatus.DEPLOYED_STARTED );
 
-				// Inform other agents this instance was removed
+				// Inform other agents this instance was removed.
+				// FIXME: maybe we should filter the map to only keep the required variables. For security?
+				Map<String,String> instanceExports = InstanceHelpers.getExportedVariables( impactedInstance );
+				VariableHelpers.updateNetworkVariables( instanceExports, this.agentData.getIpAddress());
 				for( String facetOrComponentName : VariableHelpers.findExportedVariablePrefixes( impactedInstance )) {
-
-					// FIXME: maybe we should filter the map to only keep the required variables. For security?
-					Map<String,String> instanceExports = InstanceHelpers.getExportedVariables( impactedInstance );
-					VariableHelpers.updateNetworkVariables( instanceExports, this.agentData.getIpAddress());
 					MsgCmdImportAdd msg = new MsgCmdImportAdd(
 							facetOrComponentName,
 							InstanceHelpers.computeInstancePath( impactedInstance ),
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.messaging.client.IMessageServerClient;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+
+/**
+ * An outbox that merges the changes of a same instance before notifying the DM.
+ * <p>
+ * Starting an instance may send several {@link MsgNotifInstanceChanged} within a few milliseconds
+ * (intermediate status, final status, import updates...). Only the last state matters to the DM.
+ * So, these notifications are kept for a short window. A notification replaces the last pending one
+ * when both are about the same instance. Otherwise, it is appended. Notifications about different
+ * instances are thus never reordered. When the window ends, pending notifications are published.
+ * </p>
+ * <p>
+ * Any other message first flushes the pending notifications. Messages of different types are thus
+ * never reordered.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class CoalescingOutbox {
+
+	/**
+	 * The system property that defines the coalescing window, in milliseconds.
+	 * <p>
+	 * 0 or a negative value disables coalescing.
+	 * </p>
+	 */
+	public static final String WINDOW_PROPERTY = "roboconf.agent.coalescing.window";
+
+	/**
+	 * The default coalescing window, in milliseconds.
+	 */
+	public static final long DEFAULT_WINDOW = 200;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final String agentName;
+	private final IMessageServerClient client;
+	private final long window;
+	private final Timer timer;
+
+	private final List<MsgNotifInstanceChanged> pendingChanges = new ArrayList<MsgNotifInstanceChanged> ();
+	private String pendingRoutingKey;
+	private TimerTask flushTask;
+
+
+	/**
+	 * Constructor.
+	 * @param agentName the agent's name (used in logs)
+	 * @param client the messaging client
+	 * @param window the coalescing window, in milliseconds (0 or negative to disable coalescing)
+	 */
+	public CoalescingOutbox( String agentName, IMessageServerClient client, long window ) {
+		this.agentName = agentName;
+		this.client = client;
+		this.window = window;
+		this.timer = window > 0 ? new Timer( "Roboconf's Coalescing Timer @ Agent", true ) : null;
+	}
+
+
+	/**
+	 * @return the coalescing window to use, as defined by the {@link #WINDOW_PROPERTY} system property
+	 */
+	public static long findWindow() {
+
+		long result = DEFAULT_WINDOW;
+		try {
+			String value = System.getProperty( WINDOW_PROPERTY );
+			if( value != null )
+				result = Long.parseLong( value.trim());
+
+		} catch( NumberFormatException e ) {
+			Logger.getLogger( CoalescingOutbox.class.getName()).warning( "Invalid coalescing window. The default one will be used." );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Publishes a message.
+	 * <p>
+	 * Notifications about instance changes sent to the DM are delayed and merged.
+	 * Other messages are published immediately, after the pending notifications.
+	 * </p>
+	 *
+	 * @param toDm true to send the message to the DM, false to send it to agents
+	 * @param routingKey the routing key
+	 * @param msg the message to publish
+	 * @throws IOException if something went wrong
+	 */
+	public synchronized void publish( boolean toDm, String routingKey, Message msg ) throws IOException {
+
+		if( this.timer != null
+				&& toDm
+				&& msg instanceof MsgNotifInstanceChanged ) {
+
+			// Pending notifications all go to the DM
+			if( this.pendingRoutingKey != null
+					&& ! this.pendingRoutingKey.equals( routingKey ))
+				flush();
+
+			// Only consecutive changes of a same instance are merged
+			MsgNotifInstanceChanged change = (MsgNotifInstanceChanged) msg;
+			int last = this.pendingChanges.size() - 1;
+			if( last >= 0
+					&& Utils.areEqual( this.pendingChanges.get( last ).getInstancePath(), change.getInstancePath()))
+				this.pendingChanges.set( last, snapshot( change ));
+			else
+				this.pendingChanges.add( snapshot( change ));
+
+			this.pendingRoutingKey = routingKey;
+			scheduleFlush();
+
+		} else {
+			flush();
+			send( toDm, routingKey, msg );
+		}
+	}
+
+
+	/**
+	 * Publishes the pending notifications.
+	 * @throws IOException if something went wrong
+	 */
+	public synchronized void flush() throws IOException {
+
+		if( this.flushTask != null ) {
+			this.flushTask.cancel();
+			this.flushTask = null;
+		}
+
+		if( this.pendingChanges.isEmpty())
+			return;
+
+		// Pending notifications are removed, even if one of them could not be published
+		Collection<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged>( this.pendingChanges );
+		String routingKey = this.pendingRoutingKey;
+		this.pendingChanges.clear();
+		this.pendingRoutingKey = null;
+
+		for( MsgNotifInstanceChanged change : changes )
+			send( true, routingKey, change );
+	}
+
+
+	/**
+	 * Publishes the pending notifications and stops the timer.
+	 */
+	public synchronized void close() {
+
+		try {
+			flush();
+
+		} catch( IOException e ) {
+			this.logger.severe( "Pending notifications could not be sent. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+
+		if( this.timer != null )
+			this.timer.cancel();
+	}
+
+
+	private void send( boolean toDm, String routingKey, Message msg ) throws IOException {
+		this.logger.info( this.agentName + " is publishing " + msg.getClass().getSimpleName() + " to " + routingKey );
+		this.client.publish( toDm, routingKey, msg );
+	}
+
+
+	private void scheduleFlush() {
+
+		if( this.flushTask != null )
+			return;
+
+		this.flushTask = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					flush();
+
+				} catch( IOException e ) {
+					CoalescingOutbox.this.logger.severe( "Instance changes could not be sent to the DM. " + e.getMessage());
+					CoalescingOutbox.this.logger.finest( Utils.writeException( e ));
+				}
+			}
+		};
+
+		this.timer.schedule( this.flushTask, this.window );
+	}
+
+
+	/**
+	 * Copies a notification.
+	 * <p>
+	 * Notifications built from an instance share its imports. Since the notification
+	 * is published later, the imports must be copied now.
+	 * </p>
+	 *
+	 * @param change a notification
+	 * @return a new notification, with its own imports
+	 */
+	private static MsgNotifInstanceChanged snapshot( MsgNotifInstanceChanged change ) {
+
+		Map<String,Collection<Import>> imports = null;
+		if( change.getNewImports() != null ) {
+			imports = new HashMap<String,Collection<Import>> ();
+			for( Map.Entry<String,Collection<Import>> entry : change.getNewImports().entrySet()) {
+				Collection<Import> values = entry.getValue() == null ? null : new ArrayList<Import>( entry.getValue());
+				imports.put( entry.getKey(), values );
+			}
+		}
+
+		return new MsgNotifInstanceChanged( change.getInstancePath(), imports, change.getNewStatus());
+	}
+}
@@ -48,6 +48,7 @@ public final class MessagingService {
 	private final Logger logger = Logger.getLogger( getClass().getName());
 
 	private IMessageServerClient client;
+	private CoalescingOutbox outbox;
 	private AgentData agentData;
 	private Agent agent;
 	private Timer heartBeatTimer;
@@ -79,6 +80,7 @@ public final class MessagingService {
 		this.client.setSourceName( agentData.getRootInstanceName());
 		this.client.openConnection( this.agent );
 		this.client.bind( MessagingUtils.buildRoutingKeyToAgent( agentData.getRootInstanceName()));
+		this.outbox = new CoalescingOutbox( agentName, this.client, CoalescingOutbox.findWindow());
 
 		// Indicate this machine is up
 		MsgNotifMachineUp machineIsUp = new MsgNotifMachineUp( agentData.getRootInstanceName(), agentData.getIpAddress());
@@ -118,16 +120,38 @@ public final class MessagingService {
 	}
 
 
+	/**
+	 * Uses a messaging client that is already configured, without connecting to the message server.
+	 * <p>
+	 * Only used in tests. Messages are not coalesced, they are published immediately.
+	 * </p>
+	 *
+	 * @param agentData the agent's data
+	 * @param agent the agent
+	 * @param client the messaging client
+	 */
+	void initializeWithClient( AgentData agentData, Agent agent, IMessageServerClient client ) {
+		this.agentData = agentData;
+		this.agent = agent;
+		this.client = client;
+		this.outbox = new CoalescingOutbox( agent.getAgentName(), client, 0 );
+	}
+
+
 	/**
 	 * Publishes a message.
+	 * <p>
+	 * Notifications about instance changes are not sent immediately.
+	 * Successive changes of a same instance are merged (see {@link CoalescingOutbox}).
+	 * </p>
+	 *
 	 * @param toDm true to send the message to the DM, false to send it to agents
 	 * @param routingKey the routing key
 	 * @param msg the message to publish
 	 * @throws IOException if something went wrong
 	 */
 	public void publish( boolean toDm, String routingKey, Message msg ) throws IOException {
-		this.client.publish( toDm, routingKey, msg );
-		this.logger.info( this.agent.getAgentName() + " is publishing " + msg.getClass().getSimpleName() + " to " + routingKey );
+		this.outbox.publish( toDm, routingKey, msg );
 	}
 
 
@@ -150,6 +174,9 @@ public final class MessagingService {
 	public void agentIsTerminating() {
 
 		stopHeartBeatTimer();
+		if( this.outbox != null )
+			this.outbox.close();
+
 		try {
 			MsgNotifMachineDown machineIsDown = new MsgNotifMachineDown( this.agentData.getRootInstanceName());
 			MessagingService.this.client.publish( true, MessagingUtils.buildRoutingKeyToDm(), machineIsDown );
@@ -124,7 +124,7 @@ public class PluginManager {
 		PluginManager pluginManager = new PluginManager();
 		pluginManager.setExecutionLevel( executionLevel );
 
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( instanceToAdd )) {
+		for( Instance instance : InstanceHelpers.browseHierarchically( instanceToAdd )) {
 
 			PluginInterface plugin = pluginManager.findPlugin( instance, logger );
 			if( plugin == null )
@@ -0,0 +1,314 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.agent.AgentData;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class AgentTest {
+
+	private TestMessageServerClient client;
+	private Agent agent;
+	private Instance vm, app, db;
+
+
+	@Before
+	public void createAgentAndModel() {
+
+		AgentData agentData = new AgentData();
+		agentData.setApplicationName( "test" );
+		agentData.setRootInstanceName( "vm" );
+		agentData.setIpAddress( "127.0.0.1" );
+
+		this.client = new TestMessageServerClient();
+		this.agent = new Agent( "test agent", new PluginManager());
+		this.agent.setAgentData( agentData );
+
+		MessagingService messagingService = new MessagingService();
+		messagingService.initializeWithClient( agentData, this.agent, this.client );
+		this.agent.setMessagingService( messagingService );
+
+		// The logger plug-in does nothing but logging
+		Component vmComponent = new Component( "vm" );
+		vmComponent.setInstallerName( "logger" );
+
+		Component appComponent = new Component( "app" );
+		appComponent.setInstallerName( "logger" );
+		appComponent.getImportedVariables().put( "db.port", false );
+		appComponent.getExportedVariables().put( "app.port", "8080" );
+
+		Component dbComponent = new Component( "db" );
+		dbComponent.setInstallerName( "logger" );
+		dbComponent.getExportedVariables().put( "db.port", "3306" );
+
+		ComponentHelpers.insertChild( vmComponent, appComponent );
+		ComponentHelpers.insertChild( vmComponent, dbComponent );
+
+		this.vm = new Instance( "vm" );
+		this.vm.setComponent( vmComponent );
+
+		this.app = new Instance( "app" );
+		this.app.setComponent( appComponent );
+		InstanceHelpers.insertChild( this.vm, this.app );
+
+		this.db = new Instance( "db" );
+		this.db.setComponent( dbComponent );
+	}
+
+
+	@Test
+	public void testIndexIsUpdatedWithTheModel() throws Exception {
+
+		// Add the root instance and its child
+		this.agent.addInstance( null, this.vm );
+		Assert.assertTrue( this.client.bindings.contains( MessagingService.THOSE_THAT_EXPORT + "db" ));
+		Assert.assertTrue( this.client.bindings.contains( MessagingService.THOSE_THAT_IMPORT + "app" ));
+
+		this.agent.processMessage( new MsgCmdImportAdd( "db", "/vm2/db", new HashMap<String,String> ()));
+		Assert.assertEquals( 1, this.app.getImports().get( "db" ).size());
+
+		// Add a child instance
+		this.agent.addInstance( "/vm", this.db );
+		Assert.assertTrue( this.vm.getChildren().contains( this.db ));
+		Assert.assertTrue( this.client.bindings.contains( MessagingService.THOSE_THAT_IMPORT + "db" ));
+
+		// Imports only go to the instances that import the prefix
+		this.agent.processMessage( new MsgCmdImportAdd( "db", "/vm3/db", new HashMap<String,String> ()));
+		Assert.assertEquals( 2, this.app.getImports().get( "db" ).size());
+		Assert.assertNull( this.db.getImports().get( "db" ));
+
+		// Remove the importing instance
+		this.agent.processMessage( new MsgCmdInstanceRemove( "/vm/app" ));
+		Assert.assertFalse( this.vm.getChildren().contains( this.app ));
+		Assert.assertFalse( this.client.bindings.contains( MessagingService.THOSE_THAT_EXPORT + "db" ));
+		Assert.assertFalse( this.client.bindings.contains( MessagingService.THOSE_THAT_IMPORT + "app" ));
+
+		this.agent.processMessage( new MsgCmdImportAdd( "db", "/vm4/db", new HashMap<String,String> ()));
+		Assert.assertEquals( 2, this.app.getImports().get( "db" ).size());
+
+		// Add it again: it is indexed again
+		this.agent.addInstance( "/vm", this.app );
+		Assert.assertTrue( this.vm.getChildren().contains( this.app ));
+		Assert.assertTrue( this.client.bindings.contains( MessagingService.THOSE_THAT_EXPORT + "db" ));
+		this.agent.processMessage( new MsgCmdImportAdd( "db", "/vm5/db", new HashMap<String,String> ()));
+		Assert.assertEquals( 3, this.app.getImports().get( "db" ).size());
+
+		// The exporting instance answers import requests
+		this.db.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdImportRequest( "db" ));
+		Assert.assertEquals( 1, this.client.findMessages( MsgCmdImportAdd.class ).size());
+		this.db.setStatus( InstanceStatus.NOT_DEPLOYED );
+
+		// Remove the root instance
+		this.agent.processMessage( new MsgCmdInstanceRemove( "/vm" ));
+		Assert.assertNull( this.agent.getRootInstance());
+
+		this.agent.processMessage( new MsgCmdImportAdd( "db", "/vm6/db", new HashMap<String,String> ()));
+		Assert.assertEquals( 3, this.app.getImports().get( "db" ).size());
+
+		this.db.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdImportRequest( "db" ));
+		Assert.assertEquals( 0, this.client.findMessages( MsgCmdImportAdd.class ).size());
+	}
+
+
+	@Test
+	public void testImportRequestsAreAnsweredByExporters() throws Exception {
+
+		InstanceHelpers.insertChild( this.vm, this.db );
+		this.agent.addInstance( null, this.vm );
+		this.app.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.db.setStatus( InstanceStatus.DEPLOYED_STARTED );
+
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdImportRequest( "db" ));
+
+		List<MsgCmdImportAdd> answers = this.client.findMessages( MsgCmdImportAdd.class );
+		Assert.assertEquals( 1, answers.size());
+		Assert.assertEquals( "db", answers.get( 0 ).getComponentOrFacetName());
+		Assert.assertEquals( "db", answers.get( 0 ).getAddedInstancePath());
+		Assert.assertEquals( MessagingService.THOSE_THAT_EXPORT + "db", this.client.routingKeys.get( 0 ));
+
+		// Instances that are not started do not answer
+		this.db.setStatus( InstanceStatus.DEPLOYED_STOPPED );
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdImportRequest( "db" ));
+		Assert.assertEquals( 0, this.client.findMessages( MsgCmdImportAdd.class ).size());
+	}
+
+
+	@Test
+	public void testStopUpdatesEveryStartedChild() throws Exception {
+
+		this.agent.addInstance( null, this.vm );
+		this.vm.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.setStatus( InstanceStatus.DEPLOYED_STARTED );
+
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdInstanceStop( "/vm" ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.vm.getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getStatus());
+
+		// Every started instance went through the STOPPING status
+		List<String> stoppingPaths = new ArrayList<String> ();
+		for( MsgNotifInstanceChanged msg : this.client.findMessages( MsgNotifInstanceChanged.class )) {
+			if( msg.getNewStatus() == InstanceStatus.STOPPING )
+				stoppingPaths.add( msg.getInstancePath());
+		}
+
+		Assert.assertEquals( Arrays.asList( "/vm/app", "/vm" ), stoppingPaths );
+
+		// Other agents are told the child's exports are not available anymore
+		List<MsgCmdImportRemove> removals = this.client.findMessages( MsgCmdImportRemove.class );
+		Assert.assertEquals( 1, removals.size());
+		Assert.assertEquals( "app", removals.get( 0 ).getComponentOrFacetName());
+		Assert.assertEquals( "/vm/app", removals.get( 0 ).getRemovedInstancePath());
+	}
+
+
+	@Test
+	public void testUndeployProcessesEveryDeployedChild() throws Exception {
+
+		this.agent.addInstance( null, this.vm );
+		this.vm.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.setStatus( InstanceStatus.DEPLOYED_STOPPED );
+
+		File appDirectory = InstanceHelpers.findInstanceDirectoryOnAgent( this.app, "logger" );
+		Assert.assertTrue( appDirectory.isDirectory() || appDirectory.mkdirs());
+		try {
+			this.client.clearMessages();
+			this.agent.processMessage( new MsgCmdInstanceUndeploy( "/vm" ));
+			Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.vm.getStatus());
+			Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getStatus());
+
+			// The child's files were deleted
+			Assert.assertFalse( appDirectory.exists());
+
+			// Every deployed instance went through the UNDEPLOYING status
+			List<String> undeployingPaths = new ArrayList<String> ();
+			for( MsgNotifInstanceChanged msg : this.client.findMessages( MsgNotifInstanceChanged.class )) {
+				if( msg.getNewStatus() == InstanceStatus.UNDEPLOYING )
+					undeployingPaths.add( msg.getInstancePath());
+			}
+
+			Assert.assertEquals( Arrays.asList( "/vm/app", "/vm" ), undeployingPaths );
+
+			// Other agents are told the child's exports are not available anymore
+			List<MsgCmdImportRemove> removals = this.client.findMessages( MsgCmdImportRemove.class );
+			Assert.assertEquals( 1, removals.size());
+			Assert.assertEquals( "app", removals.get( 0 ).getComponentOrFacetName());
+			Assert.assertEquals( "/vm/app", removals.get( 0 ).getRemovedInstancePath());
+
+			// The machine can be deleted
+			Assert.assertEquals( 1, this.client.findMessages( MsgNotifMachineReadyToBeDeleted.class ).size());
+
+		} finally {
+			Utils.deleteFilesRecursively( appDirectory );
+		}
+	}
+
+
+	@Test
+	public void testChildrenAreStoppedAndUndeployedFirst() throws Exception {
+
+		Component warComponent = new Component( "war" );
+		warComponent.setInstallerName( "logger" );
+		warComponent.getExportedVariables().put( "war.url", "/hello" );
+		ComponentHelpers.insertChild( this.app.getComponent(), warComponent );
+
+		Instance war = new Instance( "war" );
+		war.setComponent( warComponent );
+		InstanceHelpers.insertChild( this.app, war );
+
+		this.agent.addInstance( null, this.vm );
+		this.vm.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		war.setStatus( InstanceStatus.DEPLOYED_STARTED );
+
+		// Stop
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdInstanceStop( "/vm" ));
+		Assert.assertEquals(
+				Arrays.asList(
+						"STOPPING /vm/app/war", "import-remove /vm/app/war",
+						"STOPPING /vm/app", "import-remove /vm/app",
+						"STOPPING /vm" ),
+				findStopEvents( InstanceStatus.STOPPING ));
+
+		// Undeploy
+		this.client.clearMessages();
+		this.agent.processMessage( new MsgCmdInstanceUndeploy( "/vm" ));
+		Assert.assertEquals(
+				Arrays.asList(
+						"UNDEPLOYING /vm/app/war", "import-remove /vm/app/war",
+						"UNDEPLOYING /vm/app", "import-remove /vm/app",
+						"UNDEPLOYING /vm" ),
+				findStopEvents( InstanceStatus.UNDEPLOYING ));
+	}
+
+
+	/**
+	 * Lists, in order, the notifications about a given status and the import removals.
+	 * @param status a status
+	 * @return a non-null list
+	 */
+	private List<String> findStopEvents( InstanceStatus status ) {
+
+		List<String> result = new ArrayList<String> ();
+		synchronized( this.client.messages ) {
+			for( Message message : this.client.messages ) {
+				if( message instanceof MsgCmdImportRemove )
+					result.add( "import-remove " + ((MsgCmdImportRemove) message).getRemovedInstancePath());
+
+				else if( message instanceof MsgNotifInstanceChanged
+						&& ((MsgNotifInstanceChanged) message).getNewStatus() == status )
+					result.add( status + " " + ((MsgNotifInstanceChanged) message).getInstancePath());
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class CoalescingOutboxTest {
+
+	private static final long LONG_WINDOW = 60000;
+	private static final String DM = "dm";
+
+
+	@Test
+	public void testConsecutiveChangesAreMerged() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, LONG_WINDOW );
+		try {
+			Map<String,Collection<Import>> imports = new HashMap<String,Collection<Import>> ();
+			imports.put( "MySQL", new ArrayList<Import> ());
+
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", imports, InstanceStatus.DEPLOYED_STARTED ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server/app", null, InstanceStatus.DEPLOYING ));
+
+			// The outbox must not share the imports of the message
+			imports.get( "MySQL" ).add( new Import( "/vm2/mysql" ));
+			Assert.assertEquals( 0, client.messages.size());
+
+			outbox.flush();
+			Assert.assertEquals( 2, client.messages.size());
+			Assert.assertEquals( DM, client.routingKeys.get( 0 ));
+			Assert.assertEquals( DM, client.routingKeys.get( 1 ));
+
+			MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) client.messages.get( 0 );
+			Assert.assertEquals( "/vm/server", msg.getInstancePath());
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, msg.getNewStatus());
+			Assert.assertNotNull( msg.getNewImports());
+			Assert.assertEquals( 0, msg.getNewImports().get( "MySQL" ).size());
+
+			msg = (MsgNotifInstanceChanged) client.messages.get( 1 );
+			Assert.assertEquals( "/vm/server/app", msg.getInstancePath());
+			Assert.assertEquals( InstanceStatus.DEPLOYING, msg.getNewStatus());
+			Assert.assertNull( msg.getNewImports());
+
+			// Nothing is pending anymore
+			outbox.flush();
+			Assert.assertEquals( 2, client.messages.size());
+
+		} finally {
+			outbox.close();
+		}
+	}
+
+
+	@Test
+	public void testInterleavedChangesAreNotReordered() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, LONG_WINDOW );
+		try {
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/a", null, InstanceStatus.STARTING ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/b", null, InstanceStatus.STARTING ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/a", null, InstanceStatus.DEPLOYED_STARTED ));
+			Assert.assertEquals( 0, client.messages.size());
+
+			outbox.flush();
+			Assert.assertEquals( 3, client.messages.size());
+
+			MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) client.messages.get( 0 );
+			Assert.assertEquals( "/vm/a", msg.getInstancePath());
+			Assert.assertEquals( InstanceStatus.STARTING, msg.getNewStatus());
+
+			msg = (MsgNotifInstanceChanged) client.messages.get( 1 );
+			Assert.assertEquals( "/vm/b", msg.getInstancePath());
+			Assert.assertEquals( InstanceStatus.STARTING, msg.getNewStatus());
+
+			msg = (MsgNotifInstanceChanged) client.messages.get( 2 );
+			Assert.assertEquals( "/vm/a", msg.getInstancePath());
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, msg.getNewStatus());
+
+		} finally {
+			outbox.close();
+		}
+	}
+
+
+	@Test
+	public void testOtherMessagesFlushFirst() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, LONG_WINDOW );
+		try {
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING ));
+			outbox.publish( true, DM, new MsgNotifHeartbeat( "vm" ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED ));
+			outbox.publish( false, "agents", new MsgCmdImportRequest( "MySQL" ));
+
+			Assert.assertEquals( 4, client.messages.size());
+			Assert.assertEquals( InstanceStatus.STARTING, ((MsgNotifInstanceChanged) client.messages.get( 0 )).getNewStatus());
+			Assert.assertEquals( MsgNotifHeartbeat.class, client.messages.get( 1 ).getClass());
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ((MsgNotifInstanceChanged) client.messages.get( 2 )).getNewStatus());
+			Assert.assertEquals( MsgCmdImportRequest.class, client.messages.get( 3 ).getClass());
+
+			Assert.assertTrue( client.toDm.get( 0 ));
+			Assert.assertTrue( client.toDm.get( 2 ));
+			Assert.assertFalse( client.toDm.get( 3 ));
+			Assert.assertEquals( "agents", client.routingKeys.get( 3 ));
+
+		} finally {
+			outbox.close();
+		}
+	}
+
+
+	@Test
+	public void testRoutingKeyChangeFlushes() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, LONG_WINDOW );
+		try {
+			outbox.publish( true, "dm-1", new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING ));
+			outbox.publish( true, "dm-2", new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED ));
+
+			Assert.assertEquals( 1, client.messages.size());
+			Assert.assertEquals( "dm-1", client.routingKeys.get( 0 ));
+			Assert.assertEquals( InstanceStatus.STARTING, ((MsgNotifInstanceChanged) client.messages.get( 0 )).getNewStatus());
+
+			outbox.flush();
+			Assert.assertEquals( 2, client.messages.size());
+			Assert.assertEquals( "dm-2", client.routingKeys.get( 1 ));
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ((MsgNotifInstanceChanged) client.messages.get( 1 )).getNewStatus());
+
+		} finally {
+			outbox.close();
+		}
+	}
+
+
+	@Test
+	public void testNoWindowMeansNoCoalescing() throws Exception {
+
+		for( long window : new long[] { 0, -1 }) {
+			TestMessageServerClient client = new TestMessageServerClient();
+			CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, window );
+			try {
+				MsgNotifInstanceChanged msg1 = new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING );
+				MsgNotifInstanceChanged msg2 = new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED );
+
+				outbox.publish( true, DM, msg1 );
+				Assert.assertEquals( 1, client.messages.size());
+				outbox.publish( true, DM, msg2 );
+				Assert.assertEquals( 2, client.messages.size());
+
+				// Messages are passed through, they are not copied
+				Assert.assertSame( msg1, client.messages.get( 0 ));
+				Assert.assertSame( msg2, client.messages.get( 1 ));
+
+			} finally {
+				outbox.close();
+			}
+		}
+	}
+
+
+	@Test
+	public void testCloseFlushes() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, LONG_WINDOW );
+		outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING ));
+		outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED ));
+		Assert.assertEquals( 0, client.messages.size());
+
+		outbox.close();
+		Assert.assertEquals( 1, client.messages.size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ((MsgNotifInstanceChanged) client.messages.get( 0 )).getNewStatus());
+	}
+
+
+	@Test
+	public void testWindowEndFlushes() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		CoalescingOutbox outbox = new CoalescingOutbox( "agent", client, 50 );
+		try {
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING ));
+			outbox.publish( true, DM, new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED ));
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while( client.messages.isEmpty() && System.currentTimeMillis() < deadline )
+				Thread.sleep( 10 );
+
+			Assert.assertEquals( 1, client.messages.size());
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ((MsgNotifInstanceChanged) client.messages.get( 0 )).getNewStatus());
+
+		} finally {
+			outbox.close();
+		}
+	}
+}
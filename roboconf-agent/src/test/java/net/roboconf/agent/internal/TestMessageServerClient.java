@@ -0,0 +1,131 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.client.IMessageServerClient;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A messaging client that records publications and bindings.
+ * @author Vincent Zurczak - Linagora
+ */
+public class TestMessageServerClient implements IMessageServerClient {
+
+	// Timers may publish too
+	public final List<Boolean> toDm = Collections.synchronizedList( new ArrayList<Boolean> ());
+	public final List<String> routingKeys = Collections.synchronizedList( new ArrayList<String> ());
+	public final List<Message> messages = Collections.synchronizedList( new ArrayList<Message> ());
+	public final List<String> bindings = Collections.synchronizedList( new ArrayList<String> ());
+
+
+	@Override
+	public void setMessageServerIp( String messageServerIp ) {
+		// nothing
+	}
+
+
+	@Override
+	public void setApplicationName( String applicationName ) {
+		// nothing
+	}
+
+
+	@Override
+	public void setSourceName( String sourceName ) {
+		// nothing
+	}
+
+
+	@Override
+	public void openConnection( IMessageProcessor messageProcessor ) throws IOException {
+		// nothing
+	}
+
+
+	@Override
+	public void closeConnection() throws IOException {
+		// nothing
+	}
+
+
+	@Override
+	public void cleanAllMessagingServerArtifacts() throws IOException {
+		// nothing
+	}
+
+
+	@Override
+	public void publish( boolean toDm, String routingKey, Message message ) throws IOException {
+		this.toDm.add( toDm );
+		this.routingKeys.add( routingKey );
+		this.messages.add( message );
+	}
+
+
+	@Override
+	public Future<Void> publishAsync( boolean toDm, String routingKey, Message message ) throws IOException {
+		throw new IOException( "Not supported in tests." );
+	}
+
+
+	@Override
+	public void bind( String routingKey ) throws IOException {
+		this.bindings.add( routingKey );
+	}
+
+
+	@Override
+	public void unbind( String routingKey ) throws IOException {
+		this.bindings.remove( routingKey );
+	}
+
+
+	/**
+	 * Forgets the published messages.
+	 */
+	public void clearMessages() {
+		this.toDm.clear();
+		this.routingKeys.clear();
+		this.messages.clear();
+	}
+
+
+	/**
+	 * Finds the published messages of a given type.
+	 * @param clazz the message class
+	 * @return a non-null list
+	 */
+	public <T extends Message> List<T> findMessages( Class<T> clazz ) {
+
+		List<T> result = new ArrayList<T> ();
+		synchronized( this.messages ) {
+			for( Message message : this.messages ) {
+				if( clazz.isInstance( message ))
+					result.add( clazz.cast( message ));
+			}
+		}
+
+		return result;
+	}
+}
@@ -100,4 +100,9 @@ public interface Constants {
 	 * The <strong>application.properties</strong> file name.
 	 */
 	String PROJECT_FILE_DESCRIPTOR = "application.properties";
+
+	/**
+	 * The name of the file that stores the compiled model of an application.
+	 */
+	String PROJECT_FILE_COMPILED_MODEL = ".application.model";
 }
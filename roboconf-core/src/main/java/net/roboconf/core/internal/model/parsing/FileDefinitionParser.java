@@ -23,13 +23,17 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 import net.roboconf.core.ErrorCode;
+import net.roboconf.core.internal.utils.StringPool;
 import net.roboconf.core.internal.utils.UriUtils;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.ModelError;
@@ -45,6 +49,7 @@ import net.roboconf.core.model.parsing.BlockInstanceOf;
 import net.roboconf.core.model.parsing.BlockProperty;
 import net.roboconf.core.model.parsing.ParsingConstants;
 import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.parsing.SourceRegion;
 
 /**
  * A parser for relation files.
@@ -61,10 +66,18 @@ public class FileDefinitionParser {
 	private static final char SEMI_COLON = ';';
 
 	private final FileDefinition definitionFile;
+	private final Set<Integer> consumedInstructionTypes = new HashSet<Integer> ();
+	private IBlockListener blockListener;
+	private int notifiedBlocksCount;
 	private boolean ignoreComments = true;
 	private boolean lastLineEndedWithLineBreak = false;
 	private int currentLineNumber;
 
+	// Source regions of the top-level blocks (only recorded when comments are kept)
+	private final Map<AbstractBlock,long[]> blockOffsets;
+	private int recordedBlocksCount;
+	private long currentOffset, lastLineStart, lastLineEnd, previousLineEnd, currentBlockStart;
+
 
 	/**
 	 * Constructor.
@@ -75,6 +88,7 @@ public class FileDefinitionParser {
 		this.ignoreComments = ignoreComments;
 		this.currentLineNumber = 1;
 		this.definitionFile = new FileDefinition( relationsFileUri );
+		this.blockOffsets = ignoreComments ? null : new IdentityHashMap<AbstractBlock,long[]> ();
 	}
 
 
@@ -99,6 +113,16 @@ public class FileDefinitionParser {
 	}
 
 
+	/**
+	 * Sets a listener to process top-level blocks while they are read.
+	 * @param blockListener a listener (can be null)
+	 * @see IBlockListener
+	 */
+	public void setBlockListener( IBlockListener blockListener ) {
+		this.blockListener = blockListener;
+	}
+
+
 	/**
 	 * Reads a definition file.
 	 * @return an instance of {@link FileDefinition} (never null)
@@ -113,6 +137,7 @@ public class FileDefinitionParser {
 		try {
 			fillIn();
 			mergeContiguousRegions( this.definitionFile.getBlocks());
+			buildSourceRegions();
 
 		} catch( IOException e ) {
 			ModelError error = new ModelError( ErrorCode.P_IO_ERROR, this.currentLineNumber );
@@ -122,18 +147,15 @@ public class FileDefinitionParser {
 			this.definitionFile.getParsingErrors().add( error );
 		}
 
-		// Determine file type
-		boolean hasFacets = false, hasComponents = false, hasInstances = false, hasImports = false;
-		for( AbstractBlock block : this.definitionFile.getBlocks()) {
-			if( block.getInstructionType() == AbstractBlock.COMPONENT )
-				hasComponents = true;
-			else if( block.getInstructionType() == AbstractBlock.FACET )
-				hasFacets = true;
-			else if( block.getInstructionType() == AbstractBlock.INSTANCEOF )
-				hasInstances = true;
-			else if( block.getInstructionType() == AbstractBlock.IMPORT )
-				hasImports = true;
-		}
+		// Determine file type (consumed blocks count too)
+		Set<Integer> instructionTypes = new HashSet<Integer>( this.consumedInstructionTypes );
+		for( AbstractBlock block : this.definitionFile.getBlocks())
+			instructionTypes.add( block.getInstructionType());
+
+		boolean hasFacets = instructionTypes.contains( AbstractBlock.FACET );
+		boolean hasComponents = instructionTypes.contains( AbstractBlock.COMPONENT );
+		boolean hasInstances = instructionTypes.contains( AbstractBlock.INSTANCEOF );
+		boolean hasImports = instructionTypes.contains( AbstractBlock.IMPORT );
 
 		if( hasInstances ) {
 			if( ! hasFacets && ! hasComponents )
@@ -162,12 +184,11 @@ public class FileDefinitionParser {
 	int recognizeComponent( String line, BufferedReader br ) throws IOException {
 
 		int result = P_CODE_NO;
-		String alteredLine = line.trim().toLowerCase();
-		if( ! alteredLine.isEmpty()
-				&& ! alteredLine.startsWith( String.valueOf( ParsingConstants.COMMENT_DELIMITER ))
-				&& ! alteredLine.toLowerCase().startsWith( ParsingConstants.KEYWORD_FACET )
-				&& ! alteredLine.toLowerCase().startsWith( ParsingConstants.KEYWORD_INSTANCE_OF )
-				&& ! alteredLine.toLowerCase().startsWith( ParsingConstants.KEYWORD_IMPORT ))
+		if( ! isBlank( line )
+				&& ! startsWithIgnoreCase( line, ParsingConstants.COMMENT_DELIMITER )
+				&& ! startsWithIgnoreCase( line, ParsingConstants.KEYWORD_FACET )
+				&& ! startsWithIgnoreCase( line, ParsingConstants.KEYWORD_INSTANCE_OF )
+				&& ! startsWithIgnoreCase( line, ParsingConstants.KEYWORD_IMPORT ))
 			result = recognizePropertiesHolder( line, br, new BlockComponent( this.definitionFile ));
 
 		return result;
@@ -181,8 +202,8 @@ public class FileDefinitionParser {
 	int recognizeFacet( String line, BufferedReader br ) throws IOException {
 
 		int result = P_CODE_NO;
-		if( line.trim().toLowerCase().startsWith( ParsingConstants.KEYWORD_FACET )) {
-			String newLine = line.replaceAll( "\\s*" + Pattern.quote( ParsingConstants.KEYWORD_FACET ), "" );
+		if( startsWithIgnoreCase( line, ParsingConstants.KEYWORD_FACET )) {
+			String newLine = removeKeyword( line, ParsingConstants.KEYWORD_FACET, false );
 			result = recognizePropertiesHolder( newLine, br, new BlockFacet( this.definitionFile ));
 		}
 
@@ -198,8 +219,8 @@ public class FileDefinitionParser {
 	int recognizeInstanceOf( String line, BufferedReader br, AbstractBlockHolder holderInstance ) throws IOException {
 
 		int result = P_CODE_NO;
-		if( line.trim().toLowerCase().startsWith( ParsingConstants.KEYWORD_INSTANCE_OF )) {
-			String newLine = line.replaceAll( "\\s*" + Pattern.quote( ParsingConstants.KEYWORD_INSTANCE_OF ), "" );
+		if( startsWithIgnoreCase( line, ParsingConstants.KEYWORD_INSTANCE_OF )) {
+			String newLine = removeKeyword( line, ParsingConstants.KEYWORD_INSTANCE_OF, false );
 			BlockInstanceOf newInstance = new BlockInstanceOf( this.definitionFile );
 			result = recognizePropertiesHolder( newLine, br, newInstance );
 
@@ -223,7 +244,7 @@ public class FileDefinitionParser {
 	int recognizeComment( String line, Collection<AbstractBlock> blocks ) {
 
 		int result = P_CODE_NO;
-		if( line.trim().startsWith( ParsingConstants.COMMENT_DELIMITER )) {
+		if( startsWithIgnoreCase( line, ParsingConstants.COMMENT_DELIMITER )) {
 			result = P_CODE_YES;
 			if( ! this.ignoreComments )
 				blocks.add( new BlockComment( this.definitionFile, line ));
@@ -261,18 +282,45 @@ public class FileDefinitionParser {
 		String[] parts = splitFromInlineComment( line );
 		String realLine = parts[ 0 ].trim();
 
-		String regex = "([^:\\s]+)\\s*:\\s*([^;]*)";
-		Matcher m = Pattern.compile( regex ).matcher( realLine );
-		if( m.find()) {
+		// Equivalent to the regular expression "([^:\s]+)\s*:\s*([^;]*)", but without compiling it for every line.
+		// Find the first sequence of characters (other than spaces and colons) followed by a colon.
+		int nameStart = -1, nameEnd = -1, colon = -1;
+		for( int i=0; i<realLine.length() && colon < 0; ) {
+			if( realLine.charAt( i ) == ':' || isWhitespace( realLine.charAt( i ))) {
+				i ++;
+				continue;
+			}
+
+			nameStart = i;
+			while( i < realLine.length() && realLine.charAt( i ) != ':' && ! isWhitespace( realLine.charAt( i )))
+				i ++;
+
+			nameEnd = i;
+			while( i < realLine.length() && isWhitespace( realLine.charAt( i )))
+				i ++;
+
+			if( i < realLine.length() && realLine.charAt( i ) == ':' )
+				colon = i;
+		}
+
+		if( colon >= 0 ) {
+			int valueStart = colon + 1;
+			while( valueStart < realLine.length() && isWhitespace( realLine.charAt( valueStart )))
+				valueStart ++;
+
+			int valueEnd = realLine.indexOf( SEMI_COLON, valueStart );
+			if( valueEnd < 0 )
+				valueEnd = realLine.length();
+
 			result = P_CODE_YES;
 			BlockProperty block = new BlockProperty( this.definitionFile );
 			block.setLine( this.currentLineNumber );
-			block.setName( m.group( 1 ));
-			block.setValue( m.group( 2 ));
+			block.setName( StringPool.intern( realLine.substring( nameStart, nameEnd )));
+			block.setValue( realLine.substring( valueStart, valueEnd ));
 			block.setInlineComment( parts[ 1 ]);
 			holder.getInnerBlocks().add( block );
 
-			realLine = realLine.substring( m.end());
+			realLine = realLine.substring( valueEnd );
 			if( ! realLine.startsWith( String.valueOf( SEMI_COLON )))
 				this.definitionFile.getParsingErrors().add( new ModelError( ErrorCode.P_PROPERTY_ENDS_WITH_SEMI_COLON, this.currentLineNumber ));
 			else if( realLine.indexOf( SEMI_COLON ) < realLine.length() - 1 )
@@ -293,17 +341,34 @@ public class FileDefinitionParser {
 		String[] parts = splitFromInlineComment( line );
 		String realLine = parts[ 0 ].trim();
 
-		String regex = "import\\s+([^;]*)";
-		Matcher m = Pattern.compile( regex, Pattern.CASE_INSENSITIVE ).matcher( realLine );
-		if( m.find()) {
+		// Equivalent to the regular expression "import\s+([^;]*)" (case-insensitive), but without compiling it for every line.
+		// Find the first "import" keyword followed by at least one space.
+		int uriStart = -1;
+		String keyword = ParsingConstants.KEYWORD_IMPORT;
+		for( int i=0; i + keyword.length() < realLine.length() && uriStart < 0; i++ ) {
+			int end = i + keyword.length();
+			if( realLine.regionMatches( true, i, keyword, 0, keyword.length())
+					&& isWhitespace( realLine.charAt( end ))) {
+
+				uriStart = end;
+				while( uriStart < realLine.length() && isWhitespace( realLine.charAt( uriStart )))
+					uriStart ++;
+			}
+		}
+
+		if( uriStart >= 0 ) {
+			int uriEnd = realLine.indexOf( SEMI_COLON, uriStart );
+			if( uriEnd < 0 )
+				uriEnd = realLine.length();
+
 			result = P_CODE_YES;
 			BlockImport block = new BlockImport( this.definitionFile );
 			block.setLine( this.currentLineNumber );
-			block.setUri( m.group( 1 ).trim());
+			block.setUri( realLine.substring( uriStart, uriEnd ).trim());
 			block.setInlineComment( parts[ 1 ]);
 			this.definitionFile.getBlocks().add( block );
 
-			realLine = realLine.substring( m.end());
+			realLine = realLine.substring( uriEnd );
 			if( ! realLine.startsWith( String.valueOf( SEMI_COLON )))
 				this.definitionFile.getParsingErrors().add( new ModelError( ErrorCode.P_IMPORT_ENDS_WITH_SEMI_COLON, this.currentLineNumber ));
 			else if( realLine.indexOf( SEMI_COLON ) < realLine.length() - 1 )
@@ -331,12 +396,11 @@ public class FileDefinitionParser {
 			result[ 0 ] = line.substring( 0, index );
 			if( ! this.ignoreComments ) {
 				// Find extra spaces before the in-line comment and put them in the comment
-				Matcher m = Pattern.compile( "(\\s+)$" ).matcher( result[ 0 ]);
-				String prefix = "";
-				if( m.find())
-					prefix = m.group( 1 );
+				int prefixStart = index;
+				while( prefixStart > 0 && isWhitespace( line.charAt( prefixStart - 1 )))
+					prefixStart --;
 
-				result[ 1 ] = prefix + line.substring( index );
+				result[ 1 ] = line.substring( prefixStart );
 			}
 
 			result[ 0 ] = result[ 0 ].trim();
@@ -375,6 +439,7 @@ public class FileDefinitionParser {
 
 			} else if( initialInstr.getInstructionType() == block.getInstructionType()) {
 				toRemove.add( block );
+				extendSourceRegion( initialInstr, block );
 				sb.append( System.getProperty( "line.separator" ));
 				sb.append(((AbstractIgnorableInstruction) block).getContent());
 
@@ -447,7 +512,7 @@ public class FileDefinitionParser {
 		} else {
 			result = P_CODE_YES;
 			holder = holderInstance;
-			holder.setName( sb.toString().trim());
+			holder.setName( StringPool.intern( sb.toString().trim()));
 			holder.setLine( this.currentLineNumber );
 			holder.setInlineComment( parts[ 1 ]);
 			this.definitionFile.getBlocks().add( holder );
@@ -503,7 +568,7 @@ public class FileDefinitionParser {
 				&& line != null
 				&& line.trim().startsWith( String.valueOf( C_CURLY_BRACKET ))) {
 
-			line = line.replaceFirst( "\\s*\\}", "" );
+			line = removeKeyword( line, String.valueOf( C_CURLY_BRACKET ), true );
 			parts = splitFromInlineComment( line );
 			if( ! Utils.isEmptyOrWhitespaces( parts[ 0 ])) {
 				this.definitionFile.getParsingErrors().add( new ModelError( ErrorCode.P_C_C_BRACKET_EXTRA_CHARACTERS, this.currentLineNumber ));
@@ -522,6 +587,88 @@ public class FileDefinitionParser {
 	}
 
 
+	/**
+	 * Removes a keyword from a line, as well as the spaces that precede it.
+	 * <p>
+	 * Equivalent to <code>line.replaceAll( "\\s*" + Pattern.quote( keyword ), "" )</code>
+	 * (or to <code>replaceFirst</code>), without compiling a regular expression.
+	 * </p>
+	 *
+	 * @param line a line (not null)
+	 * @param keyword the keyword to remove (case-sensitive, not null)
+	 * @param onlyFirst true to only remove the first occurrence, false to remove all of them
+	 * @return the updated line
+	 */
+	static String removeKeyword( String line, String keyword, boolean onlyFirst ) {
+
+		StringBuilder sb = new StringBuilder( line.length());
+		int from = 0, index;
+		while(( index = line.indexOf( keyword, from )) >= 0 ) {
+
+			int start = index;
+			while( start > from && isWhitespace( line.charAt( start - 1 )))
+				start --;
+
+			sb.append( line, from, start );
+			from = index + keyword.length();
+			if( onlyFirst )
+				break;
+		}
+
+		sb.append( line, from, line.length());
+		return sb.toString();
+	}
+
+
+	/**
+	 * Determines whether a line starts with a keyword, ignoring case and leading spaces.
+	 * <p>
+	 * Equivalent to <code>line.trim().toLowerCase().startsWith( keyword )</code>, without creating new strings.
+	 * </p>
+	 *
+	 * @param line a line (not null)
+	 * @param keyword a lower-case keyword (not null)
+	 * @return true if the line starts with this keyword, false otherwise
+	 */
+	static boolean startsWithIgnoreCase( String line, String keyword ) {
+
+		int start = 0;
+		while( start < line.length() && line.charAt( start ) <= ' ' )
+			start ++;
+
+		return line.regionMatches( true, start, keyword, 0, keyword.length());
+	}
+
+
+	/**
+	 * Determines whether a line only contains spaces.
+	 * <p>
+	 * Equivalent to <code>line.trim().isEmpty()</code>, without creating a new string.
+	 * </p>
+	 *
+	 * @param line a line (not null)
+	 * @return true if the line is empty or only contains spaces, false otherwise
+	 */
+	static boolean isBlank( String line ) {
+
+		for( int i=0; i<line.length(); i++ ) {
+			if( line.charAt( i ) > ' ' )
+				return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @param c a character
+	 * @return true if it is a space, as defined by the "\\s" class of regular expressions
+	 */
+	static boolean isWhitespace( char c ) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\013' || c == '\f' || c == '\r';
+	}
+
+
 	/**
 	 * @param br
 	 * @return
@@ -531,11 +678,14 @@ public class FileDefinitionParser {
 
 		// {@link BufferedReader#readLine()} does not allow to detect when the last line is empty.
 		// We need this precision. So, we read character by character.
-		int c = 0;
+		int c = 0, previous = 0;
+		long lineStart = this.currentOffset;
 		StringBuilder sb = new StringBuilder();
 		while(( c = br.read()) != -1
 				&& ((char) c) != '\n' ) {
 
+			this.currentOffset ++;
+			previous = c;
 			if((char) c != '\r' )
 				sb.append((char) c);
 		}
@@ -546,6 +696,16 @@ public class FileDefinitionParser {
 		String line = c == -1 && sb.length() == 0 ? null : sb.toString();
 		this.currentLineNumber ++;
 
+		// Offsets exclude the line break ("\n" or "\r\n")
+		if( line != null ) {
+			this.previousLineEnd = this.lastLineEnd;
+			this.lastLineStart = lineStart;
+			this.lastLineEnd = c != -1 && previous == '\r' ? this.currentOffset - 1 : this.currentOffset;
+		}
+
+		if( c != -1 )
+			this.currentOffset ++;
+
 		return line;
 	}
 
@@ -558,12 +718,18 @@ public class FileDefinitionParser {
 
 		BufferedReader br = null;
 		try {
-			InputStream in = this.definitionFile.getFileLocation().toURL().openStream();
+			// Do not use caches: they would keep archives open and could return outdated content
+			URLConnection connection = this.definitionFile.getFileLocation().toURL().openConnection();
+			connection.setUseCaches( false );
+			InputStream in = connection.getInputStream();
 			br = new BufferedReader( new InputStreamReader( in, "UTF-8" ));
 
 			String line;
 			while(( line = nextLine( br )) != null ) {
 
+				recordSourceRegions( this.previousLineEnd );
+				this.currentBlockStart = this.lastLineStart;
+				notifyBlockListener();
 				int code = recognizeBlankLine( line, this.definitionFile.getBlocks());
 				if( code == P_CODE_YES )
 					continue;
@@ -597,13 +763,105 @@ public class FileDefinitionParser {
 					this.definitionFile.getParsingErrors().add( new ModelError( ErrorCode.P_UNRECOGNIZED_BLOCK, this.currentLineNumber ));
 			}
 
+			recordSourceRegions( this.lastLineEnd );
+			notifyBlockListener();
 			if( line == null
-					&& this.lastLineEndedWithLineBreak )
+					&& this.lastLineEndedWithLineBreak ) {
+
+				this.currentBlockStart = this.currentOffset;
 				this.definitionFile.getBlocks().add( new BlockBlank( this.definitionFile, "" ));
+				recordSourceRegions( this.currentOffset );
+			}
 
 		} finally {
 			if( br != null )
 				br.close();
 		}
 	}
+
+
+	/**
+	 * Notifies the block listener about the top-level blocks that were read since the last notification.
+	 */
+	private void notifyBlockListener() {
+
+		if( this.blockListener == null )
+			return;
+
+		List<AbstractBlock> blocks = this.definitionFile.getBlocks();
+		for( int i=this.notifiedBlocksCount; i<blocks.size(); ) {
+			AbstractBlock block = blocks.get( i );
+			if( this.blockListener.blockRead( block )) {
+				this.consumedInstructionTypes.add( block.getInstructionType());
+				blocks.remove( i );
+				if( this.blockOffsets != null )
+					this.blockOffsets.remove( block );
+
+			} else {
+				i ++;
+			}
+		}
+
+		this.notifiedBlocksCount = blocks.size();
+		this.recordedBlocksCount = blocks.size();
+	}
+
+
+	/**
+	 * Records the offsets of the top-level blocks that were read since the last call.
+	 * <p>
+	 * These blocks all start with the line where the current top-level block started.
+	 * </p>
+	 *
+	 * @param end the offset after the last character of these blocks
+	 */
+	private void recordSourceRegions( long end ) {
+
+		if( this.blockOffsets == null )
+			return;
+
+		List<AbstractBlock> blocks = this.definitionFile.getBlocks();
+		for( int i=this.recordedBlocksCount; i<blocks.size(); i++ )
+			this.blockOffsets.put( blocks.get( i ), new long[] { this.currentBlockStart, end });
+
+		this.recordedBlocksCount = blocks.size();
+	}
+
+
+	/**
+	 * Extends the source region of a block with the one of a block merged into it.
+	 * @param block the block that is kept
+	 * @param mergedBlock the block merged into the first one
+	 */
+	private void extendSourceRegion( AbstractBlock block, AbstractBlock mergedBlock ) {
+
+		long[] offsets, mergedOffsets;
+		if( this.blockOffsets != null
+				&& ( offsets = this.blockOffsets.get( block )) != null
+				&& ( mergedOffsets = this.blockOffsets.remove( mergedBlock )) != null )
+			offsets[ 1 ] = mergedOffsets[ 1 ];
+	}
+
+
+	/**
+	 * Stores the source regions of the top-level blocks in the definition file.
+	 * <p>
+	 * Fingerprints are computed once the blocks are complete, i.e. after contiguous regions were merged.
+	 * </p>
+	 */
+	private void buildSourceRegions() {
+
+		if( this.blockOffsets == null )
+			return;
+
+		for( AbstractBlock block : this.definitionFile.getBlocks()) {
+			long[] offsets = this.blockOffsets.get( block );
+			if( offsets != null ) {
+				SourceRegion region = new SourceRegion( offsets[ 0 ], offsets[ 1 ], FileDefinitionSerializer.fingerprint( block ));
+				this.definitionFile.getSourceRegions().put( block, region );
+			}
+		}
+
+		this.blockOffsets.clear();
+	}
 }
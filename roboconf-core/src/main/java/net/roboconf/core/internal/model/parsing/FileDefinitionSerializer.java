@@ -16,8 +16,19 @@
 
 package net.roboconf.core.internal.model.parsing;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URLConnection;
 import java.util.Iterator;
 
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.parsing.AbstractBlock;
 import net.roboconf.core.model.parsing.AbstractBlockHolder;
 import net.roboconf.core.model.parsing.BlockBlank;
@@ -27,16 +38,27 @@ import net.roboconf.core.model.parsing.BlockFacet;
 import net.roboconf.core.model.parsing.BlockImport;
 import net.roboconf.core.model.parsing.BlockInstanceOf;
 import net.roboconf.core.model.parsing.BlockProperty;
-import net.roboconf.core.model.parsing.ParsingConstants;
 import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.parsing.ParsingConstants;
+import net.roboconf.core.model.parsing.SourceRegion;
 import net.roboconf.core.model.validators.ParsingModelValidator;
 
 /**
  * A class to serialize a relations model.
+ * <p>
+ * Blocks are written directly into a {@link Writer}. The methods that return strings
+ * are only convenient for small models. Large models should be written in streams.
+ * </p>
+ * <p>
+ * The incremental mode only serializes the top-level blocks that were modified since
+ * the file was parsed. The other ones are copied from the source file, as they were written.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class FileDefinitionSerializer {
 
+	private static final String FINGERPRINT_LINE_SEPARATOR = "\n";
 	private String lineSeparator = System.getProperty( "line.separator" );
 
 
@@ -64,14 +86,153 @@ public class FileDefinitionSerializer {
 	 */
 	public String write( FileDefinition definitionFile, boolean writeComments ) {
 
-		StringBuilder sb = new StringBuilder();
+		StringWriter writer = new StringWriter();
+		try {
+			write( definitionFile, writeComments, writer );
+
+		} catch( IOException e ) {
+			// A string writer does not throw I/O exceptions
+			throw new IllegalStateException( e );
+		}
+
+		return writer.toString();
+	}
+
+
+	/**
+	 * Writes a relations file into a stream.
+	 * <p>
+	 * The stream is encoded in UTF-8. It is flushed but not closed.
+	 * </p>
+	 *
+	 * @param definitionFile the relations file
+	 * @param writeComments true to write comments
+	 * @param out an output stream (not null)
+	 * @throws IOException if something went wrong
+	 */
+	public void write( FileDefinition definitionFile, boolean writeComments, OutputStream out )
+	throws IOException {
+
+		Writer writer = new BufferedWriter( new OutputStreamWriter( out, "UTF-8" ));
+		write( definitionFile, writeComments, writer );
+		writer.flush();
+	}
+
+
+	/**
+	 * Writes a relations file into a writer.
+	 * @param definitionFile the relations file
+	 * @param writeComments true to write comments
+	 * @param writer a writer (not null, not flushed)
+	 * @throws IOException if something went wrong
+	 */
+	public void write( FileDefinition definitionFile, boolean writeComments, Writer writer )
+	throws IOException {
+
 		for( Iterator<AbstractBlock> it = definitionFile.getBlocks().iterator(); it.hasNext(); ) {
-			sb.append( write( it.next(), writeComments ));
+			write( it.next(), writeComments, writer );
 			if( it.hasNext())
-				sb.append( this.lineSeparator );
+				writer.write( this.lineSeparator );
 		}
+	}
+
+
+	/**
+	 * Writes a relations file into a stream, in incremental mode.
+	 * <p>
+	 * The stream is encoded in UTF-8. It is flushed but not closed.
+	 * </p>
+	 *
+	 * @param definitionFile the relations file
+	 * @param out an output stream (not null)
+	 * @throws IOException if something went wrong
+	 * @see #writeIncrementally(FileDefinition, Writer)
+	 */
+	public void writeIncrementally( FileDefinition definitionFile, OutputStream out )
+	throws IOException {
 
-		return sb.toString();
+		Writer writer = new BufferedWriter( new OutputStreamWriter( out, "UTF-8" ));
+		writeIncrementally( definitionFile, writer );
+		writer.flush();
+	}
+
+
+	/**
+	 * Writes a relations file into a writer, in incremental mode.
+	 * <p>
+	 * Top-level blocks whose source region is known and that were not modified since
+	 * they were parsed are copied from the source file. The other ones are serialized,
+	 * with their comments. The source file must not have been modified since it was parsed.
+	 * </p>
+	 * <p>
+	 * When the source file cannot be read, or when its regions were not recorded,
+	 * all the blocks are serialized.
+	 * </p>
+	 *
+	 * @param definitionFile the relations file
+	 * @param writer a writer (not null, not flushed)
+	 * @throws IOException if something went wrong
+	 */
+	public void writeIncrementally( FileDefinition definitionFile, Writer writer )
+	throws IOException {
+
+		Reader source = null;
+		try {
+			if( ! definitionFile.getSourceRegions().isEmpty()
+					&& definitionFile.getFileLocation() != null )
+				source = openSource( definitionFile );
+
+			long position = 0;
+			for( Iterator<AbstractBlock> it = definitionFile.getBlocks().iterator(); it.hasNext(); ) {
+				AbstractBlock block = it.next();
+
+				// Regions can only be copied in order (blocks may have been moved)
+				SourceRegion region = definitionFile.getSourceRegions().get( block );
+				if( source != null
+						&& region != null
+						&& region.getStart() >= position
+						&& region.getFingerprint() == fingerprint( block )) {
+
+					skip( source, region.getStart() - position );
+					copy( source, writer, region.getEnd() - region.getStart());
+					position = region.getEnd();
+
+				} else {
+					write( block, true, writer );
+				}
+
+				if( it.hasNext())
+					writer.write( this.lineSeparator );
+			}
+
+		} finally {
+			Utils.closeQuietly( source );
+		}
+	}
+
+
+	/**
+	 * Computes the fingerprint of a block.
+	 * <p>
+	 * The fingerprint is a hash of the serialized block, comments included.
+	 * It does not depend on the line separator. The serialized form is never built in memory.
+	 * </p>
+	 *
+	 * @param block a block (not null)
+	 * @return a fingerprint
+	 */
+	public static long fingerprint( AbstractBlock block ) {
+
+		FingerprintWriter writer = new FingerprintWriter();
+		try {
+			new FileDefinitionSerializer( FINGERPRINT_LINE_SEPARATOR ).write( block, true, writer );
+
+		} catch( IOException e ) {
+			// A fingerprint writer does not throw I/O exceptions
+			throw new IllegalStateException( e );
+		}
+
+		return writer.hash;
 	}
 
 
@@ -82,42 +243,60 @@ public class FileDefinitionSerializer {
 	 */
 	public String write( AbstractBlock block, boolean writeComments ) {
 
-		String result;
+		StringWriter writer = new StringWriter();
+		try {
+			write( block, writeComments, writer );
+
+		} catch( IOException e ) {
+			// A string writer does not throw I/O exceptions
+			throw new IllegalStateException( e );
+		}
+
+		return writer.toString();
+	}
+
+
+	/**
+	 * @param block a block
+	 * @param writeComments true to write comments
+	 * @param writer a writer (not null)
+	 * @throws IOException if something went wrong
+	 */
+	public void write( AbstractBlock block, boolean writeComments, Writer writer )
+	throws IOException {
+
 		switch( block.getInstructionType()) {
 		case AbstractBlock.COMPONENT:
-			result = write((BlockComponent) block, writeComments );
+			writeComponent((BlockComponent) block, writeComments, writer );
 			break;
 
 		case AbstractBlock.FACET:
-			result = write((BlockFacet) block, writeComments );
+			writeFacet((BlockFacet) block, writeComments, writer );
 			break;
 
 		case AbstractBlock.INSTANCEOF:
-			result = write((BlockInstanceOf) block, writeComments, 0 );
+			writeInstanceOf((BlockInstanceOf) block, writeComments, 0, writer );
 			break;
 
 		case AbstractBlock.IMPORT:
-			result = write((BlockImport) block, writeComments );
+			writeImport((BlockImport) block, writeComments, writer );
 			break;
 
 		case AbstractBlock.PROPERTY:
-			result = write((BlockProperty) block, writeComments );
+			writeProperty((BlockProperty) block, writeComments, writer );
 			break;
 
 		case AbstractBlock.COMMENT:
-			result = write((BlockComment) block, writeComments );
+			writeComment((BlockComment) block, writeComments, writer );
 			break;
 
 		case AbstractBlock.BLANK:
-			result = write((BlockBlank) block, writeComments );
+			writeBlank((BlockBlank) block, writeComments, writer );
 			break;
 
 		default:
-			result = null;
 			break;
 		}
-
-		return result;
 	}
 
 
@@ -127,17 +306,7 @@ public class FileDefinitionSerializer {
 	 * @return a string (never null)
 	 */
 	public String write( BlockImport block, boolean writeComments ) {
-
-		StringBuilder sb = new StringBuilder();
-		sb.append( "import " );
-		sb.append( block.getUri());
-		sb.append( ";" );
-
-		if( writeComments
-				&& block.getInlineComment() != null )
-			sb.append( block.getInlineComment());
-
-		return sb.toString();
+		return write((AbstractBlock) block, writeComments );
 	}
 
 
@@ -147,7 +316,7 @@ public class FileDefinitionSerializer {
 	 * @return a string (never null)
 	 */
 	public String write( BlockComponent block, boolean writeComments ) {
-		return writePropertiesHolder( block, writeComments, 0 );
+		return write((AbstractBlock) block, writeComments );
 	}
 
 
@@ -157,7 +326,7 @@ public class FileDefinitionSerializer {
 	 * @return a string (never null)
 	 */
 	public String write( BlockFacet block, boolean writeComments ) {
-		return ParsingConstants.KEYWORD_FACET + " " + writePropertiesHolder( block, writeComments, 0 );
+		return write((AbstractBlock) block, writeComments );
 	}
 
 
@@ -169,13 +338,16 @@ public class FileDefinitionSerializer {
 	 */
 	public String write( BlockInstanceOf block, boolean writeComments, int indentationLevel ) {
 
-		StringBuilder sb = new StringBuilder();
-		indent( sb, indentationLevel );
-		sb.append( ParsingConstants.KEYWORD_INSTANCE_OF );
-		sb.append( " " );
-		sb.append( writePropertiesHolder( block, writeComments, indentationLevel ));
+		StringWriter writer = new StringWriter();
+		try {
+			writeInstanceOf( block, writeComments, indentationLevel, writer );
+
+		} catch( IOException e ) {
+			// A string writer does not throw I/O exceptions
+			throw new IllegalStateException( e );
+		}
 
-		return sb.toString();
+		return writer.toString();
 	}
 
 
@@ -185,72 +357,119 @@ public class FileDefinitionSerializer {
 	 * @return a string (never null)
 	 */
 	public String write( BlockBlank block, boolean writeComments ) {
+		return write((AbstractBlock) block, writeComments );
+	}
+
+
+	/**
+	 * @param block the blockuction
+	 * @param writeComments true to write comments
+	 * @return a string (never null)
+	 */
+	public String write( BlockProperty block, boolean writeComments ) {
+		return write((AbstractBlock) block, writeComments );
+	}
+
+
+	/**
+	 * @param block the blockuction
+	 * @param writeComments true to write comments
+	 * @return a string (never null)
+	 */
+	public String write( BlockComment block, boolean writeComments ) {
+		return write((AbstractBlock) block, writeComments );
+	}
+
+
+	private void writeImport( BlockImport block, boolean writeComments, Writer writer )
+	throws IOException {
+
+		writer.write( "import " );
+		writer.write( String.valueOf( block.getUri()));
+		writer.write( ";" );
+
+		if( writeComments
+				&& block.getInlineComment() != null )
+			writer.write( block.getInlineComment());
+	}
+
+
+	private void writeComponent( BlockComponent block, boolean writeComments, Writer writer )
+	throws IOException {
+		writePropertiesHolder( block, writeComments, 0, writer );
+	}
+
+
+	private void writeFacet( BlockFacet block, boolean writeComments, Writer writer )
+	throws IOException {
+
+		writer.write( ParsingConstants.KEYWORD_FACET );
+		writer.write( " " );
+		writePropertiesHolder( block, writeComments, 0, writer );
+	}
+
+
+	private void writeInstanceOf( BlockInstanceOf block, boolean writeComments, int indentationLevel, Writer writer )
+	throws IOException {
+
+		indent( writer, indentationLevel );
+		writer.write( ParsingConstants.KEYWORD_INSTANCE_OF );
+		writer.write( " " );
+		writePropertiesHolder( block, writeComments, indentationLevel, writer );
+	}
+
+
+	private void writeBlank( BlockBlank block, boolean writeComments, Writer writer )
+	throws IOException {
 
-		StringBuilder sb = new StringBuilder();
 		if( writeComments ) {
 			// Invalid blank sections can be "repaired" even if they are invalid.
 			// Here, we replace it by a line break.
 			// The error is signaled as a warning in the validation.
 			// Useful if a blank section was built programmatically.
 			if( ParsingModelValidator.validate( block ).isEmpty())
-				sb.append( block.getContent());
+				writer.write( String.valueOf( block.getContent()));
 			else
-				sb.append( this.lineSeparator );
+				writer.write( this.lineSeparator );
 		}
-
-		return sb.toString();
 	}
 
 
-	/**
-	 * @param block the blockuction
-	 * @param writeComments true to write comments
-	 * @return a string (never null)
-	 */
-	public String write( BlockProperty block, boolean writeComments ) {
+	private void writeProperty( BlockProperty block, boolean writeComments, Writer writer )
+	throws IOException {
 
-		StringBuilder sb = new StringBuilder();
-		sb.append( block.getName());
-		sb.append( ": " );
-		sb.append( block.getValue());
-		sb.append( ";" );
+		writer.write( String.valueOf( block.getName()));
+		writer.write( ": " );
+		writer.write( String.valueOf( block.getValue()));
+		writer.write( ";" );
 
 		if( writeComments
 				&& block.getInlineComment() != null )
-			sb.append( block.getInlineComment());
-
-		return sb.toString();
+			writer.write( block.getInlineComment());
 	}
 
 
-	/**
-	 * @param block the blockuction
-	 * @param writeComments true to write comments
-	 * @return a string (never null)
-	 */
-	public String write( BlockComment block, boolean writeComments ) {
+	private void writeComment( BlockComment block, boolean writeComments, Writer writer )
+	throws IOException {
 
-		StringBuilder sb = new StringBuilder();
 		if( writeComments ) {
 			// Invalid comment sections can be "repaired" even if they are invalid.
 			// Here, we insert a comment delimiter where needed.
 			// The error is signaled as a warning in the validation.
 			// Useful if a comment was built programmatically.
 			if( ParsingModelValidator.validate( block ).isEmpty()) {
-				sb.append( block.getContent());
+				writer.write( String.valueOf( block.getContent()));
 
 			} else {
 				for( String s : block.getContent().split( "\n" )) {
 					if( s.trim().startsWith( ParsingConstants.COMMENT_DELIMITER ))
-						sb.append( "# " );
+						writer.write( "# " );
 
-					sb.append( s );
-					sb.append( "\n" );
+					writer.write( s );
+					writer.write( "\n" );
 				}
 			}
 		}
-
-		return sb.toString();
 	}
 
 
@@ -258,48 +477,155 @@ public class FileDefinitionSerializer {
 	 * @param holder the blockuction
 	 * @param writeComments true to write comments
 	 * @param indentationLevel the indentation level
-	 * @return a string (never null)
+	 * @param writer the writer
+	 * @throws IOException if something went wrong
 	 */
-	private String writePropertiesHolder( AbstractBlockHolder holder, boolean writeComments, int indentationLevel ) {
+	private void writePropertiesHolder( AbstractBlockHolder holder, boolean writeComments, int indentationLevel, Writer writer )
+	throws IOException {
 
-		StringBuilder sb = new StringBuilder();
-		sb.append( holder.getName());
-		sb.append( " {" );
+		writer.write( String.valueOf( holder.getName()));
+		writer.write( " {" );
 
 		if( writeComments
 				&& holder.getInlineComment() != null )
-			sb.append( holder.getInlineComment());
+			writer.write( holder.getInlineComment());
 
 		for( AbstractBlock block : holder.getInnerBlocks()) {
-			sb.append( this.lineSeparator );
+			writer.write( this.lineSeparator );
 			if( block.getInstructionType() == AbstractBlock.INSTANCEOF ) {
-				sb.append( write((BlockInstanceOf) block, writeComments, indentationLevel + 1 ));
+				writeInstanceOf((BlockInstanceOf) block, writeComments, indentationLevel + 1, writer );
 
 			} else {
 				if( block.getInstructionType() == AbstractBlock.PROPERTY )
-					indent( sb, indentationLevel + 1 );
+					indent( writer, indentationLevel + 1 );
 
-				sb.append( write( block, writeComments ));
+				write( block, writeComments, writer );
 			}
 		}
 
-		sb.append( this.lineSeparator );
-		indent( sb, indentationLevel );
-		sb.append( "}" );
+		writer.write( this.lineSeparator );
+		indent( writer, indentationLevel );
+		writer.write( "}" );
 		if( writeComments
 				&& holder.getClosingInlineComment() != null )
-			sb.append( holder.getClosingInlineComment());
-
-		return sb.toString();
+			writer.write( holder.getClosingInlineComment());
 	}
 
 
 	/**
-	 * @param sb
+	 * @param writer
 	 * @param indentationLevel
+	 * @throws IOException
 	 */
-	private void indent( StringBuilder sb, int indentationLevel ) {
+	private void indent( Writer writer, int indentationLevel ) throws IOException {
 		for( int i=0; i<indentationLevel; i++ )
-			sb.append( "\t" );
+			writer.write( "\t" );
+	}
+
+
+	/**
+	 * Opens the source file of a definition.
+	 * @param definitionFile a definition file (not null)
+	 * @return a reader, or null if the source could not be opened
+	 */
+	private static Reader openSource( FileDefinition definitionFile ) {
+
+		Reader result = null;
+		try {
+			// Same settings as the parser, so that offsets match
+			URLConnection connection = definitionFile.getFileLocation().toURL().openConnection();
+			connection.setUseCaches( false );
+			result = new BufferedReader( new InputStreamReader( connection.getInputStream(), "UTF-8" ));
+
+		} catch( IOException e ) {
+			// Blocks will be serialized
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Skips characters in a reader.
+	 * @param reader a reader
+	 * @param count the number of characters to skip
+	 * @throws IOException if the end of the stream was reached
+	 */
+	private static void skip( Reader reader, long count ) throws IOException {
+
+		long remaining = count;
+		while( remaining > 0 ) {
+			long skipped = reader.skip( remaining );
+			if( skipped <= 0 )
+				throw new IOException( "The source file was modified since it was parsed." );
+
+			remaining -= skipped;
+		}
+	}
+
+
+	/**
+	 * Copies characters from a reader into a writer.
+	 * @param reader a reader
+	 * @param writer a writer
+	 * @param count the number of characters to copy
+	 * @throws IOException if the end of the stream was reached
+	 */
+	private static void copy( Reader reader, Writer writer, long count ) throws IOException {
+
+		char[] buffer = new char[ 8192 ];
+		long remaining = count;
+		while( remaining > 0 ) {
+			int length = reader.read( buffer, 0, (int) Math.min( buffer.length, remaining ));
+			if( length < 0 )
+				throw new IOException( "The source file was modified since it was parsed." );
+
+			writer.write( buffer, 0, length );
+			remaining -= length;
+		}
+	}
+
+
+	/**
+	 * A writer that only computes a 64-bit FNV-1a hash of what is written.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class FingerprintWriter extends Writer {
+
+		private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+		private static final long FNV_PRIME = 0x100000001b3L;
+		long hash = FNV_OFFSET_BASIS;
+
+
+		@Override
+		public void write( char[] cbuf, int off, int len ) {
+			for( int i=off; i<off + len; i++ )
+				update( cbuf[ i ]);
+		}
+
+
+		@Override
+		public void write( String str ) {
+			for( int i=0; i<str.length(); i++ )
+				update( str.charAt( i ));
+		}
+
+
+		@Override
+		public void flush() {
+			// nothing
+		}
+
+
+		@Override
+		public void close() {
+			// nothing
+		}
+
+
+		private void update( char c ) {
+			this.hash ^= c;
+			this.hash *= FNV_PRIME;
+		}
 	}
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.model.parsing;
+
+import net.roboconf.core.model.parsing.AbstractBlock;
+import net.roboconf.core.model.parsing.FileDefinition;
+
+/**
+ * A listener notified by {@link FileDefinitionParser} every time a top-level block has been read.
+ * <p>
+ * It allows to process a file while it is being read. Blocks consumed by the listener
+ * are not stored in the {@link FileDefinition}, which avoids keeping the whole block tree in memory.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IBlockListener {
+
+	/**
+	 * Invoked when a top-level block has been read.
+	 * <p>
+	 * Parsing errors found so far are available in the block's declaring file.
+	 * </p>
+	 *
+	 * @param block the block (not null, with all its inner blocks)
+	 * @return true if the block was consumed and must not be stored, false otherwise
+	 */
+	boolean blockRead( AbstractBlock block );
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map optimized for the small sizes.
+ * <p>
+ * Nothing is allocated until the first entry is added. Then, up to {@link #THRESHOLD} entries,
+ * keys and values are stored in a single array and searched linearly. Beyond this threshold,
+ * entries are moved into a {@link LinkedHashMap}. In both cases, the iteration order is the insertion order.
+ * </p>
+ * <p>
+ * Null keys and null values are supported. Like {@link java.util.HashMap}, this class is not thread-safe.
+ * </p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompactMap<K,V> extends AbstractMap<K,V> implements Serializable {
+
+	/**
+	 * The maximum number of entries stored in the array.
+	 */
+	static final int THRESHOLD = 8;
+
+	private static final long serialVersionUID = 4406287424398925287L;
+
+	// Keys are stored at even indexes, values at odd ones
+	private Object[] table;
+	private int size;
+	private Map<K,V> delegate;
+
+	private transient int modCount;
+	private transient Set<Map.Entry<K,V>> entrySet;
+
+
+	@Override
+	public int size() {
+		return this.delegate != null ? this.delegate.size() : this.size;
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+
+	@Override
+	public boolean containsKey( Object key ) {
+		return this.delegate != null ? this.delegate.containsKey( key ) : indexOf( key ) >= 0;
+	}
+
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public V get( Object key ) {
+
+		V result = null;
+		if( this.delegate != null ) {
+			result = this.delegate.get( key );
+
+		} else {
+			int index = indexOf( key );
+			if( index >= 0 )
+				result = (V) this.table[ index + 1 ];
+		}
+
+		return result;
+	}
+
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public V put( K key, V value ) {
+
+		if( this.delegate != null )
+			return this.delegate.put( key, value );
+
+		V result = null;
+		int index = indexOf( key );
+		if( index >= 0 ) {
+			result = (V) this.table[ index + 1 ];
+			this.table[ index + 1 ] = value;
+
+		} else if( this.size == THRESHOLD ) {
+			Map<K,V> map = new LinkedHashMap<K,V>( THRESHOLD * 4 );
+			for( int i=0; i<this.size * 2; i+=2 )
+				map.put((K) this.table[ i ], (V) this.table[ i + 1 ]);
+
+			map.put( key, value );
+			this.delegate = map;
+			this.table = null;
+			this.size = 0;
+			this.modCount ++;
+
+		} else {
+			if( this.table == null )
+				this.table = new Object[ 4 ];
+			else if( this.table.length == this.size * 2 ) {
+				Object[] newTable = new Object[ this.table.length * 2 ];
+				System.arraycopy( this.table, 0, newTable, 0, this.table.length );
+				this.table = newTable;
+			}
+
+			this.table[ this.size * 2 ] = key;
+			this.table[ this.size * 2 + 1 ] = value;
+			this.size ++;
+			this.modCount ++;
+		}
+
+		return result;
+	}
+
+
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public V remove( Object key ) {
+
+		if( this.delegate != null )
+			return this.delegate.remove( key );
+
+		V result = null;
+		int index = indexOf( key );
+		if( index >= 0 ) {
+			result = (V) this.table[ index + 1 ];
+			removeAt( index );
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public void clear() {
+
+		// Going back to the initial state releases the memory
+		this.delegate = null;
+		this.table = null;
+		this.size = 0;
+		this.modCount ++;
+	}
+
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+
+		Set<Map.Entry<K,V>> result = this.entrySet;
+		if( result == null ) {
+			result = new EntrySet();
+			this.entrySet = result;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the index of a key in the table.
+	 * @param key a key (can be null)
+	 * @return the index of the key, or -1 if it was not found
+	 */
+	private int indexOf( Object key ) {
+
+		int result = -1;
+		for( int i=0; i<this.size * 2 && result < 0; i+=2 ) {
+			Object k = this.table[ i ];
+			if( k == key || key != null && key.equals( k ))
+				result = i;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Removes an entry from the table, preserving the order of the other ones.
+	 * @param index the index of the entry's key
+	 */
+	private void removeAt( int index ) {
+
+		int last = this.size * 2;
+		System.arraycopy( this.table, index + 2, this.table, index, last - index - 2 );
+		this.table[ last - 2 ] = null;
+		this.table[ last - 1 ] = null;
+		this.size --;
+		this.modCount ++;
+
+		if( this.size == 0 )
+			this.table = null;
+	}
+
+
+	/**
+	 * The entry set of a compact map.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+
+		@Override
+		public Iterator<Map.Entry<K,V>> iterator() {
+			return CompactMap.this.delegate != null
+					? CompactMap.this.delegate.entrySet().iterator()
+					: new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return CompactMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			CompactMap.this.clear();
+		}
+	}
+
+
+	/**
+	 * An iterator over the entries stored in the table.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+
+		private int next = 0, current = -1;
+		private int expectedModCount = CompactMap.this.modCount;
+
+
+		@Override
+		public boolean hasNext() {
+			return this.next < CompactMap.this.size * 2;
+		}
+
+
+		@Override
+		public Map.Entry<K,V> next() {
+
+			checkModifications();
+			if( ! hasNext())
+				throw new NoSuchElementException();
+
+			this.current = this.next;
+			this.next += 2;
+			return new Entry( this.current );
+		}
+
+
+		@Override
+		public void remove() {
+
+			checkModifications();
+			if( this.current < 0 )
+				throw new IllegalStateException();
+
+			removeAt( this.current );
+			this.next = this.current;
+			this.current = -1;
+			this.expectedModCount = CompactMap.this.modCount;
+		}
+
+
+		private void checkModifications() {
+			if( this.expectedModCount != CompactMap.this.modCount )
+				throw new ConcurrentModificationException();
+		}
+	}
+
+
+	/**
+	 * An entry stored in the table.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private final class Entry implements Map.Entry<K,V> {
+
+		private final int index;
+		private final K key;
+
+
+		@SuppressWarnings( "unchecked" )
+		Entry( int index ) {
+			this.index = index;
+			this.key = (K) CompactMap.this.table[ index ];
+		}
+
+
+		@Override
+		public K getKey() {
+			return this.key;
+		}
+
+
+		@Override
+		@SuppressWarnings( "unchecked" )
+		public V getValue() {
+			return CompactMap.this.delegate == null
+					&& this.index < CompactMap.this.size * 2
+					&& CompactMap.this.table[ this.index ] == this.key
+					? (V) CompactMap.this.table[ this.index + 1 ]
+					: CompactMap.this.get( this.key );
+		}
+
+
+		@Override
+		public V setValue( V value ) {
+			return CompactMap.this.put( this.key, value );
+		}
+
+
+		@Override
+		public boolean equals( Object obj ) {
+
+			if( !( obj instanceof Map.Entry ))
+				return false;
+
+			Map.Entry<?,?> entry = (Map.Entry<?,?>) obj;
+			Object value = getValue();
+			return ( this.key == null ? entry.getKey() == null : this.key.equals( entry.getKey()))
+					&& ( value == null ? entry.getValue() == null : value.equals( entry.getValue()));
+		}
+
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return ( this.key == null ? 0 : this.key.hashCode()) ^ ( value == null ? 0 : value.hashCode());
+		}
+
+
+		@Override
+		public String toString() {
+			return this.key + "=" + getValue();
+		}
+	}
+}
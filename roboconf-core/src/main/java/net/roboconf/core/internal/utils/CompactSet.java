@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * A set optimized for the small sizes.
+ * <p>
+ * It is backed by a {@link CompactMap}, just like {@link java.util.HashSet} is backed by a {@link java.util.HashMap}.
+ * The iteration order is the insertion order.
+ * </p>
+ *
+ * @param <E> the type of the elements
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompactSet<E> extends AbstractSet<E> implements Serializable {
+
+	private static final long serialVersionUID = -2460395407474180128L;
+	private final CompactMap<E,Boolean> map = new CompactMap<E,Boolean> ();
+
+
+	@Override
+	public Iterator<E> iterator() {
+		return this.map.keySet().iterator();
+	}
+
+
+	@Override
+	public int size() {
+		return this.map.size();
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return this.map.isEmpty();
+	}
+
+
+	@Override
+	public boolean contains( Object o ) {
+		return this.map.containsKey( o );
+	}
+
+
+	@Override
+	public boolean add( E e ) {
+		return this.map.put( e, Boolean.TRUE ) == null;
+	}
+
+
+	@Override
+	public boolean remove( Object o ) {
+		return this.map.remove( o ) != null;
+	}
+
+
+	@Override
+	public void clear() {
+		this.map.clear();
+	}
+}
@@ -79,7 +79,7 @@ public final class ModelUtils {
 		for( String s : Utils.splitNicely( propertyValue, ParsingConstants.PROPERTY_SEPARATOR )) {
 			Map.Entry<String,String> entry = VariableHelpers.parseExportedVariable( s );
 			// Prefix with the facet or component name.
-			result.put( holder.getName() + "." + entry.getKey(), entry.getValue());
+			result.put( StringPool.intern( holder.getName() + "." + entry.getKey()), entry.getValue());
 		}
 
 		return result;
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A thread pool shared by the parsing and validation tasks of the model.
+ * <p>
+ * It is created the first time it is needed, has as many threads as there are cores,
+ * and its threads are daemon ones (they do not prevent the JVM from stopping).
+ * </p>
+ * <p>
+ * A task executed by this pool must not submit other tasks to it and wait for them:
+ * all the threads could end up waiting. Such code should check {@link #isWorkerThread()}
+ * and do the work in the current thread instead.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class SharedExecutor {
+
+	/**
+	 * Private empty constructor.
+	 */
+	private SharedExecutor() {
+		// nothing
+	}
+
+
+	/**
+	 * @return the shared pool (never null)
+	 */
+	public static ExecutorService getInstance() {
+		return Holder.INSTANCE;
+	}
+
+
+	/**
+	 * @return true if the current thread belongs to the shared pool, false otherwise
+	 */
+	public static boolean isWorkerThread() {
+		return Thread.currentThread() instanceof WorkerThread;
+	}
+
+
+	/**
+	 * Holds the pool (created when this class is first accessed).
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class Holder {
+
+		static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(),
+				new ThreadFactory() {
+					private int count = 0;
+
+					@Override
+					public synchronized Thread newThread( Runnable r ) {
+						Thread thread = new WorkerThread( r, "Roboconf - Model worker " + (++ this.count));
+						thread.setDaemon( true );
+						return thread;
+					}
+				});
+
+
+		private Holder() {
+			// nothing
+		}
+	}
+
+
+	/**
+	 * The threads of the shared pool.
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class WorkerThread extends Thread {
+
+		/**
+		 * Constructor.
+		 * @param r the runnable
+		 * @param name the thread name
+		 */
+		public WorkerThread( Runnable r, String name ) {
+			super( r, name );
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A model-wide pool of strings, to share the names that are repeated across the model.
+ * <p>
+ * Component names, variable names and instance paths are found in many places
+ * (components, instances, imports, messages...). Parsing or deserializing them results
+ * in many copies of the same strings. This pool allows to keep a single copy of each.
+ * </p>
+ * <p>
+ * Strings are weakly referenced: the pool does not prevent them from being garbage-collected
+ * once the model does not use them anymore (e.g. when an application is deleted).
+ * </p>
+ * <p>
+ * The pool is used by concurrent parsing, validation and message decoding. It is split into
+ * segments, chosen from the string's hash code, and each segment has its own lock. Threads that
+ * intern different strings thus rarely wait for each other.
+ * </p>
+ * <p>
+ * The pool can be disabled with the {@value #DISABLING_PROPERTY} system property,
+ * or with {@link #setEnabled(boolean)}. When it is disabled, strings are returned as is.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class StringPool {
+
+	/**
+	 * The system property that disables the pool when set to "true".
+	 */
+	public static final String DISABLING_PROPERTY = "roboconf.string.pool.disabled";
+
+	// A power of two, so that a segment can be selected with a mask
+	private static final int SEGMENTS_COUNT = 16;
+	private static final Segment[] SEGMENTS = new Segment[ SEGMENTS_COUNT ];
+	static {
+		for( int i=0; i<SEGMENTS_COUNT; i++ )
+			SEGMENTS[ i ] = new Segment();
+	}
+
+	private static volatile boolean enabled = ! Boolean.getBoolean( DISABLING_PROPERTY );
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private StringPool() {
+		// nothing
+	}
+
+
+	/**
+	 * Gets the pooled copy of a string.
+	 * @param s a string (can be null)
+	 * @return a string equal to s, shared by all the callers if the pool is enabled (null if s was null)
+	 */
+	public static String intern( String s ) {
+
+		if( s == null || ! enabled )
+			return s;
+
+		// Mix the high bits into the low ones, which select the segment
+		int h = s.hashCode();
+		h ^= ( h >>> 16 ) ^ ( h >>> 8 );
+		Segment segment = SEGMENTS[ h & ( SEGMENTS_COUNT - 1 )];
+
+		String result;
+		synchronized( segment ) {
+			WeakReference<String> ref = segment.map.get( s );
+			result = ref == null ? null : ref.get();
+			if( result == null ) {
+				segment.map.put( s, new WeakReference<String>( s ));
+				result = s;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return true if the pool is enabled, false otherwise
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+
+	/**
+	 * Enables or disables the pool.
+	 * <p>
+	 * Disabling the pool also empties it.
+	 * </p>
+	 *
+	 * @param enabled true to enable the pool, false to disable it
+	 */
+	public static void setEnabled( boolean enabled ) {
+
+		StringPool.enabled = enabled;
+		if( ! enabled ) {
+			for( Segment segment : SEGMENTS ) {
+				synchronized( segment ) {
+					segment.map.clear();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A part of the pool, with its own lock.
+	 */
+	private static final class Segment {
+		final Map<String,WeakReference<String>> map = new WeakHashMap<String,WeakReference<String>> ();
+	}
+}
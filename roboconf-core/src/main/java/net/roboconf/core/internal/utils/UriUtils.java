@@ -123,6 +123,15 @@ public final class UriUtils {
 
 		} catch( Exception e ) {
 			try {
+				// Relative URL in an archive (jar:file:/archive.zip!/entry)?
+				// Such URIs are opaque, only the entry part can be resolved.
+				String referenceAsString = referenceUri.toString();
+				int index = referenceAsString.indexOf( "!/" );
+				if( referenceUri.isOpaque() && index != -1 ) {
+					URI entryUri = buildNewURI( new URI( referenceAsString.substring( index + 1 )), uriSuffix );
+					return new URI( referenceAsString.substring( 0, index + 1 ) + entryUri.getRawPath());
+				}
+
 				// Relative URL ?
 				if( ! referenceUri.toString().endsWith( "/" )
 						&& ! uriSuffix.startsWith( "/" ))
@@ -140,4 +149,30 @@ public final class UriUtils {
 
 		return importUri.normalize();
 	}
+
+
+	/**
+	 * Gets the URI of the directory that contains a file.
+	 * <p>
+	 * Unlike <code>uri.resolve( "." )</code>, it also works with archive entries
+	 * (e.g. <code>jar:file:/archive.zip!/graph/main.graph</code>).
+	 * </p>
+	 *
+	 * @param fileUri the URI of a file (not null)
+	 * @return the URI of its parent directory, ending with a '/'
+	 * @throws URISyntaxException if the URI could not be built
+	 */
+	public static URI getParentUri( URI fileUri ) throws URISyntaxException {
+
+		URI result;
+		if( fileUri.isOpaque()) {
+			String s = fileUri.toString();
+			result = new URI( s.substring( 0, s.lastIndexOf( '/' ) + 1 ));
+
+		} else {
+			result = fileUri.resolve( "." );
+		}
+
+		return result;
+	}
 }
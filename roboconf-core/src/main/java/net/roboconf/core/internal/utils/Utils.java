@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +33,7 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 /**
  * Various utilities.
@@ -119,6 +121,21 @@ public final class Utils {
 	}
 
 
+	/**
+	 * Closes a reader quietly.
+	 * @param reader a reader (can be null)
+	 */
+	public static void closeQuietly( Reader reader ) {
+		if( reader != null ) {
+			try {
+				reader.close();
+			} catch( IOException e ) {
+				// nothing
+			}
+		}
+	}
+
+
 	/**
 	 * Copies the content from in into os.
 	 * <p>
@@ -132,7 +149,7 @@ public final class Utils {
 	 */
 	public static void copyStream( InputStream in, OutputStream os ) throws IOException {
 
-		byte[] buf = new byte[ 1024 ];
+		byte[] buf = new byte[ 8192 ];
 		int len;
 		while((len = in.read( buf )) > 0) {
 			os.write( buf, 0, len );
@@ -251,6 +268,49 @@ public final class Utils {
 	}
 
 
+	/**
+	 * Extracts a ZIP archive from a stream, in a single pass.
+	 * <p>
+	 * Unlike {@link #extractZipArchive(File, File)}, it does not require the
+	 * archive to be stored on the disk first. The stream is not closed by this method.
+	 * </p>
+	 *
+	 * @param in an input stream with ZIP content (not null)
+	 * @param targetDirectory the target directory (created if necessary)
+	 * @throws IOException if something went wrong
+	 */
+	public static void extractZipArchive( InputStream in, File targetDirectory ) throws IOException {
+
+		if( in == null || targetDirectory == null )
+			throw new IllegalArgumentException( "The input stream and the target directory cannot be null." );
+
+		if( ! targetDirectory.exists() && ! targetDirectory.mkdirs())
+			throw new IOException( "Failed to create target directory " + targetDirectory.getName() + "." );
+
+		ZipInputStream zipIn = new ZipInputStream( in );
+		String targetPath = targetDirectory.getCanonicalPath() + File.separator;
+		for( ZipEntry entry = zipIn.getNextEntry(); entry != null; entry = zipIn.getNextEntry()) {
+
+			// Entries must not be extracted outside the target directory
+			File f = new File( targetDirectory, entry.getName());
+			if( ! f.getCanonicalPath().startsWith( targetPath ))
+				throw new IOException( "Invalid entry in the ZIP archive: " + entry.getName());
+
+			if( entry.isDirectory()) {
+				if( ! f.exists() && ! f.mkdirs())
+					throw new IOException( "Failed to create directory for entry: " + entry.getName());
+
+			} else if( ! f.getParentFile().exists() && ! f.getParentFile().mkdirs()) {
+				throw new IOException( "Failed to create parent directory for entry: " + entry.getName());
+
+			} else {
+				// ZipInputStream only returns the content of the current entry
+				copyStream( zipIn, f );
+			}
+		}
+	}
+
+
 	/**
 	 * Deletes files recursively.
 	 * @param files the files to delete
@@ -19,6 +19,7 @@ package net.roboconf.core.model;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 
 import net.roboconf.core.internal.utils.Utils;
@@ -135,16 +136,27 @@ public class ApplicationDescriptor {
 	 */
 	public static ApplicationDescriptor load( File f ) throws IOException {
 
-		Properties properties = new Properties();
 		FileInputStream in = null;
 		try {
 			in = new FileInputStream( f );
-			properties.load( in );
+			return load( in );
 
 		} finally {
 			Utils.closeQuietly( in );
 		}
+	}
+
 
+	/**
+	 * Loads an application descriptor.
+	 * @param in an input stream (not null, not closed by this method)
+	 * @return an application descriptor (not null)
+	 * @throws IOException if the stream could not be read
+	 */
+	public static ApplicationDescriptor load( InputStream in ) throws IOException {
+
+		Properties properties = new Properties();
+		properties.load( in );
 		return load( properties );
 	}
 }
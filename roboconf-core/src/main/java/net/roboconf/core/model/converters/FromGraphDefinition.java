@@ -17,27 +17,25 @@
 package net.roboconf.core.model.converters;
 
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import net.roboconf.core.Constants;
 import net.roboconf.core.ErrorCode;
-import net.roboconf.core.internal.model.parsing.FileDefinitionParser;
 import net.roboconf.core.internal.utils.ModelUtils;
+import net.roboconf.core.internal.utils.StringPool;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.io.FileDefinitionCache;
 import net.roboconf.core.model.parsing.AbstractBlock;
 import net.roboconf.core.model.parsing.AbstractBlockHolder;
 import net.roboconf.core.model.parsing.BlockComponent;
 import net.roboconf.core.model.parsing.BlockFacet;
-import net.roboconf.core.model.parsing.BlockImport;
 import net.roboconf.core.model.parsing.FileDefinition;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Graphs;
@@ -49,10 +47,9 @@ import net.roboconf.core.model.runtime.Graphs;
 public class FromGraphDefinition {
 
 	private final FileDefinition definition;
+	private final FileDefinitionCache cache;
 	private final Collection<ModelError> errors = new ArrayList<ModelError> ();
 
-	private Map<String,BlockImport> importUriToImportDeclaration;
-	private Set<String> alreadyProcessedUris;
 	private Map<String,List<BlockFacet>> facetNameToRelationFacets;
 	private Map<String,List<BlockComponent>> componentNameToRelationComponents;
 	private Map<String,Component> componentNameToComponent;
@@ -64,11 +61,22 @@ public class FromGraphDefinition {
 	 * @param definition its type must be either {@link FileDefinition#GRAPH} or {@link FileDefinition#AGGREGATOR}
 	 */
 	public FromGraphDefinition( FileDefinition definition ) {
+		this( definition, null );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param definition its type must be either {@link FileDefinition#GRAPH} or {@link FileDefinition#AGGREGATOR}
+	 * @param cache a cache for imported files (null to parse all of them)
+	 */
+	public FromGraphDefinition( FileDefinition definition, FileDefinitionCache cache ) {
 		if( definition.getFileType() != FileDefinition.AGGREGATOR
 				&& definition.getFileType() != FileDefinition.GRAPH )
 			throw new IllegalArgumentException( "File must be of type GRAPH or AGGREGATOR." );
 
 		this.definition = definition;
+		this.cache = cache;
 	}
 
 
@@ -94,48 +102,12 @@ public class FromGraphDefinition {
 		this.componentNameToRelationComponents = new HashMap<String,List<BlockComponent>> ();
 		this.componentNameToComponent = new HashMap<String,Component> ();
 		this.componentNameToComponentChildrenNames = new HashMap<String,Collection<String>> ();
-		this.importUriToImportDeclaration = new HashMap<String,BlockImport> ();
-		this.alreadyProcessedUris = new HashSet<String> ();
 		this.errors.clear();
 
 		// Process the file and its imports
-		processInstructions( this.definition );
-		this.alreadyProcessedUris.add( String.valueOf( this.definition.getFileLocation()));
-
-		while( ! this.importUriToImportDeclaration.isEmpty()) {
-			Entry<String,BlockImport> entry = this.importUriToImportDeclaration.entrySet().iterator().next();
-			String uri = entry.getKey();
-			this.importUriToImportDeclaration.remove( uri );
-			this.alreadyProcessedUris.add( uri );
-
-			if( this.alreadyProcessedUris.contains( uri ))
-				continue;
-
-			// Load the file
-			FileDefinition importedDefinition;
-			try {
-				importedDefinition = new FileDefinitionParser( uri, true ).read();
-
-			} catch( URISyntaxException e ) {
-				ModelError error = new ModelError( ErrorCode.CO_UNREACHABLE_FILE, 0 );
-				error.setDetails( "Import location: " + uri );
-				this.errors.add( error );
-				continue;
-			}
-
-			// Check the file type
-			if( this.definition.getFileType() != FileDefinition.AGGREGATOR
-					&& this.definition.getFileType() != FileDefinition.GRAPH ) {
-
-				ModelError error = new ModelError( ErrorCode.CO_NOT_A_GRAPH, 0 );
-				error.setDetails( "Imported file  " + uri + " is of type " + FileDefinition.fileTypeAsString( this.definition.getFileType()) + "." );
-				this.errors.add( error );
-				continue;
-			}
-
-			// Process the file
-			processInstructions( importedDefinition );
-		}
+		ImportedDefinitionsLoader loader = new ImportedDefinitionsLoader( FileDefinition.GRAPH, ErrorCode.CO_NOT_A_GRAPH, this.errors, this.cache );
+		for( FileDefinition def : loader.load( this.definition ))
+			processInstructions( def );
 
 		// Check names uniqueness
 		if( this.errors.isEmpty())
@@ -159,7 +131,7 @@ public class FromGraphDefinition {
 
 	private void processInstructions( FileDefinition definition ) {
 
-		for( AbstractBlock block : this.definition.getBlocks()) {
+		for( AbstractBlock block : definition.getBlocks()) {
 			switch( block.getInstructionType()) {
 			case AbstractBlock.COMPONENT:
 				processComponent((BlockComponent) block, definition.getFileLocation());
@@ -169,10 +141,6 @@ public class FromGraphDefinition {
 				processFacet((BlockFacet) block);
 				break;
 
-			case AbstractBlock.IMPORT:
-				processImport((BlockImport) block, definition.getFileLocation());
-				break;
-
 			default:
 				// nothing
 				break;
@@ -181,20 +149,6 @@ public class FromGraphDefinition {
 	}
 
 
-	private void processImport( BlockImport block, URI processedUri ) {
-		String uri = block.getUri().trim();
-
-		// FIXME: to deal with...
-		// try {
-		//	uri = UriUtils.buildNewURI( processedUri, uri ).toString();
-			this.importUriToImportDeclaration.put( uri, block );
-
-//		} catch( URISyntaxException e ) {
-//			throw new ConversionException( "An URI could not be built from the import definition.",  e, block );
-//		}
-	}
-
-
 	private void processFacet( BlockFacet block ) {
 
 		List<BlockFacet> facets = this.facetNameToRelationFacets.get( block.getName());
@@ -209,7 +163,7 @@ public class FromGraphDefinition {
 	private void processComponent( BlockComponent block, URI processedUri ) {
 
 		Component component = new Component();
-		component.setName( block.getName());
+		component.setName( StringPool.intern( block.getName()));
 		component.setInstallerName( ModelUtils.getPropertyValue( block, Constants.PROPERTY_GRAPH_INSTALLER ));
 		component.setAlias( ModelUtils.getPropertyValue( block, Constants.PROPERTY_COMPONENT_ALIAS ));
 		component.getFacetNames().addAll( ModelUtils.getPropertyValues( block, Constants.PROPERTY_COMPONENT_FACETS ));
@@ -219,7 +173,7 @@ public class FromGraphDefinition {
 			if( optional )
 				s = s.substring( 0, s.length() - Constants.PROPERTY_COMPONENT_OPTIONAL_IMPORT.length()).trim();
 
-			component.getImportedVariables().put( s, optional );
+			component.getImportedVariables().put( StringPool.intern( s ), optional );
 		}
 
 		component.getExportedVariables().putAll( ModelUtils.getExportedVariables( block ));
@@ -339,7 +293,7 @@ public class FromGraphDefinition {
 					if( optional )
 						s = s.substring( 0, s.length() - Constants.PROPERTY_COMPONENT_OPTIONAL_IMPORT.length()).trim();
 
-					c.getImportedVariables().put( s, optional );
+					c.getImportedVariables().put( StringPool.intern( s ), optional );
 				}
 
 				if( c.getInstallerName() == null )
@@ -386,6 +340,7 @@ public class FromGraphDefinition {
 				result.getRootComponents().add( c );
 		}
 
+		result.indexComponents();
 		return result;
 	}
 }
@@ -17,7 +17,6 @@
 package net.roboconf.core.model.converters;
 
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -26,38 +25,47 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import net.roboconf.core.Constants;
 import net.roboconf.core.ErrorCode;
 import net.roboconf.core.internal.model.parsing.FileDefinitionParser;
+import net.roboconf.core.internal.model.parsing.IBlockListener;
 import net.roboconf.core.internal.utils.ModelUtils;
+import net.roboconf.core.internal.utils.StringPool;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.helpers.ComponentHelpers;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.helpers.VariableHelpers;
+import net.roboconf.core.model.io.FileDefinitionCache;
 import net.roboconf.core.model.parsing.AbstractBlock;
 import net.roboconf.core.model.parsing.AbstractBlockHolder;
-import net.roboconf.core.model.parsing.BlockImport;
 import net.roboconf.core.model.parsing.BlockInstanceOf;
 import net.roboconf.core.model.parsing.BlockProperty;
 import net.roboconf.core.model.parsing.FileDefinition;
 import net.roboconf.core.model.runtime.Graphs;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.validators.ParsingModelValidator;
 
 /**
  * To build a collection of {@link Instance} from a {@link FileDefinition}.
+ * <p>
+ * Instances can also be built while the file is being read (streaming mode). In this mode,
+ * every root instance block is converted, and then dropped, as soon as it has been read. The
+ * whole block tree of the file is never kept in memory.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class FromInstanceDefinition {
 
 	private final FileDefinition definition;
+	private final URI fileUri;
+	private final FileDefinitionCache cache;
 	private final Collection<ModelError> errors = new ArrayList<ModelError> ();
+	private int streamedFileType = FileDefinition.UNDETERMINED;
 
-	private Map<String,BlockImport> importUriToImportDeclaration;
 	private Map<String,List<BlockInstanceOf>> rootInstanceNameToBlocks;
-	private Set<String> alreadyProcessedUris;
 	private Collection<Instance> rootInstances;
 	private Graphs graphs;
 
@@ -67,11 +75,56 @@ public class FromInstanceDefinition {
 	 * @param definition its type must be either {@link FileDefinition#INSTANCE} or {@link FileDefinition#AGGREGATOR}
 	 */
 	public FromInstanceDefinition( FileDefinition definition ) {
+		this( definition, null );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param definition its type must be either {@link FileDefinition#INSTANCE} or {@link FileDefinition#AGGREGATOR}
+	 * @param cache a cache for imported files (null to parse all of them)
+	 */
+	public FromInstanceDefinition( FileDefinition definition, FileDefinitionCache cache ) {
 		if( definition.getFileType() != FileDefinition.AGGREGATOR
 				&& definition.getFileType() != FileDefinition.INSTANCE )
 			throw new IllegalArgumentException( "File must be of type INSTANCE or AGGREGATOR." );
 
 		this.definition = definition;
+		this.fileUri = null;
+		this.cache = cache;
+	}
+
+
+	/**
+	 * Constructor for the streaming mode.
+	 * <p>
+	 * In this mode, {@link #getErrors()} also contains the parsing and validation errors
+	 * of the file. As with the two-phase approach (parsing, validation and then conversion),
+	 * conversion errors are only reported if there were no parsing and no validation error.
+	 * Imported files are not streamed.
+	 * </p>
+	 *
+	 * @param fileUri the URI of an instance definition file
+	 */
+	public FromInstanceDefinition( URI fileUri ) {
+		this( fileUri, null );
+	}
+
+
+	/**
+	 * Constructor for the streaming mode.
+	 * <p>
+	 * The streamed file itself is never cached: only imported files are read through the cache.
+	 * </p>
+	 *
+	 * @param fileUri the URI of an instance definition file
+	 * @param cache a cache for imported files (null to parse all of them)
+	 * @see #FromInstanceDefinition(URI)
+	 */
+	public FromInstanceDefinition( URI fileUri, FileDefinitionCache cache ) {
+		this.definition = null;
+		this.fileUri = fileUri;
+		this.cache = cache;
 	}
 
 
@@ -83,6 +136,18 @@ public class FromInstanceDefinition {
 	}
 
 
+	/**
+	 * @return the type of the converted file (one of the {@link FileDefinition} constants)
+	 * <p>
+	 * In streaming mode, it is only known once {@link #buildInstances(Graphs)} has been invoked,
+	 * and it remains {@link FileDefinition#UNDETERMINED} if the file had parsing errors.
+	 * </p>
+	 */
+	public int getFileType() {
+		return this.definition != null ? this.definition.getFileType() : this.streamedFileType;
+	}
+
+
 	/**
 	 * @param graphs the graph(s)
 	 * @return a non-null collection of root rootInstances wrapped in machines
@@ -94,50 +159,26 @@ public class FromInstanceDefinition {
 	public Collection<Instance> buildInstances( Graphs graphs ) {
 
 		// Initialize collections
-		this.importUriToImportDeclaration = new HashMap<String,BlockImport> ();
 		this.rootInstanceNameToBlocks = new HashMap<String,List<BlockInstanceOf>> ();
-		this.alreadyProcessedUris = new HashSet<String> ();
 		this.rootInstances = new ArrayList<Instance> ();
 		this.graphs = graphs;
 		this.errors.clear();
 
 		// Process the file and its imports
-		processInstructions( this.definition );
-		this.alreadyProcessedUris.add( String.valueOf( this.definition.getFileLocation()));
-
-		while( ! this.importUriToImportDeclaration.isEmpty()) {
-			Entry<String,BlockImport> entry = this.importUriToImportDeclaration.entrySet().iterator().next();
-			String uri = entry.getKey();
-			this.importUriToImportDeclaration.remove( uri );
-			this.alreadyProcessedUris.add( uri );
-
-			if( this.alreadyProcessedUris.contains( uri ))
-				continue;
-
-			// Load the file
-			FileDefinition importedDefinition;
-			try {
-				importedDefinition = new FileDefinitionParser( uri, true ).read();
-
-			} catch( URISyntaxException e ) {
-				ModelError error = new ModelError( ErrorCode.CO_UNREACHABLE_FILE, 0 );
-				error.setDetails( "Import location: " + uri );
-				this.errors.add( error );
-				continue;
-			}
-
-			// Check the file type
-			if( this.definition.getFileType() != FileDefinition.AGGREGATOR
-					&& this.definition.getFileType() != FileDefinition.GRAPH ) {
-
-				ModelError error = new ModelError( ErrorCode.CO_NOT_A_GRAPH, 0 );
-				error.setDetails( "Imported file  " + uri + " is of type " + FileDefinition.fileTypeAsString( this.definition.getFileType()) + "." );
-				this.errors.add( error );
-				continue;
-			}
-
-			// Process the file
-			processInstructions( importedDefinition );
+		ImportedDefinitionsLoader loader = new ImportedDefinitionsLoader( FileDefinition.INSTANCE, ErrorCode.CO_NOT_INSTANCES, this.errors, this.cache );
+		if( this.definition != null ) {
+			for( FileDefinition def : loader.load( this.definition ))
+				processInstructions( def );
+
+		} else {
+			FileDefinition def = streamInstructions();
+			if( def == null )
+				return this.rootInstances;
+
+			// The streamed file only contains the blocks that were not consumed (imports...)
+			List<FileDefinition> defs = loader.load( def );
+			for( FileDefinition importedDef : defs.subList( 1, defs.size()))
+				processInstructions( importedDef );
 		}
 
 		// Check uniqueness
@@ -146,7 +187,7 @@ public class FromInstanceDefinition {
 		
 		// Set real exports
 		for( Instance rootInstance : rootInstances ) {
-			for( Instance inst : InstanceHelpers.buildHierarchicalList( rootInstance ))
+			for( Instance inst : InstanceHelpers.browseHierarchically( rootInstance ))
 				inst.getExports().putAll( InstanceHelpers.getExportedVariables( inst ));
 		}
 			
@@ -156,16 +197,12 @@ public class FromInstanceDefinition {
 
 	private void processInstructions( FileDefinition definition ) {
 
-		for( AbstractBlock block : this.definition.getBlocks()) {
+		for( AbstractBlock block : definition.getBlocks()) {
 			switch( block.getInstructionType()) {
 			case AbstractBlock.INSTANCEOF:
 				processInstance((BlockInstanceOf) block, definition.getFileLocation());
 				break;
 
-			case AbstractBlock.IMPORT:
-				processImport((BlockImport) block, definition.getFileLocation());
-				break;
-
 			default:
 				// nothing
 				break;
@@ -174,17 +211,58 @@ public class FromInstanceDefinition {
 	}
 
 
-	private void processImport( BlockImport block, URI processedUri ) {
-		String uri = block.getUri().trim();
+	/**
+	 * Reads the file and converts root instances while they are read.
+	 * @return the definition file, with the blocks that were not consumed, or null if the file is not valid
+	 */
+	private FileDefinition streamInstructions() {
+
+		final List<ModelError> validationErrors = new ArrayList<ModelError> ();
+		final FileDefinitionParser parser = new FileDefinitionParser( this.fileUri, true );
+		parser.setBlockListener( new IBlockListener() {
+			@Override
+			public boolean blockRead( AbstractBlock block ) {
+
+				// Keep imports and ignore the rest
+				if( block.getInstructionType() != AbstractBlock.INSTANCEOF )
+					return block.getInstructionType() != AbstractBlock.IMPORT;
 
-		// FIXME: to deal with...
-		// try {
-		//	uri = UriUtils.buildNewURI( processedUri, uri ).toString();
-			this.importUriToImportDeclaration.put( uri, block );
+				// Conversion results would not be used if there were errors
+				validationErrors.addAll( ParsingModelValidator.validate( block ));
+				if( validationErrors.isEmpty()
+						&& block.getDeclaringFile().getParsingErrors().isEmpty())
+					processInstance((BlockInstanceOf) block, FromInstanceDefinition.this.fileUri );
 
-//		} catch( URISyntaxException e ) {
-//			throw new ConversionException( "An URI could not be built from the import definition.",  e, block );
-//		}
+				return true;
+			}
+		});
+
+		// Parsing errors prevail over the file type, then over validation errors, and then over conversion errors.
+		// This is the order used when a project is loaded with the two-phase approach.
+		FileDefinition result = parser.read();
+		this.streamedFileType = result.getParsingErrors().isEmpty() ? result.getFileType() : FileDefinition.UNDETERMINED;
+		validationErrors.addAll( ParsingModelValidator.validate( result ));
+		if( ! result.getParsingErrors().isEmpty()) {
+			this.errors.clear();
+			this.errors.addAll( result.getParsingErrors());
+			result = null;
+
+		} else if( this.streamedFileType != FileDefinition.INSTANCE
+				&& this.streamedFileType != FileDefinition.AGGREGATOR ) {
+
+			ModelError error = new ModelError( ErrorCode.CO_NOT_INSTANCES, 0 );
+			error.setDetails( "File " + this.fileUri + " is of type " + FileDefinition.fileTypeAsString( result.getFileType()) + "." );
+			this.errors.clear();
+			this.errors.add( error );
+			result = null;
+
+		} else if( ! validationErrors.isEmpty()) {
+			this.errors.clear();
+			this.errors.addAll( validationErrors );
+			result = null;
+		}
+
+		return result;
 	}
 
 
@@ -203,7 +281,7 @@ public class FromInstanceDefinition {
 			// Process the current
 			BlockInstanceOf currentBlock = entry.getKey();
 			Instance instance = entry.getValue();
-			instance.setName( ModelUtils.getPropertyValue( currentBlock, Constants.PROPERTY_INSTANCE_NAME ));
+			instance.setName( StringPool.intern( ModelUtils.getPropertyValue( currentBlock, Constants.PROPERTY_INSTANCE_NAME )));
 			instance.setChannel( ModelUtils.getPropertyValue( currentBlock, Constants.PROPERTY_INSTANCE_CHANNEL ));
 			instance.setComponent( ComponentHelpers.findComponent( this.graphs, currentBlock.getName()));
 
@@ -216,8 +294,11 @@ public class FromInstanceDefinition {
 							|| Constants.PROPERTY_INSTANCE_NAME.equals( pName ))
 						continue;
 
+					// Unknown components are reported by the runtime validation
 					String pValue = ((BlockProperty) innerBlock).getValue();
-					resolveOverriddenExport( innerBlock, instance, pName, pValue );
+					if( instance.getComponent() != null )
+						resolveOverriddenExport( innerBlock, instance, pName, pValue );
+
 					continue;
 				}
 
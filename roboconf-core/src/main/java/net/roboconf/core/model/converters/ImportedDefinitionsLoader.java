@@ -0,0 +1,274 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.converters;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.roboconf.core.ErrorCode;
+import net.roboconf.core.internal.model.parsing.FileDefinitionParser;
+import net.roboconf.core.internal.utils.SharedExecutor;
+import net.roboconf.core.internal.utils.UriUtils;
+import net.roboconf.core.model.ModelError;
+import net.roboconf.core.model.io.FileDefinitionCache;
+import net.roboconf.core.model.parsing.AbstractBlock;
+import net.roboconf.core.model.parsing.BlockImport;
+import net.roboconf.core.model.parsing.FileDefinition;
+
+/**
+ * Loads a definition file and all the files it imports, directly or not.
+ * <p>
+ * Imports are resolved level by level. All the files imported by a level are parsed
+ * concurrently. The results are then merged in the declaration order, so that the list of
+ * definitions and the errors are always the same, whatever the order in which files were parsed.
+ * </p>
+ * <p>
+ * When a {@link FileDefinitionCache} is given, imported files are read through it. Files that
+ * did not change since they were last read are not parsed again.
+ * </p>
+ * <p>
+ * Parsing tasks are executed by the {@link SharedExecutor}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+class ImportedDefinitionsLoader {
+
+	private final int expectedFileType;
+	private final ErrorCode invalidTypeErrorCode;
+	private final Collection<ModelError> errors;
+	private final FileDefinitionCache cache;
+
+
+	/**
+	 * Constructor.
+	 * @param expectedFileType the type expected for imported files ({@link FileDefinition#AGGREGATOR} is always accepted)
+	 * @param invalidTypeErrorCode the error code to use when an imported file has another type
+	 * @param errors the collection where errors will be added (not null)
+	 * @param cache a cache for imported files (null to parse all of them)
+	 */
+	ImportedDefinitionsLoader( int expectedFileType, ErrorCode invalidTypeErrorCode, Collection<ModelError> errors, FileDefinitionCache cache ) {
+		this.expectedFileType = expectedFileType;
+		this.invalidTypeErrorCode = invalidTypeErrorCode;
+		this.errors = errors;
+		this.cache = cache;
+	}
+
+
+	/**
+	 * Loads a definition and all its imports.
+	 * @param definition the main definition (not null)
+	 * @return a non-null list of definitions, starting with the main one, and sorted in breadth-first order
+	 */
+	List<FileDefinition> load( FileDefinition definition ) {
+
+		List<FileDefinition> result = new ArrayList<FileDefinition> ();
+		Set<String> alreadyProcessedUris = new HashSet<String> ();
+		alreadyProcessedUris.add( String.valueOf( definition.getFileLocation()));
+
+		List<FileDefinition> currentLevel = new ArrayList<FileDefinition> ();
+		currentLevel.add( definition );
+
+		while( ! currentLevel.isEmpty()) {
+			result.addAll( currentLevel );
+
+			// Find the new imports, in the declaration order
+			List<String> uris = new ArrayList<String> ();
+			for( FileDefinition def : currentLevel ) {
+				for( AbstractBlock block : def.getBlocks()) {
+					if( block.getInstructionType() != AbstractBlock.IMPORT )
+						continue;
+
+					String uri = resolveImport((BlockImport) block, def.getFileLocation());
+					if( uri != null && alreadyProcessedUris.add( uri ))
+						uris.add( uri );
+				}
+			}
+
+			// Parse them concurrently
+			List<Future<FileDefinition>> futures = new ArrayList<Future<FileDefinition>> ();
+			ExecutorService executor = uris.size() > 1 && ! SharedExecutor.isWorkerThread() ? SharedExecutor.getInstance() : null;
+
+			final FileDefinitionCache theCache = this.cache;
+			for( final String uri : uris ) {
+				Callable<FileDefinition> task = new Callable<FileDefinition> () {
+					@Override
+					public FileDefinition call() throws Exception {
+						return theCache != null
+								? theCache.read( new URI( uri )).getDefinition()
+								: new FileDefinitionParser( uri, true ).read();
+					}
+				};
+
+				futures.add( executor != null ? executor.submit( task ) : new ImmediateFuture( task ));
+			}
+
+			// Merge the results in the declaration order
+			currentLevel = new ArrayList<FileDefinition> ();
+			for( int i=0; i<uris.size(); i++ ) {
+				FileDefinition importedDefinition = getResult( futures.get( i ), uris.get( i ));
+				if( importedDefinition == null )
+					continue;
+
+				int type = importedDefinition.getFileType();
+				if( ! importedDefinition.getParsingErrors().isEmpty()) {
+					this.errors.addAll( importedDefinition.getParsingErrors());
+
+				} else if( type != FileDefinition.AGGREGATOR && type != this.expectedFileType ) {
+					ModelError error = new ModelError( this.invalidTypeErrorCode, 0 );
+					error.setDetails( "Imported file " + uris.get( i ) + " is of type " + FileDefinition.fileTypeAsString( type ) + "." );
+					this.errors.add( error );
+
+				} else {
+					currentLevel.add( importedDefinition );
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Resolves the URI of an import.
+	 * @param block an import block (not null)
+	 * @param processedUri the URI of the file that declares this import (can be null)
+	 * @return the URI of the imported file, or null if it could not be resolved
+	 */
+	private String resolveImport( BlockImport block, URI processedUri ) {
+
+		String uri = block.getUri().trim();
+		String result = null;
+		try {
+			// Relative imports are resolved against the directory of the importing file
+			if( processedUri == null )
+				result = UriUtils.urlToUri( uri ).toString();
+			else
+				result = UriUtils.buildNewURI( UriUtils.getParentUri( processedUri ), uri ).toString();
+
+		} catch( URISyntaxException e ) {
+			ModelError error = new ModelError( ErrorCode.CO_UNREACHABLE_FILE, block.getLine());
+			error.setDetails( "Import location: " + uri );
+			this.errors.add( error );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Gets the result of a parsing task.
+	 * @param future a future (not null)
+	 * @param uri the URI of the parsed file
+	 * @return the parsed definition, or null if it could not be read
+	 */
+	private FileDefinition getResult( Future<FileDefinition> future, String uri ) {
+
+		FileDefinition result = null;
+		try {
+			result = future.get();
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			addUnreachableFileError( uri );
+
+		} catch( ExecutionException e ) {
+			addUnreachableFileError( uri );
+		}
+
+		return result;
+	}
+
+
+	private void addUnreachableFileError( String uri ) {
+		ModelError error = new ModelError( ErrorCode.CO_UNREACHABLE_FILE, 0 );
+		error.setDetails( "Import location: " + uri );
+		this.errors.add( error );
+	}
+
+
+	/**
+	 * A future that runs its task immediately, in the current thread.
+	 * <p>
+	 * Used when there is only one file to parse: a thread pool would be useless.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class ImmediateFuture implements Future<FileDefinition> {
+
+		private FileDefinition result;
+		private Exception exception;
+
+
+		/**
+		 * Constructor.
+		 * @param task the task to run (not null)
+		 */
+		ImmediateFuture( Callable<FileDefinition> task ) {
+			try {
+				this.result = task.call();
+
+			} catch( Exception e ) {
+				this.exception = e;
+			}
+		}
+
+
+		@Override
+		public boolean cancel( boolean mayInterruptIfRunning ) {
+			return false;
+		}
+
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+
+		@Override
+		public boolean isDone() {
+			return true;
+		}
+
+
+		@Override
+		public FileDefinition get() throws ExecutionException {
+			if( this.exception != null )
+				throw new ExecutionException( this.exception );
+
+			return this.result;
+		}
+
+
+		@Override
+		public FileDefinition get( long timeout, TimeUnit unit ) throws ExecutionException {
+			return get();
+		}
+	}
+}
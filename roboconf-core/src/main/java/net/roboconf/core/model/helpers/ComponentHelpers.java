@@ -16,9 +16,17 @@
 
 package net.roboconf.core.model.helpers;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
 import net.roboconf.core.model.runtime.Application;
@@ -41,6 +49,11 @@ public final class ComponentHelpers {
 
 	/**
 	 * Finds a component by name.
+	 * <p>
+	 * If the components of the graph(s) were indexed, the index is used.
+	 * Otherwise, the graph(s) are browsed.
+	 * </p>
+	 *
 	 * @param graphs the graph(s) (can be null)
 	 * @param name the component name (not null)
 	 * @return a component (can be null)
@@ -48,18 +61,21 @@ public final class ComponentHelpers {
 	public static Component findComponent( Graphs graphs, String name ) {
 
 		Component result = null;
-		List<Component> components = new ArrayList<Component> ();
-		if( graphs != null )
-			components.addAll( graphs.getRootComponents());
-
-		while( result == null
-				&& ! components.isEmpty()) {
-
-			Component current = components.remove( 0 );
-			if( name.equals( current.getName()))
-				result = current;
-			else
-				components.addAll( current.getChildren());
+		if( graphs != null && graphs.getComponentsByName() != null ) {
+			result = graphs.getComponentsByName().get( name );
+
+		} else if( graphs != null ) {
+			Set<Component> alreadyVisited = new HashSet<Component> ();
+			Queue<Component> toProcess = new ArrayDeque<Component>( graphs.getRootComponents());
+			while( result == null
+					&& ! toProcess.isEmpty()) {
+
+				Component current = toProcess.poll();
+				if( name.equals( current.getName()))
+					result = current;
+				else if( alreadyVisited.add( current ))
+					toProcess.addAll( current.getChildren());
+			}
 		}
 
 		return result;
@@ -82,25 +98,31 @@ public final class ComponentHelpers {
 
 	/**
 	 * Finds all the components of a graph.
+	 * <p>
+	 * If the components of the graph(s) were indexed, the index is used.
+	 * Otherwise, the graph(s) are browsed.
+	 * </p>
+	 *
 	 * @param graphs a set of graphs
 	 * @return a non-null list of components
 	 */
 	public static List<Component> findAllComponents( Graphs graphs ) {
 
 		List<Component> result = new ArrayList<Component> ();
-		Set<Component> alreadyVisisted = new HashSet<Component> ();
-		List<Component> toProcess = new ArrayList<Component> ();
-
-		toProcess.addAll( graphs.getRootComponents());
-		while( ! toProcess.isEmpty()) {
-
-			Component current = toProcess.remove( 0 );
-			if( alreadyVisisted.contains( current ))
-				continue;
+		if( graphs.getComponentsByName() != null ) {
+			result.addAll( graphs.getComponentsByName().values());
 
-			alreadyVisisted.add( current );
-			result.add( current );
-			toProcess.addAll( current.getChildren());
+		} else {
+			Set<Component> alreadyVisited = new HashSet<Component> ();
+			Queue<Component> toProcess = new ArrayDeque<Component>( graphs.getRootComponents());
+			while( ! toProcess.isEmpty()) {
+
+				Component current = toProcess.poll();
+				if( alreadyVisited.add( current )) {
+					result.add( current );
+					toProcess.addAll( current.getChildren());
+				}
+			}
 		}
 
 		return result;
@@ -124,44 +146,223 @@ public final class ComponentHelpers {
 
 	/**
 	 * Searches for a loop in the graph starting from rootComponent.
+	 * <p>
+	 * The graph is browsed in depth-first order, and every component is explored only once.
+	 * </p>
+	 *
 	 * @param component the component from which we introspect (not null)
 	 * @return null if no cycle was found, a string describing the cycle otherwise
 	 */
 	public static String searchForLoop( Component component ) {
-		return searchForLoop( component, new ArrayList<Component> ());
+
+		// Components on the current path, with their position in this path
+		List<Component> path = new ArrayList<Component> ();
+		Map<Component,Integer> componentToPosition = new HashMap<Component,Integer> ();
+		Set<Component> alreadyExplored = new HashSet<Component> ();
+		Deque<Iterator<Component>> iterators = new ArrayDeque<Iterator<Component>> ();
+
+		path.add( component );
+		componentToPosition.put( component, 0 );
+		iterators.push( component.getChildren().iterator());
+
+		String result = null;
+		while( result == null && ! iterators.isEmpty()) {
+
+			Iterator<Component> it = iterators.peek();
+			if( ! it.hasNext()) {
+				iterators.pop();
+				Component explored = path.remove( path.size() - 1 );
+				componentToPosition.remove( explored );
+				alreadyExplored.add( explored );
+				continue;
+			}
+
+			Component child = it.next();
+			Integer position = componentToPosition.get( child );
+			if( position != null ) {
+				StringBuilder sb = new StringBuilder();
+				for( int i=position; i<path.size(); i++ ) {
+					sb.append( path.get( i ).getName());
+					sb.append( " -> " );
+				}
+
+				sb.append( child.getName());
+				result = sb.toString();
+
+			} else if( ! alreadyExplored.contains( child )) {
+				componentToPosition.put( child, path.size());
+				path.add( child );
+				iterators.push( child.getChildren().iterator());
+			}
+		}
+
+		return result;
 	}
 
 
 	/**
-	 * Searches for a loop in the graph starting from rootComponent.
-	 * @param component the component from which we introspect (not null)
-	 * @param ancestors the list of ancestor components (not null)
-	 * @return null if no cycle was found, a string describing the cycle otherwise
+	 * Finds all the cycles in graph(s).
+	 * <p>
+	 * Cycles are found in a single pass over the graph(s), by computing their strongly
+	 * connected components (Tarjan's algorithm). One cycle is reported per strongly connected component.
+	 * It means that if several cycles share components, only one of them is reported.
+	 * </p>
+	 *
+	 * @param graphs the graph(s) (not null)
+	 * @return a non-null list of strings describing the cycles (e.g. "c1 -> c2 -> c1")
 	 */
-	private static String searchForLoop( Component component, List<Component> ancestors ) {
+	public static List<String> findCycles( Graphs graphs ) {
+
+		List<String> result = new ArrayList<String> ();
+		for( List<Component> scc : findStronglyConnectedComponents( graphs.getRootComponents())) {
+
+			// The first component of a SCC is the first one that was discovered.
+			// Find the shortest way back to it (breadth-first search inside the SCC).
+			Component first = scc.get( 0 );
+			Set<Component> members = new HashSet<Component>( scc );
+			Map<Component,Component> componentToPredecessor = new HashMap<Component,Component> ();
+			Queue<Component> toProcess = new ArrayDeque<Component> ();
+			toProcess.add( first );
+
+			Component last = null;
+			while( last == null && ! toProcess.isEmpty()) {
+				Component current = toProcess.poll();
+				for( Component child : current.getChildren()) {
+					if( child.equals( first )) {
+						last = current;
+						break;
+					}
+
+					if( members.contains( child ) && ! componentToPredecessor.containsKey( child )) {
+						componentToPredecessor.put( child, current );
+						toProcess.add( child );
+					}
+				}
+			}
 
-		String result = null;
-		int index = ancestors.indexOf( component );
-		if( index >= 0 ) {
-			StringBuilder sb = new StringBuilder();
-			for( int i=index; i<ancestors.size(); i++ ) {
-				sb.append( ancestors.get( i ).getName());
+			// A SCC with a single component is only a cycle if it is its own child
+			if( last == null )
+				continue;
+
+			List<String> names = new ArrayList<String> ();
+			names.add( first.getName());
+			for( Component c = last; c != first; c = componentToPredecessor.get( c ))
+				names.add( c.getName());
+
+			StringBuilder sb = new StringBuilder( first.getName());
+			for( int i=names.size() - 1; i>0; i-- ) {
 				sb.append( " -> " );
+				sb.append( names.get( i ));
 			}
 
-			sb.append( component.getName());
-			result = sb.toString();
+			sb.append( " -> " );
+			sb.append( first.getName());
+			result.add( sb.toString());
+		}
 
-		} else {
-			ancestors.add( component );
-			for( Component childComponent : component.getChildren()) {
+		return result;
+	}
+
+
+	/**
+	 * Sorts the components of graph(s) topologically.
+	 * <p>
+	 * Every component appears before its children. The components that belong to a same cycle
+	 * are listed next to each other, in an undefined order (see {@link #findCycles(Graphs)}).
+	 * </p>
+	 * <p>
+	 * The result is computed in a single pass over the graph(s).
+	 * </p>
+	 *
+	 * @param graphs the graph(s) (not null)
+	 * @return a non-null list with all the components of the graph(s)
+	 */
+	public static List<Component> sortTopologically( Graphs graphs ) {
+
+		// Tarjan's algorithm finds the SCCs in reverse topological order
+		List<List<Component>> sccs = findStronglyConnectedComponents( graphs.getRootComponents());
+		List<Component> result = new ArrayList<Component> ();
+		for( int i=sccs.size() - 1; i>=0; i-- )
+			result.addAll( sccs.get( i ));
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the strongly connected components (SCC) of graph(s) with Tarjan's algorithm.
+	 * <p>
+	 * The algorithm is iterative, so that deep graphs cannot overflow the stack.
+	 * </p>
+	 *
+	 * @param rootComponents the root components (not null)
+	 * @return a non-null list of SCCs, in reverse topological order
+	 * (in every SCC, the first component is the first one that was discovered)
+	 */
+	private static List<List<Component>> findStronglyConnectedComponents( Collection<Component> rootComponents ) {
+
+		List<List<Component>> result = new ArrayList<List<Component>> ();
+		Map<Component,Integer> componentToIndex = new HashMap<Component,Integer> ();
+		Map<Component,Integer> componentToLowLink = new HashMap<Component,Integer> ();
+		Set<Component> onStack = new HashSet<Component> ();
+		Deque<Component> stack = new ArrayDeque<Component> ();
+
+		Deque<Component> path = new ArrayDeque<Component> ();
+		Deque<Iterator<Component>> iterators = new ArrayDeque<Iterator<Component>> ();
+
+		for( Component root : rootComponents ) {
+			if( componentToIndex.containsKey( root ))
+				continue;
+
+			// Discover the root
+			componentToIndex.put( root, componentToIndex.size());
+			componentToLowLink.put( root, componentToIndex.get( root ));
+			stack.push( root );
+			onStack.add( root );
+			path.push( root );
+			iterators.push( root.getChildren().iterator());
+
+			while( ! path.isEmpty()) {
+				Component current = path.peek();
+				Iterator<Component> it = iterators.peek();
+
+				if( it.hasNext()) {
+					Component child = it.next();
+					if( ! componentToIndex.containsKey( child )) {
+						componentToIndex.put( child, componentToIndex.size());
+						componentToLowLink.put( child, componentToIndex.get( child ));
+						stack.push( child );
+						onStack.add( child );
+						path.push( child );
+						iterators.push( child.getChildren().iterator());
+
+					} else if( onStack.contains( child )) {
+						int lowLink = Math.min( componentToLowLink.get( current ), componentToIndex.get( child ));
+						componentToLowLink.put( current, lowLink );
+					}
+
+					continue;
+				}
+
+				// All the children were processed
+				path.pop();
+				iterators.pop();
+				if( ! path.isEmpty()) {
+					Component parent = path.peek();
+					int lowLink = Math.min( componentToLowLink.get( parent ), componentToLowLink.get( current ));
+					componentToLowLink.put( parent, lowLink );
+				}
 
-				List<Component> updatedAncestors = new ArrayList<Component>( ancestors );
-				String s = searchForLoop( childComponent, updatedAncestors );
+				if( componentToLowLink.get( current ).equals( componentToIndex.get( current ))) {
+					LinkedList<Component> scc = new LinkedList<Component> ();
+					Component c;
+					do {
+						c = stack.pop();
+						onStack.remove( c );
+						scc.addFirst( c );
+					} while( c != current );
 
-				if( s != null ) {
-					result = s;
-					break;
+					result.add( scc );
 				}
 			}
 		}
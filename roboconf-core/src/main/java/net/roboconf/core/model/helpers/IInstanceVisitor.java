@@ -0,0 +1,34 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.helpers;
+
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * A visitor for instance hierarchies.
+ * @author Vincent Zurczak - Linagora
+ * @see InstanceHelpers#visitHierarchically(Instance, IInstanceVisitor)
+ */
+public interface IInstanceVisitor {
+
+	/**
+	 * Visits an instance.
+	 * @param instance the visited instance (not null)
+	 * @return true to visit its children, false to skip them (and all their descendants)
+	 */
+	boolean visit( Instance instance );
+}
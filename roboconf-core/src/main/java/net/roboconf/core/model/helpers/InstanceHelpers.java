@@ -17,15 +17,19 @@
 package net.roboconf.core.model.helpers;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 
 import net.roboconf.core.RoboconfError;
-import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.validators.RuntimeModelValidator;
@@ -50,22 +54,16 @@ public final class InstanceHelpers {
 	 * This string can be considered as a computed ID (or signature) of the instance.
 	 * It only makes sense within a given application.
 	 * </p>
+	 * <p>
+	 * The path is cached by the instance and refreshed when its ancestry changes.
+	 * Invoking this method repeatedly does not allocate anything.
+	 * </p>
 	 *
 	 * @param inst an instance (not null)
 	 * @return a string (not null)
 	 */
 	public static String computeInstancePath( Instance inst ) {
-
-		StringBuilder sb = new StringBuilder();
-		for( Instance current = inst; current != null; current = current.getParent()) {
-			StringBuilder currentSb = new StringBuilder( "/" );
-			if( ! Utils.isEmptyOrWhitespaces( current.getName()))
-				currentSb.append( current.getName());
-
-			sb.insert( 0, currentSb.toString());
-		}
-
-		return sb.toString();
+		return inst.getPath();
 	}
 
 
@@ -75,7 +73,7 @@ public final class InstanceHelpers {
 	 * @return true if they have the same path, false otherwise
 	 */
 	public static boolean haveSamePath( Instance i1, Instance i2 ) {
-		return computeInstancePath( i1 ).equals( computeInstancePath( i2 ));
+		return i1.getPath().equals( i2.getPath());
 	}
 
 
@@ -101,20 +99,65 @@ public final class InstanceHelpers {
 	public static List<Instance> buildHierarchicalList( Instance inst ) {
 
 		List<Instance> instanceList = new ArrayList<Instance> ();
-		List<Instance> todo = new ArrayList<Instance> ();
-		if( inst != null )
-			todo.add( inst );
-
-		while( ! todo.isEmpty()) {
-			Instance current = todo.remove( 0 );
+		for( Instance current : browseHierarchically( inst ))
 			instanceList.add( current );
-			todo.addAll( current.getChildren());
-		}
 
 		return instanceList;
 	}
 
 
+	/**
+	 * Browses instances hierarchically, without building any list.
+	 * <p>
+	 * The order is the same than the one of {@link #buildHierarchicalList(Instance)}.
+	 * Children are only queued when their parent is returned by the iterator.
+	 * </p>
+	 *
+	 * @param inst the instance from which we introspect (can be null)
+	 * @return a non-null iterable, whose iterators do not support removal
+	 */
+	public static Iterable<Instance> browseHierarchically( Instance inst ) {
+		List<Instance> rootInstances = inst == null ? new ArrayList<Instance>( 0 ) : Arrays.asList( inst );
+		return new HierarchicalIterable( rootInstances );
+	}
+
+
+	/**
+	 * Browses all the instances of an application, without building any list.
+	 * <p>
+	 * The order is the same than the one of {@link #getAllInstances(Application)}.
+	 * </p>
+	 *
+	 * @param application an application (not null)
+	 * @return a non-null iterable, whose iterators do not support removal
+	 */
+	public static Iterable<Instance> browseAllInstances( Application application ) {
+		return new HierarchicalIterable( application.getRootInstances());
+	}
+
+
+	/**
+	 * Visits instances hierarchically.
+	 * <p>
+	 * The order is the same than the one of {@link #buildHierarchicalList(Instance)},
+	 * except that the visitor can skip the children of a visited instance.
+	 * </p>
+	 *
+	 * @param inst the instance from which we introspect (not null)
+	 * @param visitor the visitor (not null)
+	 */
+	public static void visitHierarchically( Instance inst, IInstanceVisitor visitor ) {
+
+		Queue<Instance> toProcess = new ArrayDeque<Instance> ();
+		toProcess.add( inst );
+		while( ! toProcess.isEmpty()) {
+			Instance current = toProcess.poll();
+			if( visitor.visit( current ))
+				toProcess.addAll( current.getChildren());
+		}
+	}
+
+
 	/**
 	 * Inserts a child instance.
 	 * @param child a child instance (not null)
@@ -149,35 +192,24 @@ public final class InstanceHelpers {
 
 	/**
 	 * Finds an instance by name.
+	 * <p>
+	 * The application maintains an index of its instances.
+	 * When the instance is not indexed yet, the model is browsed and the result is indexed.
+	 * </p>
+	 *
 	 * @param application the application
 	 * @param instancePath the instance path
 	 * @return an instance, or null if it was not found
 	 */
 	public static Instance findInstanceByPath( Application application, String instancePath ) {
 
-		Collection<Instance> currentList = application.getRootInstances();
-		List<String> instanceNames = new ArrayList<String>( Arrays.asList( instancePath.split( "/" )));
-		if( Utils.isEmptyOrWhitespaces( instanceNames.get( 0 )))
-			instanceNames.remove( 0 );
-
-		// Every path segment points to an instance
-		Instance result = null;
-		for( String instanceName : instanceNames ) {
-
-			result = null;
-			for( Instance instance : currentList ) {
-				if( instanceName.equals( instance.getName())) {
-					result = instance;
-					break;
-				}
+		Instance result = application.findIndexedInstance( instancePath );
+		if( result == null ) {
+			synchronized( application ) {
+				result = findInstanceByPath( application.getRootInstances(), instancePath );
+				if( result != null )
+					application.indexInstance( result );
 			}
-
-			// The segment does not match any instance
-			if( result == null )
-				break;
-
-			// Otherwise, prepare the next iteration
-			currentList = result.getChildren();
 		}
 
 		return result;
@@ -191,11 +223,48 @@ public final class InstanceHelpers {
 	 * @return an instance, or null if it was not found
 	 */
 	public static Instance findInstanceByPath( Instance rootInstance, String instancePath ) {
+		return findInstanceByPath( Arrays.asList( rootInstance ), instancePath );
+	}
+
+
+	/**
+	 * Finds an instance by name, by browsing the model.
+	 * @param rootInstances the root instances
+	 * @param instancePath the instance path
+	 * @return an instance, or null if it was not found
+	 */
+	private static Instance findInstanceByPath( Collection<Instance> rootInstances, String instancePath ) {
+
+		// Every path segment points to an instance
+		Collection<Instance> currentList = rootInstances;
+		Instance result = null;
+		int start = instancePath.startsWith( "/" ) ? 1 : 0;
+		do {
+			int end = instancePath.indexOf( '/', start );
+			if( end == -1 )
+				end = instancePath.length();
+
+			result = null;
+			for( Instance instance : currentList ) {
+				String name = instance.getName();
+				if( name != null
+						&& name.length() == end - start
+						&& instancePath.startsWith( name, start )) {
+					result = instance;
+					break;
+				}
+			}
+
+			// The segment does not match any instance.
+			// Otherwise, prepare the next iteration.
+			if( result != null )
+				currentList = result.getChildren();
+
+			start = end + 1;
 
-		Application tempApplication = new Application();
-		tempApplication.getRootInstances().add( rootInstance );
+		} while( result != null && start < instancePath.length());
 
-		return findInstanceByPath( tempApplication, instancePath );
+		return result;
 	}
 
 
@@ -208,7 +277,7 @@ public final class InstanceHelpers {
 	public static List<Instance> findInstancesByComponentName( Application application, String componentName ) {
 
 		List<Instance> result = new ArrayList<Instance> ();
-		for( Instance inst : getAllInstances( application )) {
+		for( Instance inst : browseAllInstances( application )) {
 			if( componentName.equals( inst.getComponent().getName()))
 				result.add( inst );
 		}
@@ -249,8 +318,8 @@ public final class InstanceHelpers {
 	public static List<Instance> getAllInstances( Application application ) {
 
 		List<Instance> result = new ArrayList<Instance> ();
-		for( Instance instance : application.getRootInstances())
-			result.addAll( InstanceHelpers.buildHierarchicalList( instance ));
+		for( Instance instance : browseAllInstances( application ))
+			result.add( instance );
 
 		return result;
 	}
@@ -261,62 +330,92 @@ public final class InstanceHelpers {
 	 * <ol>
 	 * 		<li>Check if there is no child instance with this name.</li>
 	 * 		<li>Check that the graph(s) allow it (coherence with respect to the components).</li>
-	 * 		<li>Insert the instance.</li>
-	 * 		<li>Validate the application after insertion.</li>
-	 * 		<li>Critical error => revert the insertion.</li>
+	 * 		<li>Validate the instance and its children (incremental validation).</li>
+	 * 		<li>No critical error => insert the instance.</li>
 	 * </ol>
 	 * <p>
 	 * This method assumes the application is already valid before the insertion.
 	 * Which makes sense.
 	 * </p>
 	 *
-	 * @param application the application (not null)
+	 * @param application the application (can be null only if the parent instance is not null)
 	 * @param parentInstance the parent instance (can be null)
 	 * @param childInstance the child instance (not null)
 	 * @return true if the child instance could be inserted, false otherwise
 	 */
 	public static boolean tryToInsertChildInstance( Application application, Instance parentInstance, Instance childInstance ) {
+		return tryToInsertChildInstances( application, parentInstance, Arrays.asList( childInstance )).get( 0 );
+	}
 
-		boolean success = false;
-		Collection<Instance> list = parentInstance == null ? application.getRootInstances() : parentInstance.getChildren();
 
-		// First, make sure there is no child instance with this name before inserting.
-		// Otherwise, removing the child instance may result randomly.
-		boolean hasAlreadyAChildWithThisName = false;
-		for( Instance inst : list ) {
-			if(( hasAlreadyAChildWithThisName = childInstance.getName().equals( inst.getName())))
-				break;
-		}
+	/**
+	 * Tries to insert several child instances under a same parent, in one pass.
+	 * <p>
+	 * Every child instance is processed as in {@link #tryToInsertChildInstance(Application, Instance, Instance)}.
+	 * However, the existing children of the parent are only listed once, and only the new instances are validated.
+	 * Child instances are inserted in the list order.
+	 * </p>
+	 *
+	 * @param application the application (can be null only if the parent instance is not null)
+	 * @param parentInstance the parent instance (can be null)
+	 * @param childInstances the child instances (not null)
+	 * @return a non-null list with one boolean per child instance (true if it could be inserted, false otherwise)
+	 */
+	public static List<Boolean> tryToInsertChildInstances( Application application, Instance parentInstance, List<Instance> childInstances ) {
 
-		// We insert a "root instance"
-		if( parentInstance == null ) {
-			if( ! hasAlreadyAChildWithThisName
-					&& childInstance.getComponent().getAncestors().isEmpty()) {
+		List<Boolean> result;
+		if( application == null ) {
+			result = insertChildInstances( null, parentInstance, childInstances );
 
-				application.getRootInstances().add( childInstance );
-				success = true;
-				// No validation here, but maybe we should...
+		} else {
+			synchronized( application ) {
+				result = insertChildInstances( application, parentInstance, childInstances );
 			}
 		}
 
-		// We insert a child instance
-		else {
-			if( ! hasAlreadyAChildWithThisName
-					&& parentInstance.getComponent().getChildren().contains( childInstance.getComponent())) {
+		return result;
+	}
 
-				InstanceHelpers.insertChild( parentInstance, childInstance );
-				Collection<RoboconfError> errors = RuntimeModelValidator.validate( application.getRootInstances());
-				if( RoboconfErrorHelpers.containsCriticalErrors( errors )) {
-					childInstance.setParent( null );
-					parentInstance.getChildren().remove( childInstance );
 
-				} else {
-					success = true;
-				}
+	/**
+	 * Inserts child instances (see {@link #tryToInsertChildInstances(Application, Instance, List)}).
+	 * <p>
+	 * When the application is not null, this method must be invoked while holding its lock.
+	 * </p>
+	 */
+	private static List<Boolean> insertChildInstances( Application application, Instance parentInstance, List<Instance> childInstances ) {
+
+		// First, make sure there is no child instance with this name before inserting.
+		// Otherwise, removing the child instance may result randomly.
+		Collection<Instance> list = parentInstance == null ? application.getRootInstances() : parentInstance.getChildren();
+		Set<String> childrenNames = new HashSet<String> ();
+		for( Instance inst : list )
+			childrenNames.add( inst.getName());
+
+		List<Boolean> result = new ArrayList<Boolean>( childInstances.size());
+		for( Instance childInstance : childInstances ) {
+
+			boolean success = false;
+			if( ! childrenNames.contains( childInstance.getName())) {
+				Collection<RoboconfError> errors = RuntimeModelValidator.validateInsertion( parentInstance, childInstance );
+				success = ! RoboconfErrorHelpers.containsCriticalErrors( errors );
+			}
+
+			if( success ) {
+				childrenNames.add( childInstance.getName());
+				if( parentInstance == null )
+					application.getRootInstances().add( childInstance );
+				else
+					InstanceHelpers.insertChild( parentInstance, childInstance );
+
+				if( application != null )
+					application.indexInstance( childInstance );
 			}
+
+			result.add( success );
 		}
 
-		return success;
+		return result;
 	}
 
 
@@ -330,4 +429,56 @@ public final class InstanceHelpers {
 		path = path.substring( 1 ).replace( '/', '_' );
 		return new File( System.getProperty( "java.io.tmpdir" ), "roboconf_agent/" + pluginName + "/" + path );
 	}
+
+
+	/**
+	 * An iterable that browses instance hierarchies in a breadth-first order.
+	 * <p>
+	 * Every root instance is fully browsed before the next one.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class HierarchicalIterable implements Iterable<Instance> {
+		private final Collection<Instance> rootInstances;
+
+		/**
+		 * Constructor.
+		 * @param rootInstances the instances to start from (not null)
+		 */
+		public HierarchicalIterable( Collection<Instance> rootInstances ) {
+			this.rootInstances = rootInstances;
+		}
+
+		@Override
+		public Iterator<Instance> iterator() {
+
+			final Iterator<Instance> rootIterator = this.rootInstances.iterator();
+			final Queue<Instance> toProcess = new ArrayDeque<Instance> ();
+
+			return new Iterator<Instance> () {
+
+				@Override
+				public boolean hasNext() {
+					return ! toProcess.isEmpty() || rootIterator.hasNext();
+				}
+
+				@Override
+				public Instance next() {
+
+					if( toProcess.isEmpty())
+						toProcess.add( rootIterator.next());
+
+					Instance current = toProcess.poll();
+					toProcess.addAll( current.getChildren());
+					return current;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException( "Instances cannot be removed while browsing a hierarchy." );
+				}
+			};
+		}
+	}
 }
@@ -17,6 +17,7 @@
 package net.roboconf.core.model.helpers;
 
 import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -97,30 +98,45 @@ public final class VariableHelpers {
 	 * @return true if such a variable was found, false otherwise
 	 */
 	public static boolean instanceHasVariablesWithPrefix( Instance instance, String componentOrFacetName ) {
-
-		boolean result = false;
-		for( String importedVar : instance.getComponent().getImportedVariables().keySet()) {
-			if( importedVar.startsWith( componentOrFacetName + "." )) {
-				result = true;
-				break;
-			}
-		}
-
-		return result;
+		return instance.getComponent().getVariableSchema().getImportedPrefixes().contains( componentOrFacetName );
 	}
 
 
 	/**
 	 * Finds the component and facet names that prefix the variables of an instance.
+	 * <p>
+	 * The result relies on the variable schema of the instance's component.
+	 * A new set is only created when the instance overrides exports its component does not define.
+	 * </p>
+	 *
 	 * @param instance an instance
-	 * @return a non-null set with all the component and facet names this instance exports
+	 * @return a non-null set with all the component and facet names this instance exports (must not be modified)
 	 */
 	public static Set<String> findExportedVariablePrefixes( Instance instance ) {
-		Set<String> result = new HashSet<String> ();
 
-		Map<String,String> instanceExports = InstanceHelpers.getExportedVariables( instance );
-		for( String exportedVariableName : instanceExports.keySet())
-			result.add( VariableHelpers.parseVariableName( exportedVariableName ).getKey());
+		Set<String> result = Collections.emptySet();
+		Map<String,String> componentExports = Collections.emptyMap();
+		if( instance.getComponent() != null ) {
+			result = instance.getComponent().getVariableSchema().getExportedPrefixes();
+			componentExports = instance.getComponent().getExportedVariables();
+		}
+
+		// Overridden exports generally override variables defined by the component
+		boolean copied = false;
+		for( String exportedVariableName : instance.getOverriddenExports().keySet()) {
+			if( componentExports.containsKey( exportedVariableName ))
+				continue;
+
+			String prefix = VariableHelpers.parseVariableName( exportedVariableName ).getKey();
+			if( ! result.contains( prefix )) {
+				if( ! copied ) {
+					result = new HashSet<String>( result );
+					copied = true;
+				}
+
+				result.add( prefix );
+			}
+		}
 
 		return result;
 	}
@@ -133,17 +149,10 @@ public final class VariableHelpers {
 	 * </p>
 	 *
 	 * @param instance an instance
-	 * @return a non-null set with all the component and facet names this instance imports
+	 * @return a non-null set with all the component and facet names this instance imports (must not be modified)
 	 */
 	public static Set<String> findImportedVariablePrefixes( Instance instance ) {
-		Set<String> result = new HashSet<String> ();
-
-		for( Map.Entry<String,Boolean> entry : instance.getComponent().getImportedVariables().entrySet()) {
-			if( ! entry.getValue())
-				result.add( VariableHelpers.parseVariableName( entry.getKey()).getKey());
-		}
-
-		return result;
+		return instance.getComponent().getVariableSchema().getMandatoryImportedPrefixes();
 	}
 
 
@@ -158,16 +167,23 @@ public final class VariableHelpers {
 	 */
 	public static void updateNetworkVariables( Map<String,String> instanceExports, String ipAddress ) {
 
-		// Find the keys to update ( xxx.ip )
-		Set<String> keysToUpdate = new HashSet<String> ();
+		// Update the keys ( xxx.ip ).
+		// Setting a value does not modify the map structurally.
 		for( Map.Entry<String,String> entry : instanceExports.entrySet()) {
-			String suffix = parseVariableName( entry.getKey()).getValue();
-			if( IP.equals( suffix ))
-				keysToUpdate.add( entry.getKey());
-		}
+			String variableName = entry.getKey();
+			int index = variableName.indexOf( '.' );
+			int start = index + 1, end = variableName.length();
+
+			// Equivalent to parseVariableName( variableName ).getValue(), without allocation
+			while( index >= 0 && start < end && variableName.charAt( start ) <= ' ' )
+				start ++;
 
-		// Update them
-		for( String key : keysToUpdate )
-			instanceExports.put( key, ipAddress );
+			while( index >= 0 && end > start && variableName.charAt( end - 1 ) <= ' ' )
+				end --;
+
+			if( end - start == IP.length()
+					&& variableName.startsWith( IP, start ))
+				entry.setValue( ipAddress );
+		}
 	}
 }
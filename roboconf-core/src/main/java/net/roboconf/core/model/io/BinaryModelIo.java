@@ -0,0 +1,333 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.internal.utils.StringPool;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+
+/**
+ * Reads and writes model elements in a compact binary format.
+ * <p>
+ * This encoding is shared by the compiled models ({@link CompiledModelIo}) and the binary messages.
+ * Sizes and lengths are written as variable-length integers. Strings are encoded in UTF-8.
+ * Decoded strings are put in the {@link StringPool}.
+ * </p>
+ * <p>
+ * Graphs are written as a table of components, related to each other by index.
+ * Other elements (e.g. instances) can reference the components of this table by index.
+ * </p>
+ * <p>
+ * Readers work on a {@link ByteBuffer}. Truncated inputs result in a
+ * {@link java.nio.BufferUnderflowException} that callers must handle.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class BinaryModelIo {
+
+	private static final String CHARSET = "UTF-8";
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private BinaryModelIo() {
+		// nothing
+	}
+
+
+	/**
+	 * Writes graph(s).
+	 * <p>
+	 * All the components are written first. Then, for every component, the indexes of its children.
+	 * And eventually, the indexes of the root components.
+	 * </p>
+	 *
+	 * @param out the output
+	 * @param graphs the graph(s) (can be null)
+	 * @return the table of components, in the order they were written (not null, empty if graphs is null)
+	 * @throws IOException
+	 */
+	public static List<Component> writeGraphs( DataOutputStream out, Graphs graphs ) throws IOException {
+
+		out.writeBoolean( graphs != null );
+		if( graphs == null )
+			return new ArrayList<Component>( 0 );
+
+		// Find the components
+		List<Component> components = new ArrayList<Component> ();
+		Map<Component,Integer> componentToIndex = new HashMap<Component,Integer> ();
+		List<Component> toProcess = new ArrayList<Component>( graphs.getRootComponents());
+		while( ! toProcess.isEmpty()) {
+			Component c = toProcess.remove( toProcess.size() - 1 );
+			if( componentToIndex.containsKey( c ))
+				continue;
+
+			componentToIndex.put( c, components.size());
+			components.add( c );
+			toProcess.addAll( c.getChildren());
+		}
+
+		// Write them
+		writeSize( out, components.size());
+		for( Component c : components ) {
+			writeString( out, c.getName());
+			writeString( out, c.getAlias());
+			writeString( out, c.getInstallerName());
+			writeString( out, c.getIconLocation());
+
+			writeSize( out, c.getFacetNames().size());
+			for( String facetName : c.getFacetNames())
+				writeString( out, facetName );
+
+			writeMap( out, c.getExportedVariables());
+			writeSize( out, c.getImportedVariables().size());
+			for( Map.Entry<String,Boolean> entry : c.getImportedVariables().entrySet()) {
+				writeString( out, entry.getKey());
+				out.writeBoolean( entry.getValue() != null && entry.getValue());
+			}
+		}
+
+		for( Component c : components ) {
+			writeSize( out, c.getChildren().size());
+			for( Component child : c.getChildren())
+				writeSize( out, componentToIndex.get( child ));
+		}
+
+		writeSize( out, graphs.getRootComponents().size());
+		for( Component c : graphs.getRootComponents())
+			writeSize( out, componentToIndex.get( c ));
+
+		return components;
+	}
+
+
+	/**
+	 * Reads graph(s) written by {@link #writeGraphs(DataOutputStream, Graphs)}.
+	 * @param buffer the input
+	 * @param components a list to fill in with the table of components (can be null)
+	 * @return the graph(s), or null if null graphs were written
+	 * @throws IOException if the input is corrupted
+	 */
+	public static Graphs readGraphs( ByteBuffer buffer, List<Component> components ) throws IOException {
+
+		if( buffer.get() == 0 )
+			return null;
+
+		Component[] table = new Component[ checkLength( readSize( buffer ), buffer )];
+		for( int i=0; i<table.length; i++ ) {
+			Component c = new Component( readString( buffer ));
+			c.setAlias( readString( buffer ));
+			c.setInstallerName( readString( buffer ));
+			c.setIconLocation( readString( buffer ));
+
+			for( int j=readSize( buffer ); j>0; j-- )
+				c.getFacetNames().add( readString( buffer ));
+
+			readMap( buffer, c.getExportedVariables());
+			for( int j=readSize( buffer ); j>0; j-- ) {
+				String name = readString( buffer );
+				c.getImportedVariables().put( name, buffer.get() != 0 );
+			}
+
+			table[ i ] = c;
+		}
+
+		for( Component c : table ) {
+			for( int j=readSize( buffer ); j>0; j-- )
+				ComponentHelpers.insertChild( c, table[ readIndex( buffer, table.length )]);
+		}
+
+		Graphs result = new Graphs();
+		for( int j=readSize( buffer ); j>0; j-- )
+			result.getRootComponents().add( table[ readIndex( buffer, table.length )]);
+
+		result.indexComponents();
+		if( components != null )
+			components.addAll( Arrays.asList( table ));
+
+		return result;
+	}
+
+
+	/**
+	 * Writes a map.
+	 * @param out the output
+	 * @param map a map (can be null)
+	 * @throws IOException
+	 */
+	public static void writeMap( DataOutputStream out, Map<String,String> map ) throws IOException {
+
+		// 0 means "null"
+		writeSize( out, map == null ? 0 : map.size() + 1 );
+		if( map == null )
+			return;
+
+		for( Map.Entry<String,String> entry : map.entrySet()) {
+			writeString( out, entry.getKey());
+			writeString( out, entry.getValue());
+		}
+	}
+
+
+	/**
+	 * Reads a map.
+	 * @param buffer the input
+	 * @param map the map to fill in (if null, a new map is created)
+	 * @return the map, or null if a null map was written
+	 * @throws IOException if the input is corrupted
+	 */
+	public static Map<String,String> readMap( ByteBuffer buffer, Map<String,String> map ) throws IOException {
+
+		int size = readSize( buffer );
+		Map<String,String> result = map;
+		if( size > 0 && result == null )
+			result = new HashMap<String,String>( checkLength( size - 1, buffer ));
+
+		for( int i=size - 1; i>0; i-- ) {
+			String key = readString( buffer );
+			result.put( key, readString( buffer ));
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Writes a string.
+	 * @param out the output
+	 * @param s a string (can be null)
+	 * @throws IOException
+	 */
+	public static void writeString( DataOutputStream out, String s ) throws IOException {
+
+		// 0 means "null"
+		if( s == null ) {
+			writeSize( out, 0 );
+
+		} else {
+			byte[] bytes = s.getBytes( CHARSET );
+			writeSize( out, bytes.length + 1 );
+			out.write( bytes );
+		}
+	}
+
+
+	/**
+	 * Reads a string.
+	 * @param buffer the input
+	 * @return a pooled string, or null if a null string was written
+	 * @throws IOException if the input is corrupted
+	 */
+	public static String readString( ByteBuffer buffer ) throws IOException {
+
+		int length = readSize( buffer );
+		String result = null;
+		if( length > 0 ) {
+			byte[] bytes = new byte[ checkLength( length - 1, buffer )];
+			buffer.get( bytes );
+			result = StringPool.intern( new String( bytes, CHARSET ));
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Writes a positive integer on 1 to 5 bytes (7 bits per byte, the highest bit means "more bytes").
+	 * @param out the output
+	 * @param value a positive integer
+	 * @throws IOException
+	 */
+	public static void writeSize( DataOutputStream out, int value ) throws IOException {
+
+		int v = value;
+		while(( v & ~0x7F ) != 0 ) {
+			out.writeByte(( v & 0x7F ) | 0x80 );
+			v >>>= 7;
+		}
+
+		out.writeByte( v );
+	}
+
+
+	/**
+	 * Reads a positive integer written by {@link #writeSize(DataOutputStream, int)}.
+	 * @param buffer the input
+	 * @return a positive integer
+	 * @throws IOException if the integer is malformed
+	 */
+	public static int readSize( ByteBuffer buffer ) throws IOException {
+
+		int result = 0;
+		for( int shift=0; shift<32; shift += 7 ) {
+			byte b = buffer.get();
+			result |= ( b & 0x7F ) << shift;
+			if(( b & 0x80 ) == 0 ) {
+				if( result < 0 )
+					break;
+
+				return result;
+			}
+		}
+
+		throw new IOException( "Malformed size in the binary model." );
+	}
+
+
+	/**
+	 * Verifies a length can be read from the input.
+	 * @param length a length
+	 * @param buffer the input
+	 * @return the length
+	 * @throws IOException if there are not enough bytes left
+	 */
+	public static int checkLength( int length, ByteBuffer buffer ) throws IOException {
+		if( length > buffer.remaining())
+			throw new IOException( "Invalid length in the binary model: " + length );
+
+		return length;
+	}
+
+
+	/**
+	 * Reads the index of an element of a table.
+	 * @param buffer the input
+	 * @param max the size of the table
+	 * @return a valid index
+	 * @throws IOException if the index is out of the table bounds
+	 */
+	public static int readIndex( ByteBuffer buffer, int max ) throws IOException {
+
+		int index = readSize( buffer );
+		if( index < 0 || index >= max )
+			throw new IOException( "Invalid index in the binary model: " + index );
+
+		return index;
+	}
+}
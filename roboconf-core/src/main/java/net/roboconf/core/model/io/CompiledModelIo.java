@@ -0,0 +1,286 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.Constants;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * Reads and writes applications in a compact binary format.
+ * <p>
+ * Loading an application from its sources implies parsing, validating and converting
+ * all its definition files. Reading a compiled model only rebuilds the graph(s) and the root
+ * instances. It is only valid as long as the sources do not change: every compiled model
+ * stores a fingerprint of the sources it was built from.
+ * </p>
+ * <p>
+ * The format is versioned. A compiled model written with another version is ignored.
+ * Graphs, strings and maps are written with {@link BinaryModelIo}, like binary messages.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class CompiledModelIo {
+
+	/**
+	 * The current version of the format.
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	private static final int MAGIC = 0x52434D46;
+	private static final String CHARSET = "UTF-8";
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private CompiledModelIo() {
+		// nothing
+	}
+
+
+	/**
+	 * Computes a fingerprint of the sources of an application.
+	 * <p>
+	 * The fingerprint is based on the path and the content hash of every file in the
+	 * descriptor, graph and instances directories. File sizes and modification dates are not
+	 * reliable enough: a file can be edited without changing them (e.g. when a file system has
+	 * a coarse time resolution, or when tools restore modification dates).
+	 * </p>
+	 * <p>
+	 * Hashes are computed like those of {@link FileDefinitionCache}.
+	 * </p>
+	 *
+	 * @param projectDirectory the project directory (not null)
+	 * @return a non-null string
+	 */
+	public static String computeSourcesFingerprint( File projectDirectory ) {
+
+		StringBuilder sb = new StringBuilder();
+		String[] dirNames = { Constants.PROJECT_DIR_DESC, Constants.PROJECT_DIR_GRAPH, Constants.PROJECT_DIR_INSTANCES };
+		for( String dirName : dirNames ) {
+			List<File> toProcess = new ArrayList<File> ();
+			toProcess.add( new File( projectDirectory, dirName ));
+
+			while( ! toProcess.isEmpty()) {
+				File f = toProcess.remove( toProcess.size() - 1 );
+				if( f.isDirectory()) {
+					File[] files = f.listFiles();
+					if( files == null )
+						continue;
+
+					// Sort the files so that the fingerprint does not depend on the file system
+					Arrays.sort( files );
+					for( int i=files.length - 1; i>=0; i-- )
+						toProcess.add( files[ i ]);
+
+				} else if( f.exists()) {
+					sb.append( f.getAbsolutePath().substring( projectDirectory.getAbsolutePath().length()));
+					sb.append( '|' );
+					try {
+						sb.append( FileDefinitionCache.computeHash( f.toURI()));
+
+					} catch( IOException e ) {
+						// Unreadable files will be reported by the regular loading
+						sb.append( '?' ).append( System.nanoTime());
+					}
+
+					sb.append( '\n' );
+				}
+			}
+		}
+
+		try {
+			byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( sb.toString().getBytes( CHARSET ));
+			return new BigInteger( 1, digest ).toString( 16 );
+
+		} catch( NoSuchAlgorithmException e ) {
+			// All the JVMs must support SHA-1
+			return sb.toString();
+
+		} catch( UnsupportedEncodingException e ) {
+			// All the JVMs must support UTF-8
+			return sb.toString();
+		}
+	}
+
+
+	/**
+	 * Writes an application in a file.
+	 * <p>
+	 * The file is first written in a temporary file, and then renamed.
+	 * </p>
+	 *
+	 * @param application the application to write (not null)
+	 * @param sourcesFingerprint the fingerprint of the application sources
+	 * @param targetFile the file to write
+	 * @throws IOException if the file could not be written
+	 */
+	public static void writeApplication( Application application, String sourcesFingerprint, File targetFile )
+	throws IOException {
+
+		File tempFile = new File( targetFile.getParentFile(), targetFile.getName() + ".tmp" );
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tempFile )));
+			out.writeInt( MAGIC );
+			out.writeInt( FORMAT_VERSION );
+			BinaryModelIo.writeString( out, sourcesFingerprint );
+
+			BinaryModelIo.writeString( out, application.getName());
+			BinaryModelIo.writeString( out, application.getQualifier());
+			BinaryModelIo.writeString( out, application.getDescription());
+
+			// Instances reference components by index in the table of the graph(s)
+			List<Component> components = BinaryModelIo.writeGraphs( out, application.getGraphs());
+			Map<Component,Integer> componentToIndex = new HashMap<Component,Integer> ();
+			for( Component c : components )
+				componentToIndex.put( c, componentToIndex.size());
+
+			// Instances are written depth-first
+			BinaryModelIo.writeSize( out, application.getRootInstances().size());
+			for( Instance rootInstance : application.getRootInstances())
+				writeInstance( out, rootInstance, componentToIndex );
+
+		} finally {
+			if( out != null )
+				out.close();
+		}
+
+		if( targetFile.exists() && ! targetFile.delete()
+				|| ! tempFile.renameTo( targetFile )) {
+
+			Utils.deleteFilesRecursively( tempFile );
+			throw new IOException( "The compiled model could not be written in " + targetFile );
+		}
+	}
+
+
+	/**
+	 * Reads an application from a file.
+	 * <p>
+	 * The file is memory-mapped. Instances are not indexed, but a snapshot of the instance tree is published.
+	 * </p>
+	 *
+	 * @param sourceFile the file to read (not null)
+	 * @param sourcesFingerprint the expected fingerprint of the application sources
+	 * @return the application, or null if the file was written with another format version or from other sources
+	 * @throws IOException if the file could not be read or is corrupted
+	 */
+	public static Application readApplication( File sourceFile, String sourcesFingerprint ) throws IOException {
+
+		FileInputStream in = new FileInputStream( sourceFile );
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return readApplication( buffer, sourcesFingerprint );
+
+		} catch( BufferUnderflowException e ) {
+			throw new IOException( "The compiled model is truncated: " + sourceFile );
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+	}
+
+
+	private static Application readApplication( ByteBuffer buffer, String sourcesFingerprint ) throws IOException {
+
+		if( buffer.getInt() != MAGIC )
+			throw new IOException( "This is not a compiled model." );
+
+		if( buffer.getInt() != FORMAT_VERSION
+				|| ! Utils.areEqual( sourcesFingerprint, BinaryModelIo.readString( buffer )))
+			return null;
+
+		Application application = new Application();
+		application.setName( BinaryModelIo.readString( buffer ));
+		application.setQualifier( BinaryModelIo.readString( buffer ));
+		application.setDescription( BinaryModelIo.readString( buffer ));
+
+		List<Component> components = new ArrayList<Component> ();
+		application.setGraphs( BinaryModelIo.readGraphs( buffer, components ));
+		for( int j=BinaryModelIo.readSize( buffer ); j>0; j-- )
+			application.getRootInstances().add( readInstance( buffer, components ));
+
+		application.publishSnapshot();
+		return application;
+	}
+
+
+	private static void writeInstance( DataOutputStream out, Instance instance, Map<Component,Integer> componentToIndex )
+	throws IOException {
+
+		BinaryModelIo.writeString( out, instance.getName());
+		BinaryModelIo.writeString( out, instance.getChannel());
+
+		// 0 means "no component"
+		Integer index = instance.getComponent() == null ? null : componentToIndex.get( instance.getComponent());
+		BinaryModelIo.writeSize( out, index == null ? 0 : index + 1 );
+
+		BinaryModelIo.writeMap( out, instance.getOverriddenExports());
+		BinaryModelIo.writeMap( out, instance.getExports());
+		BinaryModelIo.writeMap( out, instance.getData());
+
+		BinaryModelIo.writeSize( out, instance.getChildren().size());
+		for( Instance child : instance.getChildren())
+			writeInstance( out, child, componentToIndex );
+	}
+
+
+	private static Instance readInstance( ByteBuffer buffer, List<Component> components ) throws IOException {
+
+		Instance instance = new Instance( BinaryModelIo.readString( buffer ));
+		instance.setChannel( BinaryModelIo.readString( buffer ));
+
+		int index = BinaryModelIo.readIndex( buffer, components.size() + 1 );
+		if( index > 0 )
+			instance.setComponent( components.get( index - 1 ));
+
+		BinaryModelIo.readMap( buffer, instance.getOverriddenExports());
+		BinaryModelIo.readMap( buffer, instance.getExports());
+		BinaryModelIo.readMap( buffer, instance.getData());
+
+		for( int j=BinaryModelIo.readSize( buffer ); j>0; j-- )
+			InstanceHelpers.insertChild( instance, readInstance( buffer, components ));
+
+		return instance;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * A project stored in a directory.
+ * @author Vincent Zurczak - Linagora
+ */
+public class DirectoryProjectSource implements IProjectSource {
+
+	private final File projectDirectory;
+
+
+	/**
+	 * Constructor.
+	 * @param projectDirectory the project directory (not null)
+	 */
+	public DirectoryProjectSource( File projectDirectory ) {
+		this.projectDirectory = projectDirectory;
+	}
+
+
+	/**
+	 * @return the project directory
+	 */
+	public File getProjectDirectory() {
+		return this.projectDirectory;
+	}
+
+
+	@Override
+	public String getLocation() {
+		return this.projectDirectory.getAbsolutePath();
+	}
+
+
+	@Override
+	public boolean exists( String path ) {
+		return new File( this.projectDirectory, path ).exists();
+	}
+
+
+	@Override
+	public InputStream open( String path ) throws IOException {
+		return new FileInputStream( new File( this.projectDirectory, path ));
+	}
+
+
+	@Override
+	public URI getUri( String path ) {
+		return new File( this.projectDirectory, path ).toURI();
+	}
+}
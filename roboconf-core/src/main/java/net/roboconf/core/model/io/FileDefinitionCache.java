@@ -0,0 +1,277 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.ModelError;
+import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.validators.ParsingModelValidator;
+
+/**
+ * A cache for parsed and validated definition files.
+ * <p>
+ * Entries are indexed by file URI and content hash. A file that did not change
+ * since it was last read is neither parsed nor validated again. The cache is bounded:
+ * when it is full, the least recently used entry is evicted.
+ * </p>
+ * <p>
+ * Cached definitions are shared by all the loads that hit them.
+ * They must be considered as read-only.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class FileDefinitionCache {
+
+	private static final String HASH_ALGORITHM = "SHA-1";
+
+	private final Map<String,CachedDefinition> cache;
+	private long hits, misses, evictions;
+
+
+	/**
+	 * Constructor.
+	 * @param maxSize the maximum number of cached definitions (strictly positive)
+	 */
+	public FileDefinitionCache( final int maxSize ) {
+		if( maxSize <= 0 )
+			throw new IllegalArgumentException( "The cache size must be strictly positive." );
+
+		this.cache = new LinkedHashMap<String,CachedDefinition>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = -1513486441235461474L;
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String,CachedDefinition> eldest ) {
+				boolean result = size() > maxSize;
+				if( result )
+					FileDefinitionCache.this.evictions ++;
+
+				return result;
+			}
+		};
+	}
+
+
+	/**
+	 * Reads and validates a definition file, or gets it from the cache.
+	 * @param file a definition file (not null)
+	 * @return a cached definition (never null)
+	 */
+	public CachedDefinition read( File file ) {
+		return read( file.toURI());
+	}
+
+
+	/**
+	 * Reads and validates a definition file, or gets it from the cache.
+	 * @param fileUri the URI of a definition file (not null)
+	 * @return a cached definition (never null)
+	 */
+	public CachedDefinition read( URI fileUri ) {
+
+		String key;
+		try {
+			key = fileUri + "#" + computeHash( fileUri );
+
+		} catch( IOException e ) {
+			// Let the parser report the error
+			return load( fileUri );
+		}
+
+		CachedDefinition result;
+		synchronized( this ) {
+			result = this.cache.get( key );
+			if( result != null )
+				this.hits ++;
+			else
+				this.misses ++;
+		}
+
+		// Parse outside the lock: concurrent misses for the same file are harmless
+		if( result == null ) {
+			result = load( fileUri );
+			synchronized( this ) {
+				this.cache.put( key, result );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Empties the cache.
+	 * <p>
+	 * Metrics are not reset.
+	 * </p>
+	 */
+	public synchronized void clear() {
+		this.cache.clear();
+	}
+
+
+	/**
+	 * @return the number of cached definitions
+	 */
+	public synchronized int size() {
+		return this.cache.size();
+	}
+
+
+	/**
+	 * @return the number of reads that were served by the cache
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+
+	/**
+	 * @return the number of reads that required a parsing
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+
+	/**
+	 * @return the number of entries that were evicted because the cache was full
+	 */
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+
+	/**
+	 * @return the ratio of reads that were served by the cache (between 0 and 1, 0 if nothing was read)
+	 */
+	public synchronized double getHitRate() {
+		long total = this.hits + this.misses;
+		return total == 0 ? 0 : (double) this.hits / total;
+	}
+
+
+	/**
+	 * Reads and validates a definition file, without any cache.
+	 * @param fileUri the URI of a definition file (not null)
+	 * @return a cached definition (never null)
+	 */
+	static CachedDefinition load( URI fileUri ) {
+
+		// Local files are read as files, so that error messages can mention them
+		FileDefinition definition;
+		if( "file".equals( fileUri.getScheme()))
+			definition = ParsingModelIo.readConfigurationFile( new File( fileUri ), true );
+		else
+			definition = ParsingModelIo.readConfigurationFile( fileUri, true );
+
+		Collection<ModelError> validationErrors;
+		if( definition.getParsingErrors().isEmpty())
+			validationErrors = ParsingModelValidator.validate( definition );
+		else
+			validationErrors = new ArrayList<ModelError>( 0 );
+
+		return new CachedDefinition( definition, validationErrors );
+	}
+
+
+	/**
+	 * Computes the hash of a file's content.
+	 * @param fileUri the URI of a file (not null)
+	 * @return the hash, as an hexadecimal string
+	 * @throws IOException if the file could not be read
+	 */
+	static String computeHash( URI fileUri ) throws IOException {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance( HASH_ALGORITHM );
+
+		} catch( NoSuchAlgorithmException e ) {
+			// All the JVMs must support SHA-1
+			throw new IOException( e.getMessage());
+		}
+
+		InputStream in = null;
+		try {
+			URLConnection connection = fileUri.toURL().openConnection();
+			connection.setUseCaches( false );
+			in = connection.getInputStream();
+			byte[] buffer = new byte[ 8192 ];
+			int length;
+			while(( length = in.read( buffer )) > 0 )
+				digest.update( buffer, 0, length );
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+
+		return new BigInteger( 1, digest.digest()).toString( 16 );
+	}
+
+
+	/**
+	 * A parsed definition file, along with its validation errors.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class CachedDefinition {
+		private final FileDefinition definition;
+		private final Collection<ModelError> validationErrors;
+
+
+		/**
+		 * Constructor.
+		 * @param definition the definition
+		 * @param validationErrors the validation errors
+		 */
+		CachedDefinition( FileDefinition definition, Collection<ModelError> validationErrors ) {
+			this.definition = definition;
+			this.validationErrors = Collections.unmodifiableCollection( validationErrors );
+		}
+
+		/**
+		 * @return the definition (never null, parsing errors are stored inside)
+		 */
+		public FileDefinition getDefinition() {
+			return this.definition;
+		}
+
+		/**
+		 * @return the errors found by {@link ParsingModelValidator} (never null, empty if there were parsing errors)
+		 */
+		public Collection<ModelError> getValidationErrors() {
+			return this.validationErrors;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * The files of a Roboconf project, wherever they are stored.
+ * <p>
+ * Paths are relative to the project's root and use '/' as the separator
+ * (e.g. <code>graph/main.graph</code>).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IProjectSource {
+
+	/**
+	 * @return a human-readable location for this project, used in error messages
+	 */
+	String getLocation();
+
+	/**
+	 * @param path a relative path
+	 * @return true if a file or a directory exists at this path, false otherwise
+	 */
+	boolean exists( String path );
+
+	/**
+	 * Opens a file.
+	 * <p>
+	 * The caller is in charge of closing the stream.
+	 * </p>
+	 *
+	 * @param path the relative path of a file
+	 * @return an input stream (not null)
+	 * @throws IOException if the file does not exist or could not be opened
+	 */
+	InputStream open( String path ) throws IOException;
+
+	/**
+	 * @param path a relative path
+	 * @return an URI that allows to read this file with {@link java.net.URL#openStream()}
+	 */
+	URI getUri( String path );
+}
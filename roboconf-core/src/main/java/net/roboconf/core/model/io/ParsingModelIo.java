@@ -16,9 +16,11 @@
 
 package net.roboconf.core.model.io;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -95,6 +97,24 @@ public class ParsingModelIo {
 	}
 
 
+	/**
+	 * Writes a model into a stream.
+	 * <p>
+	 * The model is encoded in UTF-8. The stream is flushed but not closed.
+	 * </p>
+	 *
+	 * @param relationsFile the relations file
+	 * @param writeComments true to write comments
+	 * @param lineSeparator the line separator (if null, the OS' one is used)
+	 * @param out an output stream (not null)
+	 * @throws IOException if the model could not be written
+	 */
+	public static void writeConfigurationFile( FileDefinition relationsFile, boolean writeComments, String lineSeparator, OutputStream out )
+	throws IOException {
+		new FileDefinitionSerializer( lineSeparator ).write( relationsFile, writeComments, out );
+	}
+
+
 	/**
 	 * Saves the model into the original file.
 	 * @param relationsFile the relations file
@@ -109,6 +129,9 @@ public class ParsingModelIo {
 			throw new IOException( "Save operation could not be performed. The model was not loaded from a local file." );
 
 		saveRelationsFileInto( relationsFile.getEditedFile(), relationsFile, writeComments, lineSeparator );
+
+		// The source regions do not match the file anymore
+		relationsFile.getSourceRegions().clear();
 	}
 
 
@@ -127,7 +150,64 @@ public class ParsingModelIo {
 			String lineSeparator )
 	throws IOException {
 
-		String s = writeConfigurationFile( relationsFile, writeComments, lineSeparator );
-		Utils.copyStream( new ByteArrayInputStream( s.getBytes( "UTF-8" )), targetFile );
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( targetFile ));
+			writeConfigurationFile( relationsFile, writeComments, lineSeparator, out );
+
+		} finally {
+			Utils.closeQuietly( out );
+		}
+	}
+
+
+	/**
+	 * Saves the model into the original file, in incremental mode.
+	 * <p>
+	 * Only the top-level blocks that were modified since the file was parsed are serialized again.
+	 * The other ones are copied from the original file, as they were written. Comments are always kept.
+	 * The model must have been read with its comments, otherwise all the blocks are serialized.
+	 * </p>
+	 * <p>
+	 * The file is first written in a temporary file, and then renamed.
+	 * Once saved, the model is not associated with source regions anymore: next saves serialize all the blocks.
+	 * </p>
+	 *
+	 * @param relationsFile the relations file
+	 * @param lineSeparator the line separator between blocks (if null, the OS' one is used)
+	 * @throws IOException if the file could not be saved
+	 */
+	public static void saveRelationsFileIncrementally( FileDefinition relationsFile, String lineSeparator )
+	throws IOException {
+
+		File targetFile = relationsFile.getEditedFile();
+		if( targetFile == null )
+			throw new IOException( "Save operation could not be performed. The model was not loaded from a local file." );
+
+		File tempFile = new File( targetFile.getParentFile(), targetFile.getName() + ".tmp" );
+		OutputStream out = null;
+		boolean written = false;
+		try {
+			out = new BufferedOutputStream( new FileOutputStream( tempFile ));
+			new FileDefinitionSerializer( lineSeparator ).writeIncrementally( relationsFile, out );
+			out.close();
+			written = true;
+
+		} finally {
+			// The target file is left unchanged, and no temporary file remains
+			Utils.closeQuietly( out );
+			if( ! written )
+				Utils.deleteFilesRecursively( tempFile );
+		}
+
+		if( targetFile.exists() && ! targetFile.delete()
+				|| ! tempFile.renameTo( targetFile )) {
+
+			Utils.deleteFilesRecursively( tempFile );
+			throw new IOException( "The relations file could not be saved in " + targetFile );
+		}
+
+		// The source regions do not match the file anymore
+		relationsFile.getSourceRegions().clear();
 	}
 }
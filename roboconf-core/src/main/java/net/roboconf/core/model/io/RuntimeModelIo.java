@@ -18,10 +18,13 @@ package net.roboconf.core.model.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.UUID;
+import java.util.logging.Logger;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 
 import net.roboconf.core.Constants;
 import net.roboconf.core.ErrorCode;
@@ -31,11 +34,11 @@ import net.roboconf.core.model.ApplicationDescriptor;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.converters.FromGraphDefinition;
 import net.roboconf.core.model.converters.FromInstanceDefinition;
+import net.roboconf.core.model.io.FileDefinitionCache.CachedDefinition;
 import net.roboconf.core.model.parsing.FileDefinition;
 import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Graphs;
 import net.roboconf.core.model.runtime.Instance;
-import net.roboconf.core.model.validators.ParsingModelValidator;
 import net.roboconf.core.model.validators.RuntimeModelValidator;
 
 /**
@@ -58,30 +61,64 @@ public class RuntimeModelIo {
 	 * @return a load result (never null)
 	 */
 	public static LoadResult loadApplication( File projectDirectory ) {
+		return loadApplication( projectDirectory, null );
+	}
+
+
+	/**
+	 * Loads an application from a directory, with a cache for definition files.
+	 * <p>
+	 * Definition files that are found in the cache are neither parsed nor validated again.
+	 * </p>
+	 *
+	 * @param projectDirectory the project directory
+	 * @param cache a cache for definition files (null to parse and validate all the files)
+	 * @return a load result (never null)
+	 * @see #loadApplication(File)
+	 */
+	public static LoadResult loadApplication( File projectDirectory, FileDefinitionCache cache ) {
+		return loadApplication( new DirectoryProjectSource( projectDirectory ), cache );
+	}
+
+
+	/**
+	 * Loads an application from a project source.
+	 * <p>
+	 * The project source can be a directory, but also an archive that is read without being extracted.
+	 * </p>
+	 *
+	 * @param source the project source (not null)
+	 * @param cache a cache for definition files (null to parse and validate all the files)
+	 * @return a load result (never null)
+	 * @see #loadApplication(File)
+	 */
+	public static LoadResult loadApplication( IProjectSource source, FileDefinitionCache cache ) {
 		LoadResult result = new LoadResult();
 		Application app = new Application();
 
 		ApplicationDescriptor appDescriptor = null;
-		File descDirectory = new File( projectDirectory, Constants.PROJECT_DIR_DESC );
-		File instDirectory = new File( projectDirectory, Constants.PROJECT_DIR_INSTANCES );
-		File graphDirectory = new File( projectDirectory, Constants.PROJECT_DIR_GRAPH );
+		String descDirectory = Constants.PROJECT_DIR_DESC;
+		String instDirectory = Constants.PROJECT_DIR_INSTANCES;
+		String graphDirectory = Constants.PROJECT_DIR_GRAPH;
 
 
 		// Read the application descriptor
-		DESC: if( ! descDirectory.exists()) {
+		DESC: if( ! source.exists( descDirectory )) {
 			RoboconfError error = new RoboconfError( ErrorCode.PROJ_NO_DESC_DIR );
-			error.setDetails( "Directory path: " + projectDirectory.getAbsolutePath());
+			error.setDetails( "Directory path: " + source.getLocation());
 			result.loadErrors.add( error );
 
 		} else {
-			File descriptorFile = new File( descDirectory, Constants.PROJECT_FILE_DESCRIPTOR );
-			if( ! descriptorFile.exists()) {
+			String descriptorFile = descDirectory + "/" + Constants.PROJECT_FILE_DESCRIPTOR;
+			if( ! source.exists( descriptorFile )) {
 				result.loadErrors.add( new RoboconfError( ErrorCode.PROJ_NO_DESC_FILE ));
 				break DESC;
 			}
 
+			InputStream in = null;
 			try {
-				appDescriptor = ApplicationDescriptor.load( descriptorFile );
+				in = source.open( descriptorFile );
+				appDescriptor = ApplicationDescriptor.load( in );
 				app.setName( appDescriptor.getName());
 				app.setDescription( appDescriptor.getDescription());
 				app.setQualifier( appDescriptor.getQualifier());
@@ -100,26 +137,30 @@ public class RuntimeModelIo {
 
 				error.setDetails( sb.toString());
 				result.loadErrors.add( error );
+
+			} finally {
+				Utils.closeQuietly( in );
 			}
 		}
 
 
 		// Load the graph
-		GRAPH: if( ! graphDirectory.exists()) {
+		GRAPH: if( ! source.exists( graphDirectory )) {
 			RoboconfError error = new RoboconfError( ErrorCode.PROJ_NO_GRAPH_DIR );
-			error.setDetails( "Directory path: " + projectDirectory.getAbsolutePath());
+			error.setDetails( "Directory path: " + source.getLocation());
 			result.loadErrors.add( error );
 
 		} else if( appDescriptor != null ) {
-			File mainGraphFile = new File( graphDirectory, appDescriptor.getGraphEntryPoint());
-			if( ! mainGraphFile.exists()) {
+			String mainGraphFile = graphDirectory + "/" + appDescriptor.getGraphEntryPoint();
+			if( ! source.exists( mainGraphFile )) {
 				RoboconfError error = new RoboconfError( ErrorCode.PROJ_MISSING_GRAPH_EP );
-				error.setDetails( "Expected path: " + mainGraphFile.getAbsolutePath());
+				error.setDetails( "Expected path: " + source.getUri( mainGraphFile ));
 				result.loadErrors.add( error );
 				break GRAPH;
 			}
 
-			FileDefinition def = ParsingModelIo.readConfigurationFile( mainGraphFile, true );
+			CachedDefinition cachedDef = readDefinition( source.getUri( mainGraphFile ), cache );
+			FileDefinition def = cachedDef.getDefinition();
 			if( ! def.getParsingErrors().isEmpty()) {
 				result.loadErrors.addAll( def.getParsingErrors());
 				break GRAPH;
@@ -131,13 +172,12 @@ public class RuntimeModelIo {
 				break GRAPH;
 			}
 
-			Collection<ModelError> validationErrors = ParsingModelValidator.validate( def );
-			if( ! validationErrors.isEmpty()) {
-				result.loadErrors.addAll( validationErrors );
+			if( ! cachedDef.getValidationErrors().isEmpty()) {
+				result.loadErrors.addAll( cachedDef.getValidationErrors());
 				break GRAPH;
 			}
 
-			FromGraphDefinition fromDef = new FromGraphDefinition( def );
+			FromGraphDefinition fromDef = new FromGraphDefinition( def, cache );
 			Graphs graph = fromDef.buildGraphs();
 			if( ! fromDef.getErrors().isEmpty()) {
 				result.loadErrors.addAll( fromDef.getErrors());
@@ -153,38 +193,55 @@ public class RuntimeModelIo {
 
 
 		// Load the instances
-		INST: if( appDescriptor != null && instDirectory.exists()) {
+		INST: if( appDescriptor != null && source.exists( instDirectory )) {
 			if( appDescriptor.getInstanceEntryPoint() == null )
 				break INST;
 
-			File mainInstFile = new File( instDirectory, appDescriptor.getInstanceEntryPoint());
-			if( ! mainInstFile.exists()) {
+			String mainInstFile = instDirectory + "/" + appDescriptor.getInstanceEntryPoint();
+			if( ! source.exists( mainInstFile )) {
 				RoboconfError error = new RoboconfError( ErrorCode.PROJ_MISSING_INSTANCE_EP );
-				error.setDetails( "Expected path: " + mainInstFile.getAbsolutePath());
+				error.setDetails( "Expected path: " + source.getUri( mainInstFile ));
 				result.loadErrors.add( error );
 				break INST;
 			}
 
-			FileDefinition def = ParsingModelIo.readConfigurationFile( mainInstFile, true );
-			if( ! def.getParsingErrors().isEmpty()) {
-				result.loadErrors.addAll( def.getParsingErrors());
-				break INST;
-			}
+			// Without a cache, instances are converted while the file is read (the parsed file is not kept).
+			// With a cache, the parsed and validated file is what the cache stores.
+			FromInstanceDefinition fromDef;
+			if( cache == null ) {
+				fromDef = new FromInstanceDefinition( source.getUri( mainInstFile ));
 
-			if( def.getFileType() != FileDefinition.INSTANCE
-					&& def.getFileType() != FileDefinition.AGGREGATOR ) {
-				result.loadErrors.add( new ModelError( ErrorCode.PROJ_NOT_AN_INSTANCE, 1 ));
-				break INST;
+			} else {
+				CachedDefinition cachedDef = cache.read( source.getUri( mainInstFile ));
+				FileDefinition def = cachedDef.getDefinition();
+				if( ! def.getParsingErrors().isEmpty()) {
+					result.loadErrors.addAll( def.getParsingErrors());
+					break INST;
+				}
+
+				if( def.getFileType() != FileDefinition.INSTANCE
+						&& def.getFileType() != FileDefinition.AGGREGATOR ) {
+					result.loadErrors.add( new ModelError( ErrorCode.PROJ_NOT_AN_INSTANCE, 1 ));
+					break INST;
+				}
+
+				if( ! cachedDef.getValidationErrors().isEmpty()) {
+					result.loadErrors.addAll( cachedDef.getValidationErrors());
+					break INST;
+				}
+
+				fromDef = new FromInstanceDefinition( def, cache );
 			}
 
-			Collection<ModelError> validationErrors = ParsingModelValidator.validate( def );
-			if( ! validationErrors.isEmpty()) {
-				result.loadErrors.addAll( validationErrors );
+			Collection<Instance> instances = fromDef.buildInstances( app.getGraphs());
+			int fileType = fromDef.getFileType();
+			if( fileType != FileDefinition.UNDETERMINED
+					&& fileType != FileDefinition.INSTANCE
+					&& fileType != FileDefinition.AGGREGATOR ) {
+				result.loadErrors.add( new ModelError( ErrorCode.PROJ_NOT_AN_INSTANCE, 1 ));
 				break INST;
 			}
 
-			FromInstanceDefinition fromDef = new FromInstanceDefinition( def );
-			Collection<Instance> instances = fromDef.buildInstances( app.getGraphs());
 			if( ! fromDef.getErrors().isEmpty()) {
 				result.loadErrors.addAll( fromDef.getErrors());
 				break INST;
@@ -197,35 +254,83 @@ public class RuntimeModelIo {
 			app.getRootInstances().addAll( instances );
 		}
 
+		// Readers only browse published snapshots
+		app.publishSnapshot();
 		result.application = app;
 		return result;
 	}
 
 
+	/**
+	 * Loads an application from a directory, and reuses its compiled model when possible.
+	 * <p>
+	 * If the project directory contains a compiled model built from the current sources,
+	 * the application is read from it, without parsing nor validating anything. Otherwise, it
+	 * is loaded from its sources and, if there was no error at all, compiled for the next loads.
+	 * </p>
+	 *
+	 * @param projectDirectory the project directory
+	 * @param cache a cache for definition files (null to parse and validate all the files)
+	 * @return a load result (never null)
+	 * @see CompiledModelIo
+	 */
+	public static LoadResult loadCompiledApplication( File projectDirectory, FileDefinitionCache cache ) {
+
+		Logger logger = Logger.getLogger( RuntimeModelIo.class.getName());
+		File compiledModelFile = new File( projectDirectory, Constants.PROJECT_FILE_COMPILED_MODEL );
+		String fingerprint = CompiledModelIo.computeSourcesFingerprint( projectDirectory );
+
+		// Try the compiled model first
+		if( compiledModelFile.exists()) {
+			try {
+				Application app = CompiledModelIo.readApplication( compiledModelFile, fingerprint );
+				if( app != null ) {
+					LoadResult result = new LoadResult();
+					result.application = app;
+					return result;
+				}
+
+				logger.fine( "The compiled model of " + projectDirectory + " is out of date." );
+
+			} catch( IOException e ) {
+				logger.fine( "The compiled model of " + projectDirectory + " could not be read. " + e.getMessage());
+			}
+		}
+
+		// Otherwise, load the sources
+		LoadResult result = loadApplication( projectDirectory, cache );
+		if( result.loadErrors.isEmpty()) {
+			try {
+				CompiledModelIo.writeApplication( result.application, fingerprint, compiledModelFile );
+
+			} catch( IOException e ) {
+				logger.fine( "The compiled model of " + projectDirectory + " could not be written. " + e.getMessage());
+			}
+		}
+
+		return result;
+	}
+
+
 	/**
 	 * Loads an application from a ZIP archive.
+	 * <p>
+	 * The files are read directly from the archive, nothing is extracted.
+	 * </p>
+	 *
 	 * @param zipFile the ZIP file (not null)
 	 * @return a load result (not null)
 	 */
 	public static LoadResult loadApplicationFromArchive( File zipFile ) {
 
-		LoadResult result = new LoadResult();;
-		File tempDir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_" + UUID.randomUUID().toString());
-
+		LoadResult result;
+		ZipFile theZipFile = null;
 		try {
-			// Extract the file in the temporary directory
-			if( ! tempDir.mkdir()) {
-				RoboconfError error = new RoboconfError( ErrorCode.PROJ_EXTRACT_TEMP );
-				error.setDetails( "Temporary directory that could not be created: " + tempDir.getName());
-				result.loadErrors.add( error );
-
-			} else {
-				Utils.extractZipArchive( zipFile, tempDir );
-				result = loadApplication( tempDir );
-			}
+			theZipFile = new ZipFile( zipFile );
+			result = loadApplication( new ZipProjectSource( theZipFile ), null );
 
 		} catch( ZipException e ) {
-			// Handle exceptions
+			result = new LoadResult();
 			RoboconfError error = new RoboconfError( ErrorCode.PROJ_EXTRACT_ZIP );
 			StringBuilder sb = new StringBuilder( "ZIP exception." );
 			if( e.getMessage() != null ) {
@@ -237,7 +342,7 @@ public class RuntimeModelIo {
 			result.loadErrors.add( error );
 
 		} catch( IOException e ) {
-			// Handle exceptions
+			result = new LoadResult();
 			RoboconfError error = new RoboconfError( ErrorCode.PROJ_EXTRACT_ZIP );
 			StringBuilder sb = new StringBuilder( "IO exception." );
 			if( e.getMessage() != null ) {
@@ -249,16 +354,13 @@ public class RuntimeModelIo {
 			result.loadErrors.add( error );
 
 		} finally {
-			// Delete the temporary files
-			try {
-				Utils.deleteFilesRecursively( tempDir );
-
-			} catch( IOException e ) {
-				RoboconfError error = new RoboconfError( ErrorCode.PROJ_DELETE_TEMP );
-				if( e.getMessage() != null )
-					error.setDetails( e.getMessage());
+			if( theZipFile != null ) {
+				try {
+					theZipFile.close();
 
-				result.loadErrors.add( error );
+				} catch( IOException e ) {
+					// nothing
+				}
 			}
 		}
 
@@ -266,6 +368,17 @@ public class RuntimeModelIo {
 	}
 
 
+	/**
+	 * Reads and validates a definition file.
+	 * @param fileUri the URI of a definition file (not null)
+	 * @param cache a cache (can be null)
+	 * @return a cached definition (never null)
+	 */
+	private static CachedDefinition readDefinition( URI fileUri, FileDefinitionCache cache ) {
+		return cache != null ? cache.read( fileUri ) : FileDefinitionCache.load( fileUri );
+	}
+
+
 	/**
 	 * A bean that stores both the application and loading errors.
 	 */
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A project stored in a ZIP archive.
+ * <p>
+ * Files are read directly from the archive, nothing is extracted.
+ * The project is expected at the root of the archive. Files are exposed through
+ * <code>jar:</code> URIs, which allows definition files to import each other.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ZipProjectSource implements IProjectSource {
+
+	private final ZipFile zipFile;
+	private final String archiveUri;
+
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * The ZIP file is not closed by this class.
+	 * </p>
+	 *
+	 * @param zipFile an open ZIP file (not null)
+	 */
+	public ZipProjectSource( ZipFile zipFile ) {
+		this.zipFile = zipFile;
+		this.archiveUri = "jar:" + new File( zipFile.getName()).toURI() + "!/";
+	}
+
+
+	@Override
+	public String getLocation() {
+		return this.zipFile.getName();
+	}
+
+
+	@Override
+	public boolean exists( String path ) {
+		return findEntry( path ) != null;
+	}
+
+
+	@Override
+	public InputStream open( String path ) throws IOException {
+
+		ZipEntry entry = findEntry( path );
+		if( entry == null || entry.isDirectory())
+			throw new FileNotFoundException( path + " was not found in " + this.zipFile.getName());
+
+		return this.zipFile.getInputStream( entry );
+	}
+
+
+	@Override
+	public URI getUri( String path ) {
+		try {
+			return URI.create( this.archiveUri + new URI( null, null, path, null ).getRawPath());
+
+		} catch( URISyntaxException e ) {
+			throw new IllegalArgumentException( "Invalid path: " + path, e );
+		}
+	}
+
+
+	/**
+	 * Finds an entry.
+	 * <p>
+	 * Archives do not always contain entries for directories.
+	 * In this case, a directory exists if one of its files exists.
+	 * </p>
+	 *
+	 * @param path a relative path
+	 * @return the entry, or null if it was not found
+	 */
+	private ZipEntry findEntry( String path ) {
+
+		ZipEntry result = this.zipFile.getEntry( path );
+		if( result == null && ! path.endsWith( "/" )) {
+			String dirPath = path + "/";
+			result = this.zipFile.getEntry( dirPath );
+			if( result == null ) {
+				for( Enumeration<? extends ZipEntry> it = this.zipFile.entries(); it.hasMoreElements(); ) {
+					ZipEntry entry = it.nextElement();
+					if( entry.getName().startsWith( dirPath )) {
+						result = new ZipEntry( dirPath );
+						break;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+}
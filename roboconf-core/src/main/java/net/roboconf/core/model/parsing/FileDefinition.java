@@ -19,7 +19,9 @@ package net.roboconf.core.model.parsing;
 import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.roboconf.core.model.ModelError;
 
@@ -39,6 +41,7 @@ public class FileDefinition {
 	private final URI fileLocation;
 	private final List<ModelError> parsingErrors = new ArrayList<ModelError> ();
 	private final List<AbstractBlock> blocks = new ArrayList<AbstractBlock> ();
+	private final Map<AbstractBlock,SourceRegion> sourceRegions = new IdentityHashMap<AbstractBlock,SourceRegion> ();
 
 
 	/**
@@ -93,6 +96,17 @@ public class FileDefinition {
 		return this.blocks;
 	}
 
+	/**
+	 * @return the source regions of the top-level blocks (never null, empty if they were not recorded)
+	 * <p>
+	 * Regions are only recorded for files parsed with their comments.
+	 * Blocks added after parsing have no region.
+	 * </p>
+	 */
+	public Map<AbstractBlock,SourceRegion> getSourceRegions() {
+		return this.sourceRegions;
+	}
+
 	/**
 	 * @return the file type, {@link FileDefinition#GRAPH} or {@link #INSTANCE}
 	 */
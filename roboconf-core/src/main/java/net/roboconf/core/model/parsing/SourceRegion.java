@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.parsing;
+
+/**
+ * The region of the source file where a top-level block was read.
+ * <p>
+ * Offsets are expressed in characters. The end offset excludes the final line break.
+ * The fingerprint is computed from the serialized form of the block, right after parsing.
+ * It allows to determine whether a block was modified since it was read.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class SourceRegion {
+
+	private final long start, end, fingerprint;
+
+
+	/**
+	 * Constructor.
+	 * @param start the offset of the first character
+	 * @param end the offset after the last character
+	 * @param fingerprint the fingerprint of the block, as it was read
+	 */
+	public SourceRegion( long start, long end, long fingerprint ) {
+		this.start = start;
+		this.end = end;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return the offset of the first character
+	 */
+	public long getStart() {
+		return this.start;
+	}
+
+	/**
+	 * @return the offset after the last character
+	 */
+	public long getEnd() {
+		return this.end;
+	}
+
+	/**
+	 * @return the fingerprint of the block, as it was read
+	 */
+	public long getFingerprint() {
+		return this.fingerprint;
+	}
+}
@@ -18,12 +18,22 @@ package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 
 import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
 
 /**
  * An application groups an identifier, graph definitions and instances.
+ * <p>
+ * Once an application is shared between several threads, the application itself is the lock of its
+ * instance tree. The structure of the tree (root instances and children) must only be modified while
+ * holding this lock, e.g. in a <code>synchronized( application )</code> block, and a new snapshot must be
+ * published before releasing it. Threads that only read the structure should use {@link #getSnapshot()}.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class Application implements Serializable {
@@ -34,6 +44,14 @@ public class Application implements Serializable {
 	private Graphs graphs;
 	private final Collection<Instance> rootInstances = new LinkedHashSet<Instance> ();
 
+	// An index to find instances by path.
+	// It is only a cache: entries are checked before being returned.
+	private transient Map<String,Instance> pathToInstance;
+
+	// The last published snapshot of the instance tree
+	private transient volatile ApplicationSnapshot snapshot;
+	private transient long snapshotVersion;
+
 
 	/**
 	 * @return the name
@@ -98,6 +116,119 @@ public class Application implements Serializable {
 		return this.rootInstances;
 	}
 
+	/**
+	 * Gets the last published snapshot of the instance tree.
+	 * <p>
+	 * Readers can browse the snapshot without locking, even if the model is being modified.
+	 * If no snapshot was published yet, one is built and published on the first invocation.
+	 * </p>
+	 *
+	 * @return a non-null snapshot
+	 */
+	public ApplicationSnapshot getSnapshot() {
+
+		ApplicationSnapshot result = this.snapshot;
+		if( result == null ) {
+			synchronized( this ) {
+				result = this.snapshot;
+				if( result == null )
+					result = publishSnapshot();
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Publishes a new snapshot of the instance tree.
+	 * <p>
+	 * This method must be invoked by the threads that modify the structure of the model
+	 * (instance insertions and removals), before they release the lock of the application.
+	 * It is also invoked once the application has been loaded.
+	 * </p>
+	 *
+	 * @return the new snapshot (not null)
+	 */
+	public synchronized ApplicationSnapshot publishSnapshot() {
+		this.snapshot = new ApplicationSnapshot( ++ this.snapshotVersion, this );
+		return this.snapshot;
+	}
+
+
+	/**
+	 * Indexes an instance and all its descendants by path.
+	 * <p>
+	 * The index is a cache used by {@link InstanceHelpers#findInstanceByPath(Application, String)}.
+	 * Indexing an instance which does not belong to this application has no consequence.
+	 * </p>
+	 *
+	 * @param instance an instance (not null)
+	 */
+	public synchronized void indexInstance( Instance instance ) {
+
+		if( this.pathToInstance == null )
+			this.pathToInstance = new HashMap<String,Instance> ();
+
+		for( Instance inst : InstanceHelpers.browseHierarchically( instance ))
+			this.pathToInstance.put( inst.getPath(), inst );
+	}
+
+
+	/**
+	 * Removes an instance and all its descendants from the index.
+	 * @param instance an instance (not null)
+	 */
+	public synchronized void unindexInstance( Instance instance ) {
+
+		if( this.pathToInstance != null ) {
+			for( Instance inst : InstanceHelpers.browseHierarchically( instance )) {
+				if( this.pathToInstance.get( inst.getPath()) == inst )
+					this.pathToInstance.remove( inst.getPath());
+			}
+		}
+	}
+
+
+	/**
+	 * Finds an indexed instance.
+	 * <p>
+	 * Before being returned, the indexed instance is verified: its path must match
+	 * and it must still be attached to this application. Stale entries are removed.
+	 * </p>
+	 *
+	 * @param instancePath an instance path (not null)
+	 * @return the indexed instance, or null if it was not indexed or if its entry was stale
+	 */
+	public synchronized Instance findIndexedInstance( String instancePath ) {
+
+		Instance result = this.pathToInstance == null ? null : this.pathToInstance.get( instancePath );
+		if( result != null
+				&& ( ! instancePath.equals( result.getPath()) || ! isAttached( result ))) {
+
+			this.pathToInstance.remove( instancePath );
+			result = null;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param instance an instance (not null)
+	 * @return true if the instance can be reached from the root instances of this application
+	 */
+	private boolean isAttached( Instance instance ) {
+
+		Instance current = instance;
+		boolean attached = true;
+		for( ; attached && current.getParent() != null; current = current.getParent())
+			attached = current.getParent().getChildren().contains( current );
+
+		return attached && this.rootInstances.contains( current );
+	}
+
+
 	@Override
 	public boolean equals( Object obj ) {
 		return obj instanceof Application
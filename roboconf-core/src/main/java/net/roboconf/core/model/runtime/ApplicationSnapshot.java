@@ -0,0 +1,143 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+
+/**
+ * An immutable view of the instance tree of an application.
+ * <p>
+ * The structure of the tree (root instances, children, paths) is frozen when the snapshot is created.
+ * Instances are not copied: their status, exports or imports are read from the model.
+ * </p>
+ * <p>
+ * Snapshots are published by the threads that modify the structure of the model,
+ * and can be read by any other thread without locking. See {@link Application#getSnapshot()}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class ApplicationSnapshot {
+
+	private final long version;
+	private final List<Instance> rootInstances;
+	private final List<Instance> allInstances;
+	private final Map<Instance,List<Instance>> instanceToChildren;
+	private final Map<String,Instance> pathToInstance;
+
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * It must be invoked while holding the lock of the application.
+	 * </p>
+	 *
+	 * @param version the snapshot version
+	 * @param application the application (not null)
+	 */
+	ApplicationSnapshot( long version, Application application ) {
+
+		// Paths may change in the model, so we do not rely on Instance#hashCode()
+		List<Instance> all = new ArrayList<Instance> ();
+		Map<Instance,List<Instance>> children = new IdentityHashMap<Instance,List<Instance>> ();
+		Map<String,Instance> paths = new HashMap<String,Instance> ();
+
+		for( Instance instance : InstanceHelpers.browseAllInstances( application )) {
+			all.add( instance );
+			paths.put( InstanceHelpers.computeInstancePath( instance ), instance );
+			if( ! instance.getChildren().isEmpty()) {
+				List<Instance> list = new ArrayList<Instance>( instance.getChildren());
+				children.put( instance, Collections.unmodifiableList( list ));
+			}
+		}
+
+		this.version = version;
+		this.rootInstances = Collections.unmodifiableList( new ArrayList<Instance>( application.getRootInstances()));
+		this.allInstances = Collections.unmodifiableList( all );
+		this.instanceToChildren = children;
+		this.pathToInstance = paths;
+	}
+
+
+	/**
+	 * @return the version of this snapshot (the higher, the more recent)
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+
+	/**
+	 * @return the root instances (not null, immutable)
+	 */
+	public List<Instance> getRootInstances() {
+		return this.rootInstances;
+	}
+
+
+	/**
+	 * @return all the instances, sorted as in {@link InstanceHelpers#getAllInstances(Application)} (not null, immutable)
+	 */
+	public List<Instance> getAllInstances() {
+		return this.allInstances;
+	}
+
+
+	/**
+	 * Gets the children of an instance, as they were when the snapshot was created.
+	 * @param instance an instance (not null)
+	 * @return a non-null and immutable list (empty if the instance was not part of the snapshot)
+	 */
+	public List<Instance> getChildren( Instance instance ) {
+		List<Instance> result = this.instanceToChildren.get( instance );
+		return result == null ? Collections.<Instance>emptyList() : result;
+	}
+
+
+	/**
+	 * Builds a list of instances ordered hierarchically, as they were when the snapshot was created.
+	 * @param instance the instance from which we introspect (not null)
+	 * @return a non-null list, sorted as in {@link InstanceHelpers#buildHierarchicalList(Instance)}
+	 */
+	public List<Instance> buildHierarchicalList( Instance instance ) {
+
+		List<Instance> result = new ArrayList<Instance> ();
+		result.add( instance );
+		for( int i=0; i<result.size(); i++ )
+			result.addAll( getChildren( result.get( i )));
+
+		return result;
+	}
+
+
+	/**
+	 * Finds an instance by path, as it was when the snapshot was created.
+	 * @param instancePath an instance path (not null)
+	 * @return an instance, or null if it was not found
+	 */
+	public Instance findInstanceByPath( String instancePath ) {
+		String path = instancePath.startsWith( "/" ) ? instancePath : "/" + instancePath;
+		return this.pathToInstance.get( path );
+	}
+}
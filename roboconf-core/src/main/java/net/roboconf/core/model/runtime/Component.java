@@ -17,10 +17,14 @@
 package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import net.roboconf.core.internal.utils.Utils;
 
@@ -34,8 +38,9 @@ public class Component implements Serializable {
 
 	private String name, alias, installerName, iconLocation;
 	private final Collection<String> facetNames = new HashSet<String> ();
-	private final Map<String,String> exportedVariables = new HashMap<String,String> ();
-	private final Map<String,Boolean> importedVariables = new HashMap<String,Boolean> ();
+	private final Map<String,String> exportedVariables = new VariableMap<String>( this );
+	private final Map<String,Boolean> importedVariables = new VariableMap<Boolean>( this );
+	private transient VariableSchema variableSchema;
 
 	private final Collection<Component> children = new HashSet<Component> ();
 	private final Collection<Component> ancestors = new HashSet<Component> ();
@@ -137,6 +142,28 @@ public class Component implements Serializable {
 		return this.exportedVariables;
 	}
 
+	/**
+	 * Gets the variable schema of this component.
+	 * <p>
+	 * The schema is computed once and cached. The cache is invalidated whenever
+	 * {@link #getExportedVariables()} or {@link #getImportedVariables()} is modified,
+	 * including through their views and entries.
+	 * </p>
+	 *
+	 * @return the variable schema (not null)
+	 */
+	public VariableSchema getVariableSchema() {
+
+		// Work on a local variable, the field may be invalidated concurrently
+		VariableSchema result = this.variableSchema;
+		if( result == null ) {
+			result = new VariableSchema( this.exportedVariables, this.importedVariables );
+			this.variableSchema = result;
+		}
+
+		return result;
+	}
+
 	/**
 	 * @return the children
 	 */
@@ -161,4 +188,146 @@ public class Component implements Serializable {
 	public int hashCode() {
 		return this.name == null ? 17 : this.name.hashCode();
 	}
+
+
+	/**
+	 * A map that invalidates the variable schema of a component when it is modified.
+	 * <p>
+	 * Modifications made through the views (key set, values, entries), their
+	 * iterators and {@link java.util.Map.Entry#setValue(Object)} invalidate the schema too.
+	 * </p>
+	 *
+	 * @param <V> the type of the values
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class VariableMap<V> extends AbstractMap<String,V> implements Serializable {
+
+		private static final long serialVersionUID = -2316045012340405581L;
+		private final Component owner;
+		private final Map<String,V> delegate = new HashMap<String,V> ();
+		private transient Set<Map.Entry<String,V>> entrySet;
+
+
+		/**
+		 * Constructor.
+		 * @param owner the component that owns this map
+		 */
+		public VariableMap( Component owner ) {
+			this.owner = owner;
+		}
+
+		@Override
+		public int size() {
+			return this.delegate.size();
+		}
+
+		@Override
+		public boolean containsKey( Object key ) {
+			return this.delegate.containsKey( key );
+		}
+
+		@Override
+		public V get( Object key ) {
+			return this.delegate.get( key );
+		}
+
+		@Override
+		public V put( String key, V value ) {
+			V result = this.delegate.put( key, value );
+			this.owner.variableSchema = null;
+			return result;
+		}
+
+		@Override
+		public V remove( Object key ) {
+			V result = this.delegate.remove( key );
+			this.owner.variableSchema = null;
+			return result;
+		}
+
+		@Override
+		public void clear() {
+			this.delegate.clear();
+			this.owner.variableSchema = null;
+		}
+
+		@Override
+		public Set<Map.Entry<String,V>> entrySet() {
+
+			// Key set and values are built by AbstractMap on top of this view
+			if( this.entrySet == null )
+				this.entrySet = new EntrySet();
+
+			return this.entrySet;
+		}
+
+
+		/**
+		 * The entries of a variable map.
+		 */
+		private final class EntrySet extends AbstractSet<Map.Entry<String,V>> {
+
+			@Override
+			public int size() {
+				return VariableMap.this.delegate.size();
+			}
+
+			@Override
+			public void clear() {
+				VariableMap.this.clear();
+			}
+
+			@Override
+			public Iterator<Map.Entry<String,V>> iterator() {
+
+				final Iterator<Map.Entry<String,V>> it = VariableMap.this.delegate.entrySet().iterator();
+				return new Iterator<Map.Entry<String,V>> () {
+
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public Map.Entry<String,V> next() {
+						return new VariableEntry( it.next());
+					}
+
+					@Override
+					public void remove() {
+						it.remove();
+						VariableMap.this.owner.variableSchema = null;
+					}
+				};
+			}
+		}
+
+
+		/**
+		 * An entry of a variable map.
+		 */
+		private final class VariableEntry extends SimpleEntry<String,V> {
+
+			private static final long serialVersionUID = 4427564815063580446L;
+			private final Map.Entry<String,V> entry;
+
+
+			/**
+			 * Constructor.
+			 * @param entry the wrapped entry
+			 */
+			public VariableEntry( Map.Entry<String,V> entry ) {
+				super( entry );
+				this.entry = entry;
+			}
+
+			@Override
+			public V setValue( V value ) {
+				super.setValue( value );
+				V result = this.entry.setValue( value );
+				VariableMap.this.owner.variableSchema = null;
+				return result;
+			}
+		}
+	}
 }
@@ -17,8 +17,13 @@
 package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 
 /**
  * This object contains sets of related components.
@@ -28,6 +33,8 @@ public class Graphs implements Serializable {
 
 	private static final long serialVersionUID = 2918281424743945139L;
 	private final Collection<Component> rootsComponents = new HashSet<Component> ();
+	private Map<String,Component> nameToComponent;
+
 
 	/**
 	 * @return a non-null list of root components
@@ -35,4 +42,40 @@ public class Graphs implements Serializable {
 	public Collection<Component> getRootComponents() {
 		return this.rootsComponents;
 	}
+
+
+	/**
+	 * Indexes all the components of the graph(s) by name.
+	 * <p>
+	 * The index is a snapshot of the graph(s) at the moment this method is invoked.
+	 * It should be invoked once the graph(s) are complete, and again if they are modified.
+	 * </p>
+	 */
+	public void indexComponents() {
+
+		Map<String,Component> result = new LinkedHashMap<String,Component> ();
+		Queue<Component> toProcess = new ArrayDeque<Component>( this.rootsComponents );
+		while( ! toProcess.isEmpty()) {
+			Component current = toProcess.poll();
+			if( ! result.containsKey( current.getName())) {
+				result.put( current.getName(), current );
+				toProcess.addAll( current.getChildren());
+			}
+		}
+
+		this.nameToComponent = Collections.unmodifiableMap( result );
+	}
+
+
+	/**
+	 * @return an immutable map (key = component name, value = component) or null if the components were not indexed
+	 * <p>
+	 * Components are sorted in a breadth-first order, starting from the root components.
+	 * </p>
+	 *
+	 * @see #indexComponents()
+	 */
+	public Map<String,Component> getComponentsByName() {
+		return this.nameToComponent;
+	}
 }
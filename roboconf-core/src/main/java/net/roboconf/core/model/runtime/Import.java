@@ -17,10 +17,11 @@
 package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import net.roboconf.core.internal.utils.CompactMap;
+import net.roboconf.core.internal.utils.StringPool;
 import net.roboconf.core.internal.utils.Utils;
 
 /**
@@ -37,7 +38,7 @@ public class Import implements Serializable {
 	private static final long serialVersionUID = 1926254974053785327L;
 
 	private final String instancePath;
-	private final Map<String,String> exportedVars = new HashMap<String,String> ();
+	private final Map<String,String> exportedVars = new CompactMap<String,String> ();
 
 
 	/**
@@ -45,7 +46,7 @@ public class Import implements Serializable {
 	 * @param instancePath
 	 */
 	public Import( String instancePath ) {
-		this.instancePath = instancePath;
+		this.instancePath = StringPool.intern( instancePath );
 	}
 
 
@@ -56,8 +57,11 @@ public class Import implements Serializable {
 	 */
 	public Import( String instancePath, Map<String,String> exportedVars ) {
 		super();
-		this.instancePath = instancePath;
-		this.exportedVars.putAll( exportedVars );
+		this.instancePath = StringPool.intern( instancePath );
+
+		// Variable names are shared by all the imports of a same component
+		for( Map.Entry<String,String> entry : exportedVars.entrySet())
+			this.exportedVars.put( StringPool.intern( entry.getKey()), entry.getValue());
 	}
 
 
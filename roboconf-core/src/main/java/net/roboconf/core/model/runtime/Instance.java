@@ -17,12 +17,14 @@
 package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
+import net.roboconf.core.internal.utils.CompactMap;
+import net.roboconf.core.internal.utils.CompactSet;
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 
 /**
@@ -50,16 +52,23 @@ public class Instance implements Serializable {
 	private String name, channel;
 	private Component component;
 	private Instance parent;
-	private final Collection<Instance> children = new LinkedHashSet<Instance> ();
+
+	// Most instances have few children, data, exports or imports (or even none).
+	// Compact collections do not allocate anything until they are filled.
+	private final Collection<Instance> children = new CompactSet<Instance> ();
 
 	private InstanceStatus status = InstanceStatus.NOT_DEPLOYED;
-	private final Map<String,String> data = new LinkedHashMap<String,String>( 0 );
-	private final Map<String,String> overridenExports = new HashMap<String,String> ();
-	private final Map<String,String> exports = new HashMap<String,String> ();
+	private final Map<String,String> data = new CompactMap<String,String> ();
+	private final Map<String,String> overridenExports = new CompactMap<String,String> ();
+	private final Map<String,String> exports = new CompactMap<String,String> ();
 
 	// At runtime, exported variables are grouped by prefix.
 	// The prefix is a component or a facet name.
-	private final Map<String,Collection<Import>> variablePrefixToImports = new HashMap<String,Collection<Import>> ();
+	private final Map<String,Collection<Import>> variablePrefixToImports = new CompactMap<String,Collection<Import>> ();
+
+	// The path is used by hashCode() and equals(), which are invoked very often (maps, sets...).
+	// It is cached and invalidated as soon as the ancestry of this instance changes.
+	private transient String path;
 
 
 	/**
@@ -89,6 +98,7 @@ public class Instance implements Serializable {
 	 */
 	public void setName( String name ) {
 		this.name = name;
+		invalidatePath();
 	}
 
 	/**
@@ -145,6 +155,7 @@ public class Instance implements Serializable {
 	 */
 	public void setParent( Instance parent ) {
 		this.parent = parent;
+		invalidatePath();
 	}
 
 	/**
@@ -175,15 +186,41 @@ public class Instance implements Serializable {
 		return exports;
 	}
 
+	/**
+	 * Gets the path of this instance, from its root instance.
+	 * <p>
+	 * The path is computed once and then cached. The cache is invalidated
+	 * when the name or the parent of this instance (or of one of its ancestors) is modified.
+	 * </p>
+	 * <p>
+	 * Prefer {@link InstanceHelpers#computeInstancePath(Instance)} in client code.
+	 * </p>
+	 *
+	 * @return the instance path (not null)
+	 */
+	public String getPath() {
+
+		// Work on a local variable, the field may be invalidated concurrently
+		String result = this.path;
+		if( result == null ) {
+			String parentPath = this.parent == null ? "" : this.parent.getPath();
+			result = Utils.isEmptyOrWhitespaces( this.name ) ? parentPath + "/" : parentPath + "/" + this.name;
+			this.path = result;
+		}
+
+		return result;
+	}
+
 	@Override
 	public int hashCode() {
-		return InstanceHelpers.computeInstancePath( this ).hashCode();
+		return getPath().hashCode();
 	}
 
 	@Override
 	public boolean equals( Object obj ) {
-		return obj instanceof Instance
-				&& InstanceHelpers.haveSamePath( this, (Instance) obj);
+		return obj == this
+				|| obj instanceof Instance
+				&& getPath().equals(((Instance) obj).getPath());
 	}
 
 	@Override
@@ -220,7 +257,7 @@ public class Instance implements Serializable {
 
 		Collection<Import> imports = this.variablePrefixToImports.get( componentOrFacetName );
 		if(imports == null) {
-			imports = new LinkedHashSet<Import> ();
+			imports = new CompactSet<Import> ();
 			this.variablePrefixToImports.put( componentOrFacetName, imports );
 		}
 
@@ -229,6 +266,21 @@ public class Instance implements Serializable {
 	}
 
 
+	/**
+	 * Invalidates the cached path of this instance and of all its descendants.
+	 */
+	private void invalidatePath() {
+
+		List<Instance> toProcess = new ArrayList<Instance> ();
+		toProcess.add( this );
+		while( ! toProcess.isEmpty()) {
+			Instance current = toProcess.remove( toProcess.size() - 1 );
+			current.path = null;
+			toProcess.addAll( current.children );
+		}
+	}
+
+
 	/**
 	 * @author Noël - LIG
 	 */
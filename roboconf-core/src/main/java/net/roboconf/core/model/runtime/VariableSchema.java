@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.roboconf.core.model.helpers.VariableHelpers;
+
+/**
+ * An immutable view of the variables of a component, with their names already parsed.
+ * <p>
+ * Variable schemas are computed once per component and reused until the variables
+ * of the component are modified. See {@link Component#getVariableSchema()}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class VariableSchema {
+
+	private final Set<String> exportedPrefixes;
+	private final Set<String> mandatoryImportedPrefixes, optionalImportedPrefixes, importedPrefixes;
+	private final Map<String,String> variableNameToSimpleName;
+
+
+	/**
+	 * Constructor.
+	 * @param exportedVariables the exported variables (not null)
+	 * @param importedVariables the imported variables (not null, value = true if the import is optional)
+	 */
+	public VariableSchema( Map<String,String> exportedVariables, Map<String,Boolean> importedVariables ) {
+
+		Set<String> exported = new HashSet<String> ();
+		Set<String> mandatory = new HashSet<String> ();
+		Set<String> optional = new HashSet<String> ();
+		Map<String,String> simpleNames = new HashMap<String,String> ();
+
+		for( String variableName : exportedVariables.keySet()) {
+			Map.Entry<String,String> entry = VariableHelpers.parseVariableName( variableName );
+			exported.add( entry.getKey());
+			simpleNames.put( variableName, entry.getValue());
+		}
+
+		for( Map.Entry<String,Boolean> importedVariable : importedVariables.entrySet()) {
+			Map.Entry<String,String> entry = VariableHelpers.parseVariableName( importedVariable.getKey());
+			if( importedVariable.getValue())
+				optional.add( entry.getKey());
+			else
+				mandatory.add( entry.getKey());
+
+			simpleNames.put( importedVariable.getKey(), entry.getValue());
+		}
+
+		// A prefix with at least one mandatory variable is mandatory
+		Set<String> all = new HashSet<String>( optional );
+		all.addAll( mandatory );
+		optional.removeAll( mandatory );
+
+		this.exportedPrefixes = Collections.unmodifiableSet( exported );
+		this.mandatoryImportedPrefixes = Collections.unmodifiableSet( mandatory );
+		this.optionalImportedPrefixes = Collections.unmodifiableSet( optional );
+		this.importedPrefixes = Collections.unmodifiableSet( all );
+		this.variableNameToSimpleName = Collections.unmodifiableMap( simpleNames );
+	}
+
+
+	/**
+	 * @return the component and facet names that prefix the exported variables (not null, immutable)
+	 */
+	public Set<String> getExportedPrefixes() {
+		return this.exportedPrefixes;
+	}
+
+
+	/**
+	 * @return the component and facet names that prefix the required imports (not null, immutable)
+	 */
+	public Set<String> getMandatoryImportedPrefixes() {
+		return this.mandatoryImportedPrefixes;
+	}
+
+
+	/**
+	 * @return the component and facet names that only prefix optional imports (not null, immutable)
+	 */
+	public Set<String> getOptionalImportedPrefixes() {
+		return this.optionalImportedPrefixes;
+	}
+
+
+	/**
+	 * @return the component and facet names that prefix the imports, optional or not (not null, immutable)
+	 */
+	public Set<String> getImportedPrefixes() {
+		return this.importedPrefixes;
+	}
+
+
+	/**
+	 * Finds the simple name of an exported or imported variable.
+	 * @param variableName a variable name (not null)
+	 * @return the simple name, or null if this variable is not exported nor imported
+	 */
+	public String findSimpleName( String variableName ) {
+		return this.variableNameToSimpleName.get( variableName );
+	}
+}
@@ -23,9 +23,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import net.roboconf.core.Constants;
 import net.roboconf.core.ErrorCode;
+import net.roboconf.core.internal.utils.SharedExecutor;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.helpers.VariableHelpers;
@@ -43,19 +48,43 @@ import net.roboconf.core.model.parsing.ParsingConstants;
 
 /**
  * A set of methods to validate parsing model objects.
+ * <p>
+ * Identifiers and image locations are checked by hand-written validators,
+ * equivalent to {@link ParsingConstants#PATTERN_ID} and {@link ParsingConstants#PATTERN_IMAGE}.
+ * No regular expression is compiled during the validation.
+ * </p>
+ * <p>
+ * Top-level blocks are independent. In large files, they are validated in parallel.
+ * Errors are always merged in the declaration order of the blocks.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class ParsingModelValidator {
 
+	/**
+	 * The minimal number of top-level blocks per thread to validate a file in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 128;
+
+	private static final String[] IMAGE_EXTENSIONS = { "png", "gif", "jpg", "jpeg" };
+
+
 	/**
 	 * @param definitionFile a definition file
 	 * @return a non-null list of {@link ModelError}s
 	 */
 	public static Collection<ModelError> validate( FileDefinition definitionFile ) {
+
 		Collection<ModelError> result = new ArrayList<ModelError> ();
 		result.addAll( definitionFile.getParsingErrors());
-		for( AbstractBlock block : definitionFile.getBlocks())
-			result.addAll( validate( block ));
+
+		List<AbstractBlock> blocks = definitionFile.getBlocks();
+		int threadsCount = Math.min( Runtime.getRuntime().availableProcessors(), blocks.size() / PARALLEL_THRESHOLD );
+		if( threadsCount > 1 )
+			result.addAll( validateConcurrently( blocks, threadsCount ));
+		else
+			result.addAll( validate( blocks ));
 
 		return result;
 	}
@@ -109,6 +138,87 @@ public class ParsingModelValidator {
 	}
 
 
+	/**
+	 * Validates blocks in the current thread.
+	 * @param blocks a list of blocks
+	 * @return a non-null list of {@link ModelError}s, sorted in the block order
+	 */
+	static Collection<ModelError> validate( List<AbstractBlock> blocks ) {
+
+		Collection<ModelError> result = new ArrayList<ModelError> ();
+		for( AbstractBlock block : blocks )
+			result.addAll( validate( block ));
+
+		return result;
+	}
+
+
+	/**
+	 * Validates blocks in parallel.
+	 * <p>
+	 * Blocks are split into contiguous chunks, one per thread, and validated by the {@link SharedExecutor}.
+	 * Results are merged in the chunk order, so that errors are sorted as in a sequential validation.
+	 * When invoked from a thread of this pool (e.g. while parsing imports), blocks are validated in the current thread.
+	 * </p>
+	 *
+	 * @param blocks a list of blocks
+	 * @param threadsCount the number of threads to use
+	 * @return a non-null list of {@link ModelError}s, sorted in the block order
+	 */
+	static Collection<ModelError> validateConcurrently( List<AbstractBlock> blocks, int threadsCount ) {
+
+		// Waiting for tasks of the pool from one of its threads could block all of them
+		if( SharedExecutor.isWorkerThread())
+			return validate( blocks );
+
+		Collection<ModelError> result = new ArrayList<ModelError> ();
+		ExecutorService executor = SharedExecutor.getInstance();
+		List<Future<Collection<ModelError>>> futures = new ArrayList<Future<Collection<ModelError>>> ();
+		try {
+			int chunkSize = ( blocks.size() + threadsCount - 1 ) / threadsCount;
+			for( int i=0; i<blocks.size(); i += chunkSize ) {
+				final List<AbstractBlock> chunk = blocks.subList( i, Math.min( i + chunkSize, blocks.size()));
+				futures.add( executor.submit( new Callable<Collection<ModelError>> () {
+					@Override
+					public Collection<ModelError> call() throws Exception {
+						return validate( chunk );
+					}
+				}));
+			}
+
+			for( Future<Collection<ModelError>> future : futures )
+				result.addAll( future.get());
+
+		} catch( InterruptedException e ) {
+			// Complete the validation in the current thread
+			Thread.currentThread().interrupt();
+			result = validate( blocks );
+
+		} catch( ExecutionException e ) {
+			// Validators do not throw checked exceptions
+			if( e.getCause() instanceof RuntimeException )
+				throw (RuntimeException) e.getCause();
+
+			if( e.getCause() instanceof Error )
+				throw (Error) e.getCause();
+
+			throw new IllegalStateException( e.getCause());
+
+		} finally {
+			// The pool is shared: only the remaining tasks are cancelled
+			cancel( futures );
+		}
+
+		return result;
+	}
+
+
+	private static void cancel( List<? extends Future<?>> futures ) {
+		for( Future<?> future : futures )
+			future.cancel( false );
+	}
+
+
 	/**
 	 * @param block a block
 	 * @return a non-null list of {@link ModelError}s
@@ -202,7 +312,7 @@ public class ParsingModelValidator {
 
 		} else if( Constants.PROPERTY_GRAPH_CHILDREN.equals( name )) {
 			for( String s : Utils.splitNicely( value, ParsingConstants.PROPERTY_SEPARATOR )) {
-				if( s.matches( ParsingConstants.PATTERN_ID ))
+				if( isValidIdentifier( s ))
 					continue;
 
 				ModelError error = new ModelError( ErrorCode.PM_INVALID_CHILD_NAME, line );
@@ -220,7 +330,7 @@ public class ParsingModelValidator {
 				if( Utils.isEmptyOrWhitespaces( s )) {
 					result.add( new ModelError( ErrorCode.PM_EMPTY_REFERENCED_FACET_NAME, line ));
 
-				} else if( ! s.matches( ParsingConstants.PATTERN_ID )) {
+				} else if( ! isValidIdentifier( s )) {
 					ModelError error = new ModelError( ErrorCode.PM_INVALID_FACET_NAME, line );
 					error.setDetails( "Facet name: " + s );
 					result.add( error );
@@ -236,7 +346,7 @@ public class ParsingModelValidator {
 				s = s.trim();
 				if( Utils.isEmptyOrWhitespaces( s ))
 					result.add( new ModelError( ErrorCode.PM_EMPTY_VARIABLE_NAME, line ));
-				else if( ! s.matches( ParsingConstants.PATTERN_ID ))
+				else if( ! isValidIdentifier( s ))
 					result.add( new ModelError( ErrorCode.PM_INVALID_IMPORTED_VAR_NAME, line ));
 				else if( ! s.contains( "." )
 						|| s.indexOf( '.' ) == s.length() -1 )
@@ -248,16 +358,16 @@ public class ParsingModelValidator {
 				Map.Entry<String,String> entry = VariableHelpers.parseExportedVariable( s );
 				if( Utils.isEmptyOrWhitespaces( entry.getKey()))
 					result.add( new ModelError( ErrorCode.PM_EMPTY_VARIABLE_NAME, line ));
-				else if( ! entry.getKey().matches( ParsingConstants.PATTERN_ID ))
+				else if( ! isValidIdentifier( entry.getKey()))
 					result.add( new ModelError( ErrorCode.PM_INVALID_EXPORTED_VAR_NAME, line ));
 			}
 
 		} else if( Constants.PROPERTY_GRAPH_ICON_LOCATION.equals( name )) {
-			if( ! value.toLowerCase().matches( ParsingConstants.PATTERN_IMAGE ))
+			if( ! isValidImageLocation( value ))
 				result.add( new ModelError( ErrorCode.PM_INVALID_ICON_LOCATION, line ));
 
 		} else if( Constants.PROPERTY_GRAPH_INSTALLER.equals( name )) {
-			if( ! value.matches( ParsingConstants.PATTERN_ID ))
+			if( ! isValidIdentifier( value ))
 				result.add( new ModelError( ErrorCode.PM_INVALID_INSTALLER_NAME, line ));
 
 		} else if( Constants.PROPERTY_INSTANCE_NAME.equals( name )) {
@@ -323,7 +433,7 @@ public class ParsingModelValidator {
 		String name = holder.getName();
 		if( Utils.isEmptyOrWhitespaces( name ))
 			result.add( new ModelError( holder.getInstructionType() == AbstractBlock.FACET ? ErrorCode.PM_EMPTY_FACET_NAME : ErrorCode.PM_EMPTY_COMPONENT_NAME, holder.getLine()));
-		else if( ! name.matches( ParsingConstants.PATTERN_ID ))
+		else if( ! isValidIdentifier( name ))
 			result.add( new ModelError( holder.getInstructionType() == AbstractBlock.FACET ? ErrorCode.PM_INVALID_FACET_NAME : ErrorCode.PM_INVALID_COMPONENT_NAME, holder.getLine()));
 		else if( name.contains( "." ))
 			result.add( new ModelError( ErrorCode.PM_DOT_IS_NOT_ALLOWED, holder.getLine()));
@@ -358,4 +468,64 @@ public class ParsingModelValidator {
 
 		return result;
 	}
+
+
+	/**
+	 * Determines whether a string is a valid identifier.
+	 * <p>
+	 * Equivalent to <code>s.matches( ParsingConstants.PATTERN_ID )</code>, without any regular expression.
+	 * </p>
+	 *
+	 * @param s a string (not null)
+	 * @return true if it is a valid identifier, false otherwise
+	 */
+	static boolean isValidIdentifier( String s ) {
+
+		boolean result = s.length() > 0 && ( isAsciiLetter( s.charAt( 0 )) || s.charAt( 0 ) == '_' );
+		for( int i=1; i<s.length() && result; i++ ) {
+			char c = s.charAt( i );
+			result = isAsciiLetter( c ) || c >= '0' && c <= '9' || c == '_' || c == '-' || c == '.';
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Determines whether a string is a valid image location.
+	 * <p>
+	 * Equivalent to <code>s.toLowerCase().matches( ParsingConstants.PATTERN_IMAGE )</code>,
+	 * without any regular expression.
+	 * </p>
+	 *
+	 * @param s a string (not null)
+	 * @return true if it is a valid image location, false otherwise
+	 */
+	static boolean isValidImageLocation( String s ) {
+
+		boolean result = false;
+		int dotIndex = s.lastIndexOf( '.' );
+		if( dotIndex > 0 ) {
+			int extensionLength = s.length() - dotIndex - 1;
+			for( String extension : IMAGE_EXTENSIONS ) {
+				if( extension.length() == extensionLength
+						&& s.regionMatches( true, dotIndex + 1, extension, 0, extensionLength )) {
+					result = true;
+					break;
+				}
+			}
+		}
+
+		for( int i=0; i<s.length() && result; i++ ) {
+			char c = s.charAt( i );
+			result = c != ' ' && c != '\t' && c != '\n' && c != '\013' && c != '\f' && c != '\r';
+		}
+
+		return result;
+	}
+
+
+	private static boolean isAsciiLetter( char c ) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+	}
 }
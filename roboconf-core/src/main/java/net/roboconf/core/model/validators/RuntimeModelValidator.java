@@ -28,6 +28,7 @@ import net.roboconf.core.RoboconfError;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.ApplicationDescriptor;
 import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Graphs;
@@ -131,13 +132,10 @@ public class RuntimeModelValidator {
 		}
 
 		// Containment Cycles?
-		for( Component c : graphs.getRootComponents()) {
-			String s = ComponentHelpers.searchForLoop( c );
-			if( s != null ) {
-				RoboconfError error = new RoboconfError( ErrorCode.RM_CYCLE_IN_COMPONENTS );
-				error.setDetails( s );
-				errors.add( error );
-			}
+		for( String s : ComponentHelpers.findCycles( graphs )) {
+			RoboconfError error = new RoboconfError( ErrorCode.RM_CYCLE_IN_COMPONENTS );
+			error.setDetails( s );
+			errors.add( error );
 		}
 
 		return errors;
@@ -185,6 +183,67 @@ public class RuntimeModelValidator {
 	}
 
 
+	/**
+	 * Validates an instance and its descendants before they are inserted in a model.
+	 * <p>
+	 * This validation is incremental: the rest of the model is assumed to be valid.
+	 * Only the new instances are verified, including their compatibility with their parent's component.
+	 * Name conflicts with the existing children of the parent instance are not checked here.
+	 * </p>
+	 *
+	 * @param parentInstance the parent instance (null for a root instance)
+	 * @param newInstance the instance to insert (not null)
+	 * @return a non-null list of errors
+	 */
+	public static Collection<RoboconfError> validateInsertion( Instance parentInstance, Instance newInstance ) {
+
+		Collection<RoboconfError> errors = new ArrayList<RoboconfError> ();
+		validateContainment( parentInstance, newInstance, errors );
+
+		for( Instance instance : InstanceHelpers.browseHierarchically( newInstance )) {
+			errors.addAll( validate( instance ));
+
+			Set<String> childrenNames = new HashSet<String> ();
+			for( Instance child : instance.getChildren()) {
+				validateContainment( instance, child, errors );
+				if( ! childrenNames.add( child.getName())) {
+					RoboconfError error = new RoboconfError( ErrorCode.RM_DUPLICATE_INSTANCE );
+					error.setDetails( "Instance name: " + child.getName());
+					errors.add( error );
+				}
+			}
+		}
+
+		return errors;
+	}
+
+
+	/**
+	 * Verifies an instance's component can be instantiated under a given parent instance.
+	 * @param parentInstance the parent instance (null for a root instance)
+	 * @param instance an instance (not null)
+	 * @param errors the errors, to complete if necessary
+	 */
+	private static void validateContainment( Instance parentInstance, Instance instance, Collection<RoboconfError> errors ) {
+
+		Component component = instance.getComponent();
+		boolean valid;
+		if( component == null )
+			valid = true;	// Reported by validate( Instance )
+		else if( parentInstance == null )
+			valid = component.getAncestors().isEmpty();
+		else
+			valid = parentInstance.getComponent() != null
+				&& parentInstance.getComponent().getChildren().contains( component );
+
+		if( ! valid ) {
+			RoboconfError error = new RoboconfError( ErrorCode.RM_INVALID_INSTANCE_PARENT );
+			error.setDetails( "Instance name: " + instance.getName() + ". Component name: " + component.getName());
+			errors.add( error );
+		}
+	}
+
+
 	/**
 	 * Validates an application.
 	 * @param app an application (not null)
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.model.parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.roboconf.core.internal.tests.TestUtils;
+
+/**
+ * Measures the throughput of the parser on the test configuration files.
+ * <p>
+ * This is not a unit test: timings depend on the machine, so it is run by hand
+ * (e.g. from an IDE) and prints its results on the standard output.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class FileDefinitionParserBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 200;
+	private static final int ITERATIONS = 1000;
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private FileDefinitionParserBenchmark() {
+		// nothing
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args unused
+	 * @throws IOException if the test files could not be found
+	 * @throws URISyntaxException if the test files could not be found
+	 */
+	public static void main( String[] args ) throws IOException, URISyntaxException {
+
+		// Valid and invalid files, so that all the parsing paths are measured
+		List<File> files = new ArrayList<File> ();
+		List<File> toProcess = new ArrayList<File> ();
+		toProcess.add( TestUtils.findTestFile( "/configurations" ));
+		while( ! toProcess.isEmpty()) {
+			File f = toProcess.remove( 0 );
+			File[] children = f.listFiles();
+			if( children != null ) {
+				for( File child : children )
+					toProcess.add( child );
+
+			} else if( f.isFile()) {
+				files.add( f );
+			}
+		}
+
+		long bytes = 0;
+		for( File f : files )
+			bytes += f.length();
+
+		System.out.println( files.size() + " files, " + bytes + " bytes." );
+		run( files, WARM_UP_ITERATIONS, true, false );
+		run( files, WARM_UP_ITERATIONS, false, false );
+		run( files, ITERATIONS, true, true );
+		run( files, ITERATIONS, false, true );
+	}
+
+
+	/**
+	 * Parses every file a given number of times.
+	 * @param files the files to parse
+	 * @param iterations the number of times each file is parsed
+	 * @param ignoreComments true to ignore comments while parsing
+	 * @param print true to print the throughput
+	 */
+	private static void run( List<File> files, int iterations, boolean ignoreComments, boolean print ) {
+
+		int blocks = 0;
+		long start = System.nanoTime();
+		for( int i=0; i<iterations; i++ ) {
+			for( File f : files )
+				blocks += new FileDefinitionParser( f, ignoreComments ).read().getBlocks().size();
+		}
+
+		long time = System.nanoTime() - start;
+		if( print ) {
+			long count = (long) iterations * files.size();
+			System.out.println( String.format(
+					"ignoreComments=%-5s %10d files/s    (%d blocks)",
+					ignoreComments,
+					count * 1000000000L / Math.max( 1, time ),
+					blocks ));
+		}
+	}
+}
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import junit.framework.Assert;
 import net.roboconf.core.ErrorCode;
@@ -173,6 +174,33 @@ public class FileDefinitionParserTest {
 	}
 
 
+	@Test
+	public void testRemoveKeyword() {
+
+		// Compare with the regular expressions the parser used before
+		String[] lines = {
+				"facet f {",
+				"  facet f {",
+				"\tfacet facet {",
+				"Facet f {",
+				"facetf{",
+				"a facet b  facet c",
+				"",
+				" \t ",
+				"no keyword"
+		};
+
+		for( String line : lines ) {
+			Assert.assertEquals( line, line.replaceAll( "\\s*" + Pattern.quote( "facet" ), "" ), FileDefinitionParser.removeKeyword( line, "facet", false ));
+			String closingLine = line + " }  } ";
+			Assert.assertEquals( line, closingLine.replaceFirst( "\\s*\\}", "" ), FileDefinitionParser.removeKeyword( closingLine, "}", true ));
+			Assert.assertEquals( line, line.trim().toLowerCase().startsWith( "facet" ), FileDefinitionParser.startsWithIgnoreCase( line, "facet" ));
+			Assert.assertEquals( line, line.trim().isEmpty(), FileDefinitionParser.isBlank( line ));
+			Assert.assertEquals( line, closingLine.trim().isEmpty(), FileDefinitionParser.isBlank( closingLine ));
+		}
+	}
+
+
 	@Test
 	public void testRecognizeImport() {
 
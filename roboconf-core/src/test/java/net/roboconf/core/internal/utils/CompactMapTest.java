@@ -0,0 +1,159 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompactMapTest {
+
+	@Test
+	public void testBehavesLikeLinkedHashMap() {
+
+		// Go beyond the threshold to test both storage modes
+		Map<String,String> map = new CompactMap<String,String> ();
+		Map<String,String> reference = new LinkedHashMap<String,String> ();
+		Assert.assertTrue( map.isEmpty());
+
+		for( int i=0; i<3 * CompactMap.THRESHOLD; i++ ) {
+			Assert.assertEquals( reference.put( "key" + i, "value" + i ), map.put( "key" + i, "value" + i ));
+			Assert.assertEquals( reference.put( "key" + i / 2, "new" + i ), map.put( "key" + i / 2, "new" + i ));
+			Assert.assertEquals( reference, map );
+			Assert.assertEquals( reference.hashCode(), map.hashCode());
+			Assert.assertEquals( new ArrayList<String>( reference.keySet()), new ArrayList<String>( map.keySet()));
+
+			if( i % 3 == 0 ) {
+				Assert.assertEquals( reference.remove( "key" + i / 3 ), map.remove( "key" + i / 3 ));
+				Assert.assertEquals( reference, map );
+			}
+		}
+
+		Assert.assertNull( map.get( "inexisting" ));
+		Assert.assertFalse( map.containsKey( "inexisting" ));
+		map.clear();
+		Assert.assertTrue( map.isEmpty());
+		Assert.assertEquals( 0, map.size());
+	}
+
+
+	@Test
+	public void testNullKeysAndValues() {
+
+		Map<String,String> map = new CompactMap<String,String> ();
+		map.put( null, "v" );
+		map.put( "k", null );
+
+		Assert.assertEquals( 2, map.size());
+		Assert.assertEquals( "v", map.get( null ));
+		Assert.assertTrue( map.containsKey( "k" ));
+		Assert.assertNull( map.get( "k" ));
+
+		Assert.assertEquals( "v", map.remove( null ));
+		Assert.assertEquals( 1, map.size());
+	}
+
+
+	@Test
+	public void testIterators() {
+
+		Map<String,String> map = new CompactMap<String,String> ();
+		for( int i=0; i<5; i++ )
+			map.put( "key" + i, "value" + i );
+
+		// Remove and update entries while iterating
+		for( Iterator<Map.Entry<String,String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String,String> entry = it.next();
+			if( entry.getKey().endsWith( "1" ) || entry.getKey().endsWith( "3" ))
+				it.remove();
+			else
+				entry.setValue( "updated" );
+		}
+
+		List<String> keys = new ArrayList<String>( map.keySet());
+		Assert.assertEquals( 3, keys.size());
+		Assert.assertEquals( "key0", keys.get( 0 ));
+		Assert.assertEquals( "key2", keys.get( 1 ));
+		Assert.assertEquals( "key4", keys.get( 2 ));
+		for( String value : map.values())
+			Assert.assertEquals( "updated", value );
+
+		// Fail-fast
+		try {
+			for( String key : map.keySet())
+				map.put( key + "-bis", "" );
+
+			Assert.fail( "A concurrent modification was expected." );
+
+		} catch( ConcurrentModificationException e ) {
+			// nothing
+		}
+	}
+
+
+	@Test
+	public void testCompactSet() {
+
+		Set<String> set = new CompactSet<String> ();
+		Assert.assertTrue( set.add( "a" ));
+		Assert.assertTrue( set.add( "b" ));
+		Assert.assertFalse( set.add( "a" ));
+
+		Assert.assertEquals( 2, set.size());
+		Assert.assertTrue( set.contains( "b" ));
+		Assert.assertTrue( set.remove( "a" ));
+		Assert.assertFalse( set.remove( "a" ));
+		Assert.assertEquals( "b", set.iterator().next());
+	}
+
+
+	@Test
+	@SuppressWarnings( "unchecked" )
+	public void testSerialization() throws Exception {
+
+		CompactMap<String,String> map = new CompactMap<String,String> ();
+		map.put( "key", "value" );
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream( os );
+		out.writeObject( map );
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( os.toByteArray()));
+		Map<String,String> readMap = (Map<String,String>) in.readObject();
+		Assert.assertEquals( map, readMap );
+
+		// The map can still be iterated and modified
+		readMap.put( "key2", "value2" );
+		Assert.assertEquals( 2, readMap.entrySet().size());
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Import;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class StringPoolTest {
+
+	@After
+	public void enablePool() {
+		StringPool.setEnabled( true );
+	}
+
+
+	@Test
+	public void testIntern() {
+
+		Assert.assertTrue( StringPool.isEnabled());
+		Assert.assertNull( StringPool.intern( null ));
+
+		String s1 = new String( "StringPoolTest.testIntern" );
+		String s2 = new String( "StringPoolTest.testIntern" );
+		Assert.assertNotSame( s1, s2 );
+		Assert.assertSame( s1, StringPool.intern( s1 ));
+		Assert.assertSame( s1, StringPool.intern( s2 ));
+	}
+
+
+	@Test
+	public void testConcurrentIntern() throws Exception {
+
+		final int threadsCount = 8, stringsCount = 2000;
+		final String[][] results = new String[ threadsCount ][ stringsCount ];
+		List<Thread> threads = new ArrayList<Thread> ();
+		for( int i=0; i<threadsCount; i++ ) {
+			final int index = i;
+			threads.add( new Thread() {
+				@Override
+				public void run() {
+					for( int j=0; j<stringsCount; j++ )
+						results[ index ][ j ] = StringPool.intern( new String( "StringPoolTest.concurrent." + j ));
+				}
+			});
+		}
+
+		for( Thread thread : threads )
+			thread.start();
+
+		for( Thread thread : threads )
+			thread.join();
+
+		// All the threads got the same copies
+		for( int j=0; j<stringsCount; j++ ) {
+			Assert.assertEquals( "StringPoolTest.concurrent." + j, results[ 0 ][ j ]);
+			for( int i=1; i<threadsCount; i++ )
+				Assert.assertSame( results[ 0 ][ j ], results[ i ][ j ]);
+		}
+	}
+
+
+	@Test
+	public void testDisabledPool() {
+
+		StringPool.setEnabled( false );
+		Assert.assertFalse( StringPool.isEnabled());
+
+		String s1 = new String( "mysql.ip" );
+		String s2 = new String( "mysql.ip" );
+		Assert.assertSame( s1, StringPool.intern( s1 ));
+		Assert.assertSame( s2, StringPool.intern( s2 ));
+	}
+
+
+	@Test
+	public void testImportsSharePathsAndNames() {
+
+		Map<String,String> exports = new HashMap<String,String> ();
+		exports.put( new String( "mysql.ip" ), "127.0.0.1" );
+
+		Import imp1 = new Import( new String( "/vm/mysql" ), exports );
+		Import imp2 = new Import( new String( "/vm/mysql" ), exports );
+		Assert.assertSame( imp1.getInstancePath(), imp2.getInstancePath());
+		Assert.assertSame(
+				imp1.getExportedVars().keySet().iterator().next(),
+				imp2.getExportedVars().keySet().iterator().next());
+	}
+}
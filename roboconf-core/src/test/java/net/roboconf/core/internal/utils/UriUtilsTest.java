@@ -152,4 +152,25 @@ public class UriUtilsTest {
 			Assert.fail( e.getMessage());
 		}
 	}
+
+
+	@Test
+	public void testArchiveUris() throws Exception {
+
+		URI fileUri = new URI( "jar:file:/tmp/app.zip!/graph/main.graph" );
+		URI parentUri = UriUtils.getParentUri( fileUri );
+		Assert.assertEquals( new URI( "jar:file:/tmp/app.zip!/graph/" ), parentUri );
+
+		Assert.assertEquals(
+				new URI( "jar:file:/tmp/app.zip!/graph/components/vm.graph" ),
+				UriUtils.buildNewURI( parentUri, "components/vm.graph" ));
+
+		Assert.assertEquals(
+				new URI( "jar:file:/tmp/app.zip!/facets.graph" ),
+				UriUtils.buildNewURI( parentUri, "../facets.graph" ));
+
+		Assert.assertEquals(
+				new URI( "file:/tmp/graph/" ),
+				UriUtils.getParentUri( new URI( "file:/tmp/graph/main.graph" )));
+	}
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.converters;
+
+import java.io.File;
+
+import junit.framework.Assert;
+import net.roboconf.core.ErrorCode;
+import net.roboconf.core.internal.model.parsing.FileDefinitionParser;
+import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class FromGraphDefinitionTest {
+
+	private static final String PATH = "/configurations/imports";
+
+
+	@Test
+	public void testImportsAreResolved() throws Exception {
+
+		File f = TestUtils.findTestFile( PATH + "/main.graph" );
+		FileDefinition def = new FileDefinitionParser( f, true ).read();
+		Assert.assertEquals( 0, def.getParsingErrors().size());
+
+		// vm.graph is imported twice but must only be processed once
+		FromGraphDefinition fromDef = new FromGraphDefinition( def );
+		Graphs graphs = fromDef.buildGraphs();
+		Assert.assertEquals( fromDef.getErrors().toString(), 0, fromDef.getErrors().size());
+
+		Component vmComponent = ComponentHelpers.findComponent( graphs, "VM" );
+		Assert.assertNotNull( vmComponent );
+		Assert.assertEquals( "iaas", vmComponent.getInstallerName());
+
+		Component mysqlComponent = ComponentHelpers.findComponent( graphs, "MySQL" );
+		Assert.assertNotNull( mysqlComponent );
+		Assert.assertTrue( vmComponent.getChildren().contains( mysqlComponent ));
+	}
+
+
+	@Test
+	public void testImportOfAnotherFileType() throws Exception {
+
+		File f = TestUtils.findTestFile( PATH + "/wrong-type.graph" );
+		FileDefinition def = new FileDefinitionParser( f, true ).read();
+
+		FromGraphDefinition fromDef = new FromGraphDefinition( def );
+		fromDef.buildGraphs();
+		Assert.assertEquals( 1, fromDef.getErrors().size());
+		Assert.assertEquals( ErrorCode.CO_NOT_A_GRAPH, fromDef.getErrors().iterator().next().getErrorCode());
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.converters;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.model.parsing.FileDefinitionParser;
+import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.model.ModelError;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.io.RuntimeModelIo;
+import net.roboconf.core.model.io.RuntimeModelIo.LoadResult;
+import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class FromInstanceDefinitionTest {
+
+	@Test
+	public void testStreamingMode_sameInstances() throws Exception {
+
+		File directory = TestUtils.findTestFile( "/applications/lamp-legacy-2" );
+		LoadResult result = RuntimeModelIo.loadApplication( directory );
+		Assert.assertEquals( 0, result.getLoadErrors().size());
+		Application app = result.getApplication();
+
+		File instancesFile = new File( directory, "instances/initial-deployment.instances" );
+		FromInstanceDefinition fromDef = new FromInstanceDefinition( instancesFile.toURI());
+		Collection<Instance> rootInstances = fromDef.buildInstances( app.getGraphs());
+		Assert.assertEquals( 0, fromDef.getErrors().size());
+
+		List<Instance> expected = InstanceHelpers.getAllInstances( app );
+		List<Instance> actual = new ArrayList<Instance> ();
+		for( Instance rootInstance : rootInstances )
+			actual.addAll( InstanceHelpers.buildHierarchicalList( rootInstance ));
+
+		Assert.assertEquals( expected.size(), actual.size());
+		for( int i=0; i<expected.size(); i++ ) {
+			Assert.assertEquals( expected.get( i ).getPath(), actual.get( i ).getPath());
+			Assert.assertSame( expected.get( i ).getComponent(), actual.get( i ).getComponent());
+			Assert.assertEquals( expected.get( i ).getExports(), actual.get( i ).getExports());
+		}
+	}
+
+
+	@Test
+	public void testStreamingMode_sameParsingErrors() throws Exception {
+
+		String[] fileNames = {
+			"instanceof-imbricated-invalid-property.instances",
+			"instanceof-missing-closing-cb.instances",
+			"instanceof-extra-char.instances"
+		};
+
+		for( String fileName : fileNames ) {
+			File f = TestUtils.findTestFile( "/configurations/invalid/" + fileName );
+			FileDefinition def = new FileDefinitionParser( f, true ).read();
+			Assert.assertFalse( fileName, def.getParsingErrors().isEmpty());
+
+			FromInstanceDefinition fromDef = new FromInstanceDefinition( f.toURI());
+			fromDef.buildInstances( null );
+			Assert.assertEquals( fileName, def.getParsingErrors().size(), fromDef.getErrors().size());
+
+			int i = 0;
+			for( ModelError error : fromDef.getErrors()) {
+				ModelError expected = def.getParsingErrors().get( i ++ );
+				Assert.assertEquals( fileName, expected.getErrorCode(), error.getErrorCode());
+				Assert.assertEquals( fileName, expected.getLine(), error.getLine());
+			}
+		}
+	}
+}
@@ -16,6 +16,8 @@
 
 package net.roboconf.core.model.helpers;
 
+import java.util.List;
+
 import junit.framework.Assert;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Graphs;
@@ -51,6 +53,50 @@ public class ComponentHelpersTest {
 	}
 
 
+	@Test
+	public void testFindComponent_withIndex() {
+
+		Graphs g = new Graphs();
+		Component c1 = new Component( "c1" );
+		Component c2 = new Component( "c2" );
+		Component c11 = new Component( "c11" );
+		g.getRootComponents().add( c1 );
+		g.getRootComponents().add( c2 );
+		ComponentHelpers.insertChild( c1, c11 );
+		ComponentHelpers.insertChild( c2, c11 );
+
+		Assert.assertNull( g.getComponentsByName());
+		Assert.assertEquals( 3, ComponentHelpers.findAllComponents( g ).size());
+
+		g.indexComponents();
+		Assert.assertEquals( 3, g.getComponentsByName().size());
+		Assert.assertSame( c1, ComponentHelpers.findComponent( g, "c1" ));
+		Assert.assertSame( c2, ComponentHelpers.findComponent( g, "c2" ));
+		Assert.assertSame( c11, ComponentHelpers.findComponent( g, "c11" ));
+		Assert.assertNull( ComponentHelpers.findComponent( g, "c3" ));
+
+		List<Component> components = ComponentHelpers.findAllComponents( g );
+		Assert.assertEquals( 3, components.size());
+		Assert.assertEquals( c11, components.get( 2 ));
+
+		// The index is a snapshot
+		Component c3 = new Component( "c3" );
+		g.getRootComponents().add( c3 );
+		Assert.assertNull( ComponentHelpers.findComponent( g, "c3" ));
+
+		g.indexComponents();
+		Assert.assertSame( c3, ComponentHelpers.findComponent( g, "c3" ));
+
+		try {
+			g.getComponentsByName().put( "c4", new Component( "c4" ));
+			Assert.fail( "The index was expected to be immutable." );
+
+		} catch( UnsupportedOperationException e ) {
+			// nothing
+		}
+	}
+
+
 	@Test
 	public void testInsertChild() {
 
@@ -107,4 +153,67 @@ public class ComponentHelpersTest {
 		Assert.assertEquals( "c121 -> c1 -> c12 -> c121", ComponentHelpers.searchForLoop( c121 ));
 		Assert.assertNull( ComponentHelpers.searchForLoop( c11 ));
 	}
+
+
+	@Test
+	public void testFindCyclesAndSortTopologically() {
+
+		Graphs graphs = new Graphs();
+		Assert.assertEquals( 0, ComponentHelpers.findCycles( graphs ).size());
+		Assert.assertEquals( 0, ComponentHelpers.sortTopologically( graphs ).size());
+
+		// root -> a -> b, root -> b -> c
+		Component root = new Component( "root" );
+		Component a = new Component( "a" );
+		Component b = new Component( "b" );
+		Component c = new Component( "c" );
+		ComponentHelpers.insertChild( root, a );
+		ComponentHelpers.insertChild( root, b );
+		ComponentHelpers.insertChild( a, b );
+		ComponentHelpers.insertChild( b, c );
+		graphs.getRootComponents().add( root );
+
+		Assert.assertEquals( 0, ComponentHelpers.findCycles( graphs ).size());
+		List<Component> sorted = ComponentHelpers.sortTopologically( graphs );
+		Assert.assertEquals( 4, sorted.size());
+		Assert.assertEquals( root, sorted.get( 0 ));
+		Assert.assertEquals( a, sorted.get( 1 ));
+		Assert.assertEquals( b, sorted.get( 2 ));
+		Assert.assertEquals( c, sorted.get( 3 ));
+
+		// Add two distinct cycles: c -> a and another root with a self-loop
+		ComponentHelpers.insertChild( c, a );
+		Component other = new Component( "other" );
+		ComponentHelpers.insertChild( other, other );
+		graphs.getRootComponents().add( other );
+
+		List<String> cycles = ComponentHelpers.findCycles( graphs );
+		Assert.assertEquals( 2, cycles.size());
+		Assert.assertTrue( cycles.contains( "a -> b -> c -> a" ));
+		Assert.assertTrue( cycles.contains( "other -> other" ));
+
+		sorted = ComponentHelpers.sortTopologically( graphs );
+		Assert.assertEquals( 5, sorted.size());
+		Assert.assertTrue( sorted.indexOf( root ) < sorted.indexOf( a ));
+		Assert.assertTrue( sorted.indexOf( root ) < sorted.indexOf( c ));
+	}
+
+
+	@Test
+	public void testFindCycles_deepGraph() {
+
+		// Deep graphs must not overflow the stack
+		Graphs graphs = new Graphs();
+		Component current = new Component( "c0" );
+		graphs.getRootComponents().add( current );
+		for( int i=1; i<20000; i++ ) {
+			Component child = new Component( "c" + i );
+			ComponentHelpers.insertChild( current, child );
+			current = child;
+		}
+
+		Assert.assertEquals( 0, ComponentHelpers.findCycles( graphs ).size());
+		Assert.assertNull( ComponentHelpers.searchForLoop( graphs.getRootComponents().iterator().next()));
+		Assert.assertEquals( 20000, ComponentHelpers.sortTopologically( graphs ).size());
+	}
 }
@@ -16,10 +16,15 @@
 
 package net.roboconf.core.model.helpers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 
@@ -49,6 +54,59 @@ public class InstanceHelpersTest {
 	}
 
 
+	@Test
+	public void testComputeInstancePath_cacheIsInvalidated() {
+
+		Instance instance1 = new Instance( "inst1" );
+		Instance instance2 = new Instance( "inst2" );
+		Instance instance3 = new Instance( "inst3" );
+		InstanceHelpers.insertChild( instance1, instance2 );
+		InstanceHelpers.insertChild( instance2, instance3 );
+
+		// Consecutive invocations return the cached value
+		String path = InstanceHelpers.computeInstancePath( instance3 );
+		Assert.assertEquals( "/inst1/inst2/inst3", path );
+		Assert.assertSame( path, InstanceHelpers.computeInstancePath( instance3 ));
+
+		// Renaming an ancestor impacts all the descendants
+		instance1.setName( "root" );
+		Assert.assertEquals( "/root", InstanceHelpers.computeInstancePath( instance1 ));
+		Assert.assertEquals( "/root/inst2", InstanceHelpers.computeInstancePath( instance2 ));
+		Assert.assertEquals( "/root/inst2/inst3", InstanceHelpers.computeInstancePath( instance3 ));
+
+		// Moving an instance impacts all the descendants
+		Instance instance4 = new Instance( "inst4" );
+		InstanceHelpers.insertChild( instance4, instance2 );
+		Assert.assertEquals( "/inst4/inst2", InstanceHelpers.computeInstancePath( instance2 ));
+		Assert.assertEquals( "/inst4/inst2/inst3", InstanceHelpers.computeInstancePath( instance3 ));
+
+		instance2.setParent( null );
+		Assert.assertEquals( "/inst2/inst3", InstanceHelpers.computeInstancePath( instance3 ));
+		Assert.assertEquals( "/inst2/inst3".hashCode(), instance3.hashCode());
+	}
+
+
+	@Test
+	public void testHashCodeAndEquals_inMaps() {
+
+		Instance instance1 = new Instance( "inst1" );
+		Instance instance2 = new Instance( "inst2" );
+		InstanceHelpers.insertChild( instance1, instance2 );
+
+		Map<Instance,Integer> map = new HashMap<Instance,Integer> ();
+		map.put( instance2, 5 );
+
+		Instance copy = new Instance( "inst2" );
+		Assert.assertNull( map.get( copy ));
+
+		InstanceHelpers.insertChild( new Instance( "inst1" ), copy );
+		Assert.assertEquals( Integer.valueOf( 5 ), map.get( copy ));
+		Assert.assertSame(
+				InstanceHelpers.computeInstancePath( copy ),
+				InstanceHelpers.computeInstancePath( copy ));
+	}
+
+
 	@Test
 	public void testHaveSamePath() {
 
@@ -101,6 +159,91 @@ public class InstanceHelpersTest {
 	}
 
 
+	@Test
+	public void testBrowseHierarchically() {
+
+		Instance instance_1 = new Instance( "inst 1" );
+		Instance instance_1_1 = new Instance( "inst 11" );
+		Instance instance_1_2 = new Instance( "inst 12" );
+		Instance instance_1_1_1 = new Instance( "inst 111" );
+		Instance instance_2 = new Instance( "inst 2" );
+		Instance instance_2_1 = new Instance( "inst 21" );
+
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+		InstanceHelpers.insertChild( instance_1, instance_1_2 );
+		InstanceHelpers.insertChild( instance_1_1, instance_1_1_1 );
+		InstanceHelpers.insertChild( instance_2, instance_2_1 );
+
+		// Same order than the lists
+		List<Instance> browsed = new ArrayList<Instance> ();
+		for( Instance inst : InstanceHelpers.browseHierarchically( instance_1 ))
+			browsed.add( inst );
+
+		Assert.assertEquals( InstanceHelpers.buildHierarchicalList( instance_1 ), browsed );
+		Assert.assertEquals( 4, browsed.size());
+
+		Application app = new Application();
+		app.getRootInstances().add( instance_1 );
+		app.getRootInstances().add( instance_2 );
+
+		browsed.clear();
+		for( Instance inst : InstanceHelpers.browseAllInstances( app ))
+			browsed.add( inst );
+
+		Assert.assertEquals( InstanceHelpers.getAllInstances( app ), browsed );
+		Assert.assertEquals( 6, browsed.size());
+		Assert.assertEquals( instance_1_1_1, browsed.get( 3 ));
+		Assert.assertEquals( instance_2, browsed.get( 4 ));
+
+		// Null instance
+		Assert.assertFalse( InstanceHelpers.browseHierarchically( null ).iterator().hasNext());
+
+		// Early stop
+		Iterator<Instance> it = InstanceHelpers.browseHierarchically( instance_1 ).iterator();
+		Assert.assertEquals( instance_1, it.next());
+		Assert.assertTrue( it.hasNext());
+
+		try {
+			it.remove();
+			Assert.fail( "Removal was expected to fail." );
+
+		} catch( UnsupportedOperationException e ) {
+			// nothing
+		}
+	}
+
+
+	@Test
+	public void testVisitHierarchically() {
+
+		Instance instance_1 = new Instance( "inst 1" );
+		Instance instance_1_1 = new Instance( "inst 11" );
+		Instance instance_1_2 = new Instance( "inst 12" );
+		Instance instance_1_1_1 = new Instance( "inst 111" );
+		Instance instance_1_2_1 = new Instance( "inst 121" );
+
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+		InstanceHelpers.insertChild( instance_1, instance_1_2 );
+		InstanceHelpers.insertChild( instance_1_1, instance_1_1_1 );
+		InstanceHelpers.insertChild( instance_1_2, instance_1_2_1 );
+
+		final List<Instance> visited = new ArrayList<Instance> ();
+		InstanceHelpers.visitHierarchically( instance_1, new IInstanceVisitor() {
+			@Override
+			public boolean visit( Instance instance ) {
+				visited.add( instance );
+				return ! "inst 11".equals( instance.getName());
+			}
+		});
+
+		Assert.assertEquals( 4, visited.size());
+		Assert.assertEquals( instance_1, visited.get( 0 ));
+		Assert.assertEquals( instance_1_1, visited.get( 1 ));
+		Assert.assertEquals( instance_1_2, visited.get( 2 ));
+		Assert.assertEquals( instance_1_2_1, visited.get( 3 ));
+	}
+
+
 	@Test
 	public void testInsertChild() {
 
@@ -121,6 +264,154 @@ public class InstanceHelpersTest {
 	}
 
 
+	@Test
+	public void testFindInstanceByPath() {
+
+		Application app = new Application();
+		Instance instance_1 = new Instance( "inst 1" );
+		Instance instance_1_1 = new Instance( "inst 11" );
+		Instance instance_1_1_1 = new Instance( "inst 111" );
+		Instance instance_2 = new Instance( "inst 2" );
+
+		app.getRootInstances().add( instance_1 );
+		app.getRootInstances().add( instance_2 );
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+		InstanceHelpers.insertChild( instance_1_1, instance_1_1_1 );
+
+		Assert.assertSame( instance_1, InstanceHelpers.findInstanceByPath( app, "/inst 1" ));
+		Assert.assertSame( instance_2, InstanceHelpers.findInstanceByPath( app, "/inst 2" ));
+		Assert.assertSame( instance_1_1, InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11" ));
+		Assert.assertSame( instance_1_1_1, InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11/inst 111" ));
+		Assert.assertSame( instance_1_1_1, InstanceHelpers.findInstanceByPath( app, "inst 1/inst 11/inst 111" ));
+
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 11" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 1" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 1//inst 11" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "" ));
+
+		Assert.assertSame( instance_1_1, InstanceHelpers.findInstanceByPath( instance_1, "/inst 1/inst 11" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( instance_1, "/inst 2" ));
+	}
+
+
+	@Test
+	public void testFindInstanceByPath_indexIsUpdated() {
+
+		Application app = new Application();
+		Instance instance_1 = new Instance( "inst 1" );
+		Instance instance_1_1 = new Instance( "inst 11" );
+		app.getRootInstances().add( instance_1 );
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+
+		Assert.assertSame( instance_1_1, InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11" ));
+		Assert.assertSame( instance_1_1, app.findIndexedInstance( "/inst 1/inst 11" ));
+
+		// Removing an instance without updating the index
+		instance_1.getChildren().remove( instance_1_1 );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11" ));
+		Assert.assertNull( app.findIndexedInstance( "/inst 1/inst 11" ));
+
+		// Renaming an instance
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+		Assert.assertSame( instance_1_1, InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11" ));
+		instance_1_1.setName( "inst 12" );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 11" ));
+		Assert.assertSame( instance_1_1, InstanceHelpers.findInstanceByPath( app, "/inst 1/inst 12" ));
+
+		// Explicit removal
+		app.unindexInstance( instance_1 );
+		Assert.assertNull( app.findIndexedInstance( "/inst 1" ));
+		Assert.assertNull( app.findIndexedInstance( "/inst 1/inst 12" ));
+
+		app.getRootInstances().remove( instance_1 );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/inst 1" ));
+	}
+
+
+	@Test
+	public void testTryToInsertChildInstance() {
+
+		Component vmComponent = new Component( "vm" );
+		Component tomcatComponent = new Component( "tomcat" );
+		Component warComponent = new Component( "war" );
+		ComponentHelpers.insertChild( vmComponent, tomcatComponent );
+		ComponentHelpers.insertChild( tomcatComponent, warComponent );
+
+		Application app = new Application();
+		Instance vm = new Instance( "vm" );
+		vm.setComponent( vmComponent );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, null, vm ));
+		Assert.assertEquals( 1, app.getRootInstances().size());
+
+		// Same name
+		Instance vmBis = new Instance( "vm" );
+		vmBis.setComponent( vmComponent );
+		Assert.assertFalse( InstanceHelpers.tryToInsertChildInstance( app, null, vmBis ));
+
+		// Invalid root
+		Instance tomcat = new Instance( "tomcat" );
+		tomcat.setComponent( tomcatComponent );
+		Assert.assertFalse( InstanceHelpers.tryToInsertChildInstance( app, null, tomcat ));
+
+		// Child instance with a valid sub-tree
+		Instance war = new Instance( "war" );
+		war.setComponent( warComponent );
+		InstanceHelpers.insertChild( tomcat, war );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, vm, tomcat ));
+		Assert.assertSame( war, InstanceHelpers.findInstanceByPath( app, "/vm/tomcat/war" ));
+
+		// Child instance with an invalid sub-tree
+		Instance tomcat2 = new Instance( "tomcat2" );
+		tomcat2.setComponent( tomcatComponent );
+		Instance vm2 = new Instance( "vm2" );
+		vm2.setComponent( vmComponent );
+		InstanceHelpers.insertChild( tomcat2, vm2 );
+		Assert.assertFalse( InstanceHelpers.tryToInsertChildInstance( app, vm, tomcat2 ));
+		Assert.assertEquals( 1, vm.getChildren().size());
+
+		// Agents do not have any application
+		Instance war2 = new Instance( "war2" );
+		war2.setComponent( warComponent );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( null, tomcat, war2 ));
+		Assert.assertEquals( 2, tomcat.getChildren().size());
+	}
+
+
+	@Test
+	public void testTryToInsertChildInstances() {
+
+		Component vmComponent = new Component( "vm" );
+		Component tomcatComponent = new Component( "tomcat" );
+		ComponentHelpers.insertChild( vmComponent, tomcatComponent );
+
+		Application app = new Application();
+		Instance vm = new Instance( "vm" );
+		vm.setComponent( vmComponent );
+		app.getRootInstances().add( vm );
+
+		Instance tomcat1 = new Instance( "tomcat1" );
+		tomcat1.setComponent( tomcatComponent );
+		Instance tomcat2 = new Instance( "tomcat2" );
+		tomcat2.setComponent( tomcatComponent );
+		Instance duplicate = new Instance( "tomcat1" );
+		duplicate.setComponent( tomcatComponent );
+		Instance invalid = new Instance( "vm" );
+		invalid.setComponent( vmComponent );
+		Instance noComponent = new Instance( "tomcat3" );
+
+		List<Boolean> results = InstanceHelpers.tryToInsertChildInstances(
+				app, vm,
+				Arrays.asList( tomcat1, duplicate, invalid, tomcat2, noComponent ));
+
+		Assert.assertEquals( Arrays.asList( true, false, false, true, false ), results );
+		Assert.assertEquals( 2, vm.getChildren().size());
+		Assert.assertSame( tomcat1, InstanceHelpers.findInstanceByPath( app, "/vm/tomcat1" ));
+		Assert.assertSame( tomcat2, InstanceHelpers.findInstanceByPath( app, "/vm/tomcat2" ));
+		Assert.assertNull( duplicate.getParent());
+	}
+
+
 	@Test
 	public void testGetExportedVariables() {
 
@@ -16,9 +16,15 @@
 
 package net.roboconf.core.model.helpers;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.VariableSchema;
 
 import org.junit.Test;
 
@@ -67,4 +73,148 @@ public class VariableHelpersTest {
 			Assert.assertEquals( "Invalid default value for " + s, value[ 1 ], entry.getValue());
 		}
 	}
+
+
+	@Test
+	public void testFindVariablePrefixes() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		component.getExportedVariables().put( "comp.port", "8080" );
+		component.getExportedVariables().put( "facet.name", "f" );
+		component.getImportedVariables().put( "db.ip", false );
+		component.getImportedVariables().put( "db.port", true );
+		component.getImportedVariables().put( "cache.ip", true );
+
+		Instance instance = new Instance( "inst" );
+		instance.setComponent( component );
+
+		Set<String> exported = VariableHelpers.findExportedVariablePrefixes( instance );
+		Assert.assertEquals( 2, exported.size());
+		Assert.assertTrue( exported.contains( "comp" ));
+		Assert.assertTrue( exported.contains( "facet" ));
+		Assert.assertSame( exported, VariableHelpers.findExportedVariablePrefixes( instance ));
+
+		Set<String> imported = VariableHelpers.findImportedVariablePrefixes( instance );
+		Assert.assertEquals( 1, imported.size());
+		Assert.assertTrue( imported.contains( "db" ));
+		Assert.assertSame( imported, VariableHelpers.findImportedVariablePrefixes( instance ));
+
+		Assert.assertTrue( VariableHelpers.instanceHasVariablesWithPrefix( instance, "db" ));
+		Assert.assertTrue( VariableHelpers.instanceHasVariablesWithPrefix( instance, "cache" ));
+		Assert.assertFalse( VariableHelpers.instanceHasVariablesWithPrefix( instance, "comp" ));
+
+		// Overridden exports
+		instance.getOverriddenExports().put( "comp.port", "8081" );
+		Assert.assertSame( exported, VariableHelpers.findExportedVariablePrefixes( instance ));
+
+		instance.getOverriddenExports().put( "other.port", "8081" );
+		Set<String> newExported = VariableHelpers.findExportedVariablePrefixes( instance );
+		Assert.assertEquals( 3, newExported.size());
+		Assert.assertTrue( newExported.contains( "other" ));
+		Assert.assertEquals( 2, exported.size());
+
+		// Modifying the component invalidates the schema
+		component.getImportedVariables().put( "cache.ip", false );
+		imported = VariableHelpers.findImportedVariablePrefixes( instance );
+		Assert.assertEquals( 2, imported.size());
+		Assert.assertTrue( imported.contains( "cache" ));
+
+		component.getExportedVariables().remove( "facet.name" );
+		Assert.assertFalse( VariableHelpers.findExportedVariablePrefixes( instance ).contains( "facet" ));
+
+		component.getImportedVariables().clear();
+		Assert.assertFalse( VariableHelpers.instanceHasVariablesWithPrefix( instance, "db" ));
+	}
+
+
+	@Test
+	public void testVariableSchema() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		component.getImportedVariables().put( "db.ip", false );
+		component.getImportedVariables().put( "db.port", true );
+		component.getImportedVariables().put( "cache. ip", true );
+
+		VariableSchema schema = component.getVariableSchema();
+		Assert.assertSame( schema, component.getVariableSchema());
+
+		Assert.assertEquals( 1, schema.getExportedPrefixes().size());
+		Assert.assertEquals( 1, schema.getMandatoryImportedPrefixes().size());
+		Assert.assertTrue( schema.getMandatoryImportedPrefixes().contains( "db" ));
+		Assert.assertEquals( 1, schema.getOptionalImportedPrefixes().size());
+		Assert.assertTrue( schema.getOptionalImportedPrefixes().contains( "cache" ));
+		Assert.assertEquals( 2, schema.getImportedPrefixes().size());
+
+		Assert.assertEquals( "ip", schema.findSimpleName( "comp.ip" ));
+		Assert.assertEquals( "ip", schema.findSimpleName( "cache. ip" ));
+		Assert.assertEquals( "port", schema.findSimpleName( "db.port" ));
+		Assert.assertNull( schema.findSimpleName( "comp.port" ));
+
+		Map<String,String> copy = new HashMap<String,String>( component.getExportedVariables());
+		component.getExportedVariables().putAll( copy );
+		Assert.assertNotSame( schema, component.getVariableSchema());
+	}
+
+
+	@Test
+	public void testVariableSchemaIsInvalidatedByTheViews() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		component.getImportedVariables().put( "db.ip", false );
+		component.getImportedVariables().put( "cache.ip", true );
+
+		// Toggle the optional flag through the entry
+		VariableSchema schema = component.getVariableSchema();
+		Assert.assertTrue( schema.getMandatoryImportedPrefixes().contains( "db" ));
+		for( Map.Entry<String,Boolean> entry : component.getImportedVariables().entrySet()) {
+			if( "db.ip".equals( entry.getKey()))
+				Assert.assertFalse( entry.setValue( true ));
+		}
+
+		Assert.assertTrue( component.getImportedVariables().get( "db.ip" ));
+		schema = component.getVariableSchema();
+		Assert.assertEquals( 0, schema.getMandatoryImportedPrefixes().size());
+		Assert.assertEquals( 2, schema.getOptionalImportedPrefixes().size());
+
+		// Removal through an iterator
+		Iterator<String> it = component.getImportedVariables().keySet().iterator();
+		while( it.hasNext()) {
+			if( "cache.ip".equals( it.next()))
+				it.remove();
+		}
+
+		Assert.assertEquals( 1, component.getImportedVariables().size());
+		schema = component.getVariableSchema();
+		Assert.assertEquals( 1, schema.getImportedPrefixes().size());
+		Assert.assertTrue( schema.getOptionalImportedPrefixes().contains( "db" ));
+
+		// Removal through the views
+		component.getImportedVariables().values().remove( Boolean.TRUE );
+		Assert.assertEquals( 0, component.getVariableSchema().getImportedPrefixes().size());
+
+		Assert.assertTrue( component.getExportedVariables().keySet().remove( "comp.ip" ));
+		Assert.assertEquals( 0, component.getVariableSchema().getExportedPrefixes().size());
+	}
+
+
+	@Test
+	public void testUpdateNetworkVariables() {
+
+		Map<String,String> exports = new HashMap<String,String> ();
+		exports.put( "comp.ip", null );
+		exports.put( "comp. ip ", null );
+		exports.put( "comp.port", "8080" );
+		exports.put( "comp.ipv6", "::1" );
+		exports.put( "ip", "" );
+
+		VariableHelpers.updateNetworkVariables( exports, "127.0.0.1" );
+		Assert.assertEquals( "127.0.0.1", exports.get( "comp.ip" ));
+		Assert.assertEquals( "127.0.0.1", exports.get( "comp. ip " ));
+		Assert.assertEquals( "127.0.0.1", exports.get( "ip" ));
+		Assert.assertEquals( "8080", exports.get( "comp.port" ));
+		Assert.assertEquals( "::1", exports.get( "comp.ipv6" ));
+	}
 }
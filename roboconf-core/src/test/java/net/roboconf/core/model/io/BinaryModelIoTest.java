@@ -0,0 +1,131 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryModelIoTest {
+
+	@Test
+	public void testSizes() throws Exception {
+
+		int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+		int[] expectedLengths = { 1, 1, 1, 2, 2, 3, 5 };
+		for( int i=0; i<values.length; i++ ) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			BinaryModelIo.writeSize( new DataOutputStream( os ), values[ i ]);
+			Assert.assertEquals( expectedLengths[ i ], os.size());
+			Assert.assertEquals( values[ i ], BinaryModelIo.readSize( ByteBuffer.wrap( os.toByteArray())));
+		}
+	}
+
+
+	@Test
+	public void testStringsAndMaps() throws Exception {
+
+		Map<String,String> map = new HashMap<String,String> ();
+		map.put( "ip", null );
+		map.put( "port", "8080" );
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( os );
+		BinaryModelIo.writeString( out, null );
+		BinaryModelIo.writeString( out, "" );
+		BinaryModelIo.writeString( out, "é" );
+		BinaryModelIo.writeMap( out, null );
+		BinaryModelIo.writeMap( out, map );
+
+		ByteBuffer buffer = ByteBuffer.wrap( os.toByteArray());
+		Assert.assertNull( BinaryModelIo.readString( buffer ));
+		Assert.assertEquals( "", BinaryModelIo.readString( buffer ));
+		Assert.assertEquals( "é", BinaryModelIo.readString( buffer ));
+		Assert.assertNull( BinaryModelIo.readMap( buffer, null ));
+		Assert.assertEquals( map, BinaryModelIo.readMap( buffer, null ));
+		Assert.assertFalse( buffer.hasRemaining());
+	}
+
+
+	@Test
+	public void testGraphs() throws Exception {
+
+		Component vmComponent = new Component( "vm" );
+		vmComponent.setInstallerName( "iaas" );
+		vmComponent.getFacetNames().add( "machine" );
+
+		Component serverComponent = new Component( "server" );
+		serverComponent.setAlias( "A server" );
+		serverComponent.getExportedVariables().put( "server.port", "8080" );
+		serverComponent.getImportedVariables().put( "db.ip", true );
+		ComponentHelpers.insertChild( vmComponent, serverComponent );
+
+		Graphs graphs = new Graphs();
+		graphs.getRootComponents().add( vmComponent );
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( os );
+		List<Component> writtenTable = BinaryModelIo.writeGraphs( out, graphs );
+		BinaryModelIo.writeGraphs( out, null );
+		Assert.assertEquals( 2, writtenTable.size());
+
+		ByteBuffer buffer = ByteBuffer.wrap( os.toByteArray());
+		List<Component> readTable = new ArrayList<Component> ();
+		Graphs readGraphs = BinaryModelIo.readGraphs( buffer, readTable );
+		Assert.assertNull( BinaryModelIo.readGraphs( buffer, null ));
+		Assert.assertFalse( buffer.hasRemaining());
+
+		// Components are read in the order they were written
+		Assert.assertEquals( writtenTable, readTable );
+		Assert.assertEquals( 1, readGraphs.getRootComponents().size());
+
+		Component readServer = ComponentHelpers.findComponent( readGraphs, "server" );
+		Assert.assertNotNull( readServer );
+		Assert.assertEquals( "A server", readServer.getAlias());
+		Assert.assertEquals( "8080", readServer.getExportedVariables().get( "server.port" ));
+		Assert.assertTrue( readServer.getImportedVariables().get( "db.ip" ));
+		Assert.assertEquals( 1, readServer.getAncestors().size());
+
+		Component readVm = readServer.getAncestors().iterator().next();
+		Assert.assertEquals( "iaas", readVm.getInstallerName());
+		Assert.assertTrue( readVm.getFacetNames().contains( "machine" ));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testInvalidIndex() throws Exception {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BinaryModelIo.writeSize( new DataOutputStream( os ), 3 );
+		BinaryModelIo.readIndex( ByteBuffer.wrap( os.toByteArray()), 3 );
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.Constants;
+import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.io.RuntimeModelIo.LoadResult;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompiledModelIoTest {
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+
+		File directory = TestUtils.findTestFile( "/applications/lamp-legacy-2" );
+		LoadResult result = RuntimeModelIo.loadApplication( directory );
+		Assert.assertEquals( 0, result.getLoadErrors().size());
+		Application app = result.getApplication();
+
+		File f = File.createTempFile( "roboconf_", ".model" );
+		try {
+			String fingerprint = CompiledModelIo.computeSourcesFingerprint( directory );
+			CompiledModelIo.writeApplication( app, fingerprint, f );
+			Application readApp = CompiledModelIo.readApplication( f, fingerprint );
+			Assert.assertNotNull( readApp );
+
+			Assert.assertEquals( app.getName(), readApp.getName());
+			Assert.assertEquals( app.getQualifier(), readApp.getQualifier());
+			Assert.assertEquals( app.getDescription(), readApp.getDescription());
+
+			// Components
+			Assert.assertEquals( app.getGraphs().getRootComponents(), readApp.getGraphs().getRootComponents());
+			Assert.assertEquals( app.getGraphs().getComponentsByName().keySet(), readApp.getGraphs().getComponentsByName().keySet());
+			for( Component c : ComponentHelpers.findAllComponents( app )) {
+				Component readC = ComponentHelpers.findComponent( readApp.getGraphs(), c.getName());
+				Assert.assertNotNull( c.getName(), readC );
+				Assert.assertEquals( c.getAlias(), readC.getAlias());
+				Assert.assertEquals( c.getInstallerName(), readC.getInstallerName());
+				Assert.assertEquals( c.getIconLocation(), readC.getIconLocation());
+				Assert.assertEquals( c.getFacetNames(), readC.getFacetNames());
+				Assert.assertEquals( c.getExportedVariables(), readC.getExportedVariables());
+				Assert.assertEquals( c.getImportedVariables(), readC.getImportedVariables());
+				Assert.assertEquals( c.getChildren(), readC.getChildren());
+				Assert.assertEquals( c.getAncestors(), readC.getAncestors());
+			}
+
+			// Instances
+			List<Instance> instances = InstanceHelpers.getAllInstances( app );
+			List<Instance> readInstances = InstanceHelpers.getAllInstances( readApp );
+			Assert.assertEquals( instances.size(), readInstances.size());
+			for( int i=0; i<instances.size(); i++ ) {
+				Instance inst = instances.get( i ), readInst = readInstances.get( i );
+				Assert.assertEquals( inst.getPath(), readInst.getPath());
+				Assert.assertEquals( inst.getChannel(), readInst.getChannel());
+				Assert.assertEquals( inst.getExports(), readInst.getExports());
+				Assert.assertEquals( inst.getOverriddenExports(), readInst.getOverriddenExports());
+				Assert.assertSame(
+						readApp.getGraphs().getComponentsByName().get( inst.getComponent().getName()),
+						readInst.getComponent());
+			}
+
+			// Another fingerprint means the sources have changed
+			Assert.assertNull( CompiledModelIo.readApplication( f, fingerprint + "-modified" ));
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testReadInvalidFile() throws Exception {
+
+		File f = File.createTempFile( "roboconf_", ".model" );
+		FileOutputStream out = new FileOutputStream( f );
+		try {
+			out.write( "not a compiled model".getBytes( "UTF-8" ));
+			Utils.closeQuietly( out );
+			CompiledModelIo.readApplication( f, "" );
+
+		} finally {
+			Utils.closeQuietly( out );
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	@Test
+	public void testLoadCompiledApplication() throws Exception {
+
+		File sourceDirectory = TestUtils.findTestFile( "/applications/lamp-legacy-1" );
+		File directory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_compiled_" + System.nanoTime());
+		try {
+			copyDirectory( sourceDirectory, directory );
+			File compiledModelFile = new File( directory, Constants.PROJECT_FILE_COMPILED_MODEL );
+			Assert.assertFalse( compiledModelFile.exists());
+
+			LoadResult result = RuntimeModelIo.loadCompiledApplication( directory, null );
+			Assert.assertEquals( 0, result.getLoadErrors().size());
+			Assert.assertTrue( compiledModelFile.exists());
+
+			LoadResult secondResult = RuntimeModelIo.loadCompiledApplication( directory, null );
+			Assert.assertEquals( 0, secondResult.getLoadErrors().size());
+			Assert.assertEquals( result.getApplication().getName(), secondResult.getApplication().getName());
+			Assert.assertEquals(
+					InstanceHelpers.getAllInstances( result.getApplication()).size(),
+					InstanceHelpers.getAllInstances( secondResult.getApplication()).size());
+
+		} finally {
+			Utils.deleteFilesRecursively( directory );
+		}
+	}
+
+
+	@Test
+	public void testFingerprintDependsOnContent() throws Exception {
+
+		File sourceDirectory = TestUtils.findTestFile( "/applications/lamp-legacy-1" );
+		File directory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_compiled_" + System.nanoTime());
+		try {
+			copyDirectory( sourceDirectory, directory );
+			String fingerprint = CompiledModelIo.computeSourcesFingerprint( directory );
+			Assert.assertEquals( fingerprint, CompiledModelIo.computeSourcesFingerprint( directory ));
+
+			// Change one character, but keep the size and the modification date
+			File f = new File( directory, Constants.PROJECT_DIR_GRAPH + "/lamp.graph" );
+			long length = f.length(), lastModified = f.lastModified();
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			Utils.copyStream( f, os );
+			byte[] content = os.toByteArray();
+			content[ content.length - 1 ] = (byte) (content[ content.length - 1 ] == ' ' ? '\t' : ' ');
+			FileOutputStream out = new FileOutputStream( f );
+			try {
+				out.write( content );
+
+			} finally {
+				Utils.closeQuietly( out );
+			}
+
+			Assert.assertTrue( f.setLastModified( lastModified ));
+			Assert.assertEquals( length, f.length());
+			Assert.assertEquals( lastModified, f.lastModified());
+			Assert.assertFalse( fingerprint.equals( CompiledModelIo.computeSourcesFingerprint( directory )));
+
+		} finally {
+			Utils.deleteFilesRecursively( directory );
+		}
+	}
+
+
+	private static void copyDirectory( File source, File target ) throws IOException {
+
+		if( source.isDirectory()) {
+			if( ! target.mkdirs())
+				throw new IOException( "Could not create " + target );
+
+			for( File f : source.listFiles())
+				copyDirectory( f, new File( target, f.getName()));
+
+		} else {
+			Utils.copyStream( source, target );
+		}
+	}
+}
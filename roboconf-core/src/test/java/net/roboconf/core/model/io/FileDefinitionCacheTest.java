@@ -0,0 +1,143 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.converters.FromGraphDefinition;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.io.FileDefinitionCache.CachedDefinition;
+import net.roboconf.core.model.runtime.Graphs;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class FileDefinitionCacheTest {
+
+	private static final String PATH = "/configurations/valid";
+
+
+	@Test
+	public void testHitsAndEvictions() throws Exception {
+
+		File f1 = TestUtils.findTestFile( PATH + "/real-lamp-all-in-one.graph" );
+		File f2 = TestUtils.findTestFile( PATH + "/instance-single.instances" );
+		FileDefinitionCache cache = new FileDefinitionCache( 1 );
+		Assert.assertEquals( 0d, cache.getHitRate());
+
+		CachedDefinition def = cache.read( f1 );
+		Assert.assertEquals( 0, def.getDefinition().getParsingErrors().size());
+		Assert.assertSame( def, cache.read( f1 ));
+		Assert.assertEquals( 1, cache.getHits());
+		Assert.assertEquals( 1, cache.getMisses());
+		Assert.assertEquals( 0.5d, cache.getHitRate());
+
+		// The cache can only contain one definition
+		cache.read( f2 );
+		Assert.assertEquals( 1, cache.size());
+		Assert.assertEquals( 1, cache.getEvictions());
+		Assert.assertNotSame( def, cache.read( f1 ));
+		Assert.assertEquals( 3, cache.getMisses());
+
+		cache.clear();
+		Assert.assertEquals( 0, cache.size());
+	}
+
+
+	@Test
+	public void testModifiedFilesAreParsedAgain() throws Exception {
+
+		File f = File.createTempFile( "roboconf_", ".graph" );
+		try {
+			writeFile( f, "VM {\n\tinstaller: iaas;\n}\n" );
+			FileDefinitionCache cache = new FileDefinitionCache( 10 );
+			CachedDefinition def = cache.read( f );
+			int blockCount = def.getDefinition().getBlocks().size();
+
+			writeFile( f, "VM {\n\tinstaller: iaas;\n}\n\nMySQL {\n\tinstaller: puppet;\n}\n" );
+			CachedDefinition newDef = cache.read( f );
+			Assert.assertNotSame( def, newDef );
+			Assert.assertTrue( newDef.getDefinition().getBlocks().size() > blockCount );
+			Assert.assertEquals( 0, cache.getHits());
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	@Test
+	public void testImportedFilesAreCached() throws Exception {
+
+		File directory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_cache_" + System.nanoTime());
+		try {
+			Assert.assertTrue( directory.mkdirs());
+			File mainFile = new File( directory, "main.graph" );
+			File importedFile = new File( directory, "imported.graph" );
+			writeFile( mainFile, "import imported.graph;\n\nVM {\n\tinstaller: iaas;\n\tchildren: MySQL;\n}\n" );
+			writeFile( importedFile, "MySQL {\n\tinstaller: puppet;\n}\n" );
+
+			FileDefinitionCache cache = new FileDefinitionCache( 10 );
+			FromGraphDefinition fromDef = new FromGraphDefinition( cache.read( mainFile ).getDefinition(), cache );
+			Graphs graphs = fromDef.buildGraphs();
+			Assert.assertEquals( 0, fromDef.getErrors().size());
+			Assert.assertNotNull( ComponentHelpers.findComponent( graphs, "MySQL" ));
+			Assert.assertEquals( 2, cache.size());
+			Assert.assertEquals( 2, cache.getMisses());
+
+			// The imported file is not parsed again
+			CachedDefinition importedDef = cache.read( importedFile );
+			Assert.assertEquals( 1, cache.getHits());
+
+			fromDef = new FromGraphDefinition( cache.read( mainFile ).getDefinition(), cache );
+			fromDef.buildGraphs();
+			Assert.assertEquals( 0, fromDef.getErrors().size());
+			Assert.assertEquals( 3, cache.getHits());
+			Assert.assertEquals( 2, cache.getMisses());
+			Assert.assertSame( importedDef, cache.read( importedFile ));
+
+			// ... unless it was modified
+			writeFile( importedFile, "MySQL {\n\tinstaller: puppet;\n\texports: port = 3306;\n}\n" );
+			fromDef = new FromGraphDefinition( cache.read( mainFile ).getDefinition(), cache );
+			graphs = fromDef.buildGraphs();
+			Assert.assertEquals( 0, fromDef.getErrors().size());
+			Assert.assertEquals( 3, cache.getMisses());
+			Assert.assertEquals( "3306", ComponentHelpers.findComponent( graphs, "MySQL" ).getExportedVariables().get( "MySQL.port" ));
+
+		} finally {
+			Utils.deleteFilesRecursively( directory );
+		}
+	}
+
+
+	private static void writeFile( File f, String content ) throws Exception {
+		OutputStream out = new FileOutputStream( f );
+		try {
+			out.write( content.getBytes( "UTF-8" ));
+
+		} finally {
+			Utils.closeQuietly( out );
+		}
+	}
+}
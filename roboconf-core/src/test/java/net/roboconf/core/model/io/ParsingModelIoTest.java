@@ -16,15 +16,24 @@
 
 package net.roboconf.core.model.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.roboconf.core.internal.model.parsing.FileDefinitionSerializer;
 import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.parsing.AbstractBlock;
+import net.roboconf.core.model.parsing.BlockComponent;
+import net.roboconf.core.model.parsing.BlockProperty;
 import net.roboconf.core.model.parsing.ParsingConstants;
 import net.roboconf.core.model.parsing.FileDefinition;
 
@@ -89,6 +98,97 @@ public class ParsingModelIoTest {
 	}
 
 
+	@Test
+	public void testIncrementalSave() throws Exception {
+
+		File f = File.createTempFile( "roboconf_", ".graph" );
+		try {
+			String content = "# comment\nfacet   f {\n\texports: ip;\n}\n\nvm{\n\talias: VM;\n\tinstaller: target;\n}\n";
+			OutputStream out = new FileOutputStream( f );
+			try {
+				out.write( content.getBytes( "UTF-8" ));
+
+			} finally {
+				Utils.closeQuietly( out );
+			}
+
+			FileDefinition rel = ParsingModelIo.readConfigurationFile( f, false );
+			Assert.assertTrue( rel.getParsingErrors().isEmpty());
+			Assert.assertEquals( rel.getBlocks().size(), rel.getSourceRegions().size());
+
+			// Only the modified block is serialized again
+			BlockComponent vm = null;
+			for( AbstractBlock block : rel.getBlocks()) {
+				if( block.getInstructionType() == AbstractBlock.COMPONENT )
+					vm = (BlockComponent) block;
+			}
+
+			Assert.assertNotNull( vm );
+			((BlockProperty) vm.getInnerBlocks().get( 0 )).setValue( "Virtual Machine" );
+
+			ParsingModelIo.saveRelationsFileIncrementally( rel, "\n" );
+			String expected = "# comment\nfacet   f {\n\texports: ip;\n}\n\nvm {\n\talias: Virtual Machine;\n\tinstaller: target;\n}\n";
+			Assert.assertEquals( expected, TestUtils.readFileContent( f ));
+
+			// Regions do not match the file anymore
+			Assert.assertTrue( rel.getSourceRegions().isEmpty());
+			StringWriter writer = new StringWriter();
+			new FileDefinitionSerializer( "\n" ).writeIncrementally( rel, writer );
+			Assert.assertEquals( ParsingModelIo.writeConfigurationFile( rel, true, "\n" ), writer.toString());
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	@Test
+	public void testIncrementalSave_failure() throws Exception {
+
+		File f = File.createTempFile( "roboconf_", ".graph" );
+		File tempFile = new File( f.getParentFile(), f.getName() + ".tmp" );
+		try {
+			String content = "facet f {\n\texports: ip;\n}\n\nvm {\n\talias: VM;\n}\n";
+			OutputStream out = new FileOutputStream( f );
+			try {
+				out.write( content.getBytes( "UTF-8" ));
+
+			} finally {
+				Utils.closeQuietly( out );
+			}
+
+			FileDefinition rel = ParsingModelIo.readConfigurationFile( f, false );
+			Assert.assertTrue( rel.getParsingErrors().isEmpty());
+
+			// The source file is truncated after it was parsed: regions cannot be copied anymore
+			String truncatedContent = "facet f";
+			out = new FileOutputStream( f );
+			try {
+				out.write( truncatedContent.getBytes( "UTF-8" ));
+
+			} finally {
+				Utils.closeQuietly( out );
+			}
+
+			try {
+				ParsingModelIo.saveRelationsFileIncrementally( rel, "\n" );
+				Assert.fail( "An exception was expected, the source file was modified." );
+
+			} catch( IOException e ) {
+				// nothing
+			}
+
+			Assert.assertFalse( tempFile.exists());
+			Assert.assertEquals( truncatedContent, TestUtils.readFileContent( f ));
+			Assert.assertFalse( rel.getSourceRegions().isEmpty());
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+			Utils.deleteFilesRecursively( tempFile );
+		}
+	}
+
+
 	/**
 	 * @param f
 	 */
@@ -111,6 +211,21 @@ public class ParsingModelIoTest {
 		String s = ParsingModelIo.writeConfigurationFile( rel, true, null );
 		Assert.assertEquals( f.getName() + ": serialized model is different from the source.",  fileContent, s );
 
+		// The same, in a stream
+		try {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			ParsingModelIo.writeConfigurationFile( rel, true, null, os );
+			Assert.assertEquals( f.getName() + ": streamed model is different from the source.",  fileContent, os.toString( "UTF-8" ));
+
+			// An unmodified model is copied from the source
+			StringWriter writer = new StringWriter();
+			new FileDefinitionSerializer( System.getProperty( "line.separator" )).writeIncrementally( rel, writer );
+			Assert.assertEquals( f.getName() + ": incremental model is different from the source.",  fileContent, writer.toString());
+
+		} catch( IOException e ) {
+			Assert.fail( f.getName() + ": failed to write the model." );
+		}
+
 		// The same, but without writing comments
 		s = ParsingModelIo.writeConfigurationFile( rel, false, null );
 		Assert.assertFalse( f.getName() + ": serialized model should not contain a comment delimiter.",  s.contains( ParsingConstants.COMMENT_DELIMITER ));
@@ -16,15 +16,24 @@
 
 package net.roboconf.core.model.io;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import junit.framework.Assert;
 import net.roboconf.core.ErrorCode.ErrorLevel;
 import net.roboconf.core.RoboconfError;
 import net.roboconf.core.internal.tests.TestUtils;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.ModelError;
+import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.io.RuntimeModelIo.LoadResult;
+import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Graphs;
 import net.roboconf.core.model.runtime.Instance;
@@ -73,6 +82,10 @@ public class RuntimeModelIoTest {
 		Assert.assertEquals( "Virtual Machine", vmComponent.getAlias());
 		Assert.assertEquals( 3, vmComponent.getChildren().size());
 
+		Assert.assertNotNull( g.getComponentsByName());
+		Assert.assertEquals( 4, g.getComponentsByName().size());
+		Assert.assertSame( vmComponent, g.getComponentsByName().get( "VM" ));
+
 		for( Component childComponent : vmComponent.getChildren()) {
 			if( "Tomcat".equals( childComponent.getName())) {
 				Assert.assertEquals( "puppet", childComponent.getInstallerName());
@@ -291,4 +304,121 @@ public class RuntimeModelIoTest {
 		Assert.assertTrue( childComponent.getImportedVariables().containsKey( "Mongo.ip" ));
 		Assert.assertTrue( childComponent.getImportedVariables().containsKey( "Mongo.port" ));
 	}
+
+
+	@Test
+	public void testLoadApplicationFromArchive() throws Exception {
+
+		// The graph is split into several files, to check imports are resolved within the archive
+		Map<String,String> entryToContent = new LinkedHashMap<String,String> ();
+		entryToContent.put(
+				"descriptor/application.properties",
+				"application-name = Zipped\napplication-qualifier = test\ngraph-entry-point = main.graph\ninstance-entry-point = main.instances\n" );
+
+		entryToContent.put( "graph/main.graph", "import components/vm.graph;\n\nMySQL {\n\talias: MySQL;\n\tinstaller: puppet;\n}\n" );
+		entryToContent.put( "graph/components/vm.graph", "VM {\n\talias: VM;\n\tinstaller: iaas;\n\tchildren: MySQL;\n}\n" );
+		entryToContent.put( "instances/main.instances", "instanceof VM {\n\tname: vm;\n\tinstanceof MySQL {\n\t\tname: mysql;\n\t}\n}\n" );
+
+		File zipFile = File.createTempFile( "roboconf_", ".zip" );
+		try {
+			TestUtils.createZipFile( entryToContent, zipFile );
+			LoadResult result = RuntimeModelIo.loadApplicationFromArchive( zipFile );
+			Assert.assertEquals( result.getLoadErrors().toString(), 0, result.getLoadErrors().size());
+
+			Application app = result.getApplication();
+			Assert.assertEquals( "Zipped", app.getName());
+			Assert.assertEquals( 1, app.getGraphs().getRootComponents().size());
+			Assert.assertEquals( "VM", app.getGraphs().getRootComponents().iterator().next().getName());
+			Assert.assertNotNull( InstanceHelpers.findInstanceByPath( app, "/vm/mysql" ));
+
+			// The archive was not locked by the loading
+			Assert.assertTrue( zipFile.delete());
+
+		} finally {
+			Utils.deleteFilesRecursively( zipFile );
+		}
+	}
+
+
+	@Test
+	public void testStreamingAndTwoPhaseLoadingsAreEquivalent() throws Exception {
+
+		// Without a cache, instances are streamed. With a cache, the instances file is parsed first.
+		File directory = TestUtils.findTestFile( "/applications/lamp-legacy-2" );
+		LoadResult streamed = RuntimeModelIo.loadApplication( directory );
+		LoadResult twoPhase = RuntimeModelIo.loadApplication( directory, new FileDefinitionCache( 10 ));
+		Assert.assertEquals( 0, streamed.getLoadErrors().size());
+		Assert.assertEquals( 0, twoPhase.getLoadErrors().size());
+
+		List<Instance> expected = InstanceHelpers.getAllInstances( twoPhase.getApplication());
+		List<Instance> actual = InstanceHelpers.getAllInstances( streamed.getApplication());
+		Assert.assertFalse( expected.isEmpty());
+		Assert.assertEquals( expected.size(), actual.size());
+		for( int i=0; i<expected.size(); i++ ) {
+			Assert.assertEquals( expected.get( i ).getPath(), actual.get( i ).getPath());
+			Assert.assertEquals( expected.get( i ).getComponent().getName(), actual.get( i ).getComponent().getName());
+			Assert.assertEquals( expected.get( i ).getExports(), actual.get( i ).getExports());
+		}
+
+		// Errors
+		String[] instanceFileContents = {
+				"instanceof VM {\n\tname: vm;\n\tinstanceof MySQL {\n\t\tname: mysql;\n\t}\n}\n",
+				"instanceof VM {\n\tname: vm;\n",
+				"VM {\n\tinstaller: iaas;\n}\n",
+				"instanceof VM {\n\tname: vm;\n}\n\nimport other.instances;\n",
+				"instanceof VM {\n}\n",
+				"instanceof VM {\n\tname: vm;\n\tunknown-property: value;\n}\n",
+				"instanceof Unknown {\n\tname: vm;\n}\n",
+				"instanceof MySQL {\n\tname: mysql;\n}\n",
+				"import missing.instances;\n"
+		};
+
+		File projectDirectory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_streaming_" + System.nanoTime());
+		try {
+			Map<String,String> entryToContent = new LinkedHashMap<String,String> ();
+			entryToContent.put(
+					"descriptor/application.properties",
+					"application-name = Streaming\napplication-qualifier = test\ngraph-entry-point = main.graph\ninstance-entry-point = main.instances\n" );
+
+			entryToContent.put( "graph/main.graph", "VM {\n\talias: VM;\n\tinstaller: iaas;\n\tchildren: MySQL;\n}\n\nMySQL {\n\talias: MySQL;\n\tinstaller: puppet;\n}\n" );
+			entryToContent.put( "instances/other.instances", "instanceof VM {\n\tname: vm2;\n}\n" );
+
+			for( String content : instanceFileContents ) {
+				entryToContent.put( "instances/main.instances", content );
+				for( Map.Entry<String,String> entry : entryToContent.entrySet()) {
+					File f = new File( projectDirectory, entry.getKey());
+					if( ! f.getParentFile().exists() && ! f.getParentFile().mkdirs())
+						throw new IOException( "Could not create " + f.getParentFile());
+
+					Utils.copyStream( new ByteArrayInputStream( entry.getValue().getBytes( "UTF-8" )), f );
+				}
+
+				streamed = RuntimeModelIo.loadApplication( projectDirectory );
+				twoPhase = RuntimeModelIo.loadApplication( projectDirectory, new FileDefinitionCache( 10 ));
+				Assert.assertEquals( content, toString( twoPhase.getLoadErrors()), toString( streamed.getLoadErrors()));
+				Assert.assertEquals(
+						content,
+						InstanceHelpers.getAllInstances( twoPhase.getApplication()).toString(),
+						InstanceHelpers.getAllInstances( streamed.getApplication()).toString());
+			}
+
+		} finally {
+			Utils.deleteFilesRecursively( projectDirectory );
+		}
+	}
+
+
+	private static String toString( Collection<RoboconfError> errors ) {
+
+		StringBuilder sb = new StringBuilder();
+		for( RoboconfError error : errors ) {
+			sb.append( error.getErrorCode());
+			if( error instanceof ModelError )
+				sb.append( " (line " ).append(((ModelError) error).getLine()).append( ")" );
+
+			sb.append( '\n' );
+		}
+
+		return sb.toString();
+	}
 }
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ApplicationSnapshotTest {
+
+	@Test
+	public void testSnapshotIsImmutable() {
+
+		Application app = new Application();
+		Instance instance_1 = new Instance( "inst 1" );
+		Instance instance_1_1 = new Instance( "inst 11" );
+		Instance instance_1_2 = new Instance( "inst 12" );
+		app.getRootInstances().add( instance_1 );
+		InstanceHelpers.insertChild( instance_1, instance_1_1 );
+
+		// Nothing was published yet: the first snapshot is built lazily
+		ApplicationSnapshot snapshot = app.getSnapshot();
+		Assert.assertEquals( 1, snapshot.getVersion());
+		Assert.assertSame( snapshot, app.getSnapshot());
+		Assert.assertEquals( 1, snapshot.getRootInstances().size());
+		Assert.assertEquals( 2, snapshot.getAllInstances().size());
+		Assert.assertEquals( 1, snapshot.getChildren( instance_1 ).size());
+		Assert.assertEquals( 0, snapshot.getChildren( instance_1_1 ).size());
+		Assert.assertSame( instance_1_1, snapshot.findInstanceByPath( "/inst 1/inst 11" ));
+		Assert.assertSame( instance_1_1, snapshot.findInstanceByPath( "inst 1/inst 11" ));
+
+		// Modify the model: the snapshot does not change
+		InstanceHelpers.insertChild( instance_1, instance_1_2 );
+		app.getRootInstances().add( new Instance( "inst 2" ));
+		instance_1_1.setName( "inst 13" );
+
+		Assert.assertSame( snapshot, app.getSnapshot());
+		Assert.assertEquals( 1, snapshot.getRootInstances().size());
+		Assert.assertEquals( 2, snapshot.getAllInstances().size());
+		Assert.assertEquals( 1, snapshot.getChildren( instance_1 ).size());
+		Assert.assertSame( instance_1_1, snapshot.findInstanceByPath( "/inst 1/inst 11" ));
+		Assert.assertNull( snapshot.findInstanceByPath( "/inst 1/inst 12" ));
+
+		try {
+			snapshot.getChildren( instance_1 ).add( instance_1_2 );
+			Assert.fail( "The snapshot was expected to be immutable." );
+
+		} catch( UnsupportedOperationException e ) {
+			// nothing
+		}
+
+		// Publish a new snapshot
+		ApplicationSnapshot newSnapshot = app.publishSnapshot();
+		Assert.assertSame( newSnapshot, app.getSnapshot());
+		Assert.assertTrue( newSnapshot.getVersion() > snapshot.getVersion());
+		Assert.assertEquals( 2, newSnapshot.getRootInstances().size());
+		Assert.assertEquals( 4, newSnapshot.getAllInstances().size());
+		Assert.assertSame( instance_1_1, newSnapshot.findInstanceByPath( "/inst 1/inst 13" ));
+
+		List<Instance> list = newSnapshot.buildHierarchicalList( instance_1 );
+		Assert.assertEquals( InstanceHelpers.buildHierarchicalList( instance_1 ), list );
+	}
+
+
+	@Test
+	public void testConcurrentWritersAndReaders() throws Exception {
+
+		final Component vmComponent = new Component( "vm" );
+		final Component serverComponent = new Component( "server" );
+		final Component appComponent = new Component( "app" );
+		ComponentHelpers.insertChild( vmComponent, serverComponent );
+		ComponentHelpers.insertChild( serverComponent, appComponent );
+
+		final Application app = new Application();
+		final int writerCount = 2, iterations = 300;
+		for( int i=0; i<writerCount; i++ )
+			app.getRootInstances().add( newInstance( "root " + i, vmComponent ));
+
+		app.publishSnapshot();
+		final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable> ());
+		final AtomicBoolean writing = new AtomicBoolean( true );
+
+		// Writers insert and remove a child and its own child at once, under the application's lock
+		List<Thread> writers = new ArrayList<Thread> ();
+		for( int w=0; w<writerCount; w++ ) {
+			final Instance rootInstance = InstanceHelpers.findInstanceByPath( app, "/root " + w );
+			writers.add( new Thread() {
+				@Override
+				public void run() {
+					try {
+						List<Instance> children = new ArrayList<Instance> ();
+						for( int i=0; i<iterations; i++ ) {
+							Instance child = newInstance( "child " + i, serverComponent );
+							InstanceHelpers.insertChild( child, newInstance( "grand child", appComponent ));
+							synchronized( app ) {
+								Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, rootInstance, child ));
+								app.publishSnapshot();
+							}
+
+							children.add( child );
+							if( i % 3 == 0 ) {
+								Instance removed = children.remove( 0 );
+								synchronized( app ) {
+									app.unindexInstance( removed );
+									rootInstance.getChildren().remove( removed );
+									app.publishSnapshot();
+								}
+							}
+						}
+
+					} catch( Throwable t ) {
+						failures.add( t );
+					}
+				}
+			});
+		}
+
+		// Readers check every snapshot is consistent: all the children have exactly one child
+		List<Thread> readers = new ArrayList<Thread> ();
+		for( int r=0; r<2; r++ ) {
+			readers.add( new Thread() {
+				@Override
+				public void run() {
+					try {
+						long lastVersion = 0;
+						while( writing.get()) {
+							ApplicationSnapshot snapshot = app.getSnapshot();
+							Assert.assertTrue( snapshot.getVersion() >= lastVersion );
+							lastVersion = snapshot.getVersion();
+
+							int expectedSize = snapshot.getRootInstances().size();
+							for( Instance rootInstance : snapshot.getRootInstances()) {
+								for( Instance child : snapshot.getChildren( rootInstance )) {
+									Assert.assertEquals( 1, snapshot.getChildren( child ).size());
+									Assert.assertSame( child, snapshot.findInstanceByPath( "/" + rootInstance.getName() + "/" + child.getName()));
+									expectedSize += 2;
+								}
+							}
+
+							Assert.assertEquals( expectedSize, snapshot.getAllInstances().size());
+							InstanceHelpers.findInstanceByPath( app, "/root 0/child " + lastVersion % iterations + "/grand child" );
+						}
+
+					} catch( Throwable t ) {
+						failures.add( t );
+					}
+				}
+			});
+		}
+
+		for( Thread thread : readers )
+			thread.start();
+
+		for( Thread thread : writers )
+			thread.start();
+
+		for( Thread thread : writers )
+			thread.join();
+
+		writing.set( false );
+		for( Thread thread : readers )
+			thread.join();
+
+		Assert.assertEquals( failures.toString(), 0, failures.size());
+		ApplicationSnapshot snapshot = app.getSnapshot();
+		Assert.assertEquals( writerCount * ( 1 + 2 * ( iterations - iterations / 3 )), snapshot.getAllInstances().size());
+		Assert.assertEquals( InstanceHelpers.getAllInstances( app ), snapshot.getAllInstances());
+	}
+
+
+	private static Instance newInstance( String name, Component component ) {
+		Instance result = new Instance( name );
+		result.setComponent( component );
+		return result;
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+
+/**
+ * Measures the heap used by a large instance model.
+ * <p>
+ * The model contains 100,000 instances: root instances with a few data, their children with
+ * some exports, and leaves without any variable. It is compared with the same model stored
+ * in the collections instances used to allocate eagerly (a linked hash set for the children
+ * and four hash maps).
+ * </p>
+ * <p>
+ * This is not a unit test: results depend on the JVM, so it is run by hand
+ * (e.g. from an IDE) and prints its results on the standard output.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class InstanceHeapBenchmark {
+
+	private static final int ROOT_COUNT = 1000;
+	private static final int CHILDREN_PER_ROOT = 9;
+	private static final int LEAVES_PER_CHILD = 10;
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private InstanceHeapBenchmark() {
+		// nothing
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args unused
+	 */
+	public static void main( String[] args ) {
+
+		long before = usedMemory();
+		List<Instance> rootInstances = buildModel();
+		long instancesHeap = usedMemory() - before;
+		int count = InstanceHelpers.getAllInstances( asApplication( rootInstances )).size();
+
+		before = usedMemory();
+		List<EagerInstance> eagerRootInstances = buildEagerModel();
+		long eagerHeap = usedMemory() - before;
+
+		System.out.println( count + " instances." );
+		System.out.println( String.format( "%-20s %12d bytes    %6d bytes/instance", "Instance", instancesHeap, instancesHeap / count ));
+		System.out.println( String.format( "%-20s %12d bytes    %6d bytes/instance", "Eager collections", eagerHeap, eagerHeap / count ));
+
+		// Keep the models reachable until the end of the measures
+		System.out.println( rootInstances.size() + eagerRootInstances.size() > 0 ? "" : "?" );
+	}
+
+
+	/**
+	 * @return the root instances of a model with compact collections
+	 */
+	private static List<Instance> buildModel() {
+
+		List<Instance> result = new ArrayList<Instance> ();
+		for( int i=0; i<ROOT_COUNT; i++ ) {
+			Instance root = new Instance( "vm " + i );
+			root.getData().put( "ip.address", "192.168.1." + ( i % 256 ));
+			root.getData().put( "machine.id", "id-" + i );
+			result.add( root );
+
+			for( int j=0; j<CHILDREN_PER_ROOT; j++ ) {
+				Instance child = new Instance( "server " + j );
+				child.getExports().put( "server.port", String.valueOf( 8080 + j ));
+				InstanceHelpers.insertChild( root, child );
+
+				for( int k=0; k<LEAVES_PER_CHILD; k++ )
+					InstanceHelpers.insertChild( child, new Instance( "app " + k ));
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the root instances of the same model, with eagerly allocated collections
+	 */
+	private static List<EagerInstance> buildEagerModel() {
+
+		List<EagerInstance> result = new ArrayList<EagerInstance> ();
+		for( int i=0; i<ROOT_COUNT; i++ ) {
+			EagerInstance root = new EagerInstance( "vm " + i );
+			root.data.put( "ip.address", "192.168.1." + ( i % 256 ));
+			root.data.put( "machine.id", "id-" + i );
+			result.add( root );
+
+			for( int j=0; j<CHILDREN_PER_ROOT; j++ ) {
+				EagerInstance child = new EagerInstance( "server " + j );
+				child.exports.put( "server.port", String.valueOf( 8080 + j ));
+				root.insertChild( child );
+
+				for( int k=0; k<LEAVES_PER_CHILD; k++ )
+					child.insertChild( new EagerInstance( "app " + k ));
+			}
+		}
+
+		return result;
+	}
+
+
+	private static Application asApplication( List<Instance> rootInstances ) {
+		Application app = new Application();
+		app.getRootInstances().addAll( rootInstances );
+		return app;
+	}
+
+
+	private static long usedMemory() {
+
+		Runtime runtime = Runtime.getRuntime();
+		for( int i=0; i<5; i++ ) {
+			System.gc();
+			try {
+				Thread.sleep( 100 );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+
+	/**
+	 * The layout of instances before compact collections were used.
+	 * <p>
+	 * Like instances, it caches its path once it is inserted in a set.
+	 * </p>
+	 */
+	private static final class EagerInstance {
+
+		final String name;
+		String channel, path;
+		Component component;
+		EagerInstance parent;
+		InstanceStatus status = InstanceStatus.NOT_DEPLOYED;
+		final Collection<EagerInstance> children = new LinkedHashSet<EagerInstance> ();
+		final Map<String,String> data = new HashMap<String,String> ();
+		final Map<String,String> overridenExports = new HashMap<String,String> ();
+		final Map<String,String> exports = new HashMap<String,String> ();
+		final Map<String,Collection<Import>> variablePrefixToImports = new HashMap<String,Collection<Import>> ();
+
+
+		/**
+		 * Constructor.
+		 * @param name the instance name
+		 */
+		EagerInstance( String name ) {
+			this.name = name;
+			this.path = "/" + name;
+		}
+
+
+		/**
+		 * Inserts a child.
+		 * @param child the child instance
+		 */
+		void insertChild( EagerInstance child ) {
+			child.parent = this;
+			child.path = this.path + "/" + child.name;
+			this.children.add( child );
+		}
+	}
+}
@@ -17,11 +17,17 @@
 package net.roboconf.core.model.validators;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 import net.roboconf.core.Constants;
 import net.roboconf.core.ErrorCode;
+import net.roboconf.core.internal.utils.SharedExecutor;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.parsing.BlockBlank;
 import net.roboconf.core.model.parsing.BlockComment;
@@ -31,6 +37,7 @@ import net.roboconf.core.model.parsing.BlockImport;
 import net.roboconf.core.model.parsing.BlockInstanceOf;
 import net.roboconf.core.model.parsing.BlockProperty;
 import net.roboconf.core.model.parsing.FileDefinition;
+import net.roboconf.core.model.parsing.ParsingConstants;
 
 import org.junit.Test;
 
@@ -628,4 +635,81 @@ public class ParsingModelValidatorTest {
 		Assert.assertEquals( 1, errors.size());
 		Assert.assertEquals( ErrorCode.PM_DUPLICATE_PROPERTY, errors.iterator().next().getErrorCode());
 	}
+
+
+	@Test
+	public void testIdentifiersAndImagesMatchPatterns() {
+
+		String[] values = {
+			"", "a", "_", "-", ".", "1a", "a1", "A_b-c.d", "a b", "a\tb", "é", "aé", "a;", "a/b", "a..",
+			"img.png", "img.PNG", "IMG.Jpeg", "img.jpg", "img.gif", "img.bmp", ".png", "a.png ",
+			" a.png", "a b.png", "dir/img.png", "a..png", "a.png.gif", "a.pngx", "png", "a.jpe", "a.png\n"
+		};
+
+		for( String value : values ) {
+			Assert.assertEquals( value, value.matches( ParsingConstants.PATTERN_ID ), ParsingModelValidator.isValidIdentifier( value ));
+			Assert.assertEquals( value, value.toLowerCase().matches( ParsingConstants.PATTERN_IMAGE ), ParsingModelValidator.isValidImageLocation( value ));
+		}
+	}
+
+
+	@Test
+	public void testConcurrentValidation() {
+
+		FileDefinition file = new FileDefinition( new File( "some-file" ));
+		for( int i=0; i<3 * ParsingModelValidator.PARALLEL_THRESHOLD; i++ ) {
+			BlockComponent block = new BlockComponent( file );
+			block.setName( i % 7 == 0 ? "invalid name " + i : "component" + i );
+			block.setLine( i + 1 );
+			if( i % 5 != 0 )
+				block.getInnerBlocks().add( new BlockProperty( file, Constants.PROPERTY_COMPONENT_ALIAS, "alias" ));
+
+			file.getBlocks().add( block );
+		}
+
+		Collection<ModelError> sequentialErrors = ParsingModelValidator.validate( file.getBlocks());
+		Collection<ModelError> concurrentErrors = ParsingModelValidator.validateConcurrently( file.getBlocks(), 3 );
+		Assert.assertFalse( sequentialErrors.isEmpty());
+		Assert.assertEquals( sequentialErrors.size(), concurrentErrors.size());
+
+		List<ModelError> expected = new ArrayList<ModelError>( sequentialErrors );
+		List<ModelError> actual = new ArrayList<ModelError>( concurrentErrors );
+		for( int i=0; i<expected.size(); i++ ) {
+			Assert.assertEquals( expected.get( i ).getErrorCode(), actual.get( i ).getErrorCode());
+			Assert.assertEquals( expected.get( i ).getLine(), actual.get( i ).getLine());
+		}
+
+		Assert.assertEquals( sequentialErrors.size(), ParsingModelValidator.validate( file ).size());
+	}
+
+
+	@Test
+	public void testConcurrentValidationFromTheSharedPool() throws Exception {
+
+		final FileDefinition file = new FileDefinition( new File( "some-file" ));
+		for( int i=0; i<3 * ParsingModelValidator.PARALLEL_THRESHOLD; i++ ) {
+			BlockComponent block = new BlockComponent( file );
+			block.setName( i % 7 == 0 ? "invalid name " + i : "component" + i );
+			block.setLine( i + 1 );
+			file.getBlocks().add( block );
+		}
+
+		// More tasks than threads: validating from the pool must not wait for the pool
+		final int expected = ParsingModelValidator.validate( file.getBlocks()).size();
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>> ();
+		for( int i=0; i<2 * Runtime.getRuntime().availableProcessors() + 1; i++ ) {
+			futures.add( SharedExecutor.getInstance().submit( new Callable<Integer> () {
+				@Override
+				public Integer call() throws Exception {
+					Assert.assertTrue( SharedExecutor.isWorkerThread());
+					return ParsingModelValidator.validateConcurrently( file.getBlocks(), 3 ).size();
+				}
+			}));
+		}
+
+		for( Future<Integer> future : futures )
+			Assert.assertEquals( expected, future.get( 30, TimeUnit.SECONDS ).intValue());
+
+		Assert.assertFalse( SharedExecutor.isWorkerThread());
+	}
 }
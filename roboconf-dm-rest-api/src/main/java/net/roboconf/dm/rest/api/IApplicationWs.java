@@ -17,7 +17,9 @@
 package net.roboconf.dm.rest.api;
 
 import java.util.List;
+import java.util.Map;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -78,6 +80,25 @@ public interface IApplicationWs {
 	Response addInstance( @PathParam("name") String applicationName, @PathParam("instancePath") String parentInstancePath, Instance instance );
 
 
+	/**
+	 * Adds several instances in a single request.
+	 * <p>
+	 * Instances are grouped by parent instance path. Root instances are associated
+	 * with an empty path. The response's entity is a list of booleans, one per instance,
+	 * in the iteration order of the map (true if the instance was added, false otherwise).
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param parentPathToInstances the new instances, grouped by parent instance path (not null)
+	 * @return a response
+	 */
+	@POST
+	@Path( "/add-all" )
+	@Consumes( MediaType.APPLICATION_JSON )
+	@Produces( MediaType.APPLICATION_JSON )
+	Response addInstances( @PathParam("name") String applicationName, Map<String,List<Instance>> parentPathToInstances );
+
+
 	/**
 	 * Lists the paths of the children of an instance.
 	 * @param applicationName the application name
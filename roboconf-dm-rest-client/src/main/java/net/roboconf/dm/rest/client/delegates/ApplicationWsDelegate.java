@@ -18,6 +18,7 @@ package net.roboconf.dm.rest.client.delegates;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.ws.rs.core.MediaType;
@@ -178,6 +179,36 @@ public class ApplicationWsDelegate {
 	}
 
 
+	/**
+	 * Adds several instances in a single request.
+	 * @param applicationName the application name
+	 * @param parentPathToInstances the new instances, grouped by parent instance path (empty path for root instances)
+	 * @return a non-null list with one boolean per instance, in the iteration order of the map
+	 * (true if the instance was added, false otherwise)
+	 * @throws ApplicationException if the application does not exist
+	 */
+	public List<Boolean> addInstances( String applicationName, Map<String,List<Instance>> parentPathToInstances )
+	throws ApplicationException {
+		this.logger.finer( "Adding instances to the application " + applicationName + "..." );
+
+		ClientResponse response = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "add-all" )
+				.accept( MediaType.APPLICATION_JSON ).type( MediaType.APPLICATION_JSON )
+				.post( ClientResponse.class, parentPathToInstances );
+
+		if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			String value = response.getEntity( String.class );
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ApplicationException( response.getStatusInfo().getStatusCode(), value );
+		}
+
+		List<Boolean> result = response.getEntity( new GenericType<List<Boolean>> () {});
+		this.logger.finer( String.valueOf( response.getStatusInfo()));
+
+		return result != null ? result : new ArrayList<Boolean> ();
+	}
+
+
 	/**
 	 * Lists all the components from a given application.
 	 * @param applicationName the application name
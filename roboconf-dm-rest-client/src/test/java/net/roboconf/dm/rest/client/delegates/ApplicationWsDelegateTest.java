@@ -19,7 +19,10 @@ package net.roboconf.dm.rest.client.delegates;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.Assert;
 import net.roboconf.core.actions.ApplicationAction;
@@ -393,4 +396,41 @@ public class ApplicationWsDelegateTest extends JerseyTest {
 		newMysql.setComponent( app.getMySql().getComponent());
 		client.getApplicationDelegate().addInstance( "inexisting", "/bip/bip", newMysql );
 	}
+
+
+	@Test
+	public void testAddInstances() throws Exception {
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		WsClient client = RestTestUtils.buildWsClient();
+		Instance newVm = new Instance( "vm-mail" );
+		newVm.setComponent( app.getMySqlVm().getComponent());
+
+		Instance newMysql = new Instance( "mysql-2" );
+		newMysql.setComponent( app.getMySql().getComponent());
+
+		Instance newWar = new Instance( "war-2" );
+		newWar.setComponent( app.getWar().getComponent());
+
+		Map<String,List<Instance>> parentPathToInstances = new LinkedHashMap<String,List<Instance>> ();
+		parentPathToInstances.put( "", Arrays.asList( newVm ));
+		parentPathToInstances.put( InstanceHelpers.computeInstancePath( app.getTomcatVm()), Arrays.asList( newMysql, newWar ));
+
+		List<Boolean> result = client.getApplicationDelegate().addInstances( app.getName(), parentPathToInstances );
+		Assert.assertEquals( Arrays.asList( true, true, false ), result );
+		Assert.assertEquals( 3, app.getRootInstances().size());
+		Assert.assertEquals( 2, app.getTomcatVm().getChildren().size());
+	}
+
+
+	@Test( expected = ApplicationException.class )
+	public void testAddInstances_inexistingApplication() throws Exception {
+
+		WsClient client = RestTestUtils.buildWsClient();
+		client.getApplicationDelegate().addInstances( "inexisting", new LinkedHashMap<String,List<Instance>> ());
+	}
 }
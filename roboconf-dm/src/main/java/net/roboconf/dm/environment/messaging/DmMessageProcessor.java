@@ -130,7 +130,8 @@ public class DmMessageProcessor implements IMessageProcessor {
 				if( ma == null )
 					throw new IOException( "No manager was found for " + this.application.getName() + "." );
 
-				MsgCmdInstanceAdd newMsg = new MsgCmdInstanceAdd( null, rootInstance );
+				// The agent caches the graph(s) and resolves components by name
+				MsgCmdInstanceAdd newMsg = new MsgCmdInstanceAdd( null, rootInstance, this.application.getGraphs());
 				ma.getMessagingClient().publish(
 						false,
 						MessagingUtils.buildRoutingKeyToAgent( rootInstance ),
@@ -215,15 +216,26 @@ public class DmMessageProcessor implements IMessageProcessor {
 	private void processMsgNotifInstanceRemoved( MsgNotifInstanceRemoved message ) {
 
 		String instancePath = message.getInstancePath();
-		Instance instance = InstanceHelpers.findInstanceByPath( this.application, instancePath );
+		Instance instance;
+		boolean removed = false;
+
+		// Other threads may modify the model at the same time
+		synchronized( this.application ) {
+			instance = InstanceHelpers.findInstanceByPath( this.application, instancePath );
+			if( instance != null && instance.getParent() != null ) {
+				this.application.unindexInstance( instance );
+				instance.getParent().getChildren().remove( instance );
+				this.application.publishSnapshot();
+				removed = true;
+			}
+		}
+
 		if( instance == null ) {
 			this.logger.warning( "A 'REMOVE' notification was received for an unknown instance: " + instancePath + "." );
 
 		} else {
-			if( instance.getParent() == null )
+			if( ! removed )
 				this.logger.warning( "Anormal behavior. A 'REMOVE' notification was received for a root instance: " + instancePath + "." );
-			else
-				instance.getParent().getChildren().remove( instance );
 
 			this.logger.info( "Instance " + instancePath + " was removed from the model." );
 		}
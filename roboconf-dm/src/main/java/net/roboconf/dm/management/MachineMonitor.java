@@ -16,8 +16,6 @@
 
 package net.roboconf.dm.management;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -76,10 +74,9 @@ public class MachineMonitor {
 	 */
 	void monitorAllMachine() {
 
-		// Check the state of the machines
-		// We copy the list of instances to avoid concurrent modifications.
-		Collection<Instance> instances = new ArrayList<Instance>( this.application.getRootInstances());
-		for( Instance rootInstance : instances ) {
+		// Check the state of the machines.
+		// We work on a snapshot to avoid concurrent modifications.
+		for( Instance rootInstance : this.application.getSnapshot().getRootInstances()) {
 
 			// Never started instances,
 			// or root instances that have been stopped by an agent,
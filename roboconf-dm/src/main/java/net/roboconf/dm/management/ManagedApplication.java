@@ -49,6 +49,8 @@ public class ManagedApplication {
 		this.application = application;
 		this.messagingClient = messagingClient;
 
+		// Readers (REST API, monitor...) only browse published snapshots
+		this.application.publishSnapshot();
 		this.monitor = new MachineMonitor( application );
 		this.logger = Logger.getLogger( Manager.class.getName() + "." + application.getName());
 	}
@@ -20,18 +20,24 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import net.roboconf.core.actions.ApplicationAction;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.helpers.RoboconfErrorHelpers;
+import net.roboconf.core.model.io.FileDefinitionCache;
 import net.roboconf.core.model.io.RuntimeModelIo;
 import net.roboconf.core.model.io.RuntimeModelIo.LoadResult;
 import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.ApplicationSnapshot;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.environment.iaas.IaasResolver;
@@ -77,7 +83,10 @@ public final class Manager {
 
 	public static final Manager INSTANCE = new Manager();
 
+	private static final int DEFINITION_CACHE_SIZE = 256;
+
 	private final Map<String,ManagedApplication> appNameToManagedApplication;
+	private final FileDefinitionCache definitionCache;
 	private final Logger logger;
 
 	private String messageServerIp;
@@ -91,6 +100,7 @@ public final class Manager {
 	 */
 	private Manager() {
 		this.appNameToManagedApplication = new HashMap<String,ManagedApplication> ();
+		this.definitionCache = new FileDefinitionCache( DEFINITION_CACHE_SIZE );
 		this.logger = Logger.getLogger( getClass().getName());
 
 		this.iaasResolver = new IaasResolver();
@@ -106,6 +116,14 @@ public final class Manager {
 	}
 
 
+	/**
+	 * @return the cache for the definition files of the loaded applications (never null)
+	 */
+	public FileDefinitionCache getDefinitionCache() {
+		return this.definitionCache;
+	}
+
+
 	/**
 	 * Tries to change the message server IP.
 	 * <p>
@@ -179,7 +197,9 @@ public final class Manager {
 	 */
 	public ManagedApplication loadNewApplication( File applicationFilesDirectory ) throws AlreadyExistingException, InvalidApplicationException, IOException {
 
-		LoadResult lr = RuntimeModelIo.loadApplication( applicationFilesDirectory );
+		LoadResult lr = RuntimeModelIo.loadCompiledApplication( applicationFilesDirectory, this.definitionCache );
+		this.logger.finest( "Definition cache: " + this.definitionCache.getHits() + " hits, " + this.definitionCache.getMisses() + " misses." );
+
 		if( RoboconfErrorHelpers.containsCriticalErrors( lr.getLoadErrors()))
 			throw new InvalidApplicationException( lr.getLoadErrors());
 
@@ -215,7 +235,7 @@ public final class Manager {
 			throw new InexistingException( applicationName );
 
 		// Check we can do this
-		for( Instance rootInstance : ma.getApplication().getRootInstances()) {
+		for( Instance rootInstance : ma.getApplication().getSnapshot().getRootInstances()) {
 			if( rootInstance.getStatus() != InstanceStatus.NOT_DEPLOYED )
 				throw new UnauthorizedActionException( applicationName + " contains instances that are still deployed." );
 		}
@@ -337,20 +357,149 @@ public final class Manager {
 		if( ma == null )
 			throw new InexistingException( applicationName );
 
-		Instance parentInstance = null;
-		if( parentInstancePath != null
-				&& ( parentInstance = InstanceHelpers.findInstanceByPath( ma.getApplication(), parentInstancePath )) == null )
-			throw new InexistingException( parentInstancePath );
+		// The parent must not be removed while the instance is inserted
+		Application application = ma.getApplication();
+		synchronized( application ) {
+			Instance parentInstance = null;
+			if( parentInstancePath != null
+					&& ( parentInstance = InstanceHelpers.findInstanceByPath( application, parentInstancePath )) == null )
+				throw new InexistingException( parentInstancePath );
+
+			// 1. Insert the instance in the model first.
+			// 2. Only then, propagate the information.
+			if( ! InstanceHelpers.tryToInsertChildInstance( application, parentInstance, instance ))
+				throw new ImpossibleInsertionException( instance.getName());
 
-		// 1. Insert the instance in the model first.
-		// 2. Only then, propagate the information.
-		if( ! InstanceHelpers.tryToInsertChildInstance( ma.getApplication(), parentInstance, instance ))
-			throw new ImpossibleInsertionException( instance.getName());
+			application.publishSnapshot();
+		}
 
 		ma.getLogger().fine( "Instance " + InstanceHelpers.computeInstancePath( instance ) + " was successfully added in " + applicationName + "." );
 	}
 
 
+	/**
+	 * Adds several instances in one pass.
+	 * <p>
+	 * Instances are grouped by parent path, so that every parent instance is only resolved once.
+	 * Parents are processed from the shallowest to the deepest, which means an entry can reference
+	 * a parent instance that is added by another entry of the same list.
+	 * </p>
+	 * <p>
+	 * Unlike {@link #addInstance(String, String, Instance)}, a failure does not stop the processing.
+	 * An instance whose parent does not exist, or which could not be inserted, is simply reported as such.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param parentPathsAndInstances a list of entries (key = the parent instance path, null for root instances;
+	 * value = the instance to insert)
+	 * @return a non-null list with one boolean per entry (true if the instance was added, false otherwise)
+	 * @throws InexistingException if the application does not exist
+	 */
+	public List<Boolean> addInstances( String applicationName, List<Map.Entry<String,Instance>> parentPathsAndInstances )
+	throws InexistingException {
+
+		ManagedApplication ma = this.appNameToManagedApplication.get( applicationName );
+		if( ma == null )
+			throw new InexistingException( applicationName );
+
+		// Group the entries by parent path (the key of root instances is the empty string).
+		// Paths are normalized, so that "vm", "/vm" and "/vm/" are the same parent.
+		Map<String,List<Integer>> parentPathToIndexes = new HashMap<String,List<Integer>> ();
+		for( int i=0; i<parentPathsAndInstances.size(); i++ ) {
+			String parentPath = normalizeInstancePath( parentPathsAndInstances.get( i ).getKey());
+
+			List<Integer> indexes = parentPathToIndexes.get( parentPath );
+			if( indexes == null ) {
+				indexes = new ArrayList<Integer> ();
+				parentPathToIndexes.put( parentPath, indexes );
+			}
+
+			indexes.add( i );
+		}
+
+		List<String> parentPaths = new ArrayList<String>( parentPathToIndexes.keySet());
+		Collections.sort( parentPaths, new Comparator<String>() {
+			@Override
+			public int compare( String path1, String path2 ) {
+				return countSegments( path1 ) - countSegments( path2 );
+			}
+		});
+
+		// Resolve every parent once and insert its new children
+		Boolean[] results = new Boolean[ parentPathsAndInstances.size()];
+		Arrays.fill( results, Boolean.FALSE );
+		int added = 0;
+		synchronized( ma.getApplication()) {
+			for( String parentPath : parentPaths ) {
+
+				List<Integer> indexes = parentPathToIndexes.get( parentPath );
+				Instance parentInstance = null;
+				if( parentPath.length() > 0
+						&& ( parentInstance = InstanceHelpers.findInstanceByPath( ma.getApplication(), parentPath )) == null ) {
+					ma.getLogger().fine( "Instance " + parentPath + " was not found in " + applicationName + ". " + indexes.size() + " instance(s) will not be added." );
+					continue;
+				}
+
+				List<Instance> childInstances = new ArrayList<Instance>( indexes.size());
+				for( Integer index : indexes )
+					childInstances.add( parentPathsAndInstances.get( index ).getValue());
+
+				List<Boolean> insertions = InstanceHelpers.tryToInsertChildInstances( ma.getApplication(), parentInstance, childInstances );
+				for( int i=0; i<insertions.size(); i++ ) {
+					results[ indexes.get( i )] = insertions.get( i );
+					if( insertions.get( i ))
+						added ++;
+				}
+			}
+
+			if( added > 0 )
+				ma.getApplication().publishSnapshot();
+		}
+
+		ma.getLogger().fine( added + " instance(s) out of " + results.length + " were successfully added in " + applicationName + "." );
+		return Arrays.asList( results );
+	}
+
+
+	/**
+	 * Normalizes an instance path.
+	 * @param instancePath an instance path (can be null)
+	 * @return a path that starts with a '/' and does not end with one, or the empty string for the application itself
+	 */
+	private static String normalizeInstancePath( String instancePath ) {
+
+		String result = "";
+		if( ! Utils.isEmptyOrWhitespaces( instancePath )) {
+			result = instancePath.trim();
+			while( result.endsWith( "/" ))
+				result = result.substring( 0, result.length() - 1 );
+
+			if( result.length() > 0 && ! result.startsWith( "/" ))
+				result = "/" + result;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Counts the segments of an instance path.
+	 * @param instancePath an instance path (not null, empty for the application itself)
+	 * @return a positive integer
+	 */
+	private static int countSegments( String instancePath ) {
+
+		// Empty segments are ignored, whatever the form of the path
+		int result = 0;
+		for( String segment : instancePath.split( "/" )) {
+			if( segment.length() > 0 )
+				result ++;
+		}
+
+		return result;
+	}
+
+
 	/**
 	 * Shutdowns an application.
 	 * <p>
@@ -371,7 +520,7 @@ public final class Manager {
 		// Undeploy everything correctly so that we keep the message server clean.
 		// Also, this is useful for deployments on machines (not just on VM).
 		BulkActionException bulkException = new BulkActionException( false );
-		for( Instance instance : ma.getApplication().getRootInstances()) {
+		for( Instance instance : ma.getApplication().getSnapshot().getRootInstances()) {
 			if( instance.getStatus() != InstanceStatus.NOT_DEPLOYED )
 				undeploy( ma, Arrays.asList( instance ));
 		}
@@ -503,16 +652,18 @@ public final class Manager {
 	List<Instance> findInstancesToProcess( Application app, String instancePath, boolean applyToAllChildren )
 	throws InexistingException {
 
+		// Browse the published snapshot: the model may be modified by other threads
+		ApplicationSnapshot snapshot = app.getSnapshot();
 		List<Instance> instances = new ArrayList<Instance> ();
 		Instance initialInstance = null;
 		if( instancePath == null ) {
-			instances.addAll( InstanceHelpers.getAllInstances( app ));
+			instances.addAll( snapshot.getAllInstances());
 
-		} else if(( initialInstance = InstanceHelpers.findInstanceByPath( app, instancePath )) == null ) {
+		} else if(( initialInstance = snapshot.findInstanceByPath( instancePath )) == null ) {
 			throw new InexistingException( instancePath );
 
 		} else if( applyToAllChildren ) {
-			instances.addAll( InstanceHelpers.buildHierarchicalList( initialInstance ));
+			instances.addAll( snapshot.buildHierarchicalList( initialInstance ));
 
 		} else {
 			instances.add( initialInstance );
@@ -531,16 +682,19 @@ public final class Manager {
 		}
 
 		BulkActionException bulkException = new BulkActionException( false );
+		Map<Instance,Future<Void>> instanceToPublication = new LinkedHashMap<Instance,Future<Void>> ();
 		for( Instance instance : instances ) {
 
 			if( instance.getParent() != null ) {
 				try {
 					MsgCmdInstanceRemove message = new MsgCmdInstanceRemove( InstanceHelpers.computeInstancePath( instance ));
-					ma.getMessagingClient().publish(
+					Future<Void> publication = ma.getMessagingClient().publishAsync(
 							false,
 							MessagingUtils.buildRoutingKeyToAgent( instance ),
 							message );
 
+					instanceToPublication.put( instance, publication );
+
 					// The instance will be removed once the agent has indicated it was removed.
 					// See DmMessageProcessor.
 
@@ -550,10 +704,15 @@ public final class Manager {
 				}
 
 			} else {
-				ma.getApplication().getRootInstances().remove( instance );
+				synchronized( ma.getApplication()) {
+					ma.getApplication().unindexInstance( instance );
+					ma.getApplication().getRootInstances().remove( instance );
+					ma.getApplication().publishSnapshot();
+				}
 			}
 		}
 
+		waitForPublications( instanceToPublication, bulkException );
 		if( ! bulkException.getInstancesToException().isEmpty()) {
 			ma.getLogger().severe( bulkException.getLogMessage( false ));
 			ma.getLogger().finest( bulkException.getLogMessage( true ));
@@ -566,23 +725,27 @@ public final class Manager {
 	private void start( ManagedApplication ma, List<Instance> instances ) throws BulkActionException {
 
 		BulkActionException bulkException = new BulkActionException( false );
+		Map<Instance,Future<Void>> instanceToPublication = new LinkedHashMap<Instance,Future<Void>> ();
 		for( Instance instance : instances ) {
 			if( instance.getParent() == null )
 				continue;
 
 			try {
 				MsgCmdInstanceStart message = new MsgCmdInstanceStart( InstanceHelpers.computeInstancePath( instance ));
-				ma.getMessagingClient().publish(
+				Future<Void> publication = ma.getMessagingClient().publishAsync(
 						false,
 						MessagingUtils.buildRoutingKeyToAgent( instance ),
 						message );
 
+				instanceToPublication.put( instance, publication );
+
 			} catch( IOException e ) {
 				// The instance does not have any problem, just keep trace of the exception
 				bulkException.getInstancesToException().put( instance, e );
 			}
 		}
 
+		waitForPublications( instanceToPublication, bulkException );
 		if( ! bulkException.getInstancesToException().isEmpty()) {
 			ma.getLogger().severe( bulkException.getLogMessage( false ));
 			ma.getLogger().finest( bulkException.getLogMessage( true ));
@@ -595,23 +758,27 @@ public final class Manager {
 	private void stop( ManagedApplication ma, List<Instance> instances ) throws BulkActionException {
 
 		BulkActionException bulkException = new BulkActionException( false );
+		Map<Instance,Future<Void>> instanceToPublication = new LinkedHashMap<Instance,Future<Void>> ();
 		for( Instance instance : instances ) {
 			if( instance.getParent() == null )
 				continue;
 
 			try {
 				MsgCmdInstanceStop message = new MsgCmdInstanceStop( InstanceHelpers.computeInstancePath( instance ));
-				ma.getMessagingClient().publish(
+				Future<Void> publication = ma.getMessagingClient().publishAsync(
 						false,
 						MessagingUtils.buildRoutingKeyToAgent( instance ),
 						message );
 
+				instanceToPublication.put( instance, publication );
+
 			} catch( IOException e ) {
 				// The instance does not have any problem, just keep trace of the exception
 				bulkException.getInstancesToException().put( instance, e );
 			}
 		}
 
+		waitForPublications( instanceToPublication, bulkException );
 		if( ! bulkException.getInstancesToException().isEmpty()) {
 			ma.getLogger().severe( bulkException.getLogMessage( false ));
 			ma.getLogger().finest( bulkException.getLogMessage( true ));
@@ -624,20 +791,24 @@ public final class Manager {
 	private void undeploy( ManagedApplication ma, List<Instance> instances ) throws BulkActionException {
 
 		BulkActionException bulkException = new BulkActionException( false );
+		Map<Instance,Future<Void>> instanceToPublication = new LinkedHashMap<Instance,Future<Void>> ();
 		for( Instance instance : instances ) {
 			try {
 				MsgCmdInstanceUndeploy message = new MsgCmdInstanceUndeploy( InstanceHelpers.computeInstancePath( instance ));
-				ma.getMessagingClient().publish(
+				Future<Void> publication = ma.getMessagingClient().publishAsync(
 						false,
 						MessagingUtils.buildRoutingKeyToAgent( instance ),
 						message );
 
+				instanceToPublication.put( instance, publication );
+
 			} catch( IOException e ) {
 				// The instance does not have any problem, just keep trace of the exception
 				bulkException.getInstancesToException().put( instance, e );
 			}
 		}
 
+		waitForPublications( instanceToPublication, bulkException );
 		if( ! bulkException.getInstancesToException().isEmpty()) {
 			ma.getLogger().severe( bulkException.getLogMessage( false ));
 			ma.getLogger().finest( bulkException.getLogMessage( true ));
@@ -650,6 +821,7 @@ public final class Manager {
 	private void deploy( ManagedApplication ma, List<Instance> instances ) throws BulkActionException {
 
 		BulkActionException bulkException = new BulkActionException( true );
+		Map<Instance,Future<Void>> instanceToPublication = new LinkedHashMap<Instance,Future<Void>> ();
 		for( Instance instance : instances ) {
 			if( instance.getParent() == null ) {
 				try {
@@ -676,11 +848,13 @@ public final class Manager {
 					// FIXME: we may have to add the instance on the agent too, just like for root instances
 					Map<String,byte[]> instanceResources = ResourceUtils.storeInstanceResources( ma.getApplicationFilesDirectory(), instance );
 					MsgCmdInstanceDeploy message = new MsgCmdInstanceDeploy( InstanceHelpers.computeInstancePath( instance ), instanceResources );
-					ma.getMessagingClient().publish(
+					Future<Void> publication = ma.getMessagingClient().publishAsync(
 							false,
 							MessagingUtils.buildRoutingKeyToAgent( instance ),
 							message );
 
+					instanceToPublication.put( instance, publication );
+
 				} catch( IOException e ) {
 					// The instance does not have any problem, just keep trace of the exception
 					bulkException.getInstancesToException().put( instance, e );
@@ -688,6 +862,7 @@ public final class Manager {
 			}
 		}
 
+		waitForPublications( instanceToPublication, bulkException );
 		if( ! bulkException.getInstancesToException().isEmpty()) {
 			ma.getLogger().severe( bulkException.getLogMessage( false ));
 			ma.getLogger().finest( bulkException.getLogMessage( true ));
@@ -697,6 +872,30 @@ public final class Manager {
 
 
 
+	/**
+	 * Waits for messages to be published.
+	 * <p>
+	 * Messages are all submitted first, and then acknowledged by the messaging server.
+	 * </p>
+	 *
+	 * @param instanceToPublication the publications, associated with the instance they are about
+	 * @param bulkException the exception to complete when a message could not be published
+	 */
+	private static void waitForPublications( Map<Instance,Future<Void>> instanceToPublication, BulkActionException bulkException ) {
+
+		for( Map.Entry<Instance,Future<Void>> entry : instanceToPublication.entrySet()) {
+			try {
+				MessagingUtils.waitForPublication( entry.getValue());
+
+			} catch( IOException e ) {
+				// The instance does not have any problem, just keep trace of the exception
+				bulkException.getInstancesToException().put( entry.getKey(), e );
+			}
+		}
+	}
+
+
+
 	private void cleanUp( ManagedApplication ma ) {
 
 		try {
@@ -16,8 +16,10 @@
 
 package net.roboconf.dm.server;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
@@ -28,6 +30,7 @@ import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.ComponentHelpers;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.ApplicationSnapshot;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.dm.management.Manager;
@@ -127,17 +130,19 @@ public class ApplicationWs implements IApplicationWs {
 		else
 			this.logger.fine( "Request: list all the children instances for " + realInstancePath + " in " + applicationName + "." );
 
+		// Read a snapshot, the model may be modified at the same time
 		List<Instance> result = new ArrayList<Instance> ();
 		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
 		Instance inst = null;
 
 		if( app != null ) {
+			ApplicationSnapshot snapshot = app.getSnapshot();
 			if( realInstancePath == null ) {
-				result.addAll( InstanceHelpers.getAllInstances( app ));
+				result.addAll( snapshot.getAllInstances());
 
-			} else if(( inst = InstanceHelpers.findInstanceByPath( app, realInstancePath )) != null ) {
-				result.addAll( InstanceHelpers.buildHierarchicalList( inst ));
-				result.remove( inst );
+			} else if(( inst = snapshot.findInstanceByPath( realInstancePath )) != null ) {
+				List<Instance> instances = snapshot.buildHierarchicalList( inst );
+				result.addAll( instances.subList( 1, instances.size()));
 			}
 		}
 
@@ -166,16 +171,18 @@ public class ApplicationWs implements IApplicationWs {
 		else
 			this.logger.fine( "Request: list direct children instances for " + realInstancePath + " in " + applicationName + "." );
 
+		// Read a snapshot, the model may be modified at the same time
 		List<Instance> result = new ArrayList<Instance> ();
 		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
 
 		Instance inst;
 		if( app != null ) {
+			ApplicationSnapshot snapshot = app.getSnapshot();
 			if( realInstancePath == null )
-				result.addAll( app.getRootInstances());
+				result.addAll( snapshot.getRootInstances());
 
-			else if(( inst = InstanceHelpers.findInstanceByPath( app, realInstancePath )) != null )
-				result.addAll( inst.getChildren());
+			else if(( inst = snapshot.findInstanceByPath( realInstancePath )) != null )
+				result.addAll( snapshot.getChildren( inst ));
 		}
 
 		return result;
@@ -218,6 +225,34 @@ public class ApplicationWs implements IApplicationWs {
 	}
 
 
+	/* (non-Javadoc)
+	 * @see net.roboconf.dm.rest.api.IApplicationWs
+	 * #addInstances(java.lang.String, java.util.Map)
+	 */
+	@Override
+	public Response addInstances( String applicationName, Map<String,List<Instance>> parentPathToInstances ) {
+
+		List<Map.Entry<String,Instance>> entries = new ArrayList<Map.Entry<String,Instance>> ();
+		for( Map.Entry<String,List<Instance>> entry : parentPathToInstances.entrySet()) {
+			String parentPath = Utils.isEmptyOrWhitespaces( entry.getKey()) ? null : entry.getKey();
+			for( Instance instance : entry.getValue())
+				entries.add( new AbstractMap.SimpleEntry<String,Instance>( parentPath, instance ));
+		}
+
+		this.logger.fine( "Request: add " + entries.size() + " instance(s) in " + applicationName + "." );
+		Response response;
+		try {
+			List<Boolean> result = Manager.INSTANCE.addInstances( applicationName, entries );
+			response = Response.ok( result ).build();
+
+		} catch( InexistingException e ) {
+			response = Response.status( Status.NOT_FOUND ).entity( e.getMessage()).build();
+		}
+
+		return response;
+	}
+
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.dm.rest.client.exceptions.server.IGraphWs
@@ -261,7 +296,7 @@ public class ApplicationWs implements IApplicationWs {
 		Instance instance = null;
 		if( app != null
 				&& realInstancePath != null )
-			instance = InstanceHelpers.findInstanceByPath( app, realInstancePath );
+			instance = app.getSnapshot().findInstanceByPath( realInstancePath );
 
 		List<Component> result = new ArrayList<Component> ();
 		if( instance != null )
@@ -290,7 +325,7 @@ public class ApplicationWs implements IApplicationWs {
 		// Run through all the instances.
 		// See if their component can support a child "of type componentName".
 		if( app != null ) {
-			for( Instance instance : InstanceHelpers.getAllInstances( app )) {
+			for( Instance instance : app.getSnapshot().getAllInstances()) {
 				for( Component c : instance.getComponent().getChildren()) {
 					if( componentName.equals( c.getName())) {
 						String instancePath = InstanceHelpers.computeInstancePath( instance );
@@ -56,15 +56,11 @@ public class ManagementWs implements IManagementWs {
 
 		this.logger.fine( "Request: load application from uploaded ZIP file (" + fileDetail.getFileName() + ")." );
 		Response response;
-		File tempZipFile = new File( System.getProperty( "java.io.tmpdir" ), fileDetail.getFileName());
 		try {
-			// Copy the uploaded ZIP file on the disk
-			Utils.copyStream( uploadedInputStream, tempZipFile );
-
-			// Extract the ZIP content
+			// Extract the uploaded ZIP content on the fly, without storing the archive itself
 			String appName = fileDetail.getFileName().replace( ".zip", "" );
 			File dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf/" + appName );
-			Utils.extractZipArchive( tempZipFile, dir );
+			Utils.extractZipArchive( uploadedInputStream, dir );
 
 			// Load the application
 			response = loadApplication( dir.getAbsolutePath());
@@ -74,8 +70,6 @@ public class ManagementWs implements IManagementWs {
 
 		} finally {
 			Utils.closeQuietly( uploadedInputStream );
-			if( ! tempZipFile.delete())
-				tempZipFile.deleteOnExit();
 		}
 
 		return response;
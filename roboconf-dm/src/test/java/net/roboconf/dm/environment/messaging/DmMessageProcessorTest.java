@@ -16,11 +16,24 @@
 
 package net.roboconf.dm.environment.messaging;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.ApplicationSnapshot;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.internal.client.PartitionedConsumer;
+import net.roboconf.messaging.internal.client.PartitionedConsumer.LaneMetrics;
+import net.roboconf.messaging.internal.codec.BinaryMessageCodec;
+import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
 
@@ -109,4 +122,87 @@ public class DmMessageProcessorTest {
 
 		Assert.assertTrue( "We are supposed to reach here without any error.", true );
 	}
+
+
+	@Test
+	public void testConcurrentRemovalsWithTwoLanes() throws Exception {
+
+		final int rootCount = 8, childCount = 100;
+		TestApplication app = new TestApplication();
+		for( int i=0; i<rootCount; i++ ) {
+			Instance root = new Instance( "vm-" + i );
+			root.setComponent( app.getTomcatVm().getComponent());
+			app.getRootInstances().add( root );
+
+			for( int j=0; j<childCount; j++ ) {
+				Instance child = new Instance( "server-" + j );
+				child.setComponent( app.getTomcat().getComponent());
+				InstanceHelpers.insertChild( root, child );
+			}
+		}
+
+		final long initialVersion = app.publishSnapshot().getVersion();
+		final DmMessageProcessor dmProcessor = new DmMessageProcessor( app );
+		final List<Throwable> errors = Collections.synchronizedList( new ArrayList<Throwable> ());
+		IMessageProcessor processor = new IMessageProcessor() {
+			@Override
+			public void processMessage( Message message ) {
+				try {
+					dmProcessor.processMessage( message );
+
+				} catch( Throwable t ) {
+					errors.add( t );
+				}
+			}
+		};
+
+		IMessageCodec codec = new BinaryMessageCodec();
+		PartitionedConsumer consumer = new PartitionedConsumer( "test", processor, codec, 2, 2, 16, true );
+		consumer.start();
+		try {
+			// Interleave the machines so that both lanes work at the same time
+			for( int j=0; j<childCount; j++ ) {
+				for( int i=0; i<rootCount; i++ ) {
+					MsgNotifInstanceRemoved msg = new MsgNotifInstanceRemoved( "/vm-" + i + "/server-" + j );
+					consumer.submit( codec.encode( msg ), "dm" );
+				}
+			}
+
+			long processedMessages = 0;
+			long deadline = System.currentTimeMillis() + 10000;
+			while( processedMessages < rootCount * childCount
+					&& System.currentTimeMillis() < deadline ) {
+
+				Thread.sleep( 10 );
+				processedMessages = 0;
+				for( LaneMetrics m : consumer.getLaneMetrics())
+					processedMessages += m.getProcessedMessages();
+			}
+
+			Assert.assertEquals( rootCount * childCount, processedMessages );
+			List<LaneMetrics> metrics = consumer.getLaneMetrics();
+			Assert.assertEquals( 2, metrics.size());
+			for( LaneMetrics m : metrics )
+				Assert.assertTrue( m.getProcessedMessages() > 0 );
+
+		} finally {
+			consumer.stop();
+		}
+
+		// The model and its snapshot must be consistent
+		Assert.assertEquals( errors.toString(), 0, errors.size());
+		ApplicationSnapshot snapshot = app.getSnapshot();
+		Assert.assertEquals( initialVersion + rootCount * childCount, snapshot.getVersion());
+		Assert.assertEquals( rootCount + 2, snapshot.getRootInstances().size());
+		for( int i=0; i<rootCount; i++ ) {
+			Instance root = InstanceHelpers.findInstanceByPath( app, "/vm-" + i );
+			Assert.assertNotNull( root );
+			Assert.assertEquals( 0, root.getChildren().size());
+			Assert.assertEquals( 0, snapshot.getChildren( root ).size());
+			Assert.assertNull( snapshot.findInstanceByPath( "/vm-" + i + "/server-0" ));
+		}
+
+		Assert.assertEquals( 5 + rootCount, snapshot.getAllInstances().size());
+		Assert.assertEquals( 5 + rootCount, InstanceHelpers.getAllInstances( app ).size());
+	}
 }
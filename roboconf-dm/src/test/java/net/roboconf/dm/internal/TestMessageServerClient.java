@@ -19,6 +19,8 @@ package net.roboconf.dm.internal;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.roboconf.messaging.client.IMessageProcessor;
@@ -90,4 +92,21 @@ public class TestMessageServerClient implements IMessageServerClient {
 	throws IOException {
 		this.messageToRoutingKey.put( message, routingKey );
 	}
+
+
+	@Override
+	public Future<Void> publishAsync( boolean toDm, String routingKey, Message message )
+	throws IOException {
+
+		publish( toDm, routingKey, message );
+		FutureTask<Void> task = new FutureTask<Void>( new Runnable() {
+			@Override
+			public void run() {
+				// nothing
+			}
+		}, null );
+
+		task.run();
+		return task;
+	}
 }
@@ -18,7 +18,9 @@ package net.roboconf.dm.management;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -372,6 +374,93 @@ public class ManagerTest {
 	}
 
 
+	@Test( expected = InexistingException.class )
+	public void testAddInstances_inexistingApplication() throws Exception {
+		Manager.INSTANCE.addInstances( "inexisting", new ArrayList<Map.Entry<String,Instance>> ());
+	}
+
+
+	@Test
+	public void testAddInstances() throws Exception {
+
+		TestApplication app = new TestApplication();
+		File f = File.createTempFile( "roboconf_", ".folder" );
+
+		try {
+			ManagedApplication ma = new ManagedApplication( app, f, new TestMessageServerClient());
+			Manager.INSTANCE.getAppNameToManagedApplication().put( app.getName(), ma );
+
+			Instance newVm = new Instance( "mail-vm" );
+			newVm.setComponent( app.getMySqlVm().getComponent());
+
+			Instance newMySql = new Instance( app.getMySql().getName());
+			newMySql.setComponent( app.getMySql().getComponent());
+
+			Instance newWar = new Instance( "war-2" );
+			newWar.setComponent( app.getWar().getComponent());
+
+			// The child of the new VM is listed before the VM itself
+			List<Map.Entry<String,Instance>> entries = new ArrayList<Map.Entry<String,Instance>> ();
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( "/mail-vm", newMySql ));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( null, newVm ));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( null, new Instance( app.getMySqlVm().getName())));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( InstanceHelpers.computeInstancePath( app.getTomcatVm()), newWar ));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( "/inexisting", new Instance( "whatever" )));
+
+			List<Boolean> result = Manager.INSTANCE.addInstances( app.getName(), entries );
+			Assert.assertEquals( Arrays.asList( true, true, false, false, false ), result );
+
+			Assert.assertEquals( 3, app.getRootInstances().size());
+			Assert.assertTrue( app.getRootInstances().contains( newVm ));
+			Assert.assertEquals( 1, newVm.getChildren().size());
+			Assert.assertTrue( newVm.getChildren().contains( newMySql ));
+			Assert.assertEquals( 1, app.getTomcatVm().getChildren().size());
+
+			Assert.assertEquals( newMySql, app.getSnapshot().findInstanceByPath( "/mail-vm/" + newMySql.getName()));
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	@Test
+	public void testAddInstances_mixedPathForms() throws Exception {
+
+		TestApplication app = new TestApplication();
+		File f = File.createTempFile( "roboconf_", ".folder" );
+
+		try {
+			ManagedApplication ma = new ManagedApplication( app, f, new TestMessageServerClient());
+			Manager.INSTANCE.getAppNameToManagedApplication().put( app.getName(), ma );
+
+			Instance newVm = new Instance( "vm-2" );
+			newVm.setComponent( app.getTomcatVm().getComponent());
+
+			Instance newTomcat = new Instance( "tomcat-2" );
+			newTomcat.setComponent( app.getTomcat().getComponent());
+
+			Instance newWar = new Instance( "war-2" );
+			newWar.setComponent( app.getWar().getComponent());
+
+			// Without normalization, "vm-2/tomcat-2" would be processed before "/vm-2/"
+			List<Map.Entry<String,Instance>> entries = new ArrayList<Map.Entry<String,Instance>> ();
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( "vm-2/tomcat-2", newWar ));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( "/vm-2/", newTomcat ));
+			entries.add( new AbstractMap.SimpleEntry<String,Instance>( " ", newVm ));
+
+			List<Boolean> result = Manager.INSTANCE.addInstances( app.getName(), entries );
+			Assert.assertEquals( Arrays.asList( true, true, true ), result );
+
+			Assert.assertTrue( app.getRootInstances().contains( newVm ));
+			Assert.assertEquals( newWar, app.getSnapshot().findInstanceByPath( "/vm-2/tomcat-2/war-2" ));
+
+		} finally {
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
 	@Test( expected = InexistingException.class )
 	public void testPerform_inexisstingAppliation() throws Exception {
 		Manager.INSTANCE.perform( "inexisting", ApplicationAction.deploy.toString(), null, true );
@@ -446,7 +535,8 @@ public class ManagerTest {
 
 				} else if( entry.getKey() instanceof MsgCmdInstanceAdd ) {
 					Assert.assertNull( vmPath, ((MsgCmdInstanceAdd) entry.getKey()).getParentInstancePath());
-					Assert.assertEquals( app.getMySqlVm(), ((MsgCmdInstanceAdd) entry.getKey()).getInstanceToAdd());
+					Assert.assertEquals( vmPath, ((MsgCmdInstanceAdd) entry.getKey()).getInstanceToAdd().getPath());
+					Assert.assertNotNull(((MsgCmdInstanceAdd) entry.getKey()).getGraphs());
 
 				} else {
 					Assert.fail( "Unknown message type:" + entry.getKey().getClass());
@@ -17,6 +17,7 @@
 package net.roboconf.messaging.client;
 
 import java.io.IOException;
+import java.util.concurrent.Future;
 
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.utils.MessagingUtils;
@@ -89,12 +90,35 @@ public interface IMessageServerClient {
 
 	/**
 	 * Publishes a message on the server.
+	 * <p>
+	 * This method does not wait for the server to confirm the message.
+	 * Use {@link #publishAsync(boolean, String, Message)} to be notified of it.
+	 * </p>
+	 *
 	 * @param toDm true to indicate this message targets the DM, false if it is sent to an agent
 	 * @param routingKey the routing key so that the server knows who must receive the message
 	 * @param message the message to publish
+	 * @throws IOException if the message could not be published
 	 */
 	void publish( boolean toDm, String routingKey, Message message ) throws IOException;
 
+	/**
+	 * Publishes a message on the server asynchronously.
+	 * <p>
+	 * Messages are published in the order this method was invoked.
+	 * When too many messages are waiting to be published, this method blocks
+	 * for a while and then fails.
+	 * </p>
+	 *
+	 * @param toDm true to indicate this message targets the DM, false if it is sent to an agent
+	 * @param routingKey the routing key so that the server knows who must receive the message
+	 * @param message the message to publish
+	 * @return a future that completes once the server has received the message
+	 * @throws IOException if the message could not be submitted
+	 * @see MessagingUtils#waitForPublication(Future)
+	 */
+	Future<Void> publishAsync( boolean toDm, String routingKey, Message message ) throws IOException;
+
 	/**
 	 * Binds a routing key to this source.
 	 * <p>
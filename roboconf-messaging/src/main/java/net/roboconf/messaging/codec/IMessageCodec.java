@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.codec;
+
+import java.io.IOException;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * An interface to convert messages into bytes, and vice-versa.
+ * <p>
+ * Codecs are used by the message server clients to encode the messages they publish
+ * and to decode the ones they receive. Implementations must be thread-safe.
+ * </p>
+ * <p>
+ * Every codec must recognize its own payloads (see {@link #accepts(byte[])}), so that
+ * senders and receivers using different codecs can still communicate during upgrades.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IMessageCodec {
+
+	/**
+	 * Encodes a message.
+	 * @param message a message (not null)
+	 * @return a non-null array of bytes
+	 * @throws IOException if the message could not be encoded
+	 */
+	byte[] encode( Message message ) throws IOException;
+
+	/**
+	 * Decodes a message.
+	 * @param bytes a non-null array of bytes
+	 * @return the decoded message (not null)
+	 * @throws IOException if the message could not be decoded
+	 */
+	Message decode( byte[] bytes ) throws IOException;
+
+	/**
+	 * Determines whether a payload was encoded by this codec.
+	 * <p>
+	 * Only the first bytes of the payload should be checked.
+	 * </p>
+	 *
+	 * @param bytes a non-null array of bytes
+	 * @return true if this codec can decode it, false otherwise
+	 */
+	boolean accepts( byte[] bytes );
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.codec;
+
+import java.io.IOException;
+
+import net.roboconf.messaging.internal.codec.BinaryMessageCodec;
+import net.roboconf.messaging.internal.codec.JavaSerializationCodec;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * Helpers to get and use message codecs.
+ * <p>
+ * Two codecs are available: a compact binary one, used by default, and one based on Java serialization.
+ * The latter can be selected by setting the {@value #CODEC_PROPERTY} system property to {@value #CODEC_JAVA}.
+ * </p>
+ * <p>
+ * Whatever the codec used to publish messages, received messages are decoded with the codec
+ * that produced them.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class MessageCodecs {
+
+	/**
+	 * The system property that defines the codec to use to publish messages.
+	 */
+	public static final String CODEC_PROPERTY = "roboconf.messaging.codec";
+
+	/**
+	 * The name of the binary codec.
+	 */
+	public static final String CODEC_BINARY = "binary";
+
+	/**
+	 * The name of the codec based on Java serialization.
+	 */
+	public static final String CODEC_JAVA = "java";
+
+	private static final IMessageCodec BINARY_CODEC = new BinaryMessageCodec();
+	private static final IMessageCodec JAVA_CODEC = new JavaSerializationCodec();
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private MessageCodecs() {
+		// nothing
+	}
+
+
+	/**
+	 * @return the codec to use by default (never null)
+	 */
+	public static IMessageCodec getDefaultCodec() {
+		return findCodec( System.getProperty( CODEC_PROPERTY, CODEC_BINARY ));
+	}
+
+
+	/**
+	 * Finds a codec by name.
+	 * @param name a codec name (case insensitive)
+	 * @return the codec with this name, or the binary codec if the name is unknown
+	 */
+	public static IMessageCodec findCodec( String name ) {
+		return CODEC_JAVA.equalsIgnoreCase( name ) ? JAVA_CODEC : BINARY_CODEC;
+	}
+
+
+	/**
+	 * Decodes a message with the codec that produced it.
+	 * @param bytes a non-null array of bytes
+	 * @param preferredCodec a codec to try first (can be null)
+	 * @return the decoded message (never null)
+	 * @throws IOException if no codec recognized the message, or if it could not be decoded
+	 */
+	public static Message decode( byte[] bytes, IMessageCodec preferredCodec ) throws IOException {
+
+		IMessageCodec codec;
+		if( preferredCodec != null && preferredCodec.accepts( bytes ))
+			codec = preferredCodec;
+		else if( BINARY_CODEC.accepts( bytes ))
+			codec = BINARY_CODEC;
+		else if( JAVA_CODEC.accepts( bytes ))
+			codec = JAVA_CODEC;
+		else
+			throw new IOException( "No codec recognized the message." );
+
+		return codec.decode( bytes );
+	}
+}
@@ -0,0 +1,382 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Publishes messages asynchronously on a channel.
+ * <p>
+ * RabbitMQ channels are not thread-safe. So, a single thread (the writer) uses the channel.
+ * Other threads only put messages in a queue and get a future. The writer takes the queued
+ * messages by batches and publishes them.
+ * </p>
+ * <p>
+ * The channel is in confirm mode: the future of a message completes when the message server
+ * has acknowledged it. It fails if the message server refused it, or if the channel was closed before.
+ * </p>
+ * <p>
+ * The number of messages that were submitted but not yet acknowledged is bounded. When this limit is
+ * reached, submitting a message blocks until older messages are acknowledged, or fails after a timeout.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class AsyncPublisher {
+
+	/**
+	 * The system property that defines how many messages can wait for an acknowledgment.
+	 */
+	public static final String WINDOW_PROPERTY = "roboconf.messaging.publisher.window";
+
+	/**
+	 * The system property that defines how many messages the writer publishes at once.
+	 */
+	public static final String BATCH_SIZE_PROPERTY = "roboconf.messaging.publisher.batch";
+
+	public static final int DEFAULT_WINDOW = 256;
+	public static final int DEFAULT_BATCH_SIZE = 32;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Channel channel;
+	private final int window, batchSize;
+	private final long timeout;
+
+	private final Semaphore permits;
+	private final BlockingQueue<Publication> queue = new LinkedBlockingQueue<Publication> ();
+	private final ConcurrentNavigableMap<Long,Publication> sequenceNumberToPublication = new ConcurrentSkipListMap<Long,Publication> ();
+	private final Thread writer;
+	private volatile boolean closed = false, shutdown = false;
+
+
+
+	/**
+	 * Constructor.
+	 * @param name the publisher's name (used in logs and thread names)
+	 * @param channel a channel that is only used by this publisher
+	 * @param window the maximum number of messages that can wait for an acknowledgment (at least 1)
+	 * @param batchSize the maximum number of messages published at once (at least 1)
+	 * @param timeout the maximum time to wait for a free slot, in milliseconds
+	 * @throws IOException if the channel could not be put in confirm mode
+	 */
+	public AsyncPublisher( String name, Channel channel, int window, int batchSize, long timeout ) throws IOException {
+
+		this.channel = channel;
+		this.window = Math.max( 1, window );
+		this.batchSize = Math.max( 1, batchSize );
+		this.timeout = timeout;
+		this.permits = new Semaphore( this.window );
+
+		this.channel.confirmSelect();
+		this.channel.addConfirmListener( new ConfirmListener() {
+			@Override
+			public void handleAck( long deliveryTag, boolean multiple ) throws IOException {
+				confirm( deliveryTag, multiple, null );
+			}
+
+			@Override
+			public void handleNack( long deliveryTag, boolean multiple ) throws IOException {
+				confirm( deliveryTag, multiple, new IOException( "The message server refused a message." ));
+			}
+		});
+
+		this.channel.addShutdownListener( new ShutdownListener() {
+			@Override
+			public void shutdownCompleted( ShutdownSignalException cause ) {
+				AsyncPublisher.this.shutdown = true;
+				failAll( new IOException( "The channel was closed before the message was acknowledged." ));
+			}
+		});
+
+		this.writer = new Thread( "Roboconf - Publisher for " + name ) {
+			@Override
+			public void run() {
+				write();
+			}
+		};
+
+		this.writer.setDaemon( true );
+		this.writer.start();
+	}
+
+
+	/**
+	 * Submits a message to publish.
+	 * @param exchangeName the exchange name
+	 * @param routingKey the routing key
+	 * @param bytes the encoded message
+	 * @return a future that completes once the message server has acknowledged the message
+	 * @throws IOException if the publisher is closed, or if there was no free slot before the timeout
+	 */
+	public Future<Void> publish( String exchangeName, String routingKey, byte[] bytes ) throws IOException {
+
+		if( this.closed || this.shutdown )
+			throw new IOException( "The publisher is closed." );
+
+		try {
+			if( ! this.permits.tryAcquire( this.timeout, TimeUnit.MILLISECONDS ))
+				throw new IOException( "Too many messages are waiting to be acknowledged (" + this.window + ")." );
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while waiting to publish a message." );
+		}
+
+		Publication publication = new Publication( exchangeName, routingKey, bytes );
+		this.queue.add( publication );
+
+		// The writer may have stopped in the meantime
+		if(( this.closed || this.shutdown ) && this.queue.remove( publication ))
+			complete( publication, new IOException( "The publisher is closed." ));
+
+		return publication;
+	}
+
+
+	/**
+	 * Closes the publisher.
+	 * <p>
+	 * New messages are refused. Messages that were already submitted have some time to be published and acknowledged.
+	 * After that, their futures fail. The channel is not closed.
+	 * </p>
+	 */
+	public void close() {
+
+		this.closed = true;
+		long deadline = System.currentTimeMillis() + this.timeout;
+		try {
+			while( this.permits.availablePermits() < this.window
+					&& System.currentTimeMillis() < deadline )
+				Thread.sleep( 10 );
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+
+		this.writer.interrupt();
+		failAll( new IOException( "The publisher was closed before the message was acknowledged." ));
+	}
+
+
+	/**
+	 * Publishes the queued messages (executed by the writer).
+	 * <p>
+	 * If the channel is shut down, the writer fails the pending messages and stops.
+	 * </p>
+	 */
+	private void write() {
+
+		List<Publication> batch = new ArrayList<Publication>( this.batchSize );
+		for( ;; ) {
+			try {
+				batch.add( this.queue.take());
+
+			} catch( InterruptedException e ) {
+				break;
+			}
+
+			this.queue.drainTo( batch, this.batchSize - 1 );
+			for( Publication publication : batch ) {
+				if( this.shutdown ) {
+					complete( publication, new IOException( "The channel was closed before the message was published." ));
+					continue;
+				}
+
+				long sequenceNumber = this.channel.getNextPublishSeqNo();
+				this.sequenceNumberToPublication.put( sequenceNumber, publication );
+				try {
+					this.channel.basicPublish( publication.exchangeName, publication.routingKey, null, publication.bytes );
+
+				} catch( IOException e ) {
+					this.sequenceNumberToPublication.remove( sequenceNumber );
+					complete( publication, e );
+					this.logger.finest( Utils.writeException( e ));
+
+				} catch( ShutdownSignalException e ) {
+					// The channel or the connection was closed: nothing can be published anymore
+					this.shutdown = true;
+					this.sequenceNumberToPublication.remove( sequenceNumber );
+					complete( publication, new IOException( "The channel was closed. " + e.getMessage()));
+					this.logger.finest( Utils.writeException( e ));
+
+				} catch( RuntimeException e ) {
+					this.sequenceNumberToPublication.remove( sequenceNumber );
+					complete( publication, new IOException( "A message could not be published. " + e.getMessage()));
+					this.logger.finest( Utils.writeException( e ));
+				}
+			}
+
+			batch.clear();
+			if( this.shutdown )
+				break;
+		}
+
+		// Messages that were submitted in the meantime cannot be published
+		failAll( new IOException( "The publisher is closed." ));
+	}
+
+
+	/**
+	 * Completes the futures of acknowledged (or refused) messages.
+	 * @param deliveryTag the delivery tag sent by the message server
+	 * @param multiple true if all the messages up to this tag are concerned
+	 * @param failure an exception if messages were refused, null otherwise
+	 */
+	private void confirm( long deliveryTag, boolean multiple, IOException failure ) {
+
+		if( multiple ) {
+			Map<Long,Publication> confirmed = this.sequenceNumberToPublication.headMap( deliveryTag, true );
+			for( Long sequenceNumber : new ArrayList<Long>( confirmed.keySet())) {
+				Publication publication = this.sequenceNumberToPublication.remove( sequenceNumber );
+				if( publication != null )
+					complete( publication, failure );
+			}
+
+		} else {
+			Publication publication = this.sequenceNumberToPublication.remove( deliveryTag );
+			if( publication != null )
+				complete( publication, failure );
+		}
+	}
+
+
+	/**
+	 * Fails all the messages that were not acknowledged.
+	 * @param failure the exception
+	 */
+	private void failAll( IOException failure ) {
+
+		List<Publication> publications = new ArrayList<Publication> ();
+		this.queue.drainTo( publications );
+		for( Long sequenceNumber : new ArrayList<Long>( this.sequenceNumberToPublication.keySet())) {
+			Publication publication = this.sequenceNumberToPublication.remove( sequenceNumber );
+			if( publication != null )
+				publications.add( publication );
+		}
+
+		for( Publication publication : publications )
+			complete( publication, failure );
+	}
+
+
+	private void complete( Publication publication, IOException failure ) {
+		if( publication.complete( failure ))
+			this.permits.release();
+	}
+
+
+	/**
+	 * A message to publish and its future.
+	 */
+	private static final class Publication implements Future<Void> {
+		final String exchangeName, routingKey;
+		final byte[] bytes;
+
+		private final CountDownLatch latch = new CountDownLatch( 1 );
+		private IOException failure;
+		private boolean done = false;
+
+
+		Publication( String exchangeName, String routingKey, byte[] bytes ) {
+			this.exchangeName = exchangeName;
+			this.routingKey = routingKey;
+			this.bytes = bytes;
+		}
+
+
+		/**
+		 * Completes this future.
+		 * @param failure an exception, or null if the message was acknowledged
+		 * @return true if this future was completed, false if it was already completed
+		 */
+		synchronized boolean complete( IOException failure ) {
+
+			if( this.done )
+				return false;
+
+			this.done = true;
+			this.failure = failure;
+			this.latch.countDown();
+			return true;
+		}
+
+
+		@Override
+		public boolean cancel( boolean mayInterruptIfRunning ) {
+			return false;
+		}
+
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+
+		@Override
+		public boolean isDone() {
+			return this.latch.getCount() == 0;
+		}
+
+
+		@Override
+		public Void get() throws InterruptedException, ExecutionException {
+			this.latch.await();
+			return result();
+		}
+
+
+		@Override
+		public Void get( long timeout, TimeUnit unit )
+		throws InterruptedException, ExecutionException, TimeoutException {
+
+			if( ! this.latch.await( timeout, unit ))
+				throw new TimeoutException( "The message was not acknowledged in time." );
+
+			return result();
+		}
+
+
+		private synchronized Void result() throws ExecutionException {
+			if( this.failure != null )
+				throw new ExecutionException( this.failure );
+
+			return null;
+		}
+	}
+}
@@ -17,12 +17,18 @@
 package net.roboconf.messaging.internal.client;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.messaging.client.IMessageProcessor;
 import net.roboconf.messaging.client.IMessageServerClient;
-import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.internal.client.PartitionedConsumer.LaneMetrics;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.utils.MessagingUtils;
 
@@ -43,12 +49,15 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	private final String loggerName = getClass().getName();
 
 	Connection connection;
-	Channel	channel;
+	Channel	channel, publishChannel;
 	boolean connected = false;
 	String queueName, consumerTag;
 
 	private String messageServerIp, applicationName;
 	private String sourceName = MessagingUtils.SOURCE_DM;
+	private IMessageCodec messageCodec = MessageCodecs.getDefaultCodec();
+	private PartitionedConsumer partitionedConsumer;
+	private AsyncPublisher publisher;
 
 
 
@@ -70,6 +79,19 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	}
 
 
+	/**
+	 * Sets the codec used to publish messages.
+	 * <p>
+	 * Received messages are decoded with the codec that produced them.
+	 * </p>
+	 *
+	 * @param messageCodec a message codec (not null)
+	 */
+	public void setMessageCodec( IMessageCodec messageCodec ) {
+		this.messageCodec = messageCodec;
+	}
+
+
 	@Override
 	public void openConnection( final IMessageProcessor messageProcessor ) throws IOException {
 
@@ -82,6 +104,16 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 		factory.setHost( this.messageServerIp );
 		this.connection = factory.newConnection();
 		this.channel = this.connection.createChannel();
+
+		// Messages are published by a single thread, on their own channel
+		this.publishChannel = this.connection.createChannel();
+		this.publisher = new AsyncPublisher(
+				this.applicationName + "." + this.sourceName,
+				this.publishChannel,
+				getIntegerProperty( AsyncPublisher.WINDOW_PROPERTY, AsyncPublisher.DEFAULT_WINDOW ),
+				getIntegerProperty( AsyncPublisher.BATCH_SIZE_PROPERTY, AsyncPublisher.DEFAULT_BATCH_SIZE ),
+				MessagingUtils.PUBLICATION_TIMEOUT );
+
 		this.connected = true;
 
 		// 1 agent or 1 dm <=> 1 queue
@@ -98,6 +130,24 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 		final QueueingConsumer consumer = new QueueingConsumer( this.channel );
 		this.consumerTag = this.channel.basicConsume( this.queueName, true, consumer );
 
+		// If lanes are enabled, the DM processes messages from different machines in parallel.
+		// This is opt-in. Agents never do it: their model is not thread-safe.
+		int laneCount = getIntegerProperty( PartitionedConsumer.LANES_PROPERTY, PartitionedConsumer.DEFAULT_LANES );
+		if( MessagingUtils.SOURCE_DM.equalsIgnoreCase( this.sourceName ) && laneCount > 0 ) {
+			this.partitionedConsumer = new PartitionedConsumer(
+					this.sourceName,
+					messageProcessor,
+					this.messageCodec,
+					laneCount,
+					getIntegerProperty( PartitionedConsumer.DECODERS_PROPERTY, PartitionedConsumer.DEFAULT_DECODERS ),
+					getIntegerProperty( PartitionedConsumer.QUEUE_CAPACITY_PROPERTY, PartitionedConsumer.DEFAULT_QUEUE_CAPACITY ),
+					Boolean.getBoolean( PartitionedConsumer.METRICS_PROPERTY ));
+
+			this.partitionedConsumer.start();
+		}
+
+		final PartitionedConsumer finalPartitionedConsumer = this.partitionedConsumer;
+
 		new Thread( "Roboconf - Queue listener for " + this.queueName ) {
 			@Override
 			public void run() {
@@ -110,7 +160,12 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 
 					try {
 						QueueingConsumer.Delivery delivery = consumer.nextDelivery();
-						Message message = SerializationUtils.deserializeObject( delivery.getBody());
+						if( finalPartitionedConsumer != null ) {
+							finalPartitionedConsumer.submit( delivery.getBody(), delivery.getEnvelope().getRoutingKey());
+							continue;
+						}
+
+						Message message = MessageCodecs.decode( delivery.getBody(), MessageServerClientRabbitMq.this.messageCodec );
 
 						StringBuilder sb = new StringBuilder();
 						sb.append( MessageServerClientRabbitMq.this.sourceName );
@@ -136,11 +191,7 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 						logger.finest( Utils.writeException( e ));
 						break;
 
-					} catch( ClassNotFoundException e ) {
-						logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be deserialized. Class cast exception." );
-						logger.finest( Utils.writeException( e ));
-
-					}  catch( IOException e ) {
+					} catch( IOException e ) {
 						logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be deserialized. I/O exception." );
 						logger.finest( Utils.writeException( e ));
 
@@ -154,9 +205,32 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	}
 
 
+	/**
+	 * @return the metrics of the lanes that process messages (empty if there is no lane or if metrics are disabled)
+	 * @see PartitionedConsumer
+	 */
+	public List<LaneMetrics> getLaneMetrics() {
+
+		List<LaneMetrics> result;
+		if( this.partitionedConsumer != null )
+			result = this.partitionedConsumer.getLaneMetrics();
+		else
+			result = Collections.emptyList();
+
+		return result;
+	}
+
+
 	@Override
 	public void closeConnection() throws IOException {
 
+		if( this.publisher != null )
+			this.publisher.close();
+
+		if( this.publishChannel != null
+				&& this.publishChannel.isOpen())
+			this.publishChannel.close();
+
 		if( this.channel != null
 				&& this.channel.isOpen()) {
 			this.channel.basicCancel( this.consumerTag );
@@ -168,9 +242,15 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 				&& this.connection.isOpen())
 			this.connection.close();
 
+		if( this.partitionedConsumer != null )
+			this.partitionedConsumer.stop();
+
 		this.channel = null;
+		this.publishChannel = null;
+		this.publisher = null;
 		this.connection = null;
 		this.consumerTag = null;
+		this.partitionedConsumer = null;
 
 		this.connected = false;
 	}
@@ -197,15 +277,38 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	@Override
 	public void publish( boolean toDm, String routingKey, Message message )
 	throws IOException {
+		// Fire and forget: only the callers of publishAsync wait for the confirmations
+		publishAsync( toDm, routingKey, message );
+	}
+
 
+	@Override
+	public Future<Void> publishAsync( boolean toDm, String routingKey, Message message )
+	throws IOException {
+
+		Future<Void> result;
 		if( this.connected ) {
 			final Logger logger = Logger.getLogger( MessageServerClientRabbitMq.this.loggerName );
 			logger.info( this.sourceName + " is publishing " + message.getClass().getSimpleName() + " to " + routingKey);
 
-			this.channel.basicPublish(
-					getExchangeName( toDm ), routingKey, null,
-					SerializationUtils.serializeObject( message ));
+			result = this.publisher.publish(
+					getExchangeName( toDm ), routingKey,
+					this.messageCodec.encode( message ));
+
+		} else {
+			// Nothing to publish
+			FutureTask<Void> task = new FutureTask<Void>( new Runnable() {
+				@Override
+				public void run() {
+					// nothing
+				}
+			}, null );
+
+			task.run();
+			result = task;
 		}
+
+		return result;
 	}
 
 
@@ -237,4 +340,20 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	private String getExchangeName() {
 		return getExchangeName( MessagingUtils.SOURCE_DM.equalsIgnoreCase( this.sourceName ));
 	}
+
+
+	private static int getIntegerProperty( String name, int defaultValue ) {
+
+		int result = defaultValue;
+		try {
+			String value = System.getProperty( name );
+			if( value != null )
+				result = Integer.parseInt( value.trim());
+
+		} catch( NumberFormatException e ) {
+			Logger.getLogger( MessageServerClientRabbitMq.class.getName()).warning( "Invalid value for " + name + ". The default one will be used." );
+		}
+
+		return result;
+	}
 }
@@ -0,0 +1,534 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+
+/**
+ * A consumer that decodes messages in parallel and processes them in ordered lanes.
+ * <p>
+ * Messages are decoded by a pool of threads. A dispatcher then takes them in the order they
+ * were received, and puts them into a lane. The lane is found from the name of the root instance
+ * the message is about. Each lane has its own thread and processes its messages in order.
+ * </p>
+ * <p>
+ * Therefore, messages related to a same machine are processed in the order they were received,
+ * while messages related to different machines can be processed in parallel. A slow message
+ * only delays the machines of its lane.
+ * </p>
+ * <p>
+ * All the queues are bounded. When a lane is full, the dispatcher waits, and then so does
+ * the thread that submits messages.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class PartitionedConsumer {
+
+	/**
+	 * The system property that defines the number of lanes used by the DM.
+	 * <p>
+	 * 0 or a negative value means messages are decoded and processed by a single thread.
+	 * This is the default. Lanes must be enabled explicitly, since message processors must then
+	 * support being invoked by several threads at once.
+	 * </p>
+	 */
+	public static final String LANES_PROPERTY = "roboconf.messaging.consumer.lanes";
+
+	/**
+	 * The system property that defines the number of threads that decode messages.
+	 */
+	public static final String DECODERS_PROPERTY = "roboconf.messaging.consumer.decoders";
+
+	/**
+	 * The system property that defines the capacity of each queue.
+	 */
+	public static final String QUEUE_CAPACITY_PROPERTY = "roboconf.messaging.consumer.queue.capacity";
+
+	/**
+	 * The system property that defines whether lane metrics are recorded ("true" or "false").
+	 */
+	public static final String METRICS_PROPERTY = "roboconf.messaging.consumer.metrics";
+
+	public static final int DEFAULT_LANES = 0;
+	public static final int DEFAULT_DECODERS = 2;
+	public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final String name;
+	private final IMessageProcessor messageProcessor;
+	private final IMessageCodec messageCodec;
+	private final boolean metricsEnabled;
+
+	private final ExecutorService decoders;
+	private final BlockingQueue<PendingMessage> pendingMessages;
+	private final Lane[] lanes;
+	private final Thread dispatcher;
+
+
+
+	/**
+	 * Constructor.
+	 * @param name the consumer's name (used in logs and thread names)
+	 * @param messageProcessor the message processor
+	 * @param messageCodec the codec to try first to decode messages (can be null)
+	 * @param laneCount the number of lanes (at least 1)
+	 * @param decoderCount the number of threads that decode messages (at least 1)
+	 * @param queueCapacity the capacity of each queue (at least 1)
+	 * @param metricsEnabled true to record metrics about the lanes
+	 */
+	public PartitionedConsumer(
+			String name,
+			IMessageProcessor messageProcessor,
+			IMessageCodec messageCodec,
+			int laneCount,
+			int decoderCount,
+			int queueCapacity,
+			boolean metricsEnabled ) {
+
+		this.name = name;
+		this.messageProcessor = messageProcessor;
+		this.messageCodec = messageCodec;
+		this.metricsEnabled = metricsEnabled;
+
+		this.decoders = Executors.newFixedThreadPool( Math.max( 1, decoderCount ), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread result = new Thread( r, "Roboconf - Decoder " + this.count.incrementAndGet() + " for " + PartitionedConsumer.this.name );
+				result.setDaemon( true );
+				return result;
+			}
+		});
+
+		int capacity = Math.max( 1, queueCapacity );
+		this.pendingMessages = new ArrayBlockingQueue<PendingMessage>( capacity );
+		this.lanes = new Lane[ Math.max( 1, laneCount )];
+		for( int i=0; i<this.lanes.length; i++ )
+			this.lanes[ i ] = new Lane( i, capacity );
+
+		this.dispatcher = new Thread( "Roboconf - Dispatcher for " + name ) {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		};
+
+		this.dispatcher.setDaemon( true );
+	}
+
+
+	/**
+	 * Starts the dispatcher and the lanes.
+	 */
+	public void start() {
+
+		this.dispatcher.start();
+		for( Lane lane : this.lanes )
+			lane.start();
+	}
+
+
+	/**
+	 * Stops all the threads.
+	 * <p>
+	 * Messages that were not processed yet are dropped.
+	 * </p>
+	 */
+	public void stop() {
+
+		this.decoders.shutdownNow();
+		this.dispatcher.interrupt();
+		for( Lane lane : this.lanes )
+			lane.interrupt();
+
+		if( this.metricsEnabled ) {
+			for( LaneMetrics metrics : getLaneMetrics())
+				this.logger.info( this.name + ": " + metrics );
+		}
+	}
+
+
+	/**
+	 * Submits a message to decode and process.
+	 * <p>
+	 * This method blocks when too many messages are waiting to be dispatched.
+	 * </p>
+	 *
+	 * @param bytes the encoded message
+	 * @param routingKey the routing key the message was received on
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public void submit( final byte[] bytes, String routingKey ) throws InterruptedException {
+
+		Future<Message> future = this.decoders.submit( new Callable<Message>() {
+			@Override
+			public Message call() throws Exception {
+				return MessageCodecs.decode( bytes, PartitionedConsumer.this.messageCodec );
+			}
+		});
+
+		this.pendingMessages.put( new PendingMessage( future, routingKey ));
+	}
+
+
+	/**
+	 * @return the metrics of every lane (empty if metrics are disabled)
+	 */
+	public List<LaneMetrics> getLaneMetrics() {
+
+		List<LaneMetrics> result = new ArrayList<LaneMetrics> ();
+		if( this.metricsEnabled ) {
+			for( Lane lane : this.lanes )
+				result.add( lane.metrics.copy( lane.queue.size()));
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the name of the root instance a message is about.
+	 * @param message a message
+	 * @return a root instance name, or null if the message is not related to a given machine
+	 */
+	static String findPartitionKey( Message message ) {
+
+		String result = null;
+		if( message instanceof MsgNotifHeartbeat )
+			result = ((MsgNotifHeartbeat) message).getRootInstanceName();
+		else if( message instanceof MsgNotifMachineUp )
+			result = ((MsgNotifMachineUp) message).getRootInstanceName();
+		else if( message instanceof MsgNotifMachineDown )
+			result = ((MsgNotifMachineDown) message).getRootInstanceName();
+		else if( message instanceof MsgNotifMachineReadyToBeDeleted )
+			result = ((MsgNotifMachineReadyToBeDeleted) message).getRootInstanceName();
+		else if( message instanceof MsgNotifInstanceChanged )
+			result = findRootInstanceName(((MsgNotifInstanceChanged) message).getInstancePath());
+		else if( message instanceof MsgNotifInstanceRemoved )
+			result = findRootInstanceName(((MsgNotifInstanceRemoved) message).getInstancePath());
+		else if( message instanceof MsgCmdInstanceDeploy )
+			result = findRootInstanceName(((MsgCmdInstanceDeploy) message).getInstancePath());
+		else if( message instanceof MsgCmdInstanceRemove )
+			result = findRootInstanceName(((MsgCmdInstanceRemove) message).getInstancePath());
+		else if( message instanceof MsgCmdInstanceStart )
+			result = findRootInstanceName(((MsgCmdInstanceStart) message).getInstancePath());
+		else if( message instanceof MsgCmdInstanceStop )
+			result = findRootInstanceName(((MsgCmdInstanceStop) message).getInstancePath());
+		else if( message instanceof MsgCmdInstanceUndeploy )
+			result = findRootInstanceName(((MsgCmdInstanceUndeploy) message).getInstancePath());
+		else if( message instanceof MsgCmdImportAdd )
+			result = findRootInstanceName(((MsgCmdImportAdd) message).getAddedInstancePath());
+		else if( message instanceof MsgCmdImportRemove )
+			result = findRootInstanceName(((MsgCmdImportRemove) message).getRemovedInstancePath());
+		else if( message instanceof MsgCmdInstanceAdd ) {
+			MsgCmdInstanceAdd msg = (MsgCmdInstanceAdd) message;
+			if( msg.getParentInstancePath() != null )
+				result = findRootInstanceName( msg.getParentInstancePath());
+			else if( msg.getInstanceToAdd() != null )
+				result = findRootInstanceName( msg.getInstanceToAdd().getPath());
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param instancePath an instance path (e.g. "/vm/server")
+	 * @return the name of the root instance (e.g. "vm"), or null if the path was null
+	 */
+	static String findRootInstanceName( String instancePath ) {
+
+		String result = null;
+		if( instancePath != null ) {
+			int start = instancePath.startsWith( "/" ) ? 1 : 0;
+			int end = instancePath.indexOf( '/', start );
+			result = end < 0 ? instancePath.substring( start ) : instancePath.substring( start, end );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the lane of a message.
+	 * @param message a message
+	 * @param laneCount the number of lanes
+	 * @return the lane index, between 0 and laneCount - 1
+	 */
+	static int findLaneIndex( Message message, int laneCount ) {
+
+		// Messages that are not related to a machine all go into the first lane
+		String key = findPartitionKey( message );
+		return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % laneCount;
+	}
+
+
+	/**
+	 * Takes the decoded messages in the order they were submitted and puts them into their lane.
+	 */
+	private void dispatch() {
+
+		this.logger.fine( this.dispatcher.getName() + " starts dispatching messages." );
+		for( ;; ) {
+			try {
+				PendingMessage pendingMessage = this.pendingMessages.take();
+				Message message = pendingMessage.future.get();
+
+				Lane lane = this.lanes[ findLaneIndex( message, this.lanes.length )];
+				lane.queue.put( new PendingMessage( message, pendingMessage.routingKey ));
+				if( this.metricsEnabled )
+					lane.metrics.updateMaxQueueSize( lane.queue.size());
+
+			} catch( InterruptedException e ) {
+				this.logger.fine( this.dispatcher.getName() + " stops dispatching messages." );
+				break;
+
+			} catch( ExecutionException e ) {
+				this.logger.severe( this.name + ": a message could not be deserialized. " + e.getCause().getMessage());
+				this.logger.finest( Utils.writeException( e ));
+			}
+		}
+	}
+
+
+	/**
+	 * A message waiting to be dispatched (future) or to be processed (message).
+	 */
+	private static final class PendingMessage {
+		final Future<Message> future;
+		final Message message;
+		final String routingKey;
+
+		PendingMessage( Future<Message> future, String routingKey ) {
+			this.future = future;
+			this.message = null;
+			this.routingKey = routingKey;
+		}
+
+		PendingMessage( Message message, String routingKey ) {
+			this.future = null;
+			this.message = message;
+			this.routingKey = routingKey;
+		}
+	}
+
+
+	/**
+	 * A thread that processes messages in order.
+	 */
+	private final class Lane extends Thread {
+		final BlockingQueue<PendingMessage> queue;
+		final LaneMetrics metrics;
+
+
+		Lane( int index, int capacity ) {
+			super( "Roboconf - Lane " + index + " for " + PartitionedConsumer.this.name );
+			setDaemon( true );
+			this.queue = new ArrayBlockingQueue<PendingMessage>( capacity );
+			this.metrics = new LaneMetrics( index );
+		}
+
+
+		@Override
+		public void run() {
+
+			for( ;; ) {
+				PendingMessage pendingMessage;
+				try {
+					pendingMessage = this.queue.take();
+
+				} catch( InterruptedException e ) {
+					PartitionedConsumer.this.logger.fine( getName() + " stops processing messages." );
+					break;
+				}
+
+				if( PartitionedConsumer.this.logger.isLoggable( Level.FINER )) {
+					StringBuilder sb = new StringBuilder();
+					sb.append( PartitionedConsumer.this.name );
+					sb.append( " received a message " );
+					sb.append( pendingMessage.message.getClass().getSimpleName());
+					sb.append( " on routing key '" );
+					sb.append( pendingMessage.routingKey );
+					sb.append( "'." );
+					PartitionedConsumer.this.logger.finer( sb.toString());
+				}
+
+				long start = System.nanoTime();
+				try {
+					PartitionedConsumer.this.messageProcessor.processMessage( pendingMessage.message );
+
+				} catch( Exception e ) {
+					PartitionedConsumer.this.logger.severe( getName() + ": a message could not be processed. " + e.getMessage());
+					PartitionedConsumer.this.logger.finest( Utils.writeException( e ));
+				}
+
+				if( PartitionedConsumer.this.metricsEnabled )
+					this.metrics.addProcessedMessage( System.nanoTime() - start );
+			}
+		}
+	}
+
+
+	/**
+	 * Metrics about a lane.
+	 */
+	public static final class LaneMetrics {
+		private final int laneIndex;
+		private final AtomicLong processedMessages = new AtomicLong();
+		private final AtomicLong totalProcessingTime = new AtomicLong();
+		private final AtomicLong maxProcessingTime = new AtomicLong();
+		private final AtomicInteger maxQueueSize = new AtomicInteger();
+		private int queueSize;
+
+
+		LaneMetrics( int laneIndex ) {
+			this.laneIndex = laneIndex;
+		}
+
+
+		void addProcessedMessage( long processingTime ) {
+
+			this.processedMessages.incrementAndGet();
+			this.totalProcessingTime.addAndGet( processingTime );
+
+			long max;
+			while(( max = this.maxProcessingTime.get()) < processingTime
+					&& ! this.maxProcessingTime.compareAndSet( max, processingTime ));
+		}
+
+
+		void updateMaxQueueSize( int size ) {
+
+			int max;
+			while(( max = this.maxQueueSize.get()) < size
+					&& ! this.maxQueueSize.compareAndSet( max, size ));
+		}
+
+
+		LaneMetrics copy( int currentQueueSize ) {
+
+			LaneMetrics result = new LaneMetrics( this.laneIndex );
+			result.processedMessages.set( this.processedMessages.get());
+			result.totalProcessingTime.set( this.totalProcessingTime.get());
+			result.maxProcessingTime.set( this.maxProcessingTime.get());
+			result.maxQueueSize.set( this.maxQueueSize.get());
+			result.queueSize = currentQueueSize;
+
+			return result;
+		}
+
+
+		/**
+		 * @return the lane index
+		 */
+		public int getLaneIndex() {
+			return this.laneIndex;
+		}
+
+		/**
+		 * @return the number of processed messages
+		 */
+		public long getProcessedMessages() {
+			return this.processedMessages.get();
+		}
+
+		/**
+		 * @return the total processing time, in nanoseconds
+		 */
+		public long getTotalProcessingTime() {
+			return this.totalProcessingTime.get();
+		}
+
+		/**
+		 * @return the longest processing time, in nanoseconds
+		 */
+		public long getMaxProcessingTime() {
+			return this.maxProcessingTime.get();
+		}
+
+		/**
+		 * @return the highest number of messages that waited in this lane
+		 */
+		public int getMaxQueueSize() {
+			return this.maxQueueSize.get();
+		}
+
+		/**
+		 * @return the number of messages waiting in this lane when the metrics were read
+		 */
+		public int getQueueSize() {
+			return this.queueSize;
+		}
+
+
+		@Override
+		public String toString() {
+
+			StringBuilder sb = new StringBuilder();
+			sb.append( "lane " );
+			sb.append( this.laneIndex );
+			sb.append( ": " );
+			sb.append( getProcessedMessages());
+			sb.append( " messages processed in " );
+			sb.append( getTotalProcessingTime() / 1000000 );
+			sb.append( " ms (max = " );
+			sb.append( getMaxProcessingTime() / 1000000 );
+			sb.append( " ms), queue size = " );
+			sb.append( this.queueSize );
+			sb.append( " (max = " );
+			sb.append( getMaxQueueSize());
+			sb.append( ")" );
+
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,488 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.roboconf.core.model.io.BinaryModelIo;
+import net.roboconf.core.model.runtime.Graphs;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.wire.WireInstance;
+
+/**
+ * A codec that writes messages in a compact binary format.
+ * <p>
+ * Every payload starts with a header: a magic byte, the message type ID and the
+ * version of the encoding for this type. Then comes the message body. Sizes, strings, maps
+ * and graphs are written with {@link BinaryModelIo}, like compiled models.
+ * </p>
+ * <p>
+ * Type IDs must never be reused. When the encoding of a message type changes, its version
+ * must be incremented. Payloads with an unknown type or version are rejected.
+ * </p>
+ * <p>
+ * Instances are written as {@link WireInstance}s, which reference components by name.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodec implements IMessageCodec {
+
+	/**
+	 * The first byte of all the payloads (cannot be mistaken with Java serialization).
+	 */
+	public static final byte MAGIC = 0x52;
+
+	// Message types
+	static final byte TYPE_HEARTBEAT = 1;
+	static final byte TYPE_INSTANCE_CHANGED = 2;
+	static final byte TYPE_INSTANCE_REMOVED = 3;
+	static final byte TYPE_MACHINE_DOWN = 4;
+	static final byte TYPE_MACHINE_READY_TO_BE_DELETED = 5;
+	static final byte TYPE_MACHINE_UP = 6;
+
+	static final byte TYPE_FIREWALL_ADD = 20;
+	static final byte TYPE_FIREWALL_REMOVE = 21;
+	static final byte TYPE_INSTANCE_ADD = 22;
+	static final byte TYPE_INSTANCE_DEPLOY = 23;
+	static final byte TYPE_INSTANCE_REMOVE = 24;
+	static final byte TYPE_INSTANCE_START = 25;
+	static final byte TYPE_INSTANCE_STOP = 26;
+	static final byte TYPE_INSTANCE_UNDEPLOY = 27;
+
+	static final byte TYPE_IMPORT_ADD = 40;
+	static final byte TYPE_IMPORT_REMOVE = 41;
+	static final byte TYPE_IMPORT_REQUEST = 42;
+
+	/**
+	 * The version of the encoding (the same for all the message types, for the moment).
+	 */
+	static final byte VERSION = 1;
+
+
+	@Override
+	public boolean accepts( byte[] bytes ) {
+		return bytes.length > 0 && bytes[ 0 ] == MAGIC;
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream( 64 );
+		DataOutputStream out = new DataOutputStream( os );
+
+		// From agents to the DM
+		if( message instanceof MsgNotifHeartbeat ) {
+			writeHeader( out, TYPE_HEARTBEAT );
+			BinaryModelIo.writeString( out, ((MsgNotifHeartbeat) message).getRootInstanceName());
+
+		} else if( message instanceof MsgNotifInstanceChanged ) {
+			MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) message;
+			writeHeader( out, TYPE_INSTANCE_CHANGED );
+			BinaryModelIo.writeString( out, msg.getInstancePath());
+			BinaryModelIo.writeString( out, msg.getNewStatus() == null ? null : msg.getNewStatus().name());
+			writeImports( out, msg.getNewImports());
+
+		} else if( message instanceof MsgNotifInstanceRemoved ) {
+			writeHeader( out, TYPE_INSTANCE_REMOVED );
+			BinaryModelIo.writeString( out, ((MsgNotifInstanceRemoved) message).getInstancePath());
+
+		} else if( message instanceof MsgNotifMachineDown ) {
+			writeHeader( out, TYPE_MACHINE_DOWN );
+			BinaryModelIo.writeString( out, ((MsgNotifMachineDown) message).getRootInstanceName());
+
+		} else if( message instanceof MsgNotifMachineReadyToBeDeleted ) {
+			writeHeader( out, TYPE_MACHINE_READY_TO_BE_DELETED );
+			BinaryModelIo.writeString( out, ((MsgNotifMachineReadyToBeDeleted) message).getRootInstanceName());
+
+		} else if( message instanceof MsgNotifMachineUp ) {
+			MsgNotifMachineUp msg = (MsgNotifMachineUp) message;
+			writeHeader( out, TYPE_MACHINE_UP );
+			BinaryModelIo.writeString( out, msg.getRootInstanceName());
+			BinaryModelIo.writeString( out, msg.getIpAddress());
+		}
+
+		// From the DM to agents
+		else if( message instanceof MsgCmdFirewallAdd ) {
+			MsgCmdFirewallAdd msg = (MsgCmdFirewallAdd) message;
+			writeHeader( out, TYPE_FIREWALL_ADD );
+			BinaryModelIo.writeString( out, msg.getSourceIp());
+			BinaryModelIo.writeString( out, msg.getDestIp());
+			out.writeInt( msg.getPort());
+
+		} else if( message instanceof MsgCmdFirewallRemove ) {
+			writeHeader( out, TYPE_FIREWALL_REMOVE );
+
+		} else if( message instanceof MsgCmdInstanceAdd ) {
+			MsgCmdInstanceAdd msg = (MsgCmdInstanceAdd) message;
+			writeHeader( out, TYPE_INSTANCE_ADD );
+			BinaryModelIo.writeString( out, msg.getParentInstancePath());
+			BinaryModelIo.writeGraphs( out, msg.getGraphs());
+			writeInstance( out, msg.getInstanceToAdd());
+
+		} else if( message instanceof MsgCmdInstanceDeploy ) {
+			MsgCmdInstanceDeploy msg = (MsgCmdInstanceDeploy) message;
+			writeHeader( out, TYPE_INSTANCE_DEPLOY );
+			BinaryModelIo.writeString( out, msg.getInstancePath());
+			writeFiles( out, msg.getFileNameToFileContent());
+
+		} else if( message instanceof MsgCmdInstanceRemove ) {
+			writeHeader( out, TYPE_INSTANCE_REMOVE );
+			BinaryModelIo.writeString( out, ((MsgCmdInstanceRemove) message).getInstancePath());
+
+		} else if( message instanceof MsgCmdInstanceStart ) {
+			writeHeader( out, TYPE_INSTANCE_START );
+			BinaryModelIo.writeString( out, ((MsgCmdInstanceStart) message).getInstancePath());
+
+		} else if( message instanceof MsgCmdInstanceStop ) {
+			writeHeader( out, TYPE_INSTANCE_STOP );
+			BinaryModelIo.writeString( out, ((MsgCmdInstanceStop) message).getInstancePath());
+
+		} else if( message instanceof MsgCmdInstanceUndeploy ) {
+			writeHeader( out, TYPE_INSTANCE_UNDEPLOY );
+			BinaryModelIo.writeString( out, ((MsgCmdInstanceUndeploy) message).getInstancePath());
+		}
+
+		// From agents to agents
+		else if( message instanceof MsgCmdImportAdd ) {
+			MsgCmdImportAdd msg = (MsgCmdImportAdd) message;
+			writeHeader( out, TYPE_IMPORT_ADD );
+			BinaryModelIo.writeString( out, msg.getComponentOrFacetName());
+			BinaryModelIo.writeString( out, msg.getAddedInstancePath());
+			BinaryModelIo.writeMap( out, msg.getExportedVariables());
+
+		} else if( message instanceof MsgCmdImportRemove ) {
+			MsgCmdImportRemove msg = (MsgCmdImportRemove) message;
+			writeHeader( out, TYPE_IMPORT_REMOVE );
+			BinaryModelIo.writeString( out, msg.getComponentOrFacetName());
+			BinaryModelIo.writeString( out, msg.getRemovedInstancePath());
+
+		} else if( message instanceof MsgCmdImportRequest ) {
+			writeHeader( out, TYPE_IMPORT_REQUEST );
+			BinaryModelIo.writeString( out, ((MsgCmdImportRequest) message).getComponentOrFacetName());
+
+		} else {
+			throw new IOException( "No binary encoding is defined for " + message.getClass().getName());
+		}
+
+		out.flush();
+		return os.toByteArray();
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.wrap( bytes );
+		Message result;
+		try {
+			if( buffer.get() != MAGIC )
+				throw new IOException( "This is not a binary message." );
+
+			byte type = buffer.get();
+			byte version = buffer.get();
+			if( version != VERSION )
+				throw new IOException( "Unsupported version for the message type " + type + ": " + version );
+
+			switch( type ) {
+			case TYPE_HEARTBEAT:
+				result = new MsgNotifHeartbeat( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_INSTANCE_CHANGED:
+				String instancePath = BinaryModelIo.readString( buffer );
+				InstanceStatus status = readStatus( buffer );
+				result = new MsgNotifInstanceChanged( instancePath, readImports( buffer ), status );
+				break;
+
+			case TYPE_INSTANCE_REMOVED:
+				result = new MsgNotifInstanceRemoved( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_MACHINE_DOWN:
+				result = new MsgNotifMachineDown( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_MACHINE_READY_TO_BE_DELETED:
+				result = new MsgNotifMachineReadyToBeDeleted( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_MACHINE_UP:
+				String rootInstanceName = BinaryModelIo.readString( buffer );
+				result = new MsgNotifMachineUp( rootInstanceName, BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_FIREWALL_ADD:
+				String sourceIp = BinaryModelIo.readString( buffer );
+				String destIp = BinaryModelIo.readString( buffer );
+				result = new MsgCmdFirewallAdd( sourceIp, destIp, buffer.getInt());
+				break;
+
+			case TYPE_FIREWALL_REMOVE:
+				result = new MsgCmdFirewallRemove();
+				break;
+
+			case TYPE_INSTANCE_ADD:
+				String parentInstancePath = BinaryModelIo.readString( buffer );
+				Graphs graphs = BinaryModelIo.readGraphs( buffer, null );
+				result = new MsgCmdInstanceAdd( parentInstancePath, readInstance( buffer ), graphs );
+				break;
+
+			case TYPE_INSTANCE_DEPLOY:
+				String deployedInstancePath = BinaryModelIo.readString( buffer );
+				result = new MsgCmdInstanceDeploy( deployedInstancePath, readFiles( buffer ));
+				break;
+
+			case TYPE_INSTANCE_REMOVE:
+				result = new MsgCmdInstanceRemove( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_INSTANCE_START:
+				result = new MsgCmdInstanceStart( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_INSTANCE_STOP:
+				result = new MsgCmdInstanceStop( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_INSTANCE_UNDEPLOY:
+				result = new MsgCmdInstanceUndeploy( BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_IMPORT_ADD:
+				String componentOrFacetName = BinaryModelIo.readString( buffer );
+				String addedInstancePath = BinaryModelIo.readString( buffer );
+				result = new MsgCmdImportAdd( componentOrFacetName, addedInstancePath, BinaryModelIo.readMap( buffer, null ));
+				break;
+
+			case TYPE_IMPORT_REMOVE:
+				String prefix = BinaryModelIo.readString( buffer );
+				result = new MsgCmdImportRemove( prefix, BinaryModelIo.readString( buffer ));
+				break;
+
+			case TYPE_IMPORT_REQUEST:
+				result = new MsgCmdImportRequest( BinaryModelIo.readString( buffer ));
+				break;
+
+			default:
+				throw new IOException( "Unknown message type: " + type );
+			}
+
+		} catch( BufferUnderflowException e ) {
+			throw new IOException( "The message is truncated." );
+		}
+
+		if( buffer.hasRemaining())
+			throw new IOException( "Unexpected bytes at the end of the message." );
+
+		return result;
+	}
+
+
+	private static void writeHeader( DataOutputStream out, byte type ) throws IOException {
+		out.writeByte( MAGIC );
+		out.writeByte( type );
+		out.writeByte( VERSION );
+	}
+
+
+	/**
+	 * Writes a wire instance and its descendants.
+	 * @param out the output
+	 * @param instance a wire instance (can be null)
+	 * @throws IOException
+	 */
+	private static void writeInstance( DataOutputStream out, WireInstance instance ) throws IOException {
+
+		out.writeBoolean( instance != null );
+		if( instance == null )
+			return;
+
+		BinaryModelIo.writeString( out, instance.getPath());
+		BinaryModelIo.writeString( out, instance.getComponentName());
+		BinaryModelIo.writeString( out, instance.getChannel());
+		BinaryModelIo.writeString( out, instance.getStatus() == null ? null : instance.getStatus().name());
+		BinaryModelIo.writeMap( out, instance.getOverriddenExports());
+		BinaryModelIo.writeMap( out, instance.getExports());
+		BinaryModelIo.writeMap( out, instance.getData());
+		writeImports( out, instance.getImports());
+
+		BinaryModelIo.writeSize( out, instance.getChildren().size());
+		for( WireInstance child : instance.getChildren())
+			writeInstance( out, child );
+	}
+
+
+	private static WireInstance readInstance( ByteBuffer buffer ) throws IOException {
+
+		if( buffer.get() == 0 )
+			return null;
+
+		String path = BinaryModelIo.readString( buffer );
+		String componentName = BinaryModelIo.readString( buffer );
+		String channel = BinaryModelIo.readString( buffer );
+		InstanceStatus status = readStatus( buffer );
+		Map<String,String> overriddenExports = BinaryModelIo.readMap( buffer, null );
+		Map<String,String> exports = BinaryModelIo.readMap( buffer, null );
+		Map<String,String> data = BinaryModelIo.readMap( buffer, null );
+		Map<String,Collection<Import>> imports = readImports( buffer );
+
+		WireInstance result = new WireInstance( path, componentName, channel, status, overriddenExports, exports, data, imports );
+		for( int j=BinaryModelIo.readSize( buffer ); j>0; j-- ) {
+			WireInstance child = readInstance( buffer );
+			if( child == null )
+				throw new IOException( "Invalid child instance under " + path + "." );
+
+			result.getChildren().add( child );
+		}
+
+		return result;
+	}
+
+
+	private static void writeImports( DataOutputStream out, Map<String,Collection<Import>> imports ) throws IOException {
+
+		// 0 means "null"
+		BinaryModelIo.writeSize( out, imports == null ? 0 : imports.size() + 1 );
+		if( imports == null )
+			return;
+
+		for( Map.Entry<String,Collection<Import>> entry : imports.entrySet()) {
+			BinaryModelIo.writeString( out, entry.getKey());
+			Collection<Import> values = entry.getValue();
+			BinaryModelIo.writeSize( out, values == null ? 0 : values.size() + 1 );
+			if( values == null )
+				continue;
+
+			for( Import imp : values ) {
+				BinaryModelIo.writeString( out, imp.getInstancePath());
+				BinaryModelIo.writeMap( out, imp.getExportedVars());
+			}
+		}
+	}
+
+
+	private static Map<String,Collection<Import>> readImports( ByteBuffer buffer ) throws IOException {
+
+		int size = BinaryModelIo.readSize( buffer );
+		if( size == 0 )
+			return null;
+
+		Map<String,Collection<Import>> result = new HashMap<String,Collection<Import>> ();
+		for( int i=size - 1; i>0; i-- ) {
+			String key = BinaryModelIo.readString( buffer );
+			int count = BinaryModelIo.readSize( buffer );
+			Collection<Import> values = null;
+			if( count > 0 ) {
+				values = new ArrayList<Import>( BinaryModelIo.checkLength( count - 1, buffer ));
+				for( int j=count - 1; j>0; j-- ) {
+					String instancePath = BinaryModelIo.readString( buffer );
+					values.add( new Import( instancePath, BinaryModelIo.readMap( buffer, null )));
+				}
+			}
+
+			result.put( key, values );
+		}
+
+		return result;
+	}
+
+
+	private static InstanceStatus readStatus( ByteBuffer buffer ) throws IOException {
+
+		String name = BinaryModelIo.readString( buffer );
+		InstanceStatus result = null;
+		try {
+			if( name != null )
+				result = InstanceStatus.valueOf( name );
+
+		} catch( IllegalArgumentException e ) {
+			throw new IOException( "Unknown instance status: " + name );
+		}
+
+		return result;
+	}
+
+
+	private static void writeFiles( DataOutputStream out, Map<String,byte[]> files ) throws IOException {
+
+		// 0 means "null"
+		BinaryModelIo.writeSize( out, files == null ? 0 : files.size() + 1 );
+		if( files == null )
+			return;
+
+		for( Map.Entry<String,byte[]> entry : files.entrySet()) {
+			BinaryModelIo.writeString( out, entry.getKey());
+			byte[] content = entry.getValue();
+			BinaryModelIo.writeSize( out, content == null ? 0 : content.length + 1 );
+			if( content != null )
+				out.write( content );
+		}
+	}
+
+
+	private static Map<String,byte[]> readFiles( ByteBuffer buffer ) throws IOException {
+
+		int size = BinaryModelIo.readSize( buffer );
+		if( size == 0 )
+			return null;
+
+		Map<String,byte[]> result = new HashMap<String,byte[]> ();
+		for( int i=size - 1; i>0; i-- ) {
+			String key = BinaryModelIo.readString( buffer );
+			int length = BinaryModelIo.readSize( buffer );
+			byte[] content = null;
+			if( length > 0 ) {
+				content = new byte[ BinaryModelIo.checkLength( length - 1, buffer )];
+				buffer.get( content );
+			}
+
+			result.put( key, content );
+		}
+
+		return result;
+	}
+}
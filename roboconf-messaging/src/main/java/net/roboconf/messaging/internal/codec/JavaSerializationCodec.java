@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A codec based on Java serialization.
+ * <p>
+ * Payloads are large (they include class descriptors) but any message can be encoded.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class JavaSerializationCodec implements IMessageCodec {
+
+	private static final byte STREAM_MAGIC_1 = (byte) 0xAC;
+	private static final byte STREAM_MAGIC_2 = (byte) 0xED;
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+		return SerializationUtils.serializeObject( message );
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException {
+
+		try {
+			return SerializationUtils.deserializeObject( bytes );
+
+		} catch( ClassNotFoundException e ) {
+			throw new IOException( "A message could not be deserialized. Class not found: " + e.getMessage());
+		}
+	}
+
+
+	@Override
+	public boolean accepts( byte[] bytes ) {
+		return bytes.length > 1
+				&& bytes[ 0 ] == STREAM_MAGIC_1
+				&& bytes[ 1 ] == STREAM_MAGIC_2;
+	}
+}
@@ -19,10 +19,12 @@ package net.roboconf.messaging.internal.utils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import net.roboconf.core.internal.utils.StringPool;
 import net.roboconf.messaging.messages.Message;
 
 /**
@@ -66,7 +68,7 @@ public final class SerializationUtils {
 	throws IOException, ClassNotFoundException {
 
 		ByteArrayInputStream is = new ByteArrayInputStream( bytes );
-		ObjectInputStream deserializer = new ObjectInputStream( is );
+		ObjectInputStream deserializer = new PoolingObjectInputStream( is );
 		return clazz.cast( deserializer.readObject());
 	}
 
@@ -82,4 +84,33 @@ public final class SerializationUtils {
 	throws IOException, ClassNotFoundException {
 		return deserializeObject( bytes, Message.class );
 	}
+
+
+	/**
+	 * An object input stream that puts the deserialized strings in the {@link StringPool}.
+	 * <p>
+	 * Messages carry the same component names, variable names and instance paths
+	 * over and over. Without this, every message would bring new copies of them.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class PoolingObjectInputStream extends ObjectInputStream {
+
+		/**
+		 * Constructor.
+		 * @param in an input stream
+		 * @throws IOException
+		 */
+		PoolingObjectInputStream( InputStream in ) throws IOException {
+			super( in );
+			enableResolveObject( StringPool.isEnabled());
+		}
+
+
+		@Override
+		protected Object resolveObject( Object obj ) throws IOException {
+			return obj instanceof String ? StringPool.intern((String) obj) : obj;
+		}
+	}
 }
@@ -48,6 +48,19 @@ public class MsgNotifInstanceChanged extends Message {
 		this.newStatus = instance.getStatus();
 	}
 
+	/**
+	 * Constructor.
+	 * @param instancePath the instance path
+	 * @param newImports the new imports
+	 * @param newStatus the new status
+	 */
+	public MsgNotifInstanceChanged( String instancePath, Map<String,Collection<Import>> newImports, InstanceStatus newStatus ) {
+		super();
+		this.instancePath = instancePath;
+		this.newImports = newImports;
+		this.newStatus = newStatus;
+	}
+
 	/**
 	 * @return the instancePath
 	 */
@@ -16,33 +16,65 @@
 
 package net.roboconf.messaging.messages.from_dm_to_agent;
 
+import net.roboconf.core.model.runtime.Graphs;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.wire.WireInstance;
 
 /**
+ * A message to add an instance (and its descendants) on an agent.
+ * <p>
+ * The instance is sent as a {@link WireInstance}: components are referenced by name.
+ * The graph(s) are only sent once per agent, with the root instance. Agents cache them
+ * and use them to resolve component names.
+ * </p>
+ *
  * @author Noël - LIG
  */
 public class MsgCmdInstanceAdd extends Message {
 
-	private static final long serialVersionUID = 411037586577734609L;
-	private final Instance instanceToAdd;
+	private static final long serialVersionUID = 411037586577734610L;
+	private final WireInstance instanceToAdd;
 	private final String parentInstancePath;
+	private final Graphs graphs;
+
 
 	/**
 	 * Constructor.
-	 * @param componentInstanceToAdd
-	 * @param parentInstancePath
+	 * @param parentInstancePath the parent instance path (null for a root instance)
+	 * @param instanceToAdd the instance to add
 	 */
 	public MsgCmdInstanceAdd( String parentInstancePath, Instance instanceToAdd ) {
+		this( parentInstancePath, WireInstance.fromInstance( instanceToAdd ), null );
+	}
+
+	/**
+	 * Constructor.
+	 * @param parentInstancePath the parent instance path (null for a root instance)
+	 * @param instanceToAdd the instance to add
+	 * @param graphs the graph(s) to cache on the agent (can be null)
+	 */
+	public MsgCmdInstanceAdd( String parentInstancePath, Instance instanceToAdd, Graphs graphs ) {
+		this( parentInstancePath, WireInstance.fromInstance( instanceToAdd ), graphs );
+	}
+
+	/**
+	 * Constructor.
+	 * @param parentInstancePath the parent instance path (null for a root instance)
+	 * @param instanceToAdd the instance to add
+	 * @param graphs the graph(s) to cache on the agent (can be null)
+	 */
+	public MsgCmdInstanceAdd( String parentInstancePath, WireInstance instanceToAdd, Graphs graphs ) {
 		super();
 		this.instanceToAdd = instanceToAdd;
 		this.parentInstancePath = parentInstancePath;
+		this.graphs = graphs;
 	}
 
 	/**
 	 * @return the instance to add
 	 */
-	public Instance getInstanceToAdd() {
+	public WireInstance getInstanceToAdd() {
 		return this.instanceToAdd;
 	}
 
@@ -52,4 +84,11 @@ public class MsgCmdInstanceAdd extends Message {
 	public String getParentInstancePath() {
 		return this.parentInstancePath;
 	}
+
+	/**
+	 * @return the graph(s) to cache on the agent (can be null)
+	 */
+	public Graphs getGraphs() {
+		return this.graphs;
+	}
 }
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.wire;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+
+/**
+ * The representation of an instance (and its descendants) in messages.
+ * <p>
+ * Sending an {@link Instance} would also send its component and, through it, the whole graph.
+ * A wire instance only references its component by name. Receivers resolve this name against
+ * their own graph(s). Parent instances are not included either.
+ * </p>
+ * <p>
+ * A wire instance is a snapshot: it does not change when the instance it was built from does.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class WireInstance implements Serializable {
+
+	private static final long serialVersionUID = 5279376210387712470L;
+
+	private final String path, componentName, channel;
+	private final InstanceStatus status;
+	private final Map<String,String> overriddenExports, exports, data;
+	private final Map<String,Collection<Import>> imports;
+	private final List<WireInstance> children = new ArrayList<WireInstance> ();
+
+
+	/**
+	 * Constructor.
+	 * @param path the instance path
+	 * @param componentName the component name (can be null)
+	 * @param channel the channel (can be null)
+	 * @param status the status (can be null)
+	 * @param overriddenExports the overridden exports (can be null)
+	 * @param exports the exports (can be null)
+	 * @param data the data (can be null)
+	 * @param imports the imports (can be null)
+	 */
+	public WireInstance(
+			String path,
+			String componentName,
+			String channel,
+			InstanceStatus status,
+			Map<String,String> overriddenExports,
+			Map<String,String> exports,
+			Map<String,String> data,
+			Map<String,Collection<Import>> imports ) {
+
+		this.path = path;
+		this.componentName = componentName;
+		this.channel = channel;
+		this.status = status;
+		this.overriddenExports = overriddenExports;
+		this.exports = exports;
+		this.data = data;
+		this.imports = imports;
+	}
+
+
+	/**
+	 * Builds a wire instance from an instance and its descendants.
+	 * @param instance an instance (can be null)
+	 * @return a wire instance, or null if the instance was null
+	 */
+	public static WireInstance fromInstance( Instance instance ) {
+
+		if( instance == null )
+			return null;
+
+		Map<String,Collection<Import>> imports = new HashMap<String,Collection<Import>> ();
+		for( Map.Entry<String,Collection<Import>> entry : instance.getImports().entrySet())
+			imports.put( entry.getKey(), new ArrayList<Import>( entry.getValue()));
+
+		WireInstance result = new WireInstance(
+				InstanceHelpers.computeInstancePath( instance ),
+				instance.getComponent() == null ? null : instance.getComponent().getName(),
+				instance.getChannel(),
+				instance.getStatus(),
+				new HashMap<String,String>( instance.getOverriddenExports()),
+				new HashMap<String,String>( instance.getExports()),
+				new HashMap<String,String>( instance.getData()),
+				imports );
+
+		for( Instance child : instance.getChildren())
+			result.children.add( fromInstance( child ));
+
+		return result;
+	}
+
+
+	/**
+	 * Builds an instance (and its descendants) from this wire instance.
+	 * <p>
+	 * Components are resolved by name in the graph(s). When a component cannot be found,
+	 * the instance is created without component.
+	 * </p>
+	 *
+	 * @param graphs the graph(s) (can be null)
+	 * @return a new instance, which is the root of its own hierarchy (not null)
+	 */
+	public Instance toInstance( Graphs graphs ) {
+
+		Instance result = new Instance( getName());
+		result.setChannel( this.channel );
+		if( this.componentName != null ) {
+			Component component = ComponentHelpers.findComponent( graphs, this.componentName );
+			result.setComponent( component );
+		}
+
+		if( this.status != null )
+			result.setStatus( this.status );
+
+		if( this.overriddenExports != null )
+			result.getOverriddenExports().putAll( this.overriddenExports );
+
+		if( this.exports != null )
+			result.getExports().putAll( this.exports );
+
+		if( this.data != null )
+			result.getData().putAll( this.data );
+
+		result.updateImports( this.imports );
+		for( WireInstance child : this.children )
+			InstanceHelpers.insertChild( result, child.toInstance( graphs ));
+
+		return result;
+	}
+
+
+	@Override
+	public int hashCode() {
+		return this.path == null ? 17 : this.path.hashCode();
+	}
+
+
+	@Override
+	public boolean equals( Object obj ) {
+		return obj instanceof WireInstance
+				&& Utils.areEqual( this.path, ((WireInstance) obj).path );
+	}
+
+
+	@Override
+	public String toString() {
+		return this.path;
+	}
+
+
+	/**
+	 * @return the instance name (last segment of the path)
+	 */
+	public String getName() {
+		return this.path == null ? null : this.path.substring( this.path.lastIndexOf( '/' ) + 1 );
+	}
+
+	/**
+	 * @return the path
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @return the componentName
+	 */
+	public String getComponentName() {
+		return this.componentName;
+	}
+
+	/**
+	 * @return the channel
+	 */
+	public String getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public InstanceStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return the overriddenExports
+	 */
+	public Map<String,String> getOverriddenExports() {
+		return this.overriddenExports;
+	}
+
+	/**
+	 * @return the exports
+	 */
+	public Map<String,String> getExports() {
+		return this.exports;
+	}
+
+	/**
+	 * @return the data
+	 */
+	public Map<String,String> getData() {
+		return this.data;
+	}
+
+	/**
+	 * @return the imports
+	 */
+	public Map<String,Collection<Import>> getImports() {
+		return this.imports;
+	}
+
+	/**
+	 * @return the children (never null)
+	 */
+	public List<WireInstance> getChildren() {
+		return this.children;
+	}
+}
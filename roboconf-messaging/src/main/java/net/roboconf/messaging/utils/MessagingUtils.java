@@ -16,8 +16,16 @@
 
 package net.roboconf.messaging.utils;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.messaging.client.IMessageServerClient;
+import net.roboconf.messaging.messages.Message;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -26,6 +34,7 @@ public final class MessagingUtils {
 
 	public static final long HEARTBEAT_PERIOD = 60000;
 	public static final String SOURCE_DM = "dm";
+	public static final long PUBLICATION_TIMEOUT = 30000;
 
 
 	/**
@@ -53,4 +62,30 @@ public final class MessagingUtils {
 	public static String buildRoutingKeyToDm() {
 		return "dm";
 	}
+
+
+	/**
+	 * Waits for a message to be published.
+	 * @param future a future returned by {@link IMessageServerClient#publishAsync(boolean, String, Message)}
+	 * @throws IOException if the message could not be published within {@link #PUBLICATION_TIMEOUT} milliseconds
+	 */
+	public static void waitForPublication( Future<?> future ) throws IOException {
+
+		try {
+			future.get( PUBLICATION_TIMEOUT, TimeUnit.MILLISECONDS );
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while waiting for a message to be published." );
+
+		} catch( TimeoutException e ) {
+			throw new IOException( "A message was not published in time." );
+
+		} catch( ExecutionException e ) {
+			if( e.getCause() instanceof IOException )
+				throw (IOException) e.getCause();
+
+			throw new IOException( "A message could not be published. " + e.getCause().getMessage());
+		}
+	}
 }
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class AsyncPublisherTest {
+
+	private static final long TIMEOUT = 10000;
+
+
+	@Test
+	public void testAcknowledgments() throws Exception {
+
+		FakeChannel fake = new FakeChannel();
+		AsyncPublisher publisher = new AsyncPublisher( "test", fake.channel, 10, 4, TIMEOUT );
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>> ();
+			for( int i=0; i<5; i++ )
+				futures.add( publisher.publish( "exchange", "key" + i, new byte[] {(byte) i }));
+
+			fake.waitForPublications( 5 );
+			Assert.assertEquals( Collections.nCopies( 5, "exchange" ), fake.exchangeNames );
+			for( int i=0; i<5; i++ )
+				Assert.assertEquals( "key" + i, fake.routingKeys.get( i ));
+
+			// Sequence numbers start at 1
+			fake.confirmListener.handleAck( 3, true );
+			for( int i=0; i<3; i++ )
+				futures.get( i ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+
+			Assert.assertFalse( futures.get( 3 ).isDone());
+			Assert.assertFalse( futures.get( 4 ).isDone());
+
+			fake.confirmListener.handleAck( 5, false );
+			futures.get( 4 ).get( TIMEOUT, TimeUnit.MILLISECONDS );
+			Assert.assertFalse( futures.get( 3 ).isDone());
+
+			fake.confirmListener.handleNack( 4, false );
+			try {
+				MessagingUtils.waitForPublication( futures.get( 3 ));
+				Assert.fail( "An exception was expected." );
+
+			} catch( IOException e ) {
+				// nothing
+			}
+
+		} finally {
+			publisher.close();
+		}
+	}
+
+
+	@Test
+	public void testBoundedWindow() throws Exception {
+
+		FakeChannel fake = new FakeChannel();
+		AsyncPublisher publisher = new AsyncPublisher( "test", fake.channel, 2, 4, 100 );
+		try {
+			publisher.publish( "exchange", "key", new byte[ 0 ]);
+			publisher.publish( "exchange", "key", new byte[ 0 ]);
+			try {
+				publisher.publish( "exchange", "key", new byte[ 0 ]);
+				Assert.fail( "An exception was expected, the window is full." );
+
+			} catch( IOException e ) {
+				// nothing
+			}
+
+			// Acknowledgments free slots
+			fake.waitForPublications( 2 );
+			fake.confirmListener.handleAck( 1, false );
+			publisher.publish( "exchange", "key", new byte[ 0 ]);
+
+		} finally {
+			publisher.close();
+		}
+	}
+
+
+	@Test
+	public void testFailures() throws Exception {
+
+		FakeChannel fake = new FakeChannel();
+		fake.failingRoutingKey = "failing";
+		AsyncPublisher publisher = new AsyncPublisher( "test", fake.channel, 1, 4, 500 );
+
+		// Publication errors free the slot
+		Future<Void> future = publisher.publish( "exchange", "failing", new byte[ 0 ]);
+		try {
+			future.get( TIMEOUT, TimeUnit.MILLISECONDS );
+			Assert.fail( "An exception was expected." );
+
+		} catch( ExecutionException e ) {
+			Assert.assertTrue( e.getCause() instanceof IOException );
+		}
+
+		// Closing the publisher fails the pending messages
+		future = publisher.publish( "exchange", "key", new byte[ 0 ]);
+		fake.waitForPublications( 1 );
+		publisher.close();
+		Assert.assertTrue( future.isDone());
+		try {
+			future.get();
+			Assert.fail( "An exception was expected." );
+
+		} catch( ExecutionException e ) {
+			Assert.assertTrue( e.getCause() instanceof IOException );
+		}
+
+		try {
+			publisher.publish( "exchange", "key", new byte[ 0 ]);
+			Assert.fail( "An exception was expected, the publisher is closed." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+	}
+
+
+	@Test
+	public void testChannelShutdownWhilePublishing() throws Exception {
+
+		FakeChannel fake = new FakeChannel();
+		fake.closingRoutingKey = "closing";
+		AsyncPublisher publisher = new AsyncPublisher( "test", fake.channel, 3, 4, TIMEOUT );
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>> ();
+			futures.add( publisher.publish( "exchange", "key", new byte[ 0 ]));
+			futures.add( publisher.publish( "exchange", "closing", new byte[ 0 ]));
+			futures.add( publisher.publish( "exchange", "key", new byte[ 0 ]));
+
+			// All the futures fail, including the one that was published but not acknowledged
+			for( Future<Void> future : futures ) {
+				try {
+					future.get( TIMEOUT, TimeUnit.MILLISECONDS );
+					Assert.fail( "An exception was expected." );
+
+				} catch( ExecutionException e ) {
+					Assert.assertTrue( e.getCause() instanceof IOException );
+				}
+			}
+
+			// New messages are refused immediately, instead of waiting for a free slot
+			long start = System.currentTimeMillis();
+			try {
+				publisher.publish( "exchange", "key", new byte[ 0 ]);
+				Assert.fail( "An exception was expected, the channel is closed." );
+
+			} catch( IOException e ) {
+				Assert.assertTrue( System.currentTimeMillis() - start < TIMEOUT );
+			}
+
+		} finally {
+			publisher.close();
+		}
+	}
+
+
+	/**
+	 * A channel that records publications and never acknowledges them by itself.
+	 */
+	private static final class FakeChannel implements InvocationHandler {
+
+		final List<String> exchangeNames = Collections.synchronizedList( new ArrayList<String> ());
+		final List<String> routingKeys = Collections.synchronizedList( new ArrayList<String> ());
+		final Channel channel;
+
+		volatile ConfirmListener confirmListener;
+		volatile String failingRoutingKey, closingRoutingKey;
+		private boolean channelClosed = false;
+		private long nextSequenceNumber = 1;
+
+
+		FakeChannel() {
+			this.channel = (Channel) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class<?>[] { Channel.class },
+					this );
+		}
+
+
+		@Override
+		public synchronized Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+
+			Object result = null;
+			String name = method.getName();
+			if( "addConfirmListener".equals( name )) {
+				this.confirmListener = (ConfirmListener) args[ 0 ];
+
+			} else if( "getNextPublishSeqNo".equals( name )) {
+				result = this.nextSequenceNumber;
+
+			} else if( "basicPublish".equals( name )) {
+				this.nextSequenceNumber ++;
+				if( args[ 1 ].equals( this.closingRoutingKey ))
+					this.channelClosed = true;
+
+				if( this.channelClosed )
+					throw new AlreadyClosedException( "The channel is closed.", this );
+
+				if( args[ 1 ].equals( this.failingRoutingKey ))
+					throw new IOException( "Publication failure." );
+
+				this.exchangeNames.add((String) args[ 0 ]);
+				this.routingKeys.add((String) args[ 1 ]);
+				notifyAll();
+
+			} else if( method.getReturnType() == boolean.class ) {
+				result = false;
+			}
+
+			return result;
+		}
+
+
+		synchronized void waitForPublications( int count ) throws InterruptedException {
+
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+			while( this.routingKeys.size() < count
+					&& System.currentTimeMillis() < deadline )
+				wait( 100 );
+
+			Assert.assertEquals( count, this.routingKeys.size());
+		}
+	}
+}
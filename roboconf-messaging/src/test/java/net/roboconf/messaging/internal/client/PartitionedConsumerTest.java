@@ -0,0 +1,211 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.internal.client.PartitionedConsumer.LaneMetrics;
+import net.roboconf.messaging.internal.codec.BinaryMessageCodec;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class PartitionedConsumerTest {
+
+	private static final long TIMEOUT = 10000;
+	private final IMessageCodec codec = new BinaryMessageCodec();
+
+
+	@Test
+	public void testPartitionKeys() {
+
+		Assert.assertEquals( "vm", PartitionedConsumer.findRootInstanceName( "/vm/server/app" ));
+		Assert.assertEquals( "vm", PartitionedConsumer.findRootInstanceName( "/vm" ));
+		Assert.assertEquals( "vm", PartitionedConsumer.findRootInstanceName( "vm/server" ));
+		Assert.assertNull( PartitionedConsumer.findRootInstanceName( null ));
+
+		Assert.assertEquals( "vm", PartitionedConsumer.findPartitionKey( new MsgNotifHeartbeat( "vm" )));
+		Assert.assertEquals( "vm", PartitionedConsumer.findPartitionKey( new MsgCmdInstanceStart( "/vm/server" )));
+		Assert.assertEquals( "vm", PartitionedConsumer.findPartitionKey( new MsgCmdInstanceAdd( "/vm", new Instance( "server" ))));
+		Assert.assertEquals( "vm", PartitionedConsumer.findPartitionKey( new MsgCmdInstanceAdd( null, new Instance( "vm" ))));
+		Assert.assertEquals( "vm", PartitionedConsumer.findPartitionKey( new MsgNotifInstanceChanged( "/vm/server", null, null )));
+		Assert.assertNull( PartitionedConsumer.findPartitionKey( new MsgCmdImportRequest( "MySQL" )));
+
+		Assert.assertEquals( 0, PartitionedConsumer.findLaneIndex( new MsgCmdImportRequest( "MySQL" ), 4 ));
+		for( int i=0; i<100; i++ ) {
+			int index = PartitionedConsumer.findLaneIndex( new MsgNotifHeartbeat( "vm" + i ), 3 );
+			Assert.assertTrue( index >= 0 && index < 3 );
+		}
+	}
+
+
+	@Test
+	public void testOrderIsPreservedPerMachine() throws Exception {
+
+		final int machineCount = 10, messageCount = 200;
+		final CountDownLatch latch = new CountDownLatch( machineCount * messageCount );
+		final Map<String,List<String>> machineToIps = new HashMap<String,List<String>> ();
+		IMessageProcessor processor = new IMessageProcessor() {
+			@Override
+			public void processMessage( Message message ) {
+				MsgNotifMachineUp msg = (MsgNotifMachineUp) message;
+				synchronized( machineToIps ) {
+					List<String> ips = machineToIps.get( msg.getRootInstanceName());
+					if( ips == null ) {
+						ips = new ArrayList<String> ();
+						machineToIps.put( msg.getRootInstanceName(), ips );
+					}
+
+					ips.add( msg.getIpAddress());
+				}
+
+				latch.countDown();
+			}
+		};
+
+		PartitionedConsumer consumer = new PartitionedConsumer( "test", processor, this.codec, 4, 3, 16, true );
+		consumer.start();
+		try {
+			for( int i=0; i<messageCount; i++ ) {
+				for( int j=0; j<machineCount; j++ )
+					consumer.submit( this.codec.encode( new MsgNotifMachineUp( "vm" + j, String.valueOf( i ))), "dm" );
+			}
+
+			Assert.assertTrue( latch.await( TIMEOUT, TimeUnit.MILLISECONDS ));
+
+		} finally {
+			consumer.stop();
+		}
+
+		Assert.assertEquals( machineCount, machineToIps.size());
+		for( List<String> ips : machineToIps.values()) {
+			Assert.assertEquals( messageCount, ips.size());
+			for( int i=0; i<messageCount; i++ )
+				Assert.assertEquals( String.valueOf( i ), ips.get( i ));
+		}
+
+		// Metrics are updated once a message has been processed, i.e. after the latch was decremented
+		long processedMessages = 0;
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		List<LaneMetrics> metrics;
+		do {
+			processedMessages = 0;
+			metrics = consumer.getLaneMetrics();
+			for( LaneMetrics m : metrics )
+				processedMessages += m.getProcessedMessages();
+
+			if( processedMessages < machineCount * messageCount )
+				Thread.sleep( 10 );
+
+		} while( processedMessages < machineCount * messageCount
+				&& System.currentTimeMillis() < deadline );
+
+		Assert.assertEquals( machineCount * messageCount, processedMessages );
+		Assert.assertEquals( 4, metrics.size());
+		for( LaneMetrics m : metrics )
+			Assert.assertTrue( m.getMaxQueueSize() <= 16 );
+	}
+
+
+	@Test
+	public void testSlowLaneDoesNotBlockOthers() throws Exception {
+
+		// Find two machines in different lanes
+		final String slowMachine = "slow";
+		int slowLane = PartitionedConsumer.findLaneIndex( new MsgNotifHeartbeat( slowMachine ), 2 );
+		String machine = null;
+		for( int i=0; machine == null; i++ ) {
+			if( PartitionedConsumer.findLaneIndex( new MsgNotifHeartbeat( "vm" + i ), 2 ) != slowLane )
+				machine = "vm" + i;
+		}
+
+		final CountDownLatch fastLatch = new CountDownLatch( 1 );
+		final CountDownLatch slowLatch = new CountDownLatch( 1 );
+		IMessageProcessor processor = new IMessageProcessor() {
+			@Override
+			public void processMessage( Message message ) {
+				try {
+					if( slowMachine.equals(((MsgNotifHeartbeat) message).getRootInstanceName())) {
+						fastLatch.await( TIMEOUT, TimeUnit.MILLISECONDS );
+						slowLatch.countDown();
+
+					} else {
+						fastLatch.countDown();
+					}
+
+				} catch( InterruptedException e ) {
+					// nothing
+				}
+			}
+		};
+
+		PartitionedConsumer consumer = new PartitionedConsumer( "test", processor, this.codec, 2, 1, 4, false );
+		consumer.start();
+		try {
+			consumer.submit( this.codec.encode( new MsgNotifHeartbeat( slowMachine )), "dm" );
+			consumer.submit( this.codec.encode( new MsgNotifHeartbeat( machine )), "dm" );
+			Assert.assertTrue( slowLatch.await( TIMEOUT, TimeUnit.MILLISECONDS ));
+
+		} finally {
+			consumer.stop();
+		}
+
+		Assert.assertEquals( 0, consumer.getLaneMetrics().size());
+	}
+
+
+	@Test
+	public void testInvalidMessagesAreSkipped() throws Exception {
+
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		IMessageProcessor processor = new IMessageProcessor() {
+			@Override
+			public void processMessage( Message message ) {
+				latch.countDown();
+			}
+		};
+
+		PartitionedConsumer consumer = new PartitionedConsumer( "test", processor, this.codec, 1, 1, 4, false );
+		consumer.start();
+		try {
+			consumer.submit( new byte[] { 1, 2, 3 }, "dm" );
+			consumer.submit( this.codec.encode( new MsgNotifHeartbeat( "vm" )), "dm" );
+			Assert.assertTrue( latch.await( TIMEOUT, TimeUnit.MILLISECONDS ));
+
+		} finally {
+			consumer.stop();
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.internal.utils.SerializationUtilsTest;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodecTest {
+
+	@Test
+	public void testAllMessages() throws Exception {
+
+		BinaryMessageCodec binaryCodec = new BinaryMessageCodec();
+		JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+		for( Message msg : buildAllMessages()) {
+			SerializationUtilsTest.checkBasics( msg, msg.getClass(), binaryCodec );
+
+			byte[] bytes = binaryCodec.encode( msg );
+			Assert.assertTrue( binaryCodec.accepts( bytes ));
+			Assert.assertFalse( javaCodec.accepts( bytes ));
+			Assert.assertEquals( BinaryMessageCodec.VERSION, bytes[ 2 ]);
+
+			String name = msg.getClass().getSimpleName();
+			Assert.assertTrue( name, bytes.length < javaCodec.encode( msg ).length );
+		}
+	}
+
+
+	@Test
+	public void testInstanceAdd() throws Exception {
+
+		Component vmComponent = new Component( "VM" );
+		vmComponent.setAlias( "Virtual Machine" );
+		vmComponent.setInstallerName( "iaas" );
+
+		Component tomcatComponent = new Component( "Tomcat" );
+		tomcatComponent.setInstallerName( "puppet" );
+		tomcatComponent.getFacetNames().add( "deployable" );
+		tomcatComponent.getExportedVariables().put( "Tomcat.port", "8080" );
+		tomcatComponent.getImportedVariables().put( "MySQL.ip", Boolean.TRUE );
+		ComponentHelpers.insertChild( vmComponent, tomcatComponent );
+
+		Instance vm = new Instance( "vm" );
+		vm.setComponent( vmComponent );
+		vm.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		vm.getData().put( "ip", "192.168.1.1" );
+
+		Instance tomcat = new Instance( "tomcat" );
+		tomcat.setComponent( tomcatComponent );
+		tomcat.setChannel( "channel" );
+		tomcat.getOverriddenExports().put( "Tomcat.port", "9090" );
+		tomcat.getExports().put( "Tomcat.port", "9090" );
+		tomcat.addImport( "MySQL", new Import( "/vm/mysql", new HashMap<String,String>( tomcat.getExports())));
+		InstanceHelpers.insertChild( vm, tomcat );
+
+		Graphs graphs = new Graphs();
+		graphs.getRootComponents().add( vmComponent );
+
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+		MsgCmdInstanceAdd msg = (MsgCmdInstanceAdd) codec.decode( codec.encode( new MsgCmdInstanceAdd( null, vm, graphs )));
+		Assert.assertNull( msg.getParentInstancePath());
+		Assert.assertEquals( "VM", msg.getInstanceToAdd().getComponentName());
+		Assert.assertNotNull( msg.getGraphs());
+		Assert.assertEquals( 2, msg.getGraphs().getComponentsByName().size());
+
+		Instance newVm = msg.getInstanceToAdd().toInstance( msg.getGraphs());
+		Assert.assertEquals( "/vm", newVm.getPath());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, newVm.getStatus());
+		Assert.assertEquals( vm.getData(), newVm.getData());
+		Assert.assertEquals( "Virtual Machine", newVm.getComponent().getAlias());
+		Assert.assertEquals( 1, newVm.getChildren().size());
+
+		Instance newTomcat = newVm.getChildren().iterator().next();
+		Assert.assertEquals( "/vm/tomcat", newTomcat.getPath());
+		Assert.assertEquals( "channel", newTomcat.getChannel());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, newTomcat.getStatus());
+		Assert.assertEquals( tomcat.getOverriddenExports(), newTomcat.getOverriddenExports());
+		Assert.assertEquals( tomcat.getExports(), newTomcat.getExports());
+		Assert.assertEquals( 1, newTomcat.getImports().size());
+
+		Import imp = newTomcat.getImports().get( "MySQL" ).iterator().next();
+		Assert.assertEquals( "/vm/mysql", imp.getInstancePath());
+		Assert.assertEquals( tomcat.getExports(), imp.getExportedVars());
+
+		Component newTomcatComponent = newTomcat.getComponent();
+		Assert.assertEquals( "Tomcat", newTomcatComponent.getName());
+		Assert.assertEquals( "puppet", newTomcatComponent.getInstallerName());
+		Assert.assertEquals( tomcatComponent.getFacetNames(), newTomcatComponent.getFacetNames());
+		Assert.assertEquals( tomcatComponent.getExportedVariables(), newTomcatComponent.getExportedVariables());
+		Assert.assertEquals( tomcatComponent.getImportedVariables(), newTomcatComponent.getImportedVariables());
+		Assert.assertSame( newVm.getComponent(), newTomcatComponent.getAncestors().iterator().next());
+		Assert.assertSame( newTomcatComponent, newVm.getComponent().getChildren().iterator().next());
+	}
+
+
+	@Test
+	public void testNullFields() throws Exception {
+
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+		MsgCmdImportAdd msg = (MsgCmdImportAdd) codec.decode( codec.encode( new MsgCmdImportAdd( null, "/vm", null )));
+		Assert.assertNull( msg.getComponentOrFacetName());
+		Assert.assertEquals( "/vm", msg.getAddedInstancePath());
+		Assert.assertNull( msg.getExportedVariables());
+
+		msg = (MsgCmdImportAdd) codec.decode( codec.encode( new MsgCmdImportAdd( "", "", new HashMap<String,String> ())));
+		Assert.assertEquals( "", msg.getComponentOrFacetName());
+		Assert.assertEquals( 0, msg.getExportedVariables().size());
+
+		MsgCmdInstanceAdd addMsg = (MsgCmdInstanceAdd) codec.decode( codec.encode( new MsgCmdInstanceAdd( "/vm", null )));
+		Assert.assertEquals( "/vm", addMsg.getParentInstancePath());
+		Assert.assertNull( addMsg.getInstanceToAdd());
+		Assert.assertNull( addMsg.getGraphs());
+	}
+
+
+	@Test
+	public void testDecodedStringsArePooled() throws Exception {
+
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+		MsgNotifHeartbeat msg1 = (MsgNotifHeartbeat) codec.decode( codec.encode( new MsgNotifHeartbeat( new String( "instance1" ))));
+		MsgNotifHeartbeat msg2 = (MsgNotifHeartbeat) codec.decode( codec.encode( new MsgNotifHeartbeat( new String( "instance1" ))));
+		Assert.assertSame( msg1.getRootInstanceName(), msg2.getRootInstanceName());
+	}
+
+
+	@Test
+	public void testInvalidPayloads() throws Exception {
+
+		BinaryMessageCodec codec = new BinaryMessageCodec();
+		byte[] bytes = codec.encode( new MsgNotifMachineUp( "vm", "127.0.0.1" ));
+		List<byte[]> invalidPayloads = new ArrayList<byte[]> ();
+
+		// Truncated
+		invalidPayloads.add( Arrays.copyOf( bytes, bytes.length - 1 ));
+		invalidPayloads.add( Arrays.copyOf( bytes, 2 ));
+		invalidPayloads.add( new byte[ 0 ]);
+
+		// Extra bytes
+		invalidPayloads.add( Arrays.copyOf( bytes, bytes.length + 1 ));
+
+		// Unknown version, type and magic
+		byte[] copy = bytes.clone();
+		copy[ 2 ] = BinaryMessageCodec.VERSION + 1;
+		invalidPayloads.add( copy );
+
+		copy = bytes.clone();
+		copy[ 1 ] = 100;
+		invalidPayloads.add( copy );
+
+		copy = bytes.clone();
+		copy[ 0 ] = 0;
+		invalidPayloads.add( copy );
+
+		// Invalid lengths
+		copy = bytes.clone();
+		copy[ 3 ] = 0x7F;
+		invalidPayloads.add( copy );
+
+		for( byte[] payload : invalidPayloads ) {
+			try {
+				codec.decode( payload );
+				Assert.fail( "An exception was expected for " + Arrays.toString( payload ));
+
+			} catch( IOException e ) {
+				// nothing
+			}
+		}
+	}
+
+
+	@Test
+	public void testCodecDetection() throws Exception {
+
+		MsgNotifHeartbeat msg = new MsgNotifHeartbeat( "instance1" );
+		JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+		BinaryMessageCodec binaryCodec = new BinaryMessageCodec();
+
+		Message newMsg = MessageCodecs.decode( javaCodec.encode( msg ), binaryCodec );
+		Assert.assertEquals( "instance1", ((MsgNotifHeartbeat) newMsg).getRootInstanceName());
+
+		newMsg = MessageCodecs.decode( binaryCodec.encode( msg ), javaCodec );
+		Assert.assertEquals( "instance1", ((MsgNotifHeartbeat) newMsg).getRootInstanceName());
+
+		newMsg = MessageCodecs.decode( binaryCodec.encode( msg ), null );
+		Assert.assertEquals( "instance1", ((MsgNotifHeartbeat) newMsg).getRootInstanceName());
+
+		try {
+			MessageCodecs.decode( new byte[] { 1, 2, 3 }, null );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+
+		Assert.assertTrue( MessageCodecs.findCodec( MessageCodecs.CODEC_JAVA ) instanceof JavaSerializationCodec );
+		Assert.assertTrue( MessageCodecs.findCodec( "unknown" ) instanceof BinaryMessageCodec );
+	}
+
+
+	/**
+	 * @return one message of every type
+	 */
+	static List<Message> buildAllMessages() {
+
+		Map<String,String> exports = new HashMap<String,String> ();
+		exports.put( "MySQL.ip", "192.168.1.2" );
+		exports.put( "MySQL.port", "3306" );
+
+		Instance instance = new Instance( "mysql" );
+		InstanceHelpers.insertChild( new Instance( "vm" ), instance );
+		instance.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		instance.addImport( "Tomcat", new Import( "/vm/tomcat", exports ));
+
+		Map<String,byte[]> files = new HashMap<String,byte[]> ();
+		files.put( "readme.txt", new byte[ 90 ]);
+
+		List<Message> result = new ArrayList<Message> ();
+		result.add( new MsgNotifHeartbeat( "vm" ));
+		result.add( new MsgNotifInstanceChanged( instance ));
+		result.add( new MsgNotifInstanceRemoved( instance ));
+		result.add( new MsgNotifMachineDown( "vm" ));
+		result.add( new MsgNotifMachineReadyToBeDeleted( "vm" ));
+		result.add( new MsgNotifMachineUp( "vm", "192.168.1.1" ));
+
+		result.add( new MsgCmdFirewallAdd( "192.168.1.1", "192.168.1.2", 8080 ));
+		result.add( new MsgCmdFirewallRemove());
+		result.add( new MsgCmdInstanceAdd( "/vm", new Instance( "tomcat" )));
+		result.add( new MsgCmdInstanceDeploy( "/vm/mysql", files ));
+		result.add( new MsgCmdInstanceRemove( "/vm/mysql" ));
+		result.add( new MsgCmdInstanceStart( "/vm/mysql" ));
+		result.add( new MsgCmdInstanceStop( "/vm/mysql" ));
+		result.add( new MsgCmdInstanceUndeploy( "/vm/mysql" ));
+
+		result.add( new MsgCmdImportAdd( "MySQL", "/vm/mysql", exports ));
+		result.add( new MsgCmdImportRemove( "MySQL", "/vm/mysql" ));
+		result.add( new MsgCmdImportRequest( "MySQL" ));
+
+		return result;
+	}
+}
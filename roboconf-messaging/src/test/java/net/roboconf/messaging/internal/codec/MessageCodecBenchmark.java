@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * Compares the payload sizes and the throughput of the message codecs.
+ * <p>
+ * This is not a unit test: timings depend on the machine, so it is run by hand
+ * (e.g. from an IDE) and prints its results on the standard output.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class MessageCodecBenchmark {
+
+	private static final int WARM_UP_ITERATIONS = 20000;
+	private static final int ITERATIONS = 100000;
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private MessageCodecBenchmark() {
+		// nothing
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args unused
+	 * @throws IOException if a message could not be encoded or decoded
+	 */
+	public static void main( String[] args ) throws IOException {
+
+		IMessageCodec binaryCodec = new BinaryMessageCodec();
+		IMessageCodec javaCodec = new JavaSerializationCodec();
+		List<Message> messages = BinaryMessageCodecTest.buildAllMessages();
+
+		System.out.println( String.format( "%-35s %10s %10s", "Message", "Binary", "Java" ));
+		for( Message msg : messages ) {
+			System.out.println( String.format(
+					"%-35s %10d %10d",
+					msg.getClass().getSimpleName(),
+					binaryCodec.encode( msg ).length,
+					javaCodec.encode( msg ).length ));
+		}
+
+		System.out.println();
+		run( binaryCodec, messages, WARM_UP_ITERATIONS, false );
+		run( javaCodec, messages, WARM_UP_ITERATIONS, false );
+		run( binaryCodec, messages, ITERATIONS, true );
+		run( javaCodec, messages, ITERATIONS, true );
+	}
+
+
+	/**
+	 * Encodes and decodes every message a given number of times.
+	 * @param codec the codec to measure
+	 * @param messages the messages to encode and decode
+	 * @param iterations the number of times each message is processed
+	 * @param print true to print the throughput
+	 * @throws IOException if a message could not be encoded or decoded
+	 */
+	private static void run( IMessageCodec codec, List<Message> messages, int iterations, boolean print )
+	throws IOException {
+
+		byte[][] payloads = new byte[ messages.size()][];
+		long start = System.nanoTime();
+		for( int i=0; i<iterations; i++ ) {
+			for( int j=0; j<payloads.length; j++ )
+				payloads[ j ] = codec.encode( messages.get( j ));
+		}
+
+		long encodingTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for( int i=0; i<iterations; i++ ) {
+			for( byte[] payload : payloads )
+				codec.decode( payload );
+		}
+
+		long decodingTime = System.nanoTime() - start;
+		if( print ) {
+			long count = (long) iterations * payloads.length;
+			System.out.println( String.format(
+					"%-25s encode: %10d msg/s    decode: %10d msg/s",
+					codec.getClass().getSimpleName(),
+					count * 1000000000L / Math.max( 1, encodingTime ),
+					count * 1000000000L / Math.max( 1, decodingTime )));
+		}
+	}
+}
@@ -22,6 +22,8 @@ import java.util.Map;
 
 import junit.framework.Assert;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.internal.codec.JavaSerializationCodec;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
@@ -48,6 +50,19 @@ import org.junit.Test;
  */
 public class SerializationUtilsTest {
 
+	@Test
+	public void testDeserializedStringsArePooled() throws Exception {
+
+		MsgNotifHeartbeat msg1 = new MsgNotifHeartbeat( new String( "instance1" ));
+		MsgNotifHeartbeat msg2 = new MsgNotifHeartbeat( new String( "instance1" ));
+		Assert.assertNotSame( msg1.getRootInstanceName(), msg2.getRootInstanceName());
+
+		msg1 = SerializationUtils.deserializeObject( SerializationUtils.serializeObject( msg1 ), MsgNotifHeartbeat.class );
+		msg2 = SerializationUtils.deserializeObject( SerializationUtils.serializeObject( msg2 ), MsgNotifHeartbeat.class );
+		Assert.assertSame( msg1.getRootInstanceName(), msg2.getRootInstanceName());
+	}
+
+
 	// From agent
 
 	@Test
@@ -203,6 +218,19 @@ public class SerializationUtilsTest {
 	 * @throws Exception
 	 */
 	public static <T extends Message> T checkBasics( Message msg, Class<T> clazz ) throws Exception {
+		return checkBasics( msg, clazz, new JavaSerializationCodec());
+	}
+
+
+	/**
+	 * Encodes, decodes and compares messages.
+	 * @param msg
+	 * @param clazz
+	 * @param codec
+	 * @return
+	 * @throws Exception
+	 */
+	public static <T extends Message> T checkBasics( Message msg, Class<T> clazz, IMessageCodec codec ) throws Exception {
 
 		String prefix = "Class " + clazz.getSimpleName();
 		Assert.assertTrue(
@@ -210,8 +238,8 @@ public class SerializationUtilsTest {
 				clazz.isAssignableFrom( msg.getClass()));
 
 		// Write and read
-		byte[] bytes = SerializationUtils.serializeObject( msg );
-		Message newMsg = SerializationUtils.deserializeObject( bytes );
+		byte[] bytes = codec.encode( msg );
+		Message newMsg = codec.decode( bytes );
 
 		// Compare classes
 		Assert.assertEquals( prefix, clazz.getName(), newMsg.getClass().getName());
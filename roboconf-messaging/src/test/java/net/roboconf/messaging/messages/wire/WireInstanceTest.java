@@ -0,0 +1,119 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.wire;
+
+import java.util.HashMap;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Graphs;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class WireInstanceTest {
+
+	@Test
+	public void testConversions() {
+
+		Graphs graphs = new Graphs();
+		Component vmComponent = new Component( "VM" );
+		Component tomcatComponent = new Component( "Tomcat" );
+		ComponentHelpers.insertChild( vmComponent, tomcatComponent );
+		graphs.getRootComponents().add( vmComponent );
+
+		Instance vm = new Instance( "vm" );
+		vm.setComponent( vmComponent );
+
+		Instance tomcat = new Instance( "tomcat" );
+		tomcat.setComponent( tomcatComponent );
+		tomcat.setChannel( "channel" );
+		tomcat.setStatus( InstanceStatus.DEPLOYED_STOPPED );
+		tomcat.getExports().put( "Tomcat.port", "8080" );
+		tomcat.getData().put( "key", "value" );
+		tomcat.addImport( "MySQL", new Import( "/vm/mysql", new HashMap<String,String> ()));
+		InstanceHelpers.insertChild( vm, tomcat );
+
+		// Only the descendants are kept
+		WireInstance wireInstance = WireInstance.fromInstance( tomcat );
+		Assert.assertEquals( "/vm/tomcat", wireInstance.getPath());
+		Assert.assertEquals( "tomcat", wireInstance.getName());
+		Assert.assertEquals( "Tomcat", wireInstance.getComponentName());
+		Assert.assertEquals( 0, wireInstance.getChildren().size());
+
+		// The wire instance is a snapshot
+		tomcat.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		tomcat.getExports().clear();
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, wireInstance.getStatus());
+		Assert.assertEquals( 1, wireInstance.getExports().size());
+
+		Instance newTomcat = wireInstance.toInstance( graphs );
+		Assert.assertNull( newTomcat.getParent());
+		Assert.assertEquals( "/tomcat", newTomcat.getPath());
+		Assert.assertSame( tomcatComponent, newTomcat.getComponent());
+		Assert.assertEquals( "channel", newTomcat.getChannel());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, newTomcat.getStatus());
+		Assert.assertEquals( "8080", newTomcat.getExports().get( "Tomcat.port" ));
+		Assert.assertEquals( "value", newTomcat.getData().get( "key" ));
+		Assert.assertEquals( "/vm/mysql", newTomcat.getImports().get( "MySQL" ).iterator().next().getInstancePath());
+
+		// Hierarchy
+		Instance newVm = WireInstance.fromInstance( vm ).toInstance( graphs );
+		Assert.assertEquals( 1, newVm.getChildren().size());
+		Assert.assertEquals( "/vm/tomcat", newVm.getChildren().iterator().next().getPath());
+		Assert.assertSame( vmComponent, newVm.getComponent());
+
+		// Unknown components
+		Assert.assertNull( WireInstance.fromInstance( vm ).toInstance( null ).getComponent());
+		Assert.assertNull( WireInstance.fromInstance( vm ).toInstance( new Graphs()).getComponent());
+		Assert.assertNull( WireInstance.fromInstance( null ));
+	}
+
+
+	@Test
+	public void testComponentsAreNotSerialized() throws Exception {
+
+		// Build a large graph, used by a small instance
+		Graphs graphs = new Graphs();
+		Component vmComponent = new Component( "VM" );
+		graphs.getRootComponents().add( vmComponent );
+		for( int i=0; i<50; i++ ) {
+			Component c = new Component( "component-" + i );
+			c.getExportedVariables().put( "component-" + i + ".port", String.valueOf( i ));
+			ComponentHelpers.insertChild( vmComponent, c );
+		}
+
+		Instance vm = new Instance( "vm" );
+		vm.setComponent( vmComponent );
+
+		int withoutGraphs = SerializationUtils.serializeObject( new MsgCmdInstanceAdd( null, vm )).length;
+		int withGraphs = SerializationUtils.serializeObject( new MsgCmdInstanceAdd( null, vm, graphs )).length;
+		int instanceOnly = SerializationUtils.serializeObject( vm ).length;
+
+		Assert.assertTrue( withoutGraphs < withGraphs );
+		Assert.assertTrue( withoutGraphs < instanceOnly );
+	}
+}